@@ -0,0 +1,121 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.datastructures.model.STTrajectory;
+import onethreeseven.datastructures.util.DataGeneratorUtil;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * The shapes of 2d data the benchmarks run over. Every shape keeps roughly the same density of points
+ * as the number of points grows, so a fixed neighbourhood size means the same amount of work per point.
+ * @author Luke Bermingham
+ */
+public enum BenchmarkData {
+
+    /**
+     * Points spread evenly over a square.
+     */
+    UNIFORM {
+        @Override
+        double[][] generate(int nPoints, long seed) {
+            Random rand = new Random(seed);
+            double side = sideLength(nPoints);
+            double[][] pts = new double[nPoints][];
+            for (int i = 0; i < nPoints; i++) {
+                pts[i] = new double[]{rand.nextDouble() * side, rand.nextDouble() * side};
+            }
+            return pts;
+        }
+    },
+
+    /**
+     * Gaussian blobs of points, with some uniform noise between them.
+     */
+    CLUSTERED {
+        @Override
+        double[][] generate(int nPoints, long seed) {
+            Random rand = new Random(seed);
+            double side = sideLength(nPoints);
+            int nBlobs = Math.max(2, (int) Math.sqrt(nPoints / 1000.0));
+            double[][] centres = new double[nBlobs][];
+            for (int j = 0; j < nBlobs; j++) {
+                centres[j] = new double[]{rand.nextDouble() * side, rand.nextDouble() * side};
+            }
+            double spread = side / (4 * Math.sqrt(nBlobs));
+            double[][] pts = new double[nPoints][];
+            for (int i = 0; i < nPoints; i++) {
+                //one in ten points is noise
+                if(rand.nextInt(10) == 0){
+                    pts[i] = new double[]{rand.nextDouble() * side, rand.nextDouble() * side};
+                }else{
+                    double[] c = centres[rand.nextInt(nBlobs)];
+                    pts[i] = new double[]{c[0] + rand.nextGaussian() * spread, c[1] + rand.nextGaussian() * spread};
+                }
+            }
+            return pts;
+        }
+    },
+
+    /**
+     * The points of generated trajectories, as selected entities would supply them to the clustering commands.
+     */
+    TRAJECTORY {
+        @Override
+        double[][] generate(int nPoints, long seed) {
+            //trajectories are generated with a fixed number of entries, so make enough and keep the first n points
+            int entriesPerTraj = 1000;
+            int nTrajs = (nPoints + entriesPerTraj - 1) / entriesPerTraj;
+            double[][] pts = new double[nPoints][];
+            int i = 0;
+            for (STTrajectory traj : DataGeneratorUtil.generateSpatiotemporalTrajectories(
+                    nTrajs, entriesPerTraj, 0, 0, 3, 10, 5000).values()) {
+                Iterator<double[]> coordIter = traj.coordinateIter();
+                while(coordIter.hasNext() && i < nPoints){
+                    double[] coord = coordIter.next();
+                    pts[i++] = new double[]{coord[0], coord[1]};
+                }
+            }
+            //generator gave back fewer points than asked for, repeat them
+            for (int j = 0; i < nPoints; j++) {
+                pts[i++] = pts[j];
+            }
+            return pts;
+        }
+    };
+
+    //points per unit area of the uniform and clustered shapes
+    private static final double DENSITY = 0.01;
+
+    /**
+     * @param nPoints The number of points.
+     * @param seed The seed for the random points.
+     * @return The points.
+     */
+    abstract double[][] generate(int nPoints, long seed);
+
+    /**
+     * A DBSCAN epsilon giving each point about <code>neighbours</code> neighbours if the points were spread
+     * evenly over their bounding box.
+     * @param pts The points.
+     * @param neighbours The desired number of neighbours.
+     * @return The epsilon.
+     */
+    static double epsilonFor(double[][] pts, int neighbours){
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (double[] pt : pts) {
+            minX = Math.min(minX, pt[0]);
+            minY = Math.min(minY, pt[1]);
+            maxX = Math.max(maxX, pt[0]);
+            maxY = Math.max(maxY, pt[1]);
+        }
+        double area = Math.max((maxX - minX) * (maxY - minY), Double.MIN_NORMAL);
+        return Math.sqrt(neighbours * area / (Math.PI * pts.length));
+    }
+
+    private static double sideLength(int nPoints){
+        return Math.sqrt(nPoints / DENSITY);
+    }
+
+}
@@ -0,0 +1,85 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanCluster;
+import onethreeseven.clustering.model.DBScanSweepResult;
+import onethreeseven.clustering.model.HDBSCANResult;
+import onethreeseven.clustering.model.OPTICSResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link DBScan} entry points over growing numbers of points and different shapes of data.
+ * Epsilon is picked so each point has about the same number of neighbours at every size.
+ * Scaling with threads is in {@link DBScanScalingBenchmark}.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DBScanBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int nPoints;
+
+    @Param({"UNIFORM", "CLUSTERED", "TRAJECTORY"})
+    public BenchmarkData shape;
+
+    static final int MIN_PTS = 5;
+
+    private double[][] pts;
+    private double epsilon;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, 137);
+        epsilon = BenchmarkData.epsilonFor(pts, MIN_PTS * 2);
+    }
+
+    @Benchmark
+    public Collection<DBScanCluster> run2d(){
+        return DBScan.run2d(pts, epsilon, MIN_PTS);
+    }
+
+    @Benchmark
+    public Collection<DBScanCluster> run2dProgress(){
+        return DBScan.run2d(pts, epsilon, MIN_PTS, progress -> {});
+    }
+
+    @Benchmark
+    public Collection<DBScanCluster> run2dGrid(){
+        return DBScan.run2d(pts, epsilon, MIN_PTS, SpatialIndexType.GRID, null);
+    }
+
+    @Benchmark
+    public Collection<DBScanCluster> run2dNoMemo(){
+        return DBScan.run2d(pts, epsilon, MIN_PTS, new DBScanOptions().setMemoiseNeighbourhoods(false));
+    }
+
+    //a 4x3 grid of settings around the benchmark's epsilon and minPts, compare with 12 runs of run2dGrid
+    @Benchmark
+    public DBScanSweepResult sweep(){
+        double[] epsilons = new double[]{epsilon * 0.25, epsilon * 0.5, epsilon * 0.75, epsilon};
+        int[] minPts = new int[]{MIN_PTS, MIN_PTS * 2, MIN_PTS * 4};
+        return DBScan.sweep(pts, epsilons, minPts);
+    }
+
+    //one run in place of an epsilon sweep
+    @Benchmark
+    public HDBSCANResult hdbscan(){
+        return HDBSCAN.run2d(pts, MIN_PTS, MIN_PTS * 2);
+    }
+
+    //order once, then extract the same four epsilons as the sweep
+    @Benchmark
+    public int opticsExtract(){
+        OPTICSResult ordering = OPTICS.run2d(pts, epsilon, MIN_PTS, SpatialIndexType.GRID, null);
+        int nClusters = 0;
+        for (double fraction : new double[]{0.25, 0.5, 0.75, 1.0}) {
+            nClusters += ordering.extractDBScan(epsilon * fraction).getNClusters();
+        }
+        return nClusters;
+    }
+
+}
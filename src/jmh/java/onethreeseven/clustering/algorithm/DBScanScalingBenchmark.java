@@ -0,0 +1,41 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanCluster;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how {@link DBScan#run2dParallel(double[][], double, int, int)} scales with the number of threads.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DBScanScalingBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int nPoints;
+
+    @Param({"UNIFORM", "CLUSTERED", "TRAJECTORY"})
+    public BenchmarkData shape;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private double[][] pts;
+    private double epsilon;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, 137);
+        epsilon = BenchmarkData.epsilonFor(pts, DBScanBenchmark.MIN_PTS * 2);
+    }
+
+    @Benchmark
+    public Collection<DBScanCluster> run2dParallel(){
+        return DBScan.run2dParallel(pts, epsilon, DBScanBenchmark.MIN_PTS, threads);
+    }
+
+}
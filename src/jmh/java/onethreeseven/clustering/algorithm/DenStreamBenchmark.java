@@ -0,0 +1,58 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks ingesting a stream of points into {@link DenStream}, reported per point, and the offline
+ * clustering of the micro-clusters built from it. The points arrive a thousand per unit of time.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DenStreamBenchmark {
+
+    private static final int N_POINTS = 1000000;
+
+    @Param({"UNIFORM", "CLUSTERED", "TRAJECTORY"})
+    public BenchmarkData shape;
+
+    @Param({"1000", "10000", "100000"})
+    public int maxMicroClusters;
+
+    static final int MIN_PTS = 5;
+
+    private double[][] pts;
+    private double epsilon;
+    private DenStream summarised;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(N_POINTS, 137);
+        epsilon = BenchmarkData.epsilonFor(pts, MIN_PTS * 2);
+        summarised = ingestAll();
+    }
+
+    private DenStream ingestAll(){
+        DenStream denStream = new DenStream(epsilon, new DenStreamOptions().setMaxMicroClusters(maxMicroClusters));
+        for (int i = 0; i < pts.length; i++) {
+            denStream.ingest(pts[i], i / 1000.0);
+        }
+        return denStream;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N_POINTS)
+    public DenStream ingest(){
+        return ingestAll();
+    }
+
+    @Benchmark
+    public DBScanResult offline(){
+        return summarised.cluster(epsilon * 2, MIN_PTS);
+    }
+
+}
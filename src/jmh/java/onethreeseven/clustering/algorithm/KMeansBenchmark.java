@@ -0,0 +1,76 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.KMeansCluster;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link KMeans} entry points over growing numbers of points and different shapes of data.
+ * Seeded runs use a fixed seed, so every iteration does the same work.
+ * Scaling with threads is in {@link KMeansScalingBenchmark}.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KMeansBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int nPoints;
+
+    @Param({"UNIFORM", "CLUSTERED", "TRAJECTORY"})
+    public BenchmarkData shape;
+
+    @Param({"20"})
+    public int k;
+
+    static final long SEED = 137;
+
+    private double[][] pts;
+    private double[][] initialCentroids;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, SEED);
+        initialCentroids = KMeansSeeding.kMeansPlusPlus(pts, k, SEED, null);
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dGivenCentroids(){
+        return KMeans.run2d(pts, k, initialCentroids);
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dGivenCentroidsHamerly(){
+        return KMeans.run2d(pts, k, initialCentroids, new KMeansOptions().setAlgorithm(KMeansAlgorithm.HAMERLY));
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dBradleyFayyad(){
+        return KMeans.run2d(pts, k, 20, SEED);
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dKMeansPlusPlus(){
+        return KMeans.run2d(pts, k, new KMeansOptions().setSeed(SEED)
+                .setInitialiser(KMeansInitialiser.KMEANS_PLUS_PLUS));
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dKMeansParallel(){
+        return KMeans.run2d(pts, k, new KMeansOptions().setSeed(SEED)
+                .setInitialiser(KMeansInitialiser.KMEANS_PARALLEL));
+    }
+
+    @Benchmark
+    public KMeansCluster[] miniBatch(){
+        MiniBatchKMeans miniBatch = new MiniBatchKMeans(k, 1024, SEED);
+        for (double[] pt : pts) {
+            miniBatch.add(pt);
+        }
+        miniBatch.flush();
+        return miniBatch.getClusters();
+    }
+
+}
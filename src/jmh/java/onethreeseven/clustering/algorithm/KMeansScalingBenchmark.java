@@ -0,0 +1,60 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.KMeansCluster;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how {@link KMeans} scales with {@link KMeansOptions#setParallelism(int)}.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KMeansScalingBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int nPoints;
+
+    @Param({"UNIFORM", "CLUSTERED", "TRAJECTORY"})
+    public BenchmarkData shape;
+
+    @Param({"LLOYD", "HAMERLY"})
+    public KMeansAlgorithm algorithm;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"20"})
+    public int k;
+
+    private double[][] pts;
+    private double[][] initialCentroids;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, KMeansBenchmark.SEED);
+        initialCentroids = KMeansSeeding.kMeansPlusPlus(pts, k, KMeansBenchmark.SEED, null);
+    }
+
+    private KMeansOptions options(){
+        return new KMeansOptions().setAlgorithm(algorithm).setParallelism(threads).setSeed(KMeansBenchmark.SEED);
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dGivenCentroids(){
+        return KMeans.run2d(pts, k, initialCentroids, options());
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dBradleyFayyad(){
+        return KMeans.run2d(pts, k, options());
+    }
+
+    @Benchmark
+    public KMeansCluster[] run2dKMeansParallel(){
+        return KMeans.run2d(pts, k, options().setInitialiser(KMeansInitialiser.KMEANS_PARALLEL));
+    }
+
+}
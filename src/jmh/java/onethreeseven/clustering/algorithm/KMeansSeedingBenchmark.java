@@ -0,0 +1,92 @@
+package onethreeseven.clustering.algorithm;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long each {@link KMeansInitialiser} takes to pick its starting centroids.
+ * The quality of the centroids is not a timing, so {@link #main(String[])} reports the distortion of the
+ * seeds and of the clusters k-means then converges to: <code>KMeansSeedingBenchmark [nPoints] [k] [threads]</code>.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KMeansSeedingBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int nPoints;
+
+    @Param({"CLUSTERED"})
+    public BenchmarkData shape;
+
+    @Param({"BRADLEY_FAYYAD", "KMEANS_PLUS_PLUS", "KMEANS_PARALLEL"})
+    public KMeansInitialiser initialiser;
+
+    @Param({"50"})
+    public int k;
+
+    private double[][] pts;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, KMeansBenchmark.SEED);
+    }
+
+    @Benchmark
+    public double[][] seed(){
+        return seed(initialiser, pts, k, KMeansBenchmark.SEED, null);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        double[][] pts = BenchmarkData.CLUSTERED.generate(n, KMeansBenchmark.SEED);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        System.out.println("n=" + n + ", k=" + k + ", threads=" + threads);
+        System.out.println("initialiser, seeding ms, seed distortion, converged distortion, iterations");
+        try{
+            for (KMeansInitialiser initialiser : KMeansInitialiser.values()) {
+                for (long seed = 0; seed < 3; seed++) {
+                    long start = System.nanoTime();
+                    double[][] centroids = seed(initialiser, pts, k, seed, pool);
+                    long seedingMs = (System.nanoTime() - start) / 1000000;
+
+                    LloydKMeans lloyd = new LloydKMeans(pts, k, centroids);
+                    lloyd.run(pool);
+                    double[][] converged = new double[k][];
+                    for (int j = 0; j < k; j++) {
+                        converged[j] = new double[]{lloyd.cx[j], lloyd.cy[j]};
+                    }
+
+                    System.out.println(initialiser + ", " + seedingMs + ", " +
+                            KMeans.computeDistortion(pts, centroids, pool) + ", " +
+                            KMeans.computeDistortion(pts, converged, pool) + ", " + lloyd.getNIterations());
+                }
+            }
+        }finally {
+            if(pool != null){
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static double[][] seed(KMeansInitialiser initialiser, double[][] pts, int k, long seed, ForkJoinPool pool){
+        switch (initialiser){
+            case KMEANS_PLUS_PLUS:
+                return KMeansSeeding.kMeansPlusPlus(pts, k, seed, pool);
+            case KMEANS_PARALLEL:
+                return KMeansSeeding.kMeansParallel(pts, k, 5, 2.0 * k, seed, pool);
+            case BRADLEY_FAYYAD:
+            default:
+                int j = 20;
+                int subsampleSize = Math.min(Math.max((int) ((pts.length / j) * 0.25d), 10), pts.length);
+                return new KMeans().calculateInitialCentroids(pts, k, subsampleSize, j, seed, pool);
+        }
+    }
+
+}
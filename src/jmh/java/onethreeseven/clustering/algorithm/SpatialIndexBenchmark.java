@@ -0,0 +1,62 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building each {@link SpatialIndexType} and running DBSCAN over it. The trajectory points come
+ * from DataGeneratorUtil in time order, so consecutive points are close together, which is the worst case
+ * for a kd-tree built by inserting points one at a time.
+ * @author Luke Bermingham
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SpatialIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int nPoints;
+
+    @Param({"TRAJECTORY", "UNIFORM"})
+    public BenchmarkData shape;
+
+    @Param({"KD_TREE", "BALANCED_KD_TREE", "GRID"})
+    public SpatialIndexType indexType;
+
+    private double[][] pts;
+    private double epsilon;
+    private NeighbourIndex2d index;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pts = shape.generate(nPoints, 137);
+        epsilon = BenchmarkData.epsilonFor(pts, DBScanBenchmark.MIN_PTS * 2);
+        index = indexType.build(pts, epsilon);
+    }
+
+    @Benchmark
+    public NeighbourIndex2d build(){
+        return indexType.build(pts, epsilon);
+    }
+
+    //every point's neighbourhood once, in the time order of the points
+    @Benchmark
+    @OperationsPerInvocation(100000)
+    public long query(){
+        IntList out = new IntList();
+        long nFound = 0;
+        for (int i = 0; i < 100000; i++) {
+            double[] pt = pts[i % pts.length];
+            nFound += index.rangeQuery(pt[0], pt[1], epsilon, out);
+        }
+        return nFound;
+    }
+
+    @Benchmark
+    public DBScanResult dbscan(){
+        return DBScan.run2dCompact(pts, epsilon, DBScanBenchmark.MIN_PTS, indexType, null);
+    }
+
+}
@@ -0,0 +1,562 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Minimum spanning tree of 2d points under the mutual reachability distance
+ * max(core distance of a, core distance of b, distance between a and b), found with Boruvka's algorithm.
+ * The same kd-tree also finds the core distances, with k-nearest neighbour queries.
+ * Each round every component is joined to its closest other component, so there are at most log2(n) rounds.
+ * The closest point of another component is found per point in parallel with a kd-tree whose nodes know the
+ * smallest core distance below them and whether all their points are already in one component,
+ * so whole subtrees of the point's own component, or that are too far away, are skipped.
+ * Edges are totally ordered by (weight, smaller endpoint, larger endpoint), which keeps
+ * the tree the same regardless of the number of threads.
+ * @author Luke Bermingham
+ */
+class BoruvkaMST {
+
+    private static final int LEAF_SIZE = 16;
+    private static final int MIXED = -1;
+    private static final int NONE = -1;
+
+    private final double[][] pts;
+    private double[] coreDistances;
+
+    //kd-tree, nodes are numbered in pre-order, the points of node k are order[nodeStart[k]...nodeEnd[k]-1]
+    private final int[] order;
+    private final int[] nodeStart;
+    private final int[] nodeEnd;
+    //right child of each node, the left child is always the next node, leaves have NONE
+    private final int[] nodeRight;
+    private final double[] nodeMinX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxX;
+    private final double[] nodeMaxY;
+    private final double[] nodeMinCore;
+    //the component all points of a node are in, or MIXED, refreshed each round
+    private final int[] nodeComponent;
+    private int nNodes = 0;
+
+    //the component of each point, refreshed each round
+    private final int[] component;
+
+    /**
+     * Build the kd-tree.
+     * @param pts The points.
+     */
+    BoruvkaMST(double[][] pts){
+        this.pts = pts;
+        final int nPts = pts.length;
+        this.component = new int[nPts];
+        this.order = new int[nPts];
+        for (int i = 0; i < nPts; i++) {
+            order[i] = i;
+        }
+
+        //leaves hold at least half of LEAF_SIZE points, and there are fewer inner nodes than leaves
+        int maxNodes = 2 * (nPts / (LEAF_SIZE / 2) + 1);
+        this.nodeStart = new int[maxNodes];
+        this.nodeEnd = new int[maxNodes];
+        this.nodeRight = new int[maxNodes];
+        this.nodeMinX = new double[maxNodes];
+        this.nodeMinY = new double[maxNodes];
+        this.nodeMaxX = new double[maxNodes];
+        this.nodeMaxY = new double[maxNodes];
+        this.nodeMinCore = new double[maxNodes];
+        this.nodeComponent = new int[maxNodes];
+        build(0, nPts);
+    }
+
+    /**
+     * Find the distance from each point to its k-th closest point, counting the point itself,
+     * and use those as the core distances.
+     * @param k The number of closest points.
+     * @param pool The pool to query with, or null to query on this thread.
+     * @return The core distance of each point.
+     */
+    double[] findCoreDistances(int k, ForkJoinPool pool){
+        final double[] core = new double[pts.length];
+        ParallelRanges.mapRanges(pool, pts.length, 1 << 12, (from, to) -> {
+            double[] heap = new double[k];
+            int[] stack = new int[64];
+            for (int i = from; i < to; i++) {
+                core[i] = Math.sqrt(kthClosestDistSq(pts[i][0], pts[i][1], k, heap, stack));
+            }
+            return null;
+        });
+        setCoreDistances(core);
+        return core;
+    }
+
+    /**
+     * @param coreDistances The core distance of each point.
+     */
+    void setCoreDistances(double[] coreDistances){
+        if(coreDistances.length != pts.length){
+            throw new IllegalArgumentException("There must be one core distance per point.");
+        }
+        this.coreDistances = coreDistances;
+        //children come after their parent in pre-order, so go backwards
+        for (int node = nNodes - 1; node >= 0; node--) {
+            if(nodeRight[node] == NONE){
+                double minCore = Double.POSITIVE_INFINITY;
+                for (int k = nodeStart[node]; k < nodeEnd[node]; k++) {
+                    minCore = Math.min(minCore, coreDistances[order[k]]);
+                }
+                nodeMinCore[node] = minCore;
+            }else{
+                nodeMinCore[node] = Math.min(nodeMinCore[node + 1], nodeMinCore[nodeRight[node]]);
+            }
+        }
+    }
+
+    /**
+     * @return The squared distance from a location to the k-th closest point, using a max-heap of the k closest so far.
+     */
+    private double kthClosestDistSq(double x, double y, int k, double[] heap, int[] stack){
+        k = Math.min(k, pts.length);
+        int heapSize = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0){
+            int node = stack[--top];
+            if(heapSize == k && boxDistSq(node, x, y) > heap[0]){
+                continue;
+            }
+            if(nodeRight[node] == NONE){
+                for (int j = nodeStart[node]; j < nodeEnd[node]; j++) {
+                    double[] other = pts[order[j]];
+                    double dx = other[0] - x;
+                    double dy = other[1] - y;
+                    double d = dx * dx + dy * dy;
+                    if(heapSize < k){
+                        heap[heapSize] = d;
+                        siftUp(heap, heapSize++);
+                    }else if(d < heap[0]){
+                        heap[0] = d;
+                        siftDown(heap, heapSize);
+                    }
+                }
+                continue;
+            }
+            if(stack.length < top + 2){
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            pushChildren(node, x, y, stack, top);
+            top += 2;
+        }
+        return heap[0];
+    }
+
+    private static void siftUp(double[] heap, int pos){
+        double value = heap[pos];
+        while(pos > 0){
+            int parent = (pos - 1) >>> 1;
+            if(heap[parent] >= value){
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = value;
+    }
+
+    private static void siftDown(double[] heap, int size){
+        double value = heap[0];
+        int pos = 0;
+        while(true){
+            int child = 2 * pos + 1;
+            if(child >= size){
+                break;
+            }
+            if(child + 1 < size && heap[child + 1] > heap[child]){
+                child++;
+            }
+            if(heap[child] <= value){
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = value;
+    }
+
+    /**
+     * Find the minimum spanning tree, the core distances must have been found or set first.
+     * @param pool The pool to search for the closest components with, or null to search on this thread.
+     * @return The n-1 edges of the tree as {a, b} point index pairs, with their weights in the same order.
+     */
+    Edges run(ForkJoinPool pool){
+        if(coreDistances == null){
+            throw new IllegalStateException("Core distances must be found before the spanning tree.");
+        }
+        final int nPts = pts.length;
+        final Edges edges = new Edges(Math.max(0, nPts - 1));
+        final int[] parent = new int[nPts];
+        for (int i = 0; i < nPts; i++) {
+            parent[i] = i;
+        }
+
+        //the closest point of another component per point, kept between rounds
+        final int[] closest = new int[nPts];
+        final double[] closestDist = new double[nPts];
+        Arrays.fill(closest, NONE);
+        //the closest point of another component, per component (indexed by its root)
+        final int[] bestFrom = new int[nPts];
+        final int[] bestTo = new int[nPts];
+        final double[] bestDist = new double[nPts];
+
+        while(edges.size < nPts - 1){
+            for (int i = 0; i < nPts; i++) {
+                component[i] = find(parent, i);
+            }
+            updateNodeComponents();
+
+            //upper bounds on each component's closest edge, only used to prune the searches
+            final AtomicLongArray bounds = new AtomicLongArray(nPts);
+            for (int i = 0; i < nPts; i++) {
+                bounds.set(i, Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+            }
+
+            ParallelRanges.mapRanges(pool, nPts, 1 << 12, (from, to) -> {
+                int[] stack = new int[64];
+                for (int i = from; i < to; i++) {
+                    findClosest(i, bounds, stack, closest, closestDist);
+                }
+                return null;
+            });
+
+            //pick each component's closest edge, points in index order so ties are always resolved the same way
+            for (int i = 0; i < nPts; i++) {
+                bestFrom[i] = NONE;
+            }
+            for (int i = 0; i < nPts; i++) {
+                if(closest[i] == NONE){
+                    continue;
+                }
+                int c = component[i];
+                if(bestFrom[c] == NONE || isLess(closestDist[i], i, closest[i], bestDist[c], bestFrom[c], bestTo[c])){
+                    bestFrom[c] = i;
+                    bestTo[c] = closest[i];
+                    bestDist[c] = closestDist[i];
+                }
+            }
+
+            int nAdded = 0;
+            for (int c = 0; c < nPts; c++) {
+                if(bestFrom[c] == NONE){
+                    continue;
+                }
+                int a = find(parent, bestFrom[c]);
+                int b = find(parent, bestTo[c]);
+                //two components can pick the same edge
+                if(a == b){
+                    continue;
+                }
+                if(a < b){
+                    parent[b] = a;
+                }else{
+                    parent[a] = b;
+                }
+                edges.add(bestFrom[c], bestTo[c], bestDist[c]);
+                nAdded++;
+            }
+            if(nAdded == 0){
+                throw new IllegalStateException("Could not join the remaining components of the spanning tree.");
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Find the closest point to some point (under mutual reachability) that is in another component.
+     * Components only grow, so the point's result from the last round is re-used while it is still in
+     * another component, and otherwise is a lower bound on this round's result.
+     */
+    private void findClosest(int ptIdx, AtomicLongArray bounds, int[] stack, int[] closest, double[] closestDist){
+        final int c = component[ptIdx];
+        final int previous = closest[ptIdx];
+        if(previous != NONE && component[previous] != c){
+            lowerBound(bounds, c, closestDist[ptIdx]);
+            return;
+        }
+
+        final double core = coreDistances[ptIdx];
+        final double x = pts[ptIdx][0];
+        final double y = pts[ptIdx][1];
+
+        int best = NONE;
+        double bestD = Double.longBitsToDouble(bounds.get(c));
+
+        //every edge from this point is at least its core distance, and at least last round's closest
+        if(Math.max(core, closestDist[ptIdx]) > bestD){
+            closest[ptIdx] = NONE;
+            return;
+        }
+
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0){
+            int node = stack[--top];
+            if(nodeComponent[node] == c){
+                continue;
+            }
+            double lowerBound = Math.max(core, Math.max(nodeMinCore[node], boxDist(node, x, y)));
+            if(lowerBound > bestD){
+                continue;
+            }
+
+            if(nodeRight[node] == NONE){
+                for (int k = nodeStart[node]; k < nodeEnd[node]; k++) {
+                    int other = order[k];
+                    if(component[other] == c){
+                        continue;
+                    }
+                    double dx = pts[other][0] - x;
+                    double dy = pts[other][1] - y;
+                    double d = Math.max(Math.max(core, coreDistances[other]), Math.sqrt(dx * dx + dy * dy));
+                    if(d < bestD || (d == bestD && (best == NONE || isLess(d, ptIdx, other, bestD, ptIdx, best)))){
+                        best = other;
+                        bestD = d;
+                    }
+                }
+                continue;
+            }
+
+            if(stack.length < top + 2){
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            pushChildren(node, x, y, stack, top);
+            top += 2;
+        }
+
+        closest[ptIdx] = best;
+        closestDist[ptIdx] = bestD;
+        if(best != NONE){
+            lowerBound(bounds, c, bestD);
+        }
+    }
+
+    //atomically lower a component's bound, distances are not negative so their bits order the same way they do
+    private static void lowerBound(AtomicLongArray bounds, int c, double d){
+        long bits = Double.doubleToLongBits(d);
+        while(true){
+            long current = bounds.get(c);
+            if(current <= bits || bounds.compareAndSet(c, current, bits)){
+                return;
+            }
+        }
+    }
+
+    //edge order: by weight, then by smaller endpoint, then by larger endpoint
+    private static boolean isLess(double d1, int a1, int b1, double d2, int a2, int b2){
+        if(d1 != d2){
+            return d1 < d2;
+        }
+        int lo1 = Math.min(a1, b1);
+        int lo2 = Math.min(a2, b2);
+        if(lo1 != lo2){
+            return lo1 < lo2;
+        }
+        return Math.max(a1, b1) < Math.max(a2, b2);
+    }
+
+    //push both children of a node, the nearer one last so it is popped first
+    private void pushChildren(int node, double x, double y, int[] stack, int top){
+        int left = node + 1;
+        int right = nodeRight[node];
+        if(boxDistSq(left, x, y) <= boxDistSq(right, x, y)){
+            stack[top] = right;
+            stack[top + 1] = left;
+        }else{
+            stack[top] = left;
+            stack[top + 1] = right;
+        }
+    }
+
+    private double boxDist(int node, double x, double y){
+        return Math.sqrt(boxDistSq(node, x, y));
+    }
+
+    private double boxDistSq(int node, double x, double y){
+        double dx = Math.max(0, Math.max(nodeMinX[node] - x, x - nodeMaxX[node]));
+        double dy = Math.max(0, Math.max(nodeMinY[node] - y, y - nodeMaxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    private void updateNodeComponents(){
+        //children come after their parent in pre-order, so go backwards
+        for (int node = nNodes - 1; node >= 0; node--) {
+            if(nodeRight[node] == NONE){
+                int c = component[order[nodeStart[node]]];
+                for (int k = nodeStart[node] + 1; k < nodeEnd[node] && c != MIXED; k++) {
+                    if(component[order[k]] != c){
+                        c = MIXED;
+                    }
+                }
+                nodeComponent[node] = c;
+            }else{
+                int left = nodeComponent[node + 1];
+                nodeComponent[node] = left == nodeComponent[nodeRight[node]] ? left : MIXED;
+            }
+        }
+    }
+
+    private static int find(int[] parent, int x){
+        while(parent[x] != x){
+            //path halving
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    ////////////////////////////////
+    //Kd-tree construction
+    ///////////////////////////////
+
+    private int build(int start, int end){
+        int node = nNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int k = start; k < end; k++) {
+            double[] pt = pts[order[k]];
+            minX = Math.min(minX, pt[0]);
+            minY = Math.min(minY, pt[1]);
+            maxX = Math.max(maxX, pt[0]);
+            maxY = Math.max(maxY, pt[1]);
+        }
+        nodeMinX[node] = minX;
+        nodeMinY[node] = minY;
+        nodeMaxX[node] = maxX;
+        nodeMaxY[node] = maxY;
+
+        if(end - start <= LEAF_SIZE){
+            nodeRight[node] = NONE;
+            return node;
+        }
+
+        //split at the median of the wider axis
+        int axis = (maxX - minX) >= (maxY - minY) ? 0 : 1;
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, axis);
+        build(start, mid);
+        nodeRight[node] = build(mid, end);
+        return node;
+    }
+
+    //quickselect the order array so position k holds the k-th smallest coordinate on the axis
+    private void select(int lo, int hi, int k, int axis){
+        while(hi > lo){
+            double pivot = pts[order[(lo + hi) >>> 1]][axis];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(pts[order[i]][axis] < pivot){
+                    i++;
+                }
+                while(pts[order[j]][axis] > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }else if(k >= i){
+                lo = i;
+            }else{
+                return;
+            }
+        }
+    }
+
+    /**
+     * The edges of the spanning tree.
+     */
+    static class Edges {
+        final int[] from;
+        final int[] to;
+        final double[] weights;
+        int size = 0;
+
+        Edges(int capacity){
+            this.from = new int[capacity];
+            this.to = new int[capacity];
+            this.weights = new double[capacity];
+        }
+
+        private void add(int a, int b, double weight){
+            from[size] = a;
+            to[size] = b;
+            weights[size] = weight;
+            size++;
+        }
+
+        /**
+         * Sort the edges into increasing order of weight.
+         */
+        void sortByWeight(){
+            sort(0, size - 1);
+        }
+
+        //quicksort, recursing into the smaller side so the stack stays shallow
+        private void sort(int lo, int hi){
+            while(hi - lo > 16){
+                double pivot = weights[(lo + hi) >>> 1];
+                int i = lo;
+                int j = hi;
+                while(i <= j){
+                    while(weights[i] < pivot){
+                        i++;
+                    }
+                    while(weights[j] > pivot){
+                        j--;
+                    }
+                    if(i <= j){
+                        swap(i++, j--);
+                    }
+                }
+                if(j - lo < hi - i){
+                    sort(lo, j);
+                    lo = i;
+                }else{
+                    sort(i, hi);
+                    hi = j;
+                }
+            }
+            //insertion sort the small ranges
+            for (int i = lo + 1; i <= hi; i++) {
+                for (int j = i; j > lo && weights[j - 1] > weights[j]; j--) {
+                    swap(j - 1, j);
+                }
+            }
+        }
+
+        private void swap(int i, int j){
+            int a = from[i];
+            from[i] = from[j];
+            from[j] = a;
+            int b = to[i];
+            to[i] = to[j];
+            to[j] = b;
+            double w = weights[i];
+            weights[i] = weights[j];
+            weights[j] = w;
+        }
+    }
+
+}
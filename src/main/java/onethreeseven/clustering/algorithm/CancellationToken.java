@@ -0,0 +1,91 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops a clustering run early, either when cancelled from another thread or once a wall-clock budget is spent.
+ * Pass it to {@link DBScan} and {@link KMeans} in {@link DBScanOptions} or {@link KMeansOptions}.
+ * The algorithms check it between units of work, such as each point a DBSCAN cluster grows through or each
+ * k-means iteration, and when it says stop they return the clusters found so far instead of throwing:
+ * DBSCAN points not yet reached are noise and k-means clusters are those of the last finished iteration.
+ * Use one token per run.
+ * @author Luke Bermingham
+ */
+public class CancellationToken {
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private volatile boolean cancelled = false;
+    //set once an algorithm has actually stopped early because of this token
+    private volatile boolean stopped = false;
+
+    /**
+     * A token with no time budget, that only stops the run when cancelled.
+     */
+    public CancellationToken(){
+        this.hasDeadline = false;
+        this.deadlineNanos = 0;
+    }
+
+    /**
+     * A token that stops the run once the time budget has passed, counted from now, or when cancelled.
+     * @param timeBudget How long the run may take.
+     * @param unit The unit of the time budget.
+     */
+    public CancellationToken(long timeBudget, TimeUnit unit){
+        if(timeBudget < 0){
+            throw new IllegalArgumentException("Time budget must not be negative.");
+        }
+        this.hasDeadline = true;
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(timeBudget);
+    }
+
+    /**
+     * Ask the run to stop, it returns the clusters found so far.
+     */
+    public void cancel(){
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * @return True if the token has a time budget and it has been spent.
+     */
+    public boolean isTimedOut(){
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @return True if a run stopped early because of this token, so its clusters are only those found so far.
+     */
+    public boolean wasStopped(){
+        return stopped;
+    }
+
+    /**
+     * Called by the algorithms between units of work.
+     * @return True if the run should stop now.
+     */
+    boolean shouldStop(){
+        if(stopped){
+            return true;
+        }
+        if(cancelled || isTimedOut()){
+            this.stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param token A token, or null.
+     * @return True if there is a token and it says to stop.
+     */
+    static boolean shouldStop(CancellationToken token){
+        return token != null && token.shouldStop();
+    }
+
+}
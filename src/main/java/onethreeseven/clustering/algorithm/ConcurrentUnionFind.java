@@ -0,0 +1,65 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free disjoint-set (union-find) over the integers 0...n-1.
+ * Roots are always linked beneath the smaller root, so the representative of
+ * every set is its smallest member, regardless of the order unions happen in.
+ * @author Luke Bermingham
+ */
+class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent;
+
+    ConcurrentUnionFind(int n){
+        this.parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    /**
+     * @param x Some member.
+     * @return The smallest member of the set containing x.
+     */
+    int find(int x){
+        while(true){
+            int p = parent.get(x);
+            if(p == x){
+                return x;
+            }
+            //path halving, losing this race is harmless
+            int gp = parent.get(p);
+            if(p != gp){
+                parent.compareAndSet(x, p, gp);
+            }
+            x = gp;
+        }
+    }
+
+    /**
+     * Merge the sets containing a and b.
+     * @param a Some member.
+     * @param b Some other member.
+     */
+    void union(int a, int b){
+        while(true){
+            a = find(a);
+            b = find(b);
+            if(a == b){
+                return;
+            }
+            //hang the larger root under the smaller one
+            if(a < b){
+                int tmp = a;
+                a = b;
+                b = tmp;
+            }
+            if(parent.compareAndSet(a, a, b)){
+                return;
+            }
+        }
+    }
+
+}
@@ -1,31 +1,49 @@
 package onethreeseven.clustering.algorithm;
 
-import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.index.kdtree.KdNode;
-import com.vividsolutions.jts.index.kdtree.KdTree;
 import onethreeseven.clustering.model.DBScanCluster;
-import onethreeseven.common.util.Maths;
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.DBScanSweepResult;
+import onethreeseven.clustering.model.PointSource2d;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 /**
- * Classic DBSCAN for 2d points. Using Kd-tree as a spatial index.
+ * Classic DBSCAN for 2d points. Using a kd-tree or a grid as a spatial index.
  * @author Nicholas Pace
  * @author Luke Bermingham
  */
 public class DBScan {
-    private static final byte UNLABELED = (byte) 0;
-    private static final byte NOISE = (byte) 1;
-    private static final byte CLUSTER = (byte) 2;
+    private static final int UNLABELED = -2;
+    private static final int NOISE = DBScanResult.NOISE;
+
+    //memoised core state of each point, zero until its neighbourhood is queried
+    private static final byte CORE = (byte) 1;
+    private static final byte NOT_CORE = (byte) 2;
+    //how often a growing cluster checks if it should stop, every 256 points
+    private static final int STOP_CHECK_MASK = 255;
 
     private final double epsilon;
     private final int minPts;
-    private final KdTree ptsDatabase;
-    private final byte[] labels;
+    private final NeighbourIndex2d ptsDatabase;
+    //cluster id of each point, or UNLABELED/NOISE
+    private final int[] labels;
+    private int nClusters = 0;
+    //the points, the array is null when clustering a point source
     private final double[][] pts;
+    private final PointSource2d source;
+    private final int nPts;
     private final Consumer<Double> progressListener;
+    //stops the run early, or null
+    private final CancellationToken cancellationToken;
+    //re-used buffers so that neighbour queries do not allocate
+    private final IntList neighbourBuffer = new IntList();
+    private final IntList frontier = new IntList();
+    //when memoising, the core state of each point and a bitset of the points ever put in a frontier, otherwise null
+    private final byte[] coreStates;
+    private final long[] enqueued;
+    private long nRangeQueries = 0;
 
     //////////////////////
     //static methods
@@ -40,7 +58,7 @@ public class DBScan {
      * @return The clusters found.
      */
     public static Collection<DBScanCluster> run2d(double[][] points2d, double epsilon, int minPts) {
-        DBScan impl = new DBScan(points2d, epsilon, minPts, null);
+        DBScan impl = new DBScan(points2d, epsilon, minPts, SpatialIndexType.BALANCED_KD_TREE, null);
         return impl.run();
     }
 
@@ -53,175 +71,445 @@ public class DBScan {
      * @return The clusters found.
      */
     public static Collection<DBScanCluster> run2d(double[][] points2d, double epsilon, int minPts, Consumer<Double> progressListener) {
-        DBScan impl = new DBScan(points2d, epsilon, minPts, progressListener);
+        DBScan impl = new DBScan(points2d, epsilon, minPts, SpatialIndexType.BALANCED_KD_TREE, progressListener);
+        return impl.run();
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param indexType The spatial index used to find the neighbours of each point.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static Collection<DBScanCluster> run2d(double[][] points2d, double epsilon, int minPts,
+                                                  SpatialIndexType indexType, Consumer<Double> progressListener) {
+        DBScan impl = new DBScan(points2d, epsilon, minPts, indexType, progressListener);
         return impl.run();
     }
 
+    /**
+     * Find density-based clusters using a multi-threaded DBSCAN.
+     * The clusters found are the same as the single-threaded DBSCAN with the {@link SpatialIndexType#GRID} or
+     * {@link SpatialIndexType#BALANCED_KD_TREE} index, such as {@link #run2d(double[][], double, int)}.
+     * When points repeat they can differ from {@link SpatialIndexType#KD_TREE}, which merges repeated coordinates.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param parallelism The number of threads to use.
+     * @return The clusters found.
+     */
+    public static Collection<DBScanCluster> run2dParallel(double[][] points2d, double epsilon, int minPts, int parallelism) {
+        return run2dParallel(points2d, epsilon, minPts, parallelism, null);
+    }
+
+    /**
+     * Find density-based clusters using a multi-threaded DBSCAN.
+     * The clusters found are the same as the single-threaded DBSCAN with the {@link SpatialIndexType#GRID} or
+     * {@link SpatialIndexType#BALANCED_KD_TREE} index, such as {@link #run2d(double[][], double, int)}.
+     * When points repeat they can differ from {@link SpatialIndexType#KD_TREE}, which merges repeated coordinates.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param parallelism The number of threads to use.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static Collection<DBScanCluster> run2dParallel(double[][] points2d, double epsilon, int minPts,
+                                                          int parallelism, Consumer<Double> progressListener) {
+        return run2dParallelCompact(points2d, epsilon, minPts, parallelism, progressListener).getClusters();
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN, returning the compact result:
+     * the cluster id of each point rather than a copy of each cluster's points.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @return The clusters found.
+     */
+    public static DBScanResult run2dCompact(double[][] points2d, double epsilon, int minPts) {
+        return run2dCompact(points2d, epsilon, minPts, SpatialIndexType.BALANCED_KD_TREE, null);
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN, returning the compact result:
+     * the cluster id of each point rather than a copy of each cluster's points.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param indexType The spatial index used to find the neighbours of each point.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static DBScanResult run2dCompact(double[][] points2d, double epsilon, int minPts,
+                                            SpatialIndexType indexType, Consumer<Double> progressListener) {
+        return run2dCompact(points2d, epsilon, minPts, new DBScanOptions().setIndexType(indexType), progressListener);
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN, returning the compact result:
+     * the cluster id of each point rather than a copy of each cluster's points.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param options Options for how to find the clusters.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static DBScanResult run2dCompact(double[][] points2d, double epsilon, int minPts,
+                                            DBScanOptions options, Consumer<Double> progressListener) {
+        if(options.getParallelism() > 1){
+            ParallelDBScan impl = new ParallelDBScan(points2d, epsilon, minPts, options.getIndexType(),
+                    options.getCancellationToken(), progressListener);
+            return impl.run(options.getParallelism());
+        }
+        DBScan impl = new DBScan(points2d, epsilon, minPts, options, progressListener);
+        return impl.runCompact();
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN over points that are not stored as arrays, such as a
+     * {@link onethreeseven.clustering.model.PointBuffer2d} of packed points (16 bytes a point) or a
+     * memory-mapped file of points bigger than the heap. Runs on one thread with a grid index that reads
+     * the coordinates from the source, so the heap only holds a few ints and bytes per point.
+     * The clusters found are the same as for the same points in an array with the grid index.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found, the cluster views make each point's array as it is read.
+     */
+    public static DBScanResult run2dCompact(PointSource2d points2d, double epsilon, int minPts,
+                                            Consumer<Double> progressListener) {
+        return run2dCompact(points2d, epsilon, minPts,
+                new DBScanOptions().setIndexType(SpatialIndexType.GRID), progressListener);
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN over points that are not stored as arrays,
+     * see {@link #run2dCompact(PointSource2d, double, int, Consumer)}.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param options Options for how to find the clusters, more than one thread uses the parallel DBSCAN.
+     *                Only {@link SpatialIndexType#GRID} reads the coordinates from the source,
+     *                the kd-trees copy them onto the heap.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found, the cluster views make each point's array as it is read.
+     */
+    public static DBScanResult run2dCompact(PointSource2d points2d, double epsilon, int minPts,
+                                            DBScanOptions options, Consumer<Double> progressListener) {
+        if(options.getParallelism() > 1){
+            ParallelDBScan impl = new ParallelDBScan(points2d, epsilon, minPts, options.getIndexType(),
+                    options.getCancellationToken(), progressListener);
+            return impl.run(options.getParallelism());
+        }
+        DBScan impl = new DBScan(points2d, epsilon, minPts, options, progressListener);
+        return impl.runCompact();
+    }
+
+    /**
+     * Find density-based clusters using DBSCAN.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param options Options for how to find the clusters.
+     * @return The clusters found.
+     */
+    public static Collection<DBScanCluster> run2d(double[][] points2d, double epsilon, int minPts, DBScanOptions options) {
+        return run2dCompact(points2d, epsilon, minPts, options, null).getClusters();
+    }
+
+    /**
+     * Find density-based clusters using a multi-threaded DBSCAN, returning the compact result.
+     * The clusters found are the same as {@link #run2dCompact(double[][], double, int)}, which uses an index that
+     * keeps repeated coordinates, but can differ from {@link SpatialIndexType#KD_TREE} when points repeat.
+     * @param points2d The 2d points to cluster
+     * @param epsilon How close points have to be to each other to be considered clusters.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param parallelism The number of threads to use.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static DBScanResult run2dParallelCompact(double[][] points2d, double epsilon, int minPts,
+                                                    int parallelism, Consumer<Double> progressListener) {
+        DBScanOptions options = new DBScanOptions().setIndexType(SpatialIndexType.GRID).setParallelism(parallelism);
+        ParallelDBScan impl = new ParallelDBScan(points2d, epsilon, minPts, options.getIndexType(),
+                options.getCancellationToken(), progressListener);
+        return impl.run(options.getParallelism());
+    }
+
+    /**
+     * Run DBSCAN with every combination of some epsilon and minPts values, using all available processors
+     * and the grid spatial index. Use this to pick parameters, it is much faster than clustering each setting in turn.
+     * @param points2d The 2d points to cluster
+     * @param epsilons The epsilon values to try.
+     * @param minPts The minPts values to try.
+     * @return The number of clusters and noise points found by each setting.
+     */
+    public static DBScanSweepResult sweep(double[][] points2d, double[] epsilons, int[] minPts) {
+        DBScanOptions options = new DBScanOptions()
+                .setIndexType(SpatialIndexType.GRID)
+                .setParallelism(Runtime.getRuntime().availableProcessors());
+        return sweep(points2d, epsilons, minPts, options);
+    }
+
+    /**
+     * Run DBSCAN with every combination of some epsilon and minPts values.
+     * The spatial index is built and queried once with the largest epsilon and those neighbours are re-used
+     * by every setting, so memory grows with the number of neighbours each point has at the largest epsilon.
+     * @param points2d The 2d points to cluster
+     * @param epsilons The epsilon values to try.
+     * @param minPts The minPts values to try.
+     * @param options The spatial index to use and how many settings to cluster at once.
+     * @return The number of clusters and noise points found by each setting, the same as running DBSCAN with that setting.
+     */
+    public static DBScanSweepResult sweep(double[][] points2d, double[] epsilons, int[] minPts, DBScanOptions options) {
+        if(epsilons == null || epsilons.length == 0 || minPts == null || minPts.length == 0){
+            throw new IllegalArgumentException("There must be at least one epsilon and one minPts to sweep.");
+        }
+        double maxEpsilon = 0;
+        for (double epsilon : epsilons) {
+            checkArguments(points2d, epsilon, 0);
+            maxEpsilon = Math.max(maxEpsilon, epsilon);
+        }
+        for (int m : minPts) {
+            checkArguments(points2d, maxEpsilon, m);
+        }
+
+        ForkJoinPool pool = options.getParallelism() > 1 ? new ForkJoinPool(options.getParallelism()) : null;
+        try{
+            DBScanSweep impl = new DBScanSweep(points2d, maxEpsilon, options.getIndexType(), pool);
+            return impl.run(epsilons, minPts, pool);
+        }finally {
+            if(pool != null){
+                pool.shutdown();
+            }
+        }
+    }
+
     //////////////////////////////////
     //Actual DBSCAN implementation
     /////////////////////////////////
 
 
-    protected DBScan(double[][] pts, double epsilon, int minPts, Consumer<Double> progressListener){
+    protected DBScan(double[][] pts, double epsilon, int minPts, SpatialIndexType indexType, Consumer<Double> progressListener){
+        this(pts, epsilon, minPts, new DBScanOptions().setIndexType(indexType), progressListener);
+    }
+
+    protected DBScan(double[][] pts, double epsilon, int minPts, DBScanOptions options, Consumer<Double> progressListener){
+        this(pts, checkedSource(pts, epsilon, minPts), epsilon, minPts, options, progressListener);
+    }
+
+    protected DBScan(PointSource2d pts, double epsilon, int minPts, DBScanOptions options, Consumer<Double> progressListener){
+        this(null, checkedSource(pts, epsilon, minPts), epsilon, minPts, options, progressListener);
+    }
+
+    private DBScan(double[][] pts, PointSource2d source, double epsilon, int minPts, DBScanOptions options,
+                   Consumer<Double> progressListener){
 
         this.progressListener = progressListener;
+        this.cancellationToken = options.getCancellationToken();
 
-        if(epsilon < 0.0) {
-            throw new IllegalArgumentException("Epsilon must not be less than 0");
-        }
+        this.pts = pts;
+        this.source = source;
+        this.nPts = source.size();
+        this.minPts = minPts;
+        this.epsilon = epsilon;
 
-        if(minPts < 0){
-            throw new IllegalArgumentException("MinPts must not be less than 0");
+        // Keep track of the state of each point, that is, is the points labelled as: cluster id|UNLABELED|NOISE
+        this.labels = new int[nPts];
+        Arrays.fill(labels, UNLABELED);
+
+        // Remember which points are core points, and which have been queued to join a cluster
+        this.coreStates = options.isMemoiseNeighbourhoods() ? new byte[nPts] : null;
+        this.enqueued = options.isMemoiseNeighbourhoods() ? new long[(nPts + 63) >>> 6] : null;
+
+        // Spatial index for doing the neighbour queries, only the kd-trees copy a point source into the index
+        this.ptsDatabase = pts != null ? options.getIndexType().build(pts, epsilon) :
+                options.getIndexType().build(source, epsilon);
+    }
+
+    private static PointSource2d checkedSource(double[][] pts, double epsilon, int minPts){
+        checkArguments(pts, epsilon, minPts);
+        return PointSource2d.of(pts);
+    }
+
+    private static PointSource2d checkedSource(PointSource2d pts, double epsilon, int minPts){
+        checkArguments(pts, epsilon, minPts);
+        return pts;
+    }
+
+    static void checkArguments(PointSource2d pts, double epsilon, int minPts){
+        checkParameters(epsilon, minPts);
+
+        if(pts == null || pts.size() < 1){
+            throw new IllegalArgumentException("Points must be non-empty.");
         }
+    }
+
+    static void checkArguments(double[][] pts, double epsilon, int minPts){
+        checkParameters(epsilon, minPts);
 
         if(pts == null || pts.length < 1){
             throw new IllegalArgumentException("Points must be non-empty.");
         }
+    }
 
-        this.pts = pts;
-        this.minPts = minPts;
-        this.epsilon = epsilon;
-
-        // Keep track of the state of each point, that is, is the points labelled as: CLUSTER|UNLABELED|NOISE
-        this.labels = new byte[pts.length];
+    private static void checkParameters(double epsilon, int minPts){
+        if(epsilon < 0.0) {
+            throw new IllegalArgumentException("Epsilon must not be less than 0");
+        }
 
-        // Use kd-tree as out spatial index for doing the neighbour queries
-        this.ptsDatabase = new KdTree();
-        for (int i = 0; i < pts.length; i++) {
-            double[] pt = pts[i];
-            this.ptsDatabase.insert(new Coordinate(pt[0], pt[1]), i);
+        if(minPts < 0){
+            throw new IllegalArgumentException("MinPts must not be less than 0");
         }
     }
 
     protected Collection<DBScanCluster> run(){
+        return runCompact().getClusters();
+    }
 
-        LinkedList<DBScanCluster> clusters = new LinkedList<>();
+    protected DBScanResult runCompact(){
 
-        for (int i = 0; i < pts.length; i++) {
+        for (int i = 0; i < nPts; i++) {
             if(labels[i] != UNLABELED){
                 continue;
             }
 
-            double[] pt = pts[i];
-            traversePoint(pt, i, clusters);
+            if(CancellationToken.shouldStop(cancellationToken)){
+                break;
+            }
+
+            traversePoint(i);
 
             if(progressListener != null){
-                double progress = (double)i / pts.length;
+                double progress = (double)i / nPts;
                 progressListener.accept(progress);
             }
 
         }
 
-        // Create cluster containing all the left over noise points
-        DBScanCluster noise = new DBScanCluster(true);
-        for (int i = 0; i < pts.length; i++) {
-            if(labels[i] == NOISE){
-                noise.add(pts[i]);
-            }
-        }
-
-        //done clustering now
-        //exclude any clusters with one points only and them to the noise cluster
-        Iterator<DBScanCluster> iter = clusters.iterator();
-        while(iter.hasNext()){
-            DBScanCluster cluster = iter.next();
-            if(cluster.getPoints2d().size() <= 1){
-                iter.remove();
-                noise.getPoints2d().addAll(cluster.getPoints2d());
+        //stopped early, the points not reached yet (or waiting to join the last cluster) are noise for now
+        if(cancellationToken != null && cancellationToken.wasStopped()){
+            for (int i = 0; i < nPts; i++) {
+                if(labels[i] == UNLABELED){
+                    labels[i] = NOISE;
+                }
             }
         }
 
-        //add the noise cluster after removing the single point clusters
-        clusters.add(noise);
-
-        return clusters;
+        //clusters with one point only become noise in the result
+        return pts != null ?
+                new DBScanResult(pts, labels, nClusters, nRangeQueries) :
+                new DBScanResult(source, labels, nClusters, nRangeQueries);
 
     }
 
     // Start of traversal, mark as noise if below number of minimum neighbours threshold, traverse neighbours otherwise
-    protected void traversePoint(double[] pt, int index, List<DBScanCluster> clusters) {
-        Queue<KdNode> neighbours = getNeighbours(pt);
-        if(neighbours.size() < minPts){
+    protected void traversePoint(int index) {
+        int nNeighbours = getNeighbours(index, neighbourBuffer);
+        if(nNeighbours < minPts){
             labels[index] = NOISE;
             return;
         }
 
-        labels[index] = CLUSTER;
-
-        DBScanCluster cluster = new DBScanCluster();
-        clusters.add(cluster);
-        cluster.add(pt);
-        growCluster(cluster, neighbours);
+        int clusterId = nClusters++;
+        labels[index] = clusterId;
+        markEnqueued(index);
+        frontier.clear();
+        enqueueUnclaimed(nNeighbours, frontier);
+        growCluster(clusterId, frontier);
     }
 
-    protected Queue<KdNode> getNeighbours(double[] pt){
-        double epsilonSq = epsilon * epsilon;
-
-        double x1 = pt[0] - epsilon;
-        double x2 = pt[0] + epsilon;
-        double y1 = pt[1] - epsilon;
-        double y2 = pt[1] + epsilon;
-
-        List nodesInBounds = ptsDatabase.query(new Envelope(x1, x2, y1, y2));
-        Queue<KdNode> neighbours = new ArrayDeque<>();
-
-        for (Object nodeObj : nodesInBounds){
-            if(nodeObj instanceof KdNode){
-                KdNode node = (KdNode) nodeObj;
-                double[] nodePt = {node.getX(), node.getY()};
-                double distToNode = Maths.distSq(nodePt, pt);
-                if(distToNode <= epsilonSq) {
-                    neighbours.add(node);
-                }
-            }
+    /**
+     * Find the points within epsilon of some point.
+     * @param index The index of the point to find neighbours for.
+     * @param out Cleared and then filled with the indices of the neighbours (including the point itself).
+     * @return The number of neighbours.
+     */
+    protected int getNeighbours(int index, IntList out){
+        nRangeQueries++;
+        int nNeighbours = ptsDatabase.rangeQuery(source.getX(index), source.getY(index), epsilon, out);
+        if(coreStates != null){
+            coreStates[index] = nNeighbours >= minPts ? CORE : NOT_CORE;
         }
-
-        return neighbours;
+        return nNeighbours;
     }
 
-    protected void addDensityConnectedPts(double[] neighbourPt, Queue<KdNode> neighbours){
-        Queue<KdNode> moreNeighbours = getNeighbours(neighbourPt);
+    protected void addDensityConnectedPts(int neighbourIdx, IntList neighbours){
+        //already know this is a border point, no need to look at its neighbours again
+        if(coreStates != null && coreStates[neighbourIdx] == NOT_CORE){
+            return;
+        }
+
+        int nMoreNeighbours = getNeighbours(neighbourIdx, neighbourBuffer);
         //the density connected condition
-        if(moreNeighbours.size() < minPts){
+        if(nMoreNeighbours < minPts){
             return;
         }
 
-        //go through neighbours and make sure they aren't already assigned to a cluster
-        Iterator<KdNode> iter = moreNeighbours.iterator();
-        while(iter.hasNext()){
-            KdNode node = iter.next();
-            Object data = node.getData();
-            if(data instanceof Integer){
-                Integer idx = (Integer) data;
-                if(labels[idx] == CLUSTER){
-                    iter.remove();
-                }
+        //add more neighbours to current, as long as they aren't already assigned to a cluster
+        enqueueUnclaimed(nMoreNeighbours, neighbours);
+    }
+
+    /**
+     * Add the points in the neighbour buffer that no cluster has claimed to a queue.
+     * When memoising, points that have been queued before are skipped too.
+     * @param nNeighbours The number of points in the neighbour buffer.
+     * @param queue The queue.
+     */
+    private void enqueueUnclaimed(int nNeighbours, IntList queue){
+        for (int i = 0; i < nNeighbours; i++) {
+            int idx = neighbourBuffer.get(i);
+            if(labels[idx] < 0 && markEnqueued(idx)){
+                queue.add(idx);
             }
         }
+    }
 
-        //add more neighbours to current
-        neighbours.addAll(moreNeighbours);
+    /**
+     * @param index A point.
+     * @return False if the point was already queued to join a cluster, otherwise true (always true when not memoising).
+     */
+    private boolean markEnqueued(int index){
+        if(enqueued == null){
+            return true;
+        }
+        long bit = 1L << index;
+        int word = index >>> 6;
+        if((enqueued[word] & bit) != 0){
+            return false;
+        }
+        enqueued[word] |= bit;
+        return true;
     }
 
-    protected void growCluster(DBScanCluster cluster, Queue<KdNode> neighbours){
+    protected void growCluster(int clusterId, IntList neighbours){
+
+        //the neighbours list is used as a queue, new neighbours are appended as we go
+        for (int head = 0; head < neighbours.size(); head++) {
+            //a big cluster can take most of the run, so check part way through it too
+            if((head & STOP_CHECK_MASK) == STOP_CHECK_MASK && CancellationToken.shouldStop(cancellationToken)){
+                return;
+            }
 
-        while(!neighbours.isEmpty()){
-            //remove the current entry
-            KdNode neighbour = neighbours.poll();
-            int index = (int) neighbour.getData();
+            //get the current entry
+            int index = neighbours.get(head);
 
             //some other cluster has claimed this one
-            if(labels[index] == CLUSTER){
+            if(labels[index] >= 0){
                 continue;
             }
 
             //but if label is NOISE or UNLABELLED, this cluster will take it
-            labels[index] = CLUSTER;
-            double[] pt = {neighbour.getX(), neighbour.getY()};
-            cluster.add(pt);
+            labels[index] = clusterId;
 
             //have a look at neighbours of the current point
-            addDensityConnectedPts(pt, neighbours);
+            addDensityConnectedPts(index, neighbours);
 
         }
 
@@ -0,0 +1,79 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * Options for how {@link DBScan} finds its clusters.
+ * @author Luke Bermingham
+ */
+public class DBScanOptions {
+
+    private SpatialIndexType indexType = SpatialIndexType.BALANCED_KD_TREE;
+    private int parallelism = 1;
+    private boolean memoiseNeighbourhoods = true;
+    private CancellationToken cancellationToken = null;
+
+    public SpatialIndexType getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @param indexType The spatial index used to find the neighbours of each point.
+     * @return These options.
+     */
+    public DBScanOptions setIndexType(SpatialIndexType indexType) {
+        if(indexType == null){
+            throw new IllegalArgumentException("Index type must not be null.");
+        }
+        this.indexType = indexType;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism The number of threads to cluster with, more than one uses the multi-threaded DBSCAN.
+     *                    The clusters found are the same regardless of the number of threads.
+     * @return These options.
+     */
+    public DBScanOptions setParallelism(int parallelism) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public boolean isMemoiseNeighbourhoods() {
+        return memoiseNeighbourhoods;
+    }
+
+    /**
+     * @param memoiseNeighbourhoods Whether to remember which points are core points, so each point's neighbourhood
+     *                              is queried only once, and to skip points already waiting to join a cluster.
+     *                              Only affects the single-threaded DBSCAN, the clusters found are the same either way.
+     * @return These options.
+     */
+    public DBScanOptions setMemoiseNeighbourhoods(boolean memoiseNeighbourhoods) {
+        this.memoiseNeighbourhoods = memoiseNeighbourhoods;
+        return this;
+    }
+
+    /**
+     * @return The token that can stop the run early, or null if it always runs to the end.
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * @param cancellationToken A token to stop the run early, the points not yet reached are noise in the result.
+     *                          Null to always run to the end.
+     * @return These options.
+     */
+    public DBScanOptions setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+}
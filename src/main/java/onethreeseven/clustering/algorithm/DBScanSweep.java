@@ -0,0 +1,240 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanSweepResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs DBSCAN over a grid of epsilon and minPts settings.
+ * The spatial index is built once and queried once per point with the largest epsilon,
+ * the resulting neighbour lists (with squared distances) then answer every smaller epsilon
+ * by filtering, so no setting has to query the index again.
+ * Each setting is clustered the same way as {@link ParallelDBScan}: core points are linked into
+ * components and border points join their smallest neighbouring component, so the cluster and
+ * noise counts equal those of {@link DBScan} with the same spatial index.
+ * Settings are clustered in parallel, one setting per task.
+ * @author Luke Bermingham
+ */
+class DBScanSweep {
+
+    private static final int NOISE = -1;
+    private static final int CHUNK_SIZE = 1 << 13;
+
+    private final double[][] pts;
+    //neighbours of point i (including itself) at the largest epsilon are at neighbourStart[i]...neighbourStart[i+1]-1
+    private final int[] neighbourStart;
+    private final int[] neighbours;
+    private final double[] neighbourDistSq;
+
+    /**
+     * Build the neighbour lists.
+     * @param pts The points.
+     * @param maxEpsilon The largest epsilon that will be swept.
+     * @param indexType The spatial index used to find the neighbours.
+     * @param pool The pool to query the neighbours with, or null to query on this thread.
+     */
+    DBScanSweep(double[][] pts, double maxEpsilon, SpatialIndexType indexType, ForkJoinPool pool){
+        this.pts = pts;
+        final NeighbourIndex2d index = indexType.build(pts, maxEpsilon);
+
+        //query each chunk of points, keeping the neighbours in chunk order
+        List<NeighbourChunk> chunks = ParallelRanges.mapRanges(pool, pts.length, CHUNK_SIZE, (from, to) -> {
+            NeighbourChunk chunk = new NeighbourChunk(to - from);
+            IntList buffer = new IntList();
+            for (int i = from; i < to; i++) {
+                double[] pt = pts[i];
+                int n = index.rangeQuery(pt[0], pt[1], maxEpsilon, buffer);
+                for (int j = 0; j < n; j++) {
+                    double[] other = pts[buffer.get(j)];
+                    double dx = other[0] - pt[0];
+                    double dy = other[1] - pt[1];
+                    chunk.add(buffer.get(j), dx * dx + dy * dy);
+                }
+                chunk.counts[i - from] = n;
+            }
+            return chunk;
+        });
+
+        //concatenate the chunks into one flat adjacency list
+        long nNeighbours = 0;
+        for (NeighbourChunk chunk : chunks) {
+            nNeighbours += chunk.size;
+        }
+        if(nNeighbours > Integer.MAX_VALUE - 8){
+            throw new IllegalArgumentException("The largest epsilon gives too many neighbours to sweep, try a smaller epsilon.");
+        }
+        this.neighbourStart = new int[pts.length + 1];
+        this.neighbours = new int[(int) nNeighbours];
+        this.neighbourDistSq = new double[(int) nNeighbours];
+        int pos = 0;
+        int ptIdx = 0;
+        for (NeighbourChunk chunk : chunks) {
+            System.arraycopy(chunk.neighbours, 0, neighbours, pos, chunk.size);
+            System.arraycopy(chunk.distSq, 0, neighbourDistSq, pos, chunk.size);
+            for (int count : chunk.counts) {
+                neighbourStart[ptIdx + 1] = neighbourStart[ptIdx] + count;
+                ptIdx++;
+            }
+            pos += chunk.size;
+        }
+    }
+
+    /**
+     * Cluster every combination of the settings.
+     * @param epsilons The epsilons, none larger than the one the neighbour lists were built with.
+     * @param minPts The minPts values.
+     * @param pool The pool to cluster the settings on, or null to cluster them on this thread.
+     * @return The number of clusters and noise points of each setting.
+     */
+    DBScanSweepResult run(double[] epsilons, int[] minPts, ForkJoinPool pool){
+        final int[][] nClusters = new int[epsilons.length][minPts.length];
+        final int[][] nNoise = new int[epsilons.length][minPts.length];
+
+        ParallelRanges.mapRanges(pool, epsilons.length * minPts.length, 1, (from, to) -> {
+            SettingScratch scratch = new SettingScratch(pts.length);
+            for (int setting = from; setting < to; setting++) {
+                int e = setting / minPts.length;
+                int m = setting % minPts.length;
+                cluster(epsilons[e] * epsilons[e], minPts[m], scratch);
+                nClusters[e][m] = scratch.nClusters;
+                nNoise[e][m] = scratch.nNoise;
+            }
+            return null;
+        });
+
+        return new DBScanSweepResult(epsilons.clone(), minPts.clone(), pts.length, nClusters, nNoise);
+    }
+
+    /**
+     * Cluster with one setting, leaving the number of clusters and noise points in the scratch.
+     */
+    private void cluster(double epsSq, int minPts, SettingScratch scratch){
+        final int nPts = pts.length;
+        final boolean[] isCore = scratch.isCore;
+        final int[] parent = scratch.parent;
+        final int[] sizes = scratch.sizes;
+
+        //find the core points
+        for (int i = 0; i < nPts; i++) {
+            int count = 0;
+            for (int k = neighbourStart[i]; k < neighbourStart[i + 1]; k++) {
+                if(neighbourDistSq[k] <= epsSq){
+                    count++;
+                }
+            }
+            isCore[i] = count >= minPts;
+            parent[i] = i;
+            sizes[i] = 0;
+        }
+
+        //link core points that are neighbours
+        for (int i = 0; i < nPts; i++) {
+            if(!isCore[i]){
+                continue;
+            }
+            for (int k = neighbourStart[i]; k < neighbourStart[i + 1]; k++) {
+                int j = neighbours[k];
+                if(j > i && isCore[j] && neighbourDistSq[k] <= epsSq){
+                    union(parent, i, j);
+                }
+            }
+        }
+
+        //size each cluster, border points join the neighbouring cluster with the smallest root
+        for (int i = 0; i < nPts; i++) {
+            int label = NOISE;
+            if(isCore[i]){
+                label = find(parent, i);
+            }else{
+                for (int k = neighbourStart[i]; k < neighbourStart[i + 1]; k++) {
+                    int j = neighbours[k];
+                    if(isCore[j] && neighbourDistSq[k] <= epsSq){
+                        int root = find(parent, j);
+                        if(label == NOISE || root < label){
+                            label = root;
+                        }
+                    }
+                }
+            }
+            if(label != NOISE){
+                sizes[label]++;
+            }
+        }
+
+        //clusters with one point only are noise
+        int nClusters = 0;
+        int nClustered = 0;
+        for (int i = 0; i < nPts; i++) {
+            if(sizes[i] > 1){
+                nClusters++;
+                nClustered += sizes[i];
+            }
+        }
+        scratch.nClusters = nClusters;
+        scratch.nNoise = nPts - nClustered;
+    }
+
+    private static int find(int[] parent, int x){
+        while(parent[x] != x){
+            //path halving
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    //hangs the larger root under the smaller one, so the root of each set is its smallest member
+    private static void union(int[] parent, int a, int b){
+        a = find(parent, a);
+        b = find(parent, b);
+        if(a < b){
+            parent[b] = a;
+        }else if(b < a){
+            parent[a] = b;
+        }
+    }
+
+    /**
+     * The neighbours found for one chunk of points.
+     */
+    private static class NeighbourChunk {
+        private final int[] counts;
+        private int[] neighbours = new int[16];
+        private double[] distSq = new double[16];
+        private int size = 0;
+
+        NeighbourChunk(int nPts){
+            this.counts = new int[nPts];
+        }
+
+        void add(int neighbour, double d){
+            if(size == neighbours.length){
+                neighbours = Arrays.copyOf(neighbours, size * 2);
+                distSq = Arrays.copyOf(distSq, size * 2);
+            }
+            neighbours[size] = neighbour;
+            distSq[size] = d;
+            size++;
+        }
+    }
+
+    /**
+     * Per-task working arrays, reused for every setting the task clusters, and the counts of the last setting.
+     */
+    private static class SettingScratch {
+        private final boolean[] isCore;
+        private final int[] parent;
+        private final int[] sizes;
+        private int nClusters;
+        private int nNoise;
+
+        SettingScratch(int nPts){
+            this.isCore = new boolean[nPts];
+            this.parent = new int[nPts];
+            this.sizes = new int[nPts];
+        }
+    }
+
+}
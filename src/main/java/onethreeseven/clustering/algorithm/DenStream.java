@@ -0,0 +1,370 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+
+import java.util.Arrays;
+
+/**
+ * Density-based clustering of an unbounded stream of 2d points in bounded memory
+ * (Cao et al. 2006, "Density-Based Clustering over an Evolving Data Stream with Noise").
+ * Points are summarised online into micro-clusters, each a decaying weight, linear sum and squared sum of the
+ * points it absorbed, so a point's weight halves every 1 / lambda units of time. A point joins the closest
+ * micro-cluster whose radius stays within epsilon, dense (potential) micro-clusters before sparse (outlier) ones,
+ * or starts a new outlier micro-cluster. Outliers that gain enough weight become potential micro-clusters,
+ * and micro-clusters that fade are pruned periodically, or when the memory cap is reached.
+ * Clusters are found on demand by running {@link DBScan} over the centres of the potential micro-clusters.
+ * @author Luke Bermingham
+ */
+public class DenStream {
+
+    private static final byte FREE = 0;
+    private static final byte OUTLIER = 1;
+    private static final byte POTENTIAL = 2;
+
+    private final double epsilon;
+    private final double decayRate;
+    private final double potentialWeight;
+    private final int maxMicroClusters;
+    //how often fading micro-clusters are pruned, the soonest a potential micro-cluster can fade away
+    private final double prunePeriod;
+
+    //micro-cluster centres, numbered the same as the micro-clusters
+    private final DynamicGridIndex2d centres;
+    private final IntList candidates = new IntList();
+
+    //per micro-cluster, as of its last update; sums are taken from its first point so they stay small
+    private double[] originX = new double[16];
+    private double[] originY = new double[16];
+    private double[] weight = new double[16];
+    private double[] sumX = new double[16];
+    private double[] sumY = new double[16];
+    private double[] sumSq = new double[16];
+    private double[] lastUpdate = new double[16];
+    private double[] createdAt = new double[16];
+    private byte[] state = new byte[16];
+    private final IntList freeIds = new IntList();
+    private int nMicroClusters = 0;
+
+    private double currentTime = Double.NEGATIVE_INFINITY;
+    private double lastPrune = Double.NEGATIVE_INFINITY;
+    private long nIngested = 0;
+
+    /**
+     * @param epsilon The largest radius of a micro-cluster.
+     */
+    public DenStream(double epsilon){
+        this(epsilon, new DenStreamOptions());
+    }
+
+    /**
+     * @param epsilon The largest radius of a micro-cluster.
+     * @param options The decay, density thresholds and memory cap.
+     */
+    public DenStream(double epsilon, DenStreamOptions options){
+        if(!(epsilon > 0)){
+            throw new IllegalArgumentException("Epsilon must be greater than 0");
+        }
+        if(options.getBeta() * options.getMu() <= 1){
+            throw new IllegalArgumentException("Beta * mu must be greater than 1.");
+        }
+        this.epsilon = epsilon;
+        this.decayRate = options.getDecayRate();
+        this.potentialWeight = options.getBeta() * options.getMu();
+        this.maxMicroClusters = options.getMaxMicroClusters();
+        this.prunePeriod = Math.ceil(
+                (1.0 / decayRate) * log2(potentialWeight / (potentialWeight - 1)));
+        //cells twice the query radius, so a query looks at four cells instead of nine
+        this.centres = new DynamicGridIndex2d(epsilon * 2);
+    }
+
+    ////////////////////////////////
+    //Online
+    ///////////////////////////////
+
+    /**
+     * @param pt The 2d point.
+     * @param time The time of the point, no earlier than the previous point's.
+     */
+    public void ingest(double[] pt, double time){
+        ingest(pt[0], pt[1], time);
+    }
+
+    /**
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param time The time of the point, no earlier than the previous point's.
+     */
+    public void ingest(double x, double y, double time){
+        if(time < currentTime){
+            throw new IllegalArgumentException("Points must arrive in time order, got " + time +
+                    " after " + currentTime);
+        }
+        if(lastPrune == Double.NEGATIVE_INFINITY){
+            lastPrune = time;
+        }
+        currentTime = time;
+        nIngested++;
+
+        if(time - lastPrune >= prunePeriod){
+            prune();
+        }
+
+        //the closest potential micro-cluster, then the closest outlier, if the point fits
+        int nCandidates = centres.rangeQuery(x, y, epsilon, candidates);
+        int closestPotential = -1;
+        int closestOutlier = -1;
+        double potentialDistSq = Double.POSITIVE_INFINITY;
+        double outlierDistSq = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < nCandidates; i++) {
+            int mc = candidates.get(i);
+            double dx = centres.getX(mc) - x;
+            double dy = centres.getY(mc) - y;
+            double distSq = dx * dx + dy * dy;
+            if(state[mc] == POTENTIAL){
+                if(distSq < potentialDistSq){
+                    potentialDistSq = distSq;
+                    closestPotential = mc;
+                }
+            }else if(distSq < outlierDistSq){
+                outlierDistSq = distSq;
+                closestOutlier = mc;
+            }
+        }
+
+        if(closestPotential != -1 && tryAbsorb(closestPotential, x, y)){
+            return;
+        }
+        if(closestOutlier != -1 && tryAbsorb(closestOutlier, x, y)){
+            if(weight[closestOutlier] > potentialWeight){
+                state[closestOutlier] = POTENTIAL;
+            }
+            return;
+        }
+        newMicroCluster(x, y);
+    }
+
+    /**
+     * Add the point to the micro-cluster, unless that would make its radius more than epsilon.
+     */
+    private boolean tryAbsorb(int mc, double x, double y){
+        double f = decayFactor(mc);
+        double dx = x - originX[mc];
+        double dy = y - originY[mc];
+        double w = weight[mc] * f + 1;
+        double sx = sumX[mc] * f + dx;
+        double sy = sumY[mc] * f + dy;
+        double sq = sumSq[mc] * f + dx * dx + dy * dy;
+        double cx = sx / w;
+        double cy = sy / w;
+        double radiusSq = sq / w - (cx * cx + cy * cy);
+        if(radiusSq > epsilon * epsilon){
+            return false;
+        }
+        weight[mc] = w;
+        sumX[mc] = sx;
+        sumY[mc] = sy;
+        sumSq[mc] = sq;
+        lastUpdate[mc] = currentTime;
+        centres.place(mc, originX[mc] + cx, originY[mc] + cy);
+        return true;
+    }
+
+    private void newMicroCluster(double x, double y){
+        if(nMicroClusters == maxMicroClusters){
+            prune();
+            //if pruning freed too little, make room for an eighth more so a full summary is not scanned every point
+            int lowWater = maxMicroClusters - Math.max(1, maxMicroClusters / 8);
+            if(nMicroClusters > lowWater){
+                evictLightest(nMicroClusters - lowWater);
+            }
+        }
+        int mc;
+        if(freeIds.size() > 0){
+            mc = freeIds.get(freeIds.size() - 1);
+            freeIds.removeLast();
+            centres.place(mc, x, y);
+        }else{
+            mc = centres.add(x, y);
+            ensureCapacity(mc + 1);
+        }
+        originX[mc] = x;
+        originY[mc] = y;
+        weight[mc] = 1;
+        sumX[mc] = 0;
+        sumY[mc] = 0;
+        sumSq[mc] = 0;
+        lastUpdate[mc] = currentTime;
+        createdAt[mc] = currentTime;
+        state[mc] = OUTLIER;
+        nMicroClusters++;
+    }
+
+    /**
+     * Drop potential micro-clusters that faded below the potential weight, and outlier micro-clusters
+     * lighter than an outlier of their age that has been growing could be.
+     */
+    private void prune(){
+        lastPrune = currentTime;
+        double periodDecay = Math.pow(2, -decayRate * prunePeriod);
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] == FREE){
+                continue;
+            }
+            double w = weight[mc] * decayFactor(mc);
+            if(state[mc] == POTENTIAL){
+                if(w < potentialWeight){
+                    removeMicroCluster(mc);
+                }
+            }else{
+                double age = currentTime - createdAt[mc];
+                double lowerLimit = (Math.pow(2, -decayRate * (age + prunePeriod)) - 1) / (periodDecay - 1);
+                if(w < lowerLimit){
+                    removeMicroCluster(mc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make room by dropping exactly the given number of the lightest micro-clusters,
+     * counting off micro-clusters that tie at the heaviest weight dropped so no more than asked go.
+     */
+    private void evictLightest(int nToEvict){
+        double[] weights = new double[nMicroClusters];
+        int i = 0;
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] != FREE){
+                weights[i++] = weight[mc] * decayFactor(mc);
+            }
+        }
+        Arrays.sort(weights);
+        double threshold = weights[nToEvict - 1];
+
+        //everything lighter than the threshold goes, then as many as are still needed of those at it
+        IntList tied = new IntList();
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] == FREE){
+                continue;
+            }
+            double w = weight[mc] * decayFactor(mc);
+            if(w < threshold){
+                removeMicroCluster(mc);
+                nToEvict--;
+            }else if(w == threshold){
+                tied.add(mc);
+            }
+        }
+        for (int j = 0; j < nToEvict; j++) {
+            removeMicroCluster(tied.get(j));
+        }
+    }
+
+    private void removeMicroCluster(int mc){
+        state[mc] = FREE;
+        centres.remove(mc);
+        freeIds.add(mc);
+        nMicroClusters--;
+    }
+
+    ////////////////////////////////
+    //Offline
+    ///////////////////////////////
+
+    /**
+     * Cluster the centres of the potential micro-clusters with {@link DBScan}.
+     * @param offlineEpsilon The DBSCAN epsilon between micro-cluster centres, typically about twice epsilon.
+     * @param minPts The number of micro-cluster centres within offlineEpsilon for a centre to be core.
+     * @return The clusters, over the centres in the order of {@link #getCentres()}.
+     */
+    public DBScanResult cluster(double offlineEpsilon, int minPts){
+        double[][] pts = getCentres();
+        if(pts.length == 0){
+            return new DBScanResult(pts, new int[0], 0);
+        }
+        return DBScan.run2dCompact(pts, offlineEpsilon, minPts, SpatialIndexType.GRID, null);
+    }
+
+    /**
+     * @return The centres of the potential micro-clusters.
+     */
+    public double[][] getCentres(){
+        double[][] pts = new double[getNPotential()][];
+        int i = 0;
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] == POTENTIAL){
+                pts[i++] = new double[]{centres.getX(mc), centres.getY(mc)};
+            }
+        }
+        return pts;
+    }
+
+    /**
+     * @return The weights of the potential micro-clusters at the time of the latest point,
+     * in the same order as {@link #getCentres()}.
+     */
+    public double[] getWeights(){
+        double[] weights = new double[getNPotential()];
+        int i = 0;
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] == POTENTIAL){
+                weights[i++] = weight[mc] * decayFactor(mc);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return The number of potential and outlier micro-clusters kept.
+     */
+    public int getNMicroClusters(){
+        return nMicroClusters;
+    }
+
+    /**
+     * @return The number of potential micro-clusters kept.
+     */
+    public int getNPotential(){
+        int n = 0;
+        for (int mc = 0; mc < centres.getNAdded(); mc++) {
+            if(state[mc] == POTENTIAL){
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of points ingested so far.
+     */
+    public long getNIngested(){
+        return nIngested;
+    }
+
+    ////////////////////////////////
+    //Helpers
+    ///////////////////////////////
+
+    private double decayFactor(int mc){
+        return Math.pow(2, -decayRate * (currentTime - lastUpdate[mc]));
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity > weight.length){
+            int newCapacity = Math.max(capacity, weight.length * 2);
+            originX = Arrays.copyOf(originX, newCapacity);
+            originY = Arrays.copyOf(originY, newCapacity);
+            weight = Arrays.copyOf(weight, newCapacity);
+            sumX = Arrays.copyOf(sumX, newCapacity);
+            sumY = Arrays.copyOf(sumY, newCapacity);
+            sumSq = Arrays.copyOf(sumSq, newCapacity);
+            lastUpdate = Arrays.copyOf(lastUpdate, newCapacity);
+            createdAt = Arrays.copyOf(createdAt, newCapacity);
+            state = Arrays.copyOf(state, newCapacity);
+        }
+    }
+
+    private static double log2(double v){
+        return Math.log(v) / Math.log(2);
+    }
+
+}
@@ -0,0 +1,80 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * Options for how {@link DenStream} summarises a stream of points. The defaults are the settings
+ * used in the DenStream paper, with time measured in whatever unit the points are stamped in.
+ * @author Luke Bermingham
+ */
+public class DenStreamOptions {
+
+    private double decayRate = 0.25;
+    private double beta = 0.2;
+    private double mu = 10;
+    private int maxMicroClusters = 10000;
+
+    public double getDecayRate() {
+        return decayRate;
+    }
+
+    /**
+     * @param decayRate Lambda, the weight of a point halves every 1 / lambda units of time.
+     * @return These options.
+     */
+    public DenStreamOptions setDecayRate(double decayRate) {
+        if(!(decayRate > 0)){
+            throw new IllegalArgumentException("Decay rate must be greater than 0.");
+        }
+        this.decayRate = decayRate;
+        return this;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    /**
+     * @param beta The fraction of mu an outlier micro-cluster must weigh to become a potential micro-cluster,
+     *             between 0 and 1.
+     * @return These options.
+     */
+    public DenStreamOptions setBeta(double beta) {
+        if(!(beta > 0 && beta <= 1)){
+            throw new IllegalArgumentException("Beta must be greater than 0 and at most 1.");
+        }
+        this.beta = beta;
+        return this;
+    }
+
+    public double getMu() {
+        return mu;
+    }
+
+    /**
+     * @param mu The weight of a dense micro-cluster, beta * mu must be greater than 1.
+     * @return These options.
+     */
+    public DenStreamOptions setMu(double mu) {
+        if(!(mu >= 1)){
+            throw new IllegalArgumentException("Mu must be at least 1.");
+        }
+        this.mu = mu;
+        return this;
+    }
+
+    public int getMaxMicroClusters() {
+        return maxMicroClusters;
+    }
+
+    /**
+     * @param maxMicroClusters The most micro-clusters kept at once, the lightest are dropped to make room.
+     * @return These options.
+     */
+    public DenStreamOptions setMaxMicroClusters(int maxMicroClusters) {
+        if(maxMicroClusters < 1){
+            throw new IllegalArgumentException("Max micro-clusters must be at least 1.");
+        }
+        this.maxMicroClusters = maxMicroClusters;
+        return this;
+    }
+
+}
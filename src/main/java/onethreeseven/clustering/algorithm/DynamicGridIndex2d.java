@@ -0,0 +1,281 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Neighbour index that buckets points into a uniform grid of square cells, like {@link GridIndex2d},
+ * but that points can be added to and removed from. Points are numbered in the order they are added
+ * and keep their number after other points are removed. A cell left empty is dropped and its slot reused,
+ * so the cells kept follow where the points are now rather than everywhere they have been.
+ * @author Luke Bermingham
+ */
+class DynamicGridIndex2d implements NeighbourIndex2d {
+
+    private static final int EMPTY = -1;
+
+    private final double cellSize;
+
+    //hash table: packed cell coordinate -> cell id
+    private long[] tableKeys;
+    private int[] tableCells;
+    private int tableMask;
+    //cells in the table, and cell ids ever handed out, dropped ones are reused first
+    private int nCells = 0;
+    private int nCellIds = 0;
+    private final IntList freeCells = new IntList();
+    private IntList[] cellPoints = new IntList[16];
+    private long[] cellKeys = new long[16];
+
+    //per point: coordinates, cell, and position within the cell's list (EMPTY once removed)
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private int[] cellOfPt = new int[16];
+    private int[] posInCell = new int[16];
+    private int nPts = 0;
+
+    /**
+     * @param cellSize The width of a grid cell, typically the query radius.
+     */
+    DynamicGridIndex2d(double cellSize){
+        this.cellSize = cellSize > 0 ? cellSize : 1.0;
+        initTable(16);
+    }
+
+    /**
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The number of the added point.
+     */
+    int add(double x, double y){
+        if(nPts == xs.length){
+            int capacity = nPts * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cellOfPt = Arrays.copyOf(cellOfPt, capacity);
+            posInCell = Arrays.copyOf(posInCell, capacity);
+        }
+        int ptIdx = nPts++;
+        xs[ptIdx] = x;
+        ys[ptIdx] = y;
+
+        long key = packCell(cellCoord(x), cellCoord(y));
+        int cell = findCell(key);
+        if(cell == EMPTY){
+            cell = insertCell(key);
+        }
+        cellOfPt[ptIdx] = cell;
+        posInCell[ptIdx] = cellPoints[cell].size();
+        cellPoints[cell].add(ptIdx);
+        return ptIdx;
+    }
+
+    /**
+     * Move a point, or put a removed point back, keeping its number.
+     * @param ptIdx The number of a point that was added.
+     * @param x The new x coordinate.
+     * @param y The new y coordinate.
+     */
+    void place(int ptIdx, double x, double y){
+        if(ptIdx < 0 || ptIdx >= nPts){
+            throw new IllegalArgumentException("There is no point " + ptIdx);
+        }
+        long key = packCell(cellCoord(x), cellCoord(y));
+        int cell = findCell(key);
+        if(cell == EMPTY){
+            cell = insertCell(key);
+        }
+        xs[ptIdx] = x;
+        ys[ptIdx] = y;
+        if(contains(ptIdx)){
+            if(cellOfPt[ptIdx] == cell){
+                return;
+            }
+            removeFromCell(ptIdx);
+        }
+        cellOfPt[ptIdx] = cell;
+        posInCell[ptIdx] = cellPoints[cell].size();
+        cellPoints[cell].add(ptIdx);
+    }
+
+    /**
+     * @param ptIdx The number of a point that has not been removed.
+     */
+    void remove(int ptIdx){
+        if(!contains(ptIdx)){
+            throw new IllegalArgumentException("There is no point " + ptIdx);
+        }
+        removeFromCell(ptIdx);
+    }
+
+    private void removeFromCell(int ptIdx){
+        //move the cell's last point into the gap
+        int cell = cellOfPt[ptIdx];
+        IntList points = cellPoints[cell];
+        int pos = posInCell[ptIdx];
+        int last = points.get(points.size() - 1);
+        points.set(pos, last);
+        posInCell[last] = pos;
+        points.removeLast();
+        posInCell[ptIdx] = EMPTY;
+        if(points.size() == 0){
+            removeCell(cell);
+        }
+    }
+
+    /**
+     * @param ptIdx The number of a point.
+     * @return Whether the point was added and has not been removed.
+     */
+    boolean contains(int ptIdx){
+        return ptIdx >= 0 && ptIdx < nPts && posInCell[ptIdx] != EMPTY;
+    }
+
+    /**
+     * @return The number of points ever added, including those since removed.
+     */
+    int getNAdded(){
+        return nPts;
+    }
+
+    double getX(int ptIdx){
+        return xs[ptIdx];
+    }
+
+    double getY(int ptIdx){
+        return ys[ptIdx];
+    }
+
+    @Override
+    public int rangeQuery(double x, double y, double radius, IntList out) {
+        out.clear();
+        final double radiusSq = radius * radius;
+        final int cx1 = cellCoord(x - radius);
+        final int cx2 = cellCoord(x + radius);
+        final int cy1 = cellCoord(y - radius);
+        final int cy2 = cellCoord(y + radius);
+
+        for (int cx = cx1; cx <= cx2; cx++) {
+            for (int cy = cy1; cy <= cy2; cy++) {
+                int cell = findCell(packCell(cx, cy));
+                if(cell == EMPTY){
+                    continue;
+                }
+                IntList points = cellPoints[cell];
+                for (int i = 0; i < points.size(); i++) {
+                    int ptIdx = points.get(i);
+                    double dx = xs[ptIdx] - x;
+                    double dy = ys[ptIdx] - y;
+                    if(dx * dx + dy * dy <= radiusSq){
+                        out.add(ptIdx);
+                    }
+                }
+            }
+        }
+        return out.size();
+    }
+
+    private int cellCoord(double v){
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private static long packCell(int cx, int cy){
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    ////////////////////////////////
+    //Open-addressing cell table
+    ///////////////////////////////
+
+    private void initTable(int capacity){
+        this.tableKeys = new long[capacity];
+        this.tableCells = new int[capacity];
+        Arrays.fill(tableCells, EMPTY);
+        this.tableMask = capacity - 1;
+    }
+
+    private int slotOf(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    private int findCell(long key){
+        int slot = slotOf(key);
+        while(true){
+            int cell = tableCells[slot];
+            if(cell == EMPTY || tableKeys[slot] == key){
+                return cell;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    /**
+     * @return The number of non-empty cells.
+     */
+    int getNCells(){
+        return nCells;
+    }
+
+    private int insertCell(long key){
+        //keep load factor at or below one half
+        if((nCells + 1) * 2 > tableCells.length){
+            long[] oldKeys = tableKeys;
+            int[] oldCells = tableCells;
+            initTable(tableCells.length * 2);
+            for (int i = 0; i < oldCells.length; i++) {
+                if(oldCells[i] != EMPTY){
+                    putSlot(oldKeys[i], oldCells[i]);
+                }
+            }
+        }
+        int cell;
+        if(freeCells.size() > 0){
+            //the list of a dropped cell is empty and can be used again
+            cell = freeCells.get(freeCells.size() - 1);
+            freeCells.removeLast();
+        }else{
+            if(nCellIds == cellPoints.length){
+                cellPoints = Arrays.copyOf(cellPoints, nCellIds * 2);
+                cellKeys = Arrays.copyOf(cellKeys, nCellIds * 2);
+            }
+            cell = nCellIds++;
+            cellPoints[cell] = new IntList(4);
+        }
+        nCells++;
+        cellKeys[cell] = key;
+        putSlot(key, cell);
+        return cell;
+    }
+
+    private void removeCell(int cell){
+        int slot = slotOf(cellKeys[cell]);
+        while(tableCells[slot] != cell){
+            slot = (slot + 1) & tableMask;
+        }
+        tableCells[slot] = EMPTY;
+        //shift back later entries of the run that could no longer be found past the gap
+        int next = (slot + 1) & tableMask;
+        while(tableCells[next] != EMPTY){
+            int home = slotOf(tableKeys[next]);
+            if(((next - home) & tableMask) >= ((next - slot) & tableMask)){
+                tableKeys[slot] = tableKeys[next];
+                tableCells[slot] = tableCells[next];
+                tableCells[next] = EMPTY;
+                slot = next;
+            }
+            next = (next + 1) & tableMask;
+        }
+        nCells--;
+        freeCells.add(cell);
+    }
+
+    private void putSlot(long key, int cell){
+        int slot = slotOf(key);
+        while(tableCells[slot] != EMPTY){
+            slot = (slot + 1) & tableMask;
+        }
+        tableKeys[slot] = key;
+        tableCells[slot] = cell;
+    }
+
+}
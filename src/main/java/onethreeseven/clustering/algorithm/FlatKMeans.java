@@ -0,0 +1,349 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Base for k-means engines that work on flat primitive arrays instead of {@link KMeansCluster} objects.
+ * Points are stored as separate x and y arrays, cluster membership as an assignment array,
+ * and each centroid is kept as a running sum of its points, which is updated incrementally
+ * as points change cluster. {@link KMeansCluster} objects are only made once, at the end.
+ * The points can come from arrays or from a {@link PointSource2d}, either way they are copied into the flat arrays.
+ * Points only move when another centroid is strictly closer (ties go to the lowest cluster index),
+ * the same rule as {@link KMeans#performIteration(KMeansCluster[])}, so the clusters converged to are the same.
+ * The points are processed in fixed size chunks, optionally in parallel, each chunk collecting its own
+ * changes to the centroid sums which are then combined in chunk order, so the result does not depend on
+ * the number of threads used. Points only change cluster once every chunk of an iteration is done,
+ * so an iteration stopped part way through can be thrown away.
+ * @author Luke Bermingham
+ */
+abstract class FlatKMeans {
+
+    //points per chunk of work
+    private static final int CHUNK_SIZE = 1 << 13;
+
+    //the points as arrays, or null when they came from a point source
+    private final double[][] pts;
+    private final PointSource2d source;
+    protected final int k;
+    protected final int n;
+
+    //points as flat arrays
+    protected final double[] xs;
+    protected final double[] ys;
+
+    //cluster of each point
+    protected final int[] assignment;
+
+    //centroids and the running sums they are computed from
+    protected final double[] cx;
+    protected final double[] cy;
+    protected final double[] sumX;
+    protected final double[] sumY;
+    protected final int[] counts;
+    protected final double[] centroidMoves;
+
+    //instrumentation
+    protected long nDistanceCalculations = 0;
+    protected int nIterations = 0;
+
+    FlatKMeans(double[][] pts, int k, double[][] initialCentroids){
+        this(pts, PointSource2d.of(pts), k, initialCentroids);
+    }
+
+    FlatKMeans(PointSource2d pts, int k, double[][] initialCentroids){
+        this(null, pts, k, initialCentroids);
+    }
+
+    private FlatKMeans(double[][] pts, PointSource2d source, int k, double[][] initialCentroids){
+        this.pts = pts;
+        this.source = source;
+        this.k = k;
+        this.n = source.size();
+
+        this.xs = new double[n];
+        this.ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = source.getX(i);
+            ys[i] = source.getY(i);
+        }
+
+        this.assignment = new int[n];
+
+        this.cx = new double[k];
+        this.cy = new double[k];
+        for (int j = 0; j < k; j++) {
+            cx[j] = initialCentroids[j][0];
+            cy[j] = initialCentroids[j][1];
+        }
+        this.sumX = new double[k];
+        this.sumY = new double[k];
+        this.counts = new int[k];
+        this.centroidMoves = new double[k];
+    }
+
+    /**
+     * Run until no point changes cluster, on this thread.
+     * @return The converged clusters.
+     */
+    KMeansCluster[] run(){
+        return run(null);
+    }
+
+    /**
+     * Run until no point changes cluster.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The converged clusters.
+     */
+    KMeansCluster[] run(ForkJoinPool pool){
+        return run(pool, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Run until no point changes cluster, or until stopped early.
+     * The points are always first assigned, so every point has a cluster.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @param maxIterations The most iterations to run after the points are first assigned.
+     * @param cancellationToken Checked before each chunk of points, or null.
+     * @return The converged clusters, or the clusters of the last finished iteration if stopped early,
+     * an iteration stopped part way through is thrown away.
+     */
+    KMeansCluster[] run(ForkJoinPool pool, int maxIterations, CancellationToken cancellationToken){
+        mergeChunks(ParallelRanges.mapRanges(pool, n, CHUNK_SIZE, (from, to) -> {
+            ChunkSums chunk = new ChunkSums(k);
+            initialAssignment(from, to, chunk);
+            return chunk;
+        }));
+        recomputeCentroids(pool);
+
+        while(nIterations < maxIterations && !CancellationToken.shouldStop(cancellationToken)){
+            beforeIteration();
+            List<ChunkSums> chunks = ParallelRanges.mapRanges(pool, n, CHUNK_SIZE, (from, to) -> {
+                //once stopped the remaining chunks are skipped
+                if(CancellationToken.shouldStop(cancellationToken)){
+                    return null;
+                }
+                ChunkSums chunk = new ChunkSums(k);
+                performIteration(from, to, chunk);
+                return chunk;
+            });
+            //a partly done iteration has not moved any points yet, so just drop it
+            if(chunks.contains(null)){
+                break;
+            }
+            nIterations++;
+            if(!mergeChunks(chunks)){
+                break;
+            }
+            recomputeCentroids(pool);
+        }
+
+        return toClusters();
+    }
+
+    long getNDistanceCalculations(){
+        return nDistanceCalculations;
+    }
+
+    int getNIterations(){
+        return nIterations;
+    }
+
+    /**
+     * Assign each point in a chunk to its closest initial centroid.
+     * @param from Start of the chunk (inclusive).
+     * @param to End of the chunk (exclusive).
+     * @param chunk Collects the changes to the centroid sums.
+     */
+    protected abstract void initialAssignment(int from, int to, ChunkSums chunk);
+
+    /**
+     * Move the points of a chunk to a strictly closer centroid.
+     * @param from Start of the chunk (inclusive).
+     * @param to End of the chunk (exclusive).
+     * @param chunk Collects the changes to the centroid sums.
+     */
+    protected abstract void performIteration(int from, int to, ChunkSums chunk);
+
+    /**
+     * Called on the calling thread before each iteration.
+     */
+    protected void beforeIteration(){}
+
+    /**
+     * Called once the centroids are moved to the mean of their points, for each chunk of points.
+     * @param from Start of the chunk (inclusive).
+     * @param to End of the chunk (exclusive).
+     * @param moves How far each centroid moved, 0 for empty clusters.
+     */
+    protected void onCentroidsMoved(int from, int to, double[] moves){}
+
+    /**
+     * Add the changes each chunk made to the centroid sums and move the points each chunk moved.
+     * @param chunks The chunks, in range order.
+     * @return True if any point changed cluster.
+     */
+    private boolean mergeChunks(List<ChunkSums> chunks){
+        boolean moved = false;
+        for (ChunkSums chunk : chunks) {
+            for (int j = 0; j < k; j++) {
+                sumX[j] += chunk.sumX[j];
+                sumY[j] += chunk.sumY[j];
+                counts[j] += chunk.counts[j];
+            }
+            for (int m = 0; m < chunk.moves.size(); m += 2) {
+                assignment[chunk.moves.get(m)] = chunk.moves.get(m + 1);
+            }
+            nDistanceCalculations += chunk.nDistanceCalculations;
+            moved |= chunk.moved;
+        }
+        //an emptied cluster has exactly zero sums
+        for (int j = 0; j < k; j++) {
+            if(counts[j] == 0){
+                sumX[j] = 0;
+                sumY[j] = 0;
+            }
+        }
+        return moved;
+    }
+
+    private void recomputeCentroids(ForkJoinPool pool){
+        boolean anyMoved = false;
+        for (int j = 0; j < k; j++) {
+            //empty clusters get a NaN centroid, just like KMeansCluster#recomputeCentroid
+            double newX = sumX[j] / counts[j];
+            double newY = sumY[j] / counts[j];
+            double dx = newX - cx[j];
+            double dy = newY - cy[j];
+            double move = Math.sqrt(dx * dx + dy * dy);
+            //a NaN centroid can never be closer, so treat it as stationary
+            centroidMoves[j] = Double.isNaN(move) ? 0 : move;
+            anyMoved |= centroidMoves[j] > 0;
+            cx[j] = newX;
+            cy[j] = newY;
+        }
+        if(anyMoved){
+            ParallelRanges.mapRanges(pool, n, CHUNK_SIZE, (from, to) -> {
+                onCentroidsMoved(from, to, centroidMoves);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Find the closest centroid to a point, starting from a known centroid.
+     * @param i The point.
+     * @param from The centroid to start from, only replaced by strictly closer ones.
+     * @param fromDistSq The squared distance from the point to that centroid.
+     * @param chunk Counts the distance calculations.
+     * @return The closest centroid.
+     */
+    protected int findClosest(int i, int from, double fromDistSq, ChunkSums chunk){
+        int best = from;
+        double bestDistSq = fromDistSq;
+        for (int j = 0; j < k; j++) {
+            if(j == from){
+                continue;
+            }
+            double d = distSq(i, j, chunk);
+            if(d < bestDistSq){
+                bestDistSq = d;
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    protected double distSq(int i, int j, ChunkSums chunk){
+        chunk.nDistanceCalculations++;
+        double dx = cx[j] - xs[i];
+        double dy = cy[j] - ys[i];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Make the cluster objects, the centroids are recomputed exactly from the points of each cluster.
+     * Points from a point source get a new array each.
+     * @return The clusters.
+     */
+    protected KMeansCluster[] toClusters(){
+        KMeansCluster[] clusters = new KMeansCluster[k];
+        for (int j = 0; j < k; j++) {
+            clusters[j] = new KMeansCluster(new double[]{cx[j], cy[j]});
+        }
+        for (int i = 0; i < n; i++) {
+            clusters[assignment[i]].add(pts != null ? pts[i] : new double[]{xs[i], ys[i]});
+        }
+        for (KMeansCluster cluster : clusters) {
+            cluster.recomputeCentroid();
+        }
+        return clusters;
+    }
+
+    /**
+     * The clusters as the cluster id of each point, the same clusters as {@link #toClusters()}
+     * without making any cluster objects. Call once {@link #run(ForkJoinPool, int, CancellationToken)} is done.
+     * @return The clusters over the points this was made with.
+     */
+    KMeansResult toResult(){
+        double[][] centroids = new double[k][];
+        for (int j = 0; j < k; j++) {
+            centroids[j] = new double[]{cx[j], cy[j]};
+        }
+        return new KMeansResult(source, centroids, assignment, nIterations);
+    }
+
+    /**
+     * The changes one chunk of points makes to the centroid sums, and the points it moves.
+     */
+    protected final class ChunkSums {
+        final double[] sumX;
+        final double[] sumY;
+        final int[] counts;
+        //each moved point followed by the cluster it moves to, only applied once the whole iteration is done
+        final IntList moves = new IntList();
+        long nDistanceCalculations = 0;
+        boolean moved = false;
+
+        ChunkSums(int k){
+            this.sumX = new double[k];
+            this.sumY = new double[k];
+            this.counts = new int[k];
+        }
+
+        /**
+         * Assign an unassigned point to a cluster.
+         * @param i The point.
+         * @param cluster The cluster.
+         */
+        void add(int i, int cluster){
+            assignment[i] = cluster;
+            sumX[cluster] += xs[i];
+            sumY[cluster] += ys[i];
+            counts[cluster]++;
+        }
+
+        /**
+         * Move a point from its current cluster to another, its assignment changes when the chunks are merged.
+         * @param i The point.
+         * @param cluster The cluster to move to.
+         */
+        void move(int i, int cluster){
+            int prev = assignment[i];
+            sumX[prev] -= xs[i];
+            sumY[prev] -= ys[i];
+            counts[prev]--;
+            sumX[cluster] += xs[i];
+            sumY[cluster] += ys[i];
+            counts[cluster]++;
+            moves.add(i);
+            moves.add(cluster);
+            moved = true;
+        }
+    }
+
+}
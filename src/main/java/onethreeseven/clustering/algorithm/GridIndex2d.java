@@ -0,0 +1,244 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.Arrays;
+
+/**
+ * Neighbour index that buckets points into a uniform grid of square cells.
+ * Only occupied cells are stored: cells are found through an open-addressing hash table
+ * and the points of each cell are stored contiguously, so a query only touches
+ * primitive arrays and does not allocate.
+ * Built over a {@link PointSource2d} the coordinates are not copied, queries read them from the source,
+ * so the index costs one int per point plus the occupied cells.
+ * @author Luke Bermingham
+ */
+class GridIndex2d implements NeighbourIndex2d {
+
+    private static final int EMPTY = -1;
+    //keep cell coordinates well inside the range of an int
+    private static final double MAX_CELLS_PER_AXIS = 1 << 30;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+
+    //hash table: packed cell coordinate -> cell id
+    private long[] tableKeys;
+    private int[] tableCells;
+    private int tableMask;
+    private int nCells;
+
+    //points of cell c are at positions cellStart[c] until cellStart[c+1]
+    private final int[] cellStart;
+    //point index at each position
+    private final int[] ptOrder;
+    //coordinates at each position, stored in cell order for locality, or null to read them from the source
+    private final double[] xs;
+    private final double[] ys;
+    private final PointSource2d source;
+
+    /**
+     * Build the grid.
+     * @param pts The points to index.
+     * @param cellSize The desired width of a grid cell, typically the query radius.
+     */
+    GridIndex2d(double[][] pts, double cellSize){
+        this(PointSource2d.of(pts), cellSize, true);
+    }
+
+    /**
+     * Build the grid without copying the coordinates.
+     * @param pts The points to index.
+     * @param cellSize The desired width of a grid cell, typically the query radius.
+     */
+    GridIndex2d(PointSource2d pts, double cellSize){
+        this(pts, cellSize, false);
+    }
+
+    private GridIndex2d(PointSource2d pts, double cellSize, boolean copyCoordinates){
+        final int nPts = pts.size();
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < nPts; i++) {
+            double x = pts.getX(i);
+            double y = pts.getY(i);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        this.minX = minX;
+        this.minY = minY;
+
+        //cells smaller than this would overflow the cell coordinates
+        double extent = Math.max(maxX - minX, maxY - minY);
+        cellSize = Math.max(cellSize, extent / MAX_CELLS_PER_AXIS);
+        this.cellSize = cellSize > 0 ? cellSize : 1.0;
+
+        //assign each point a cell id
+        initTable(16);
+        int[] cellOfPt = new int[nPts];
+        int[] cellCounts = new int[16];
+        for (int i = 0; i < nPts; i++) {
+            long key = packCell(cellX(pts.getX(i)), cellY(pts.getY(i)));
+            int cell = findCell(key);
+            if(cell == EMPTY){
+                cell = insertCell(key);
+                if(cell == cellCounts.length){
+                    cellCounts = Arrays.copyOf(cellCounts, cellCounts.length * 2);
+                }
+            }
+            cellOfPt[i] = cell;
+            cellCounts[cell]++;
+        }
+
+        //prefix sum the counts into the cell start positions
+        this.cellStart = new int[nCells + 1];
+        for (int c = 0; c < nCells; c++) {
+            cellStart[c + 1] = cellStart[c] + cellCounts[c];
+        }
+
+        //scatter the points into cell order, re-using the counts as fill cursors
+        System.arraycopy(cellStart, 0, cellCounts, 0, nCells);
+        this.ptOrder = new int[nPts];
+        for (int i = 0; i < nPts; i++) {
+            ptOrder[cellCounts[cellOfPt[i]]++] = i;
+        }
+        if(copyCoordinates){
+            this.source = null;
+            this.xs = new double[nPts];
+            this.ys = new double[nPts];
+            for (int pos = 0; pos < nPts; pos++) {
+                xs[pos] = pts.getX(ptOrder[pos]);
+                ys[pos] = pts.getY(ptOrder[pos]);
+            }
+        }else{
+            this.source = pts;
+            this.xs = null;
+            this.ys = null;
+        }
+    }
+
+    @Override
+    public int rangeQuery(double x, double y, double radius, IntList out) {
+        out.clear();
+        final double radiusSq = radius * radius;
+
+        final int cx1 = cellX(x - radius);
+        final int cx2 = cellX(x + radius);
+        final int cy1 = cellY(y - radius);
+        final int cy2 = cellY(y + radius);
+
+        //query covers more cells than are occupied, cheaper to just scan every point
+        if((cx2 - (long) cx1 + 1) * (cy2 - (long) cy1 + 1) > nCells){
+            scan(0, ptOrder.length, x, y, radiusSq, out);
+            return out.size();
+        }
+
+        for (int cx = cx1; cx <= cx2; cx++) {
+            for (int cy = cy1; cy <= cy2; cy++) {
+                int cell = findCell(packCell(cx, cy));
+                if(cell == EMPTY){
+                    continue;
+                }
+                scan(cellStart[cell], cellStart[cell + 1], x, y, radiusSq, out);
+            }
+        }
+
+        return out.size();
+    }
+
+    /**
+     * Add the points at some positions that are within the radius.
+     */
+    private void scan(int from, int to, double x, double y, double radiusSq, IntList out){
+        if(xs != null){
+            for (int pos = from; pos < to; pos++) {
+                double dx = xs[pos] - x;
+                double dy = ys[pos] - y;
+                if(dx * dx + dy * dy <= radiusSq){
+                    out.add(ptOrder[pos]);
+                }
+            }
+        }else{
+            for (int pos = from; pos < to; pos++) {
+                int ptIdx = ptOrder[pos];
+                double dx = source.getX(ptIdx) - x;
+                double dy = source.getY(ptIdx) - y;
+                if(dx * dx + dy * dy <= radiusSq){
+                    out.add(ptIdx);
+                }
+            }
+        }
+    }
+
+    private int cellX(double x){
+        return (int) Math.floor((x - minX) / cellSize);
+    }
+
+    private int cellY(double y){
+        return (int) Math.floor((y - minY) / cellSize);
+    }
+
+    private static long packCell(int cx, int cy){
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    ////////////////////////////////
+    //Open-addressing cell table
+    ///////////////////////////////
+
+    private void initTable(int capacity){
+        this.tableKeys = new long[capacity];
+        this.tableCells = new int[capacity];
+        Arrays.fill(tableCells, EMPTY);
+        this.tableMask = capacity - 1;
+    }
+
+    private int slotOf(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    private int findCell(long key){
+        int slot = slotOf(key);
+        while(true){
+            int cell = tableCells[slot];
+            if(cell == EMPTY || tableKeys[slot] == key){
+                return cell;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private int insertCell(long key){
+        //keep load factor at or below one half
+        if((nCells + 1) * 2 > tableCells.length){
+            long[] oldKeys = tableKeys;
+            int[] oldCells = tableCells;
+            initTable(tableCells.length * 2);
+            for (int i = 0; i < oldCells.length; i++) {
+                if(oldCells[i] != EMPTY){
+                    putSlot(oldKeys[i], oldCells[i]);
+                }
+            }
+        }
+        int cell = nCells++;
+        putSlot(key, cell);
+        return cell;
+    }
+
+    private void putSlot(long key, int cell){
+        int slot = slotOf(key);
+        while(tableCells[slot] != EMPTY){
+            slot = (slot + 1) & tableMask;
+        }
+        tableKeys[slot] = key;
+        tableCells[slot] = cell;
+    }
+
+}
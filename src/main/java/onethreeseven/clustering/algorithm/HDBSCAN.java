@@ -0,0 +1,310 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.HDBSCANResult;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * HDBSCAN* for 2d points (Campello, Moulavi and Sander 2013): density-based clusters without a global epsilon,
+ * so clusters of different densities are found in one run.
+ * The core distance of each point (distance to its minPts-th closest point, counting itself like {@link DBScan})
+ * is found with nearest neighbour queries on a kd-tree, the minimum spanning tree under mutual reachability is
+ * found with a parallel Boruvka search over the same kd-tree (see {@link BoruvkaMST}), and the resulting hierarchy is condensed so that only splits into
+ * clusters of at least minClusterSize points count. The most stable clusters of the condensed tree are kept.
+ * @author Luke Bermingham
+ */
+public class HDBSCAN {
+
+    private static final int NOISE = DBScanResult.NOISE;
+
+    private final double[][] pts;
+    private final int minPts;
+    private final int minClusterSize;
+    private final Consumer<Double> progressListener;
+
+    //////////////////////
+    //static methods
+    /////////////////////
+
+    /**
+     * Find density-based clusters using HDBSCAN*.
+     * @param points2d The 2d points to cluster.
+     * @param minPts The number of points that make a point dense, it smooths the density estimate.
+     * @param minClusterSize The fewest points a cluster can have.
+     * @return The clusters found.
+     */
+    public static HDBSCANResult run2d(double[][] points2d, int minPts, int minClusterSize) {
+        return run2d(points2d, minPts, minClusterSize, 1, null);
+    }
+
+    /**
+     * Find density-based clusters using HDBSCAN*.
+     * @param points2d The 2d points to cluster.
+     * @param minPts The number of points that make a point dense, it smooths the density estimate.
+     * @param minClusterSize The fewest points a cluster can have.
+     * @param parallelism The number of threads to use, the clusters found are the same regardless.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The clusters found.
+     */
+    public static HDBSCANResult run2d(double[][] points2d, int minPts, int minClusterSize,
+                                      int parallelism, Consumer<Double> progressListener) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        HDBSCAN impl = new HDBSCAN(points2d, minPts, minClusterSize, progressListener);
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try{
+            return impl.run(pool);
+        }finally {
+            if(pool != null){
+                pool.shutdown();
+            }
+        }
+    }
+
+    //////////////////////////////////
+    //Actual HDBSCAN implementation
+    /////////////////////////////////
+
+    protected HDBSCAN(double[][] pts, int minPts, int minClusterSize, Consumer<Double> progressListener){
+        if(pts == null || pts.length < 1){
+            throw new IllegalArgumentException("Points must be non-empty.");
+        }
+        if(minPts < 1){
+            throw new IllegalArgumentException("MinPts must be at least 1");
+        }
+        if(minClusterSize < 2){
+            throw new IllegalArgumentException("Min cluster size must be at least 2");
+        }
+        this.pts = pts;
+        this.minPts = minPts;
+        this.minClusterSize = minClusterSize;
+        this.progressListener = progressListener;
+    }
+
+    protected HDBSCANResult run(ForkJoinPool pool){
+        BoruvkaMST tree = new BoruvkaMST(pts);
+        tree.findCoreDistances(minPts, pool);
+        reportProgress(0.25);
+
+        BoruvkaMST.Edges mst = tree.run(pool);
+        reportProgress(0.75);
+
+        HDBSCANResult result = condense(mst);
+        reportProgress(1.0);
+        return result;
+    }
+
+    /**
+     * Turn the spanning tree into the single-linkage hierarchy, condense it, and pick the most stable clusters.
+     */
+    private HDBSCANResult condense(BoruvkaMST.Edges mst){
+        final int nPts = pts.length;
+        final int nMerges = mst.size;
+
+        //single-linkage merges in order of weight, merge m creates hierarchy node nPts + m
+        mst.sortByWeight();
+
+        final int nNodes = nPts + nMerges;
+        final int[] left = new int[nNodes];
+        final int[] right = new int[nNodes];
+        final double[] height = new double[nNodes];
+        final int[] size = new int[nNodes];
+        Arrays.fill(size, 0, nPts, 1);
+
+        final int[] parent = new int[nPts];
+        final int[] nodeOfSet = new int[nPts];
+        for (int i = 0; i < nPts; i++) {
+            parent[i] = i;
+            nodeOfSet[i] = i;
+        }
+        //points with identical coordinates merge at distance zero, treat that as the densest level seen instead
+        double minHeight = 1.0;
+        for (int m = nMerges - 1; m >= 0 && mst.weights[m] > 0; m--) {
+            minHeight = mst.weights[m];
+        }
+        for (int m = 0; m < nMerges; m++) {
+            int a = find(parent, mst.from[m]);
+            int b = find(parent, mst.to[m]);
+            int node = nPts + m;
+            left[node] = nodeOfSet[a];
+            right[node] = nodeOfSet[b];
+            height[node] = Math.max(mst.weights[m], minHeight);
+            size[node] = size[left[node]] + size[right[node]];
+            parent[b] = a;
+            nodeOfSet[a] = node;
+        }
+
+        //condense top-down, each hierarchy node either keeps its cluster or splits it into two new clusters
+        CondensedTree tree = new CondensedTree(nPts);
+        final int[] clusterOfNode = new int[nNodes];
+        Arrays.fill(clusterOfNode, NOISE);
+        final int root = nNodes - 1;
+        clusterOfNode[root] = tree.newCluster(NOISE, 0);
+        IntList pointsBuffer = new IntList();
+        for (int node = root; node >= nPts; node--) {
+            int cluster = clusterOfNode[node];
+            //this node's points already fell out of the clusters
+            if(cluster == NOISE){
+                continue;
+            }
+            double lambda = 1.0 / height[node];
+            int l = left[node];
+            int r = right[node];
+            boolean bigLeft = size[l] >= minClusterSize;
+            boolean bigRight = size[r] >= minClusterSize;
+
+            if(bigLeft && bigRight){
+                clusterOfNode[l] = tree.newCluster(cluster, lambda);
+                clusterOfNode[r] = tree.newCluster(cluster, lambda);
+            }else{
+                clusterOfNode[l] = bigLeft ? cluster : NOISE;
+                clusterOfNode[r] = bigRight ? cluster : NOISE;
+            }
+            if(!bigLeft){
+                tree.fallOut(cluster, lambda, l, left, right, nPts, pointsBuffer);
+            }
+            if(!bigRight){
+                tree.fallOut(cluster, lambda, r, left, right, nPts, pointsBuffer);
+            }
+            //points only ever fall out of clusters, so big children are re-visited as their own nodes
+        }
+        //a single point on its own never merges with anything
+        if(nMerges == 0){
+            tree.fallOut(0, 0, 0, left, right, nPts, pointsBuffer);
+        }
+
+        return tree.selectClusters(pts);
+    }
+
+    private static int find(int[] parent, int x){
+        while(parent[x] != x){
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private void reportProgress(double progress){
+        if(progressListener != null){
+            progressListener.accept(progress);
+        }
+    }
+
+    /**
+     * The condensed cluster tree: clusters numbered in the order they are born (so parents before children),
+     * the lambda (1 / distance) each was born at, and the last cluster each point was in.
+     */
+    private static class CondensedTree {
+        private int[] clusterParent = new int[16];
+        private double[] birthLambda = new double[16];
+        //sum over the points that fell out of each cluster of their lambda
+        private double[] fallOutLambdaSum = new double[16];
+        private int[] nFallOut = new int[16];
+        private int nClusters = 0;
+
+        private final int[] clusterOfPt;
+
+        CondensedTree(int nPts){
+            this.clusterOfPt = new int[nPts];
+        }
+
+        int newCluster(int parent, double lambda){
+            if(nClusters == clusterParent.length){
+                int capacity = nClusters * 2;
+                clusterParent = Arrays.copyOf(clusterParent, capacity);
+                birthLambda = Arrays.copyOf(birthLambda, capacity);
+                fallOutLambdaSum = Arrays.copyOf(fallOutLambdaSum, capacity);
+                nFallOut = Arrays.copyOf(nFallOut, capacity);
+            }
+            clusterParent[nClusters] = parent;
+            birthLambda[nClusters] = lambda;
+            return nClusters++;
+        }
+
+        /**
+         * All points below a hierarchy node leave a cluster at some lambda.
+         */
+        void fallOut(int cluster, double lambda, int node, int[] left, int[] right, int nPts, IntList stack){
+            stack.clear();
+            stack.add(node);
+            //the list grows as it is walked, so it is used as a queue
+            for (int head = 0; head < stack.size(); head++) {
+                int n = stack.get(head);
+                if(n < nPts){
+                    clusterOfPt[n] = cluster;
+                    fallOutLambdaSum[cluster] += lambda;
+                    nFallOut[cluster]++;
+                }else{
+                    stack.add(left[n]);
+                    stack.add(right[n]);
+                }
+            }
+        }
+
+        /**
+         * Keep the clusters that are more stable than their descendants (excess of mass), never the root.
+         */
+        HDBSCANResult selectClusters(double[][] pts){
+            //stability of a cluster: sum over its points of (lambda left - lambda born),
+            //where points in child clusters leave when the children are born
+            double[] stability = new double[nClusters];
+            int[] size = new int[nClusters];
+            for (int c = nClusters - 1; c >= 0; c--) {
+                size[c] += nFallOut[c];
+                stability[c] += fallOutLambdaSum[c] - nFallOut[c] * birthLambda[c];
+                int p = clusterParent[c];
+                if(p != NOISE){
+                    size[p] += size[c];
+                    stability[p] += size[c] * (birthLambda[c] - birthLambda[p]);
+                }
+            }
+
+            //bottom-up, children have larger ids than their parents
+            boolean[] selected = new boolean[nClusters];
+            double[] bestStability = new double[nClusters];
+            double[] childStability = new double[nClusters];
+            for (int c = nClusters - 1; c >= 1; c--) {
+                if(stability[c] >= childStability[c]){
+                    selected[c] = true;
+                    bestStability[c] = stability[c];
+                }else{
+                    bestStability[c] = childStability[c];
+                }
+                childStability[clusterParent[c]] += bestStability[c];
+            }
+
+            //top-down, a cluster only counts if no ancestor was selected, and points belong to their selected ancestor
+            int[] selectedAncestor = new int[nClusters];
+            int[] labelOfCluster = new int[nClusters];
+            selectedAncestor[0] = NOISE;
+            int nLabels = 0;
+            for (int c = 1; c < nClusters; c++) {
+                int inherited = selectedAncestor[clusterParent[c]];
+                if(inherited == NOISE && selected[c]){
+                    selectedAncestor[c] = c;
+                    labelOfCluster[c] = nLabels++;
+                }else{
+                    selectedAncestor[c] = inherited;
+                }
+            }
+
+            int[] labels = new int[pts.length];
+            double[] clusterStability = new double[nLabels];
+            for (int c = 1; c < nClusters; c++) {
+                if(selectedAncestor[c] == c){
+                    clusterStability[labelOfCluster[c]] = stability[c];
+                }
+            }
+            for (int i = 0; i < pts.length; i++) {
+                int ancestor = selectedAncestor[clusterOfPt[i]];
+                labels[i] = ancestor == NOISE ? NOISE : labelOfCluster[ancestor];
+            }
+            return new HDBSCANResult(pts, labels, nLabels, clusterStability);
+        }
+    }
+
+}
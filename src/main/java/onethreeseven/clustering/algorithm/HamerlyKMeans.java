@@ -0,0 +1,149 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+/**
+ * Lloyd's algorithm accelerated using Hamerly's triangle inequality bounds.
+ * Each point keeps an upper bound on the distance to its assigned centroid and a lower bound
+ * on the distance to every other centroid; when the bounds show no other centroid can be closer
+ * the point is skipped without computing any distances. Near convergence almost every point is skipped.
+ * @see "Making k-means even faster" by Greg Hamerly
+ * @author Luke Bermingham
+ */
+class HamerlyKMeans extends FlatKMeans {
+
+    //per point bounds
+    private final double[] upper;
+    private final double[] lower;
+
+    //per centroid, half the distance to the closest other centroid
+    private final double[] halfMinCentroidDist;
+
+    HamerlyKMeans(double[][] pts, int k, double[][] initialCentroids){
+        super(pts, k, initialCentroids);
+        this.upper = new double[n];
+        this.lower = new double[n];
+        this.halfMinCentroidDist = new double[k];
+    }
+
+    HamerlyKMeans(PointSource2d pts, int k, double[][] initialCentroids){
+        super(pts, k, initialCentroids);
+        this.upper = new double[n];
+        this.lower = new double[n];
+        this.halfMinCentroidDist = new double[k];
+    }
+
+    @Override
+    protected void initialAssignment(int from, int to, ChunkSums chunk) {
+        for (int i = from; i < to; i++) {
+            assignment[i] = 0;
+            chunk.add(i, assignToClosest(i, distSq(i, 0, chunk), chunk));
+        }
+    }
+
+    @Override
+    protected void beforeIteration() {
+        computeHalfMinCentroidDists();
+    }
+
+    @Override
+    protected void performIteration(int from, int to, ChunkSums chunk){
+        for (int i = from; i < to; i++) {
+            int a = assignment[i];
+            double bound = Math.max(lower[i], halfMinCentroidDist[a]);
+            if(upper[i] <= bound){
+                continue;
+            }
+            //tighten the upper bound and try again
+            double curDistSq = distSq(i, a, chunk);
+            upper[i] = Math.sqrt(curDistSq);
+            if(upper[i] <= bound){
+                continue;
+            }
+            int best = assignToClosest(i, curDistSq, chunk);
+            if(best != a){
+                chunk.move(i, best);
+            }
+        }
+    }
+
+    @Override
+    protected void onCentroidsMoved(int from, int to, double[] moves) {
+        //track the largest and second largest movement
+        int maxMoveIdx = -1;
+        double maxMove = 0;
+        double secondMaxMove = 0;
+        for (int j = 0; j < k; j++) {
+            double move = moves[j];
+            if(move > maxMove){
+                secondMaxMove = maxMove;
+                maxMove = move;
+                maxMoveIdx = j;
+            }else if(move > secondMaxMove){
+                secondMaxMove = move;
+            }
+        }
+
+        //loosen the bounds by how far the centroids moved
+        for (int i = from; i < to; i++) {
+            int a = assignment[i];
+            upper[i] += moves[a];
+            lower[i] -= (a == maxMoveIdx) ? secondMaxMove : maxMove;
+        }
+    }
+
+    /**
+     * Compare a point to every centroid to find a strictly closer one and reset the bounds of the point.
+     * @param i The point.
+     * @param curDistSq The squared distance to its current centroid.
+     * @param chunk Counts the distance calculations.
+     * @return The closest cluster to the point.
+     */
+    private int assignToClosest(int i, double curDistSq, ChunkSums chunk){
+        int a = assignment[i];
+        int best = a;
+        double bestDistSq = curDistSq;
+        double secondDistSq = Double.POSITIVE_INFINITY;
+
+        for (int j = 0; j < k; j++) {
+            if(j == a){
+                continue;
+            }
+            double d = distSq(i, j, chunk);
+            if(d < bestDistSq){
+                //previous best becomes second best
+                if(bestDistSq < secondDistSq){
+                    secondDistSq = bestDistSq;
+                }
+                bestDistSq = d;
+                best = j;
+            }else if(d < secondDistSq){
+                secondDistSq = d;
+            }
+        }
+
+        upper[i] = Math.sqrt(bestDistSq);
+        lower[i] = Math.sqrt(secondDistSq);
+        return best;
+    }
+
+    private void computeHalfMinCentroidDists(){
+        for (int j = 0; j < k; j++) {
+            double minDistSq = Double.POSITIVE_INFINITY;
+            for (int other = 0; other < k; other++) {
+                if(other == j){
+                    continue;
+                }
+                double dx = cx[j] - cx[other];
+                double dy = cy[j] - cy[other];
+                double d = dx * dx + dy * dy;
+                //comparison also skips empty (NaN) centroids
+                if(d < minDistSq){
+                    minDistSq = d;
+                }
+            }
+            halfMinCentroidDist[j] = 0.5 * Math.sqrt(minDistSq);
+        }
+    }
+
+}
@@ -0,0 +1,665 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanDelta;
+import onethreeseven.clustering.model.DBScanResult;
+
+import java.util.Arrays;
+
+/**
+ * DBSCAN over a set of 2d points that changes over time (Ester et al. 1998, "Incremental Clustering for Mining
+ * in a Data Warehousing Environment"). The neighbour index, the neighbour count of every point and the cluster of
+ * every point stay resident, so inserting or deleting a point only looks at the points whose core state changed
+ * and the clusters they connect:
+ * <ul>
+ *     <li>insertion: points that become core create a new cluster, are absorbed into the one cluster they touch,
+ *     or merge all the clusters they touch;</li>
+ *     <li>deletion: when points stop being core their cluster is searched from the core points around them,
+ *     one search per neighbour, growing in turns until the searches meet, so only the parts that split off
+ *     are walked in full. A cluster left without core points dissolves.</li>
+ * </ul>
+ * Core points are grouped exactly as {@link DBScan} groups them, a border point near several clusters may join
+ * a different one of them. A point keeps its number until deleted, and the number of a deleted point is given
+ * to a later inserted one, so the memory used follows the most points alive at once rather than all ever inserted.
+ * Cluster ids are stable: a cluster keeps its id until it is merged into another or dissolves, the part of a
+ * split that did not keep the id gets a new one. The clusters changed since the last call are
+ * reported by {@link #pollDelta()}.
+ * @author Luke Bermingham
+ */
+public class IncrementalDBScan {
+
+    private static final int NOISE = DBScanResult.NOISE;
+
+    private static final byte CREATED = 1;
+    private static final byte CHANGED = 2;
+    private static final byte REMOVED = 4;
+
+    private final double epsilon;
+    private final int minPts;
+    private final DynamicGridIndex2d ptsDatabase;
+    private int nAlive = 0;
+    //numbers of deleted points, given out again before new ones
+    private final IntList freeIds = new IntList();
+
+    //per point: the number of points within epsilon (counting itself), and its cluster id before merges are resolved
+    private int[] nNeighbours = new int[16];
+    private int[] labels = new int[16];
+    //per point scratch for the searches, a point is marked when its stamp equals the current epoch
+    private int[] stamps = new int[16];
+    private int[] owners = new int[16];
+    private int epoch = 0;
+
+    //per cluster id: the id it was merged into (itself if not merged), its number of core points, its delta flags
+    private int[] clusterParent = new int[16];
+    private int[] clusterCores = new int[16];
+    private byte[] clusterFlags = new byte[16];
+    private int nClusterIds = 0;
+    private int nLiveClusters = 0;
+    private final IntList flaggedClusters = new IntList();
+
+    private final IntList neighbourBuffer = new IntList();
+    private final IntList pointNeighbours = new IntList();
+
+    /**
+     * @param epsilon The radius of a point's neighbourhood.
+     * @param minPts The number of points (counting itself) within epsilon for a point to be core.
+     */
+    public IncrementalDBScan(double epsilon, int minPts){
+        if(epsilon < 0){
+            throw new IllegalArgumentException("Epsilon must not be less than 0");
+        }
+        if(minPts < 1){
+            throw new IllegalArgumentException("MinPts must be at least 1");
+        }
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.ptsDatabase = new DynamicGridIndex2d(epsilon);
+    }
+
+    ////////////////////////////////
+    //Queries
+    ///////////////////////////////
+
+    /**
+     * @return The number of points inserted and not deleted.
+     */
+    public int getNPoints(){
+        return nAlive;
+    }
+
+    /**
+     * @return The number of clusters, counting clusters of a single core point when minPts is 1.
+     */
+    public int getNClusters(){
+        return nLiveClusters;
+    }
+
+    /**
+     * @param ptId The number of a point that has not been deleted.
+     * @return The id of the cluster the point is in, or {@link DBScanResult#NOISE}.
+     */
+    public int getClusterId(int ptId){
+        checkAlive(ptId);
+        return clusterOf(ptId);
+    }
+
+    /**
+     * @param ptId The number of a point that has not been deleted.
+     * @return Whether the point has at least minPts points within epsilon.
+     */
+    public boolean isCore(int ptId){
+        checkAlive(ptId);
+        return isCorePt(ptId);
+    }
+
+    /**
+     * @param ptId The number of a point.
+     * @return Whether the point was inserted and has not been deleted.
+     */
+    public boolean contains(int ptId){
+        return ptsDatabase.contains(ptId);
+    }
+
+    /**
+     * The current clustering as a compact result, with the points that have not been deleted in the order of
+     * their numbers. The result's cluster ids are renumbered from 0 and are not the ids of this class.
+     * @return The current clusters.
+     */
+    public DBScanResult snapshot(){
+        double[][] pts = new double[nAlive][];
+        int[] resultLabels = new int[nAlive];
+        int[] compactIds = new int[nClusterIds];
+        Arrays.fill(compactIds, NOISE);
+        int nCompact = 0;
+        int i = 0;
+        for (int ptId = 0; ptId < ptsDatabase.getNAdded(); ptId++) {
+            if(!ptsDatabase.contains(ptId)){
+                continue;
+            }
+            pts[i] = new double[]{ptsDatabase.getX(ptId), ptsDatabase.getY(ptId)};
+            int cluster = clusterOf(ptId);
+            if(cluster != NOISE && compactIds[cluster] == NOISE){
+                compactIds[cluster] = nCompact++;
+            }
+            resultLabels[i] = cluster == NOISE ? NOISE : compactIds[cluster];
+            i++;
+        }
+        return new DBScanResult(pts, resultLabels, nCompact);
+    }
+
+    /**
+     * @return The clusters created, changed and removed since the last call (or since construction).
+     */
+    public DBScanDelta pollDelta(){
+        IntList created = new IntList();
+        IntList changed = new IntList();
+        IntList removed = new IntList();
+        for (int i = 0; i < flaggedClusters.size(); i++) {
+            int cluster = flaggedClusters.get(i);
+            byte flags = clusterFlags[cluster];
+            clusterFlags[cluster] = 0;
+            boolean wasCreated = (flags & CREATED) != 0;
+            boolean wasRemoved = (flags & REMOVED) != 0;
+            if(wasCreated && !wasRemoved){
+                created.add(cluster);
+            }else if(wasRemoved && !wasCreated){
+                removed.add(cluster);
+            }else if(!wasCreated && (flags & CHANGED) != 0){
+                changed.add(cluster);
+            }
+        }
+        flaggedClusters.clear();
+        return new DBScanDelta(sorted(created), sorted(changed), sorted(removed));
+    }
+
+    ////////////////////////////////
+    //Insertion
+    ///////////////////////////////
+
+    /**
+     * @param pts The 2d points to insert.
+     * @return The number given to each point, in the same order.
+     */
+    public int[] insertAll(double[][] pts){
+        int[] ptIds = new int[pts.length];
+        for (int i = 0; i < pts.length; i++) {
+            ptIds[i] = insert(pts[i]);
+        }
+        return ptIds;
+    }
+
+    /**
+     * @param pt The 2d point to insert.
+     * @return The number given to the point, which may be that of a deleted point.
+     */
+    public int insert(double[] pt){
+        final int p;
+        if(freeIds.size() > 0){
+            p = freeIds.get(freeIds.size() - 1);
+            freeIds.removeLast();
+            ptsDatabase.place(p, pt[0], pt[1]);
+        }else{
+            p = ptsDatabase.add(pt[0], pt[1]);
+            ensurePointCapacity(p + 1);
+        }
+        nAlive++;
+        labels[p] = NOISE;
+
+        int n = ptsDatabase.rangeQuery(pt[0], pt[1], epsilon, pointNeighbours);
+        nNeighbours[p] = n;
+        IntList newCores = new IntList();
+        for (int i = 0; i < n; i++) {
+            int q = pointNeighbours.get(i);
+            if(q != p && ++nNeighbours[q] == minPts){
+                newCores.add(q);
+            }
+        }
+        if(isCorePt(p)){
+            newCores.add(p);
+        }
+
+        if(newCores.size() == 0){
+            //no core state changed, the point is a border point of any core neighbour or noise
+            for (int i = 0; i < n; i++) {
+                int q = pointNeighbours.get(i);
+                if(isCorePt(q)){
+                    labels[p] = clusterOf(q);
+                    flag(labels[p], CHANGED);
+                    break;
+                }
+            }
+        }else{
+            connectNewCores(newCores);
+        }
+        return p;
+    }
+
+    /**
+     * Each group of new core points that are density connected to each other creates a cluster,
+     * joins the only cluster it touches, or merges all the clusters it touches.
+     */
+    private void connectNewCores(IntList newCores){
+        final int k = newCores.size();
+        epoch++;
+        for (int i = 0; i < k; i++) {
+            int c = newCores.get(i);
+            stamps[c] = epoch;
+            owners[c] = i;
+        }
+
+        //neighbourhoods of the new cores, stored back to back
+        IntList flat = new IntList();
+        int[] starts = new int[k + 1];
+        int[] group = new int[k];
+        for (int i = 0; i < k; i++) {
+            group[i] = i;
+            int c = newCores.get(i);
+            int n = ptsDatabase.rangeQuery(ptsDatabase.getX(c), ptsDatabase.getY(c), epsilon, neighbourBuffer);
+            for (int j = 0; j < n; j++) {
+                int v = neighbourBuffer.get(j);
+                flat.add(v);
+                if(v != c && stamps[v] == epoch){
+                    union(group, i, owners[v]);
+                }
+            }
+            starts[i + 1] = flat.size();
+        }
+
+        //the cluster each group ends up in, merging the clusters of the old cores it touches
+        int[] target = new int[k];
+        Arrays.fill(target, NOISE);
+        for (int i = 0; i < k; i++) {
+            int g = find(group, i);
+            for (int j = starts[i]; j < starts[i + 1]; j++) {
+                int v = flat.get(j);
+                if(stamps[v] == epoch || !isCorePt(v)){
+                    continue;
+                }
+                int cluster = clusterOf(v);
+                if(target[g] == NOISE){
+                    target[g] = cluster;
+                }else{
+                    int current = findCluster(target[g]);
+                    target[g] = current == cluster ? current : mergeClusters(current, cluster);
+                }
+            }
+        }
+
+        for (int i = 0; i < k; i++) {
+            int g = find(group, i);
+            if(target[g] == NOISE){
+                target[g] = newCluster();
+            }
+            int cluster = findCluster(target[g]);
+            int c = newCores.get(i);
+            labels[c] = cluster;
+            clusterCores[cluster]++;
+            flag(cluster, CHANGED);
+        }
+
+        //noise around the new cores becomes border points
+        for (int i = 0; i < k; i++) {
+            int cluster = findCluster(target[find(group, i)]);
+            for (int j = starts[i]; j < starts[i + 1]; j++) {
+                int v = flat.get(j);
+                if(labels[v] == NOISE && !isCorePt(v)){
+                    labels[v] = cluster;
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////
+    //Deletion
+    ///////////////////////////////
+
+    /**
+     * @param ptId The number of a point that has not been deleted.
+     */
+    public void delete(int ptId){
+        checkAlive(ptId);
+        final boolean wasCore = isCorePt(ptId);
+        final int oldCluster = clusterOf(ptId);
+        if(oldCluster != NOISE){
+            flag(oldCluster, CHANGED);
+            if(wasCore){
+                clusterCores[oldCluster]--;
+            }
+        }
+        ptsDatabase.remove(ptId);
+        freeIds.add(ptId);
+        nAlive--;
+        labels[ptId] = NOISE;
+        nNeighbours[ptId] = 0;
+
+        int n = ptsDatabase.rangeQuery(ptsDatabase.getX(ptId), ptsDatabase.getY(ptId), epsilon, pointNeighbours);
+        IntList lostCores = new IntList();
+        IntList lostClusters = new IntList();
+        for (int i = 0; i < n; i++) {
+            int q = pointNeighbours.get(i);
+            if(nNeighbours[q]-- == minPts){
+                lostCores.add(q);
+                int cluster = clusterOf(q);
+                lostClusters.add(cluster);
+                clusterCores[cluster]--;
+                flag(cluster, CHANGED);
+            }
+        }
+        if(!wasCore && lostCores.size() == 0){
+            return;
+        }
+
+        //the clusters could only have come apart at the points that are no longer core, so the searches
+        //start from the core points around them; the points around them may have lost their cluster
+        epoch++;
+        IntList seeds = new IntList();
+        IntList candidates = new IntList();
+        if(wasCore){
+            collectSeedsAndCandidates(pointNeighbours, seeds, candidates);
+        }
+        for (int i = 0; i < lostCores.size(); i++) {
+            int q = lostCores.get(i);
+            ptsDatabase.rangeQuery(ptsDatabase.getX(q), ptsDatabase.getY(q), epsilon, neighbourBuffer);
+            collectSeedsAndCandidates(neighbourBuffer, seeds, candidates);
+        }
+
+        //one search per cluster the seeds are in
+        IntList clusters = new IntList();
+        for (int i = 0; i < seeds.size(); i++) {
+            int cluster = clusterOf(seeds.get(i));
+            if(!contains(clusters, cluster)){
+                clusters.add(cluster);
+            }
+        }
+        for (int c = 0; c < clusters.size(); c++) {
+            int cluster = clusters.get(c);
+            IntList clusterSeeds = new IntList();
+            for (int i = 0; i < seeds.size(); i++) {
+                if(clusterOf(seeds.get(i)) == cluster){
+                    clusterSeeds.add(seeds.get(i));
+                }
+            }
+            splitIfDisconnected(cluster, clusterSeeds);
+        }
+
+        //border points keep their cluster if they still can, otherwise join another or become noise
+        for (int i = 0; i < candidates.size(); i++) {
+            relabelBorder(candidates.get(i));
+        }
+
+        //a split never empties a cluster, so only the clusters that lost cores can be left without any
+        if(wasCore){
+            dissolveIfEmpty(oldCluster);
+        }
+        for (int i = 0; i < lostClusters.size(); i++) {
+            dissolveIfEmpty(lostClusters.get(i));
+        }
+    }
+
+    /**
+     * Core points in a neighbourhood become seeds, the rest become border candidates, each at most once per deletion.
+     */
+    private void collectSeedsAndCandidates(IntList neighbourhood, IntList seeds, IntList candidates){
+        for (int i = 0; i < neighbourhood.size(); i++) {
+            int v = neighbourhood.get(i);
+            if(stamps[v] == epoch){
+                continue;
+            }
+            stamps[v] = epoch;
+            if(isCorePt(v)){
+                seeds.add(v);
+            }else{
+                candidates.add(v);
+            }
+        }
+    }
+
+    /**
+     * Search the cluster's core points from every seed in turn, merging searches that meet.
+     * A search that runs out of points before meeting the rest has found a part that split off, which gets a new id.
+     * Stops as soon as one search is left, which keeps the cluster's id.
+     */
+    private void splitIfDisconnected(int cluster, IntList seeds){
+        final int k = seeds.size();
+        if(k < 2){
+            return;
+        }
+        epoch++;
+        IntList[] queues = new IntList[k];
+        int[] heads = new int[k];
+        int[] group = new int[k];
+        boolean[] done = new boolean[k];
+        for (int i = 0; i < k; i++) {
+            int s = seeds.get(i);
+            stamps[s] = epoch;
+            owners[s] = i;
+            queues[i] = new IntList();
+            queues[i].add(s);
+            group[i] = i;
+        }
+
+        int nGroups = k;
+        int[] pending = new int[k];
+        while(nGroups > 1){
+            //one step of every search that still has points to look at
+            for (int i = 0; i < k && nGroups > 1; i++) {
+                if(done[find(group, i)] || heads[i] == queues[i].size()){
+                    continue;
+                }
+                int u = queues[i].get(heads[i]++);
+                int n = ptsDatabase.rangeQuery(ptsDatabase.getX(u), ptsDatabase.getY(u), epsilon, neighbourBuffer);
+                for (int j = 0; j < n; j++) {
+                    int v = neighbourBuffer.get(j);
+                    if(!isCorePt(v) || clusterOf(v) != cluster){
+                        continue;
+                    }
+                    if(stamps[v] == epoch){
+                        if(union(group, i, owners[v])){
+                            nGroups--;
+                        }
+                    }else{
+                        stamps[v] = epoch;
+                        owners[v] = i;
+                        queues[i].add(v);
+                    }
+                }
+            }
+
+            //groups with nothing left to look at have split off
+            Arrays.fill(pending, 0);
+            for (int i = 0; i < k; i++) {
+                pending[find(group, i)] += queues[i].size() - heads[i];
+            }
+            for (int g = 0; g < k && nGroups > 1; g++) {
+                if(group[g] != g || done[g] || pending[g] > 0){
+                    continue;
+                }
+                done[g] = true;
+                nGroups--;
+                int splitCluster = newCluster();
+                for (int i = 0; i < k; i++) {
+                    if(find(group, i) == g){
+                        moveCores(queues[i], cluster, splitCluster);
+                    }
+                }
+                flag(cluster, CHANGED);
+            }
+        }
+    }
+
+    /**
+     * Move core points and the border points around them from one cluster to another.
+     */
+    private void moveCores(IntList cores, int from, int to){
+        for (int i = 0; i < cores.size(); i++) {
+            labels[cores.get(i)] = to;
+        }
+        clusterCores[from] -= cores.size();
+        clusterCores[to] += cores.size();
+        for (int i = 0; i < cores.size(); i++) {
+            int u = cores.get(i);
+            int n = ptsDatabase.rangeQuery(ptsDatabase.getX(u), ptsDatabase.getY(u), epsilon, neighbourBuffer);
+            for (int j = 0; j < n; j++) {
+                int v = neighbourBuffer.get(j);
+                if(!isCorePt(v) && clusterOf(v) == from){
+                    labels[v] = to;
+                }
+            }
+        }
+    }
+
+    private void relabelBorder(int ptId){
+        int current = clusterOf(ptId);
+        int n = ptsDatabase.rangeQuery(ptsDatabase.getX(ptId), ptsDatabase.getY(ptId), epsilon, neighbourBuffer);
+        int next = NOISE;
+        for (int j = 0; j < n; j++) {
+            int v = neighbourBuffer.get(j);
+            if(!isCorePt(v)){
+                continue;
+            }
+            int cluster = clusterOf(v);
+            if(cluster == current){
+                return;
+            }
+            if(next == NOISE){
+                next = cluster;
+            }
+        }
+        labels[ptId] = next;
+        if(current != NOISE){
+            flag(current, CHANGED);
+        }
+        if(next != NOISE){
+            flag(next, CHANGED);
+        }
+    }
+
+    private void dissolveIfEmpty(int cluster){
+        if(cluster != NOISE && clusterParent[cluster] == cluster && clusterCores[cluster] == 0
+                && (clusterFlags[cluster] & REMOVED) == 0){
+            nLiveClusters--;
+            flag(cluster, REMOVED);
+        }
+    }
+
+    ////////////////////////////////
+    //Clusters
+    ///////////////////////////////
+
+    private int newCluster(){
+        if(nClusterIds == clusterParent.length){
+            int capacity = nClusterIds * 2;
+            clusterParent = Arrays.copyOf(clusterParent, capacity);
+            clusterCores = Arrays.copyOf(clusterCores, capacity);
+            clusterFlags = Arrays.copyOf(clusterFlags, capacity);
+        }
+        int cluster = nClusterIds++;
+        clusterParent[cluster] = cluster;
+        clusterCores[cluster] = 0;
+        nLiveClusters++;
+        flag(cluster, CREATED);
+        return cluster;
+    }
+
+    /**
+     * The cluster with fewer core points is merged into the other, points keep their old id until it is resolved.
+     * @return The id of the merged cluster.
+     */
+    private int mergeClusters(int a, int b){
+        int keep = clusterCores[a] > clusterCores[b] || (clusterCores[a] == clusterCores[b] && a < b) ? a : b;
+        int merged = keep == a ? b : a;
+        clusterParent[merged] = keep;
+        clusterCores[keep] += clusterCores[merged];
+        nLiveClusters--;
+        flag(merged, REMOVED);
+        flag(keep, CHANGED);
+        return keep;
+    }
+
+    private int findCluster(int cluster){
+        while(clusterParent[cluster] != cluster){
+            clusterParent[cluster] = clusterParent[clusterParent[cluster]];
+            cluster = clusterParent[cluster];
+        }
+        return cluster;
+    }
+
+    private int clusterOf(int ptId){
+        return labels[ptId] == NOISE ? NOISE : findCluster(labels[ptId]);
+    }
+
+    private void flag(int cluster, byte flag){
+        if(clusterFlags[cluster] == 0){
+            flaggedClusters.add(cluster);
+        }
+        clusterFlags[cluster] |= flag;
+    }
+
+    ////////////////////////////////
+    //Helpers
+    ///////////////////////////////
+
+    private boolean isCorePt(int ptId){
+        return nNeighbours[ptId] >= minPts;
+    }
+
+    private void checkAlive(int ptId){
+        if(!ptsDatabase.contains(ptId)){
+            throw new IllegalArgumentException("There is no point " + ptId);
+        }
+    }
+
+    private void ensurePointCapacity(int capacity){
+        if(capacity > labels.length){
+            int newCapacity = Math.max(capacity, labels.length * 2);
+            nNeighbours = Arrays.copyOf(nNeighbours, newCapacity);
+            labels = Arrays.copyOf(labels, newCapacity);
+            stamps = Arrays.copyOf(stamps, newCapacity);
+            owners = Arrays.copyOf(owners, newCapacity);
+        }
+    }
+
+    private static int find(int[] parent, int x){
+        while(parent[x] != x){
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * @return True if the two were in different sets.
+     */
+    private static boolean union(int[] parent, int a, int b){
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if(ra == rb){
+            return false;
+        }
+        //the smaller root is kept, like the other union-finds here
+        if(ra < rb){
+            parent[rb] = ra;
+        }else{
+            parent[ra] = rb;
+        }
+        return true;
+    }
+
+    private static boolean contains(IntList list, int value){
+        for (int i = 0; i < list.size(); i++) {
+            if(list.get(i) == value){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] sorted(IntList list){
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = list.get(i);
+        }
+        Arrays.sort(out);
+        return out;
+    }
+
+}
@@ -0,0 +1,51 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used as a reusable output buffer for neighbour queries
+ * so that the algorithms do not box indices or allocate on every query.
+ * @author Luke Bermingham
+ */
+class IntList {
+
+    private int[] data;
+    private int size;
+
+    IntList(){
+        this(16);
+    }
+
+    IntList(int initialCapacity){
+        this.data = new int[Math.max(initialCapacity, 1)];
+        this.size = 0;
+    }
+
+    void add(int value){
+        if(size == data.length){
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    int get(int i){
+        return data[i];
+    }
+
+    void set(int i, int value){
+        data[i] = value;
+    }
+
+    void removeLast(){
+        size--;
+    }
+
+    int size(){
+        return size;
+    }
+
+    void clear(){
+        size = 0;
+    }
+
+}
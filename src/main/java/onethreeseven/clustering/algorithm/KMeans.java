@@ -1,21 +1,33 @@
 package onethreeseven.clustering.algorithm;
 
 import onethreeseven.clustering.model.KMeansCluster;
-import onethreeseven.common.util.Maths;
-import java.util.ArrayList;
-import java.util.Collections;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointSource2d;
 import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
- * K-means in 2d using Lloyd's algorithm.
- * Runs until convergence.
- * Uses Bradley and Fayyad's technique for selection reasonable starting centroids.
+ * K-means in 2d using Lloyd's algorithm (optionally accelerated, see {@link KMeansAlgorithm}).
+ * Runs until convergence, unless stopped early by the max iterations or cancellation token in {@link KMeansOptions}.
+ * Uses Bradley and Fayyad's technique for selection reasonable starting centroids,
+ * or k-means++/k-means|| (see {@link KMeansInitialiser}).
  * @see "Refining Initial Points for K-Means Clustering"
  * @author Luke Bermingham
  * @author Nicholas Pace
  */
 public class KMeans {
 
+    //points per chunk when evaluating distortion
+    private static final int DISTORTION_CHUNK_SIZE = 1 << 13;
+    //points sampled from a point source to find its starting centroids
+    private static final int SOURCE_SAMPLE_SIZE = 1 << 16;
+    //most iterations of the sub-sample k-means in Bradley and Fayyad's method, which normally needs far fewer
+    private static final int MAX_SUBSAMPLE_ITERATIONS = 1000;
+
     ////////////////////////////
     //PUBLIC STATIC methods
     ///////////////////////////
@@ -28,14 +40,27 @@ public class KMeans {
      * @return The k clusters.
      */
     public static KMeansCluster[] run2d(double[][] pts, int k, double[][] initialCentroids) {
+        return run2d(pts, k, initialCentroids, new KMeansOptions());
+    }
+
+    /**
+     * Run k-means on the data.
+     * @param pts The points to cluster.
+     * @param k The number of clusters to produce.
+     * @param initialCentroids The intial centroids to use when initialising k-means.
+     * @param options Options for how to find the clusters.
+     * @return The k clusters.
+     */
+    public static KMeansCluster[] run2d(double[][] pts, int k, double[][] initialCentroids, KMeansOptions options) {
         if(k > pts.length || k < 1){
             throw new IllegalArgumentException("K must be between 1 and " + pts.length);
         }
 
-        KMeans impl = new KMeans();
-        KMeansCluster[] clusters = impl.initClusters(pts, k, initialCentroids);
-        impl.doKMeans(clusters, true);
-        return clusters;
+        if(initialCentroids == null || initialCentroids.length < k){
+            throw new IllegalArgumentException("There must be at least k initial centroids.");
+        }
+
+        return withPool(options, pool -> converge(pts, k, initialCentroids, options, pool));
     }
 
     /**
@@ -46,22 +71,71 @@ public class KMeans {
      * @return The k clusters.
      */
     public static KMeansCluster[] run2d(double[][] pts, int k, int j) {
-        if(j < 1 || j > pts.length){
-            throw new IllegalArgumentException("J must be between 1 and " + pts.length);
-        }
+        return run2d(pts, k, j, new KMeansOptions());
+    }
 
-        KMeans impl = new KMeans();
-        int subsampleSize = (int) ((pts.length / j) * 0.25d);
-        //cap sample size to be smaller than the number of pts / nSolutions
-        //but if that is too small set it to 10 or the number pts in the data-set, whichever is smaller.
-        subsampleSize = Math.min(Math.max(subsampleSize, 10), pts.length);
+    /**
+     * Runs k-means on the data.
+     * @param pts The points to cluster.
+     * @param k The desired number of clusters.
+     * @param j The number of starting configurations to evaluate using Bradley and Fayyad's method.
+     * @param seed The seed for sampling the starting configurations, the same seed gives the same clusters.
+     * @return The k clusters.
+     */
+    public static KMeansCluster[] run2d(double[][] pts, int k, int j, long seed) {
+        return run2d(pts, k, j, new KMeansOptions().setSeed(seed));
+    }
 
-        if(subsampleSize + k > pts.length){
-            throw new IllegalArgumentException("Subsample size is too big, must be smaller than the number of points - k");
-        }
+    /**
+     * Runs k-means on the data, picking the starting centroids using the initialiser in the options.
+     * @param pts The points to cluster.
+     * @param k The desired number of clusters.
+     * @param j The number of starting configurations to evaluate using Bradley and Fayyad's method,
+     *          not used by the other initialisers.
+     * @param options Options for how to find the clusters.
+     * @return The k clusters.
+     */
+    public static KMeansCluster[] run2d(double[][] pts, int k, int j, KMeansOptions options) {
+        final int nSamples = checkedSubsampleSize(pts.length, k, j, options);
+        final long seed = (options.getSeed() != null) ? options.getSeed() : new SplittableRandom().nextLong();
+        return withPool(options, pool -> {
+            double[][] initialCentroids = initialCentroids(pts, PointSource2d.of(pts), k, j, nSamples, seed, options, pool);
+            return converge(pts, k, initialCentroids, options, pool);
+        });
+    }
 
-        double[][] initialCentroids = impl.calculateInitialCentroids(pts, k, subsampleSize, j);
-        return run2d(pts, k, initialCentroids);
+    /**
+     * Runs k-means over points that are not stored as arrays, such as a
+     * {@link onethreeseven.clustering.model.PointBuffer2d} of packed points, picking the starting centroids
+     * using the initialiser in the options over all the points. For the same seed the clusters are the same as
+     * {@link #run2d(double[][], int, int, KMeansOptions)} finds for the same points in an array, but the heap only
+     * holds two flat arrays of coordinates while clustering rather than an array per point.
+     * Use {@link #run2d(PointSource2d, int, KMeansOptions)} for points that do not fit on the heap.
+     * @param pts The points to cluster.
+     * @param k The desired number of clusters.
+     * @param j The number of starting configurations to evaluate using Bradley and Fayyad's method,
+     *          not used by the other initialisers.
+     * @param options Options for how to find the clusters.
+     * @return The k clusters.
+     */
+    public static KMeansResult run2d(PointSource2d pts, int k, int j, KMeansOptions options) {
+        final int nSamples = checkedSubsampleSize(pts.size(), k, j, options);
+        final long seed = (options.getSeed() != null) ? options.getSeed() : new SplittableRandom().nextLong();
+        return withPool(options, pool -> {
+            double[][] initialCentroids = initialCentroids(null, pts, k, j, nSamples, seed, options, pool);
+            FlatKMeans impl;
+            switch (options.getAlgorithm()){
+                case HAMERLY:
+                    impl = new HamerlyKMeans(pts, k, initialCentroids);
+                    break;
+                case LLOYD:
+                default:
+                    impl = new LloydKMeans(pts, k, initialCentroids);
+                    break;
+            }
+            impl.run(pool, options.getMaxIterations(), options.getCancellationToken());
+            return impl.toResult();
+        });
     }
 
     /**
@@ -75,37 +149,244 @@ public class KMeans {
         return run2d(pts, k, 20);
     }
 
+    /**
+     * Runs k-means and initialises the starting centroids using the initialiser in the options,
+     * when that is Bradley and Fayyad's method 20 different starting configurations are evaluated.
+     * @param pts The points we wish to cluster.
+     * @param k The number of clusters we want.
+     * @param options Options for how to find the clusters.
+     * @return K clusters.
+     */
+    public static KMeansCluster[] run2d(double[][] pts, int k, KMeansOptions options) {
+        return run2d(pts, k, 20, options);
+    }
+
+    /**
+     * The distortion (also called inertia or SSE) of a solution: the sum of squared distances from each point
+     * to its closest centroid. Lower is better for the same k, so this can score solutions without re-clustering.
+     * @param pts The points.
+     * @param centroids The centroids of the solution.
+     * @return The distortion.
+     */
+    public static double distortion(double[][] pts, double[][] centroids) {
+        return distortion(pts, centroids, new KMeansOptions());
+    }
+
+    /**
+     * The distortion (also called inertia or SSE) of a solution: the sum of squared distances from each point
+     * to its closest centroid. Lower is better for the same k, so this can score solutions without re-clustering.
+     * @param pts The points.
+     * @param centroids The centroids of the solution.
+     * @param options Only the parallelism is used, the result is the same regardless of the number of threads.
+     * @return The distortion.
+     */
+    public static double distortion(double[][] pts, double[][] centroids, KMeansOptions options) {
+        if(centroids == null || centroids.length == 0){
+            throw new IllegalArgumentException("There must be at least one centroid.");
+        }
+        return withPool(options, pool -> computeDistortion(pts, centroids, pool));
+    }
+
+    /**
+     * The distortion of some clusters over some points, see {@link #distortion(double[][], double[][])}.
+     * @param pts The points.
+     * @param clusters The clusters, only their centroids are used.
+     * @return The distortion.
+     */
+    public static double distortion(double[][] pts, KMeansCluster[] clusters) {
+        return distortion(pts, getCentroids(clusters));
+    }
+
+    /**
+     * Run k-means over points that are not stored as arrays, such as a
+     * {@link onethreeseven.clustering.model.PointBuffer2d} of packed points or a memory-mapped file of points bigger
+     * than the heap. The starting centroids are found by clustering a uniform sample of the points
+     * with the initialiser and algorithm in the options, then Lloyd's algorithm is run over all the points,
+     * one sequential pass over the source per iteration, holding only the cluster id of each point on the heap.
+     * Use {@link #run2d(PointSource2d, int, int, KMeansOptions)} to search for starting centroids over all the points.
+     * @param pts The points to cluster.
+     * @param k The desired number of clusters.
+     * @param options Options for how to find the clusters.
+     * @return The k clusters.
+     */
+    public static KMeansResult run2d(PointSource2d pts, int k, KMeansOptions options) {
+        if(k > pts.size() || k < 1){
+            throw new IllegalArgumentException("K must be between 1 and " + pts.size());
+        }
+        final long seed = (options.getSeed() != null) ? options.getSeed() : new SplittableRandom().nextLong();
+        int nSamples = Math.min(pts.size(), Math.max(SOURCE_SAMPLE_SIZE, k * 40));
+        int[] sampleIndices = Sampling.sampleIndices(pts.size(), nSamples, new SplittableRandom(seed));
+        double[][] sample = new double[nSamples][];
+        for (int i = 0; i < nSamples; i++) {
+            sample[i] = new double[]{pts.getX(sampleIndices[i]), pts.getY(sampleIndices[i])};
+        }
+        //20 starting configurations like run2d(double[][], int), fewer for small samples so subsamples are not tiny
+        int j = Math.max(1, Math.min(20, nSamples / Math.max(k * 4, 10)));
+        KMeansOptions sampleOptions = new KMeansOptions()
+                .setInitialiser(options.getInitialiser())
+                .setAlgorithm(options.getAlgorithm())
+                .setParallelism(options.getParallelism())
+                .setMaxIterations(options.getMaxIterations())
+                .setCancellationToken(options.getCancellationToken())
+                .setSeed(seed);
+        double[][] initialCentroids = getCentroids(run2d(sample, k, j, sampleOptions));
+        return run2d(pts, k, initialCentroids, options);
+    }
+
+    /**
+     * Run k-means over points that are not stored as arrays, see {@link #run2d(PointSource2d, int, KMeansOptions)}.
+     * @param pts The points to cluster.
+     * @param k The number of clusters to produce.
+     * @param initialCentroids The intial centroids to use when initialising k-means.
+     * @param options The parallelism, max iterations and cancellation token are used,
+     *                the result is the same regardless of the number of threads.
+     * @return The k clusters.
+     */
+    public static KMeansResult run2d(PointSource2d pts, int k, double[][] initialCentroids, KMeansOptions options) {
+        if(k > pts.size() || k < 1){
+            throw new IllegalArgumentException("K must be between 1 and " + pts.size());
+        }
+
+        if(initialCentroids == null || initialCentroids.length < k){
+            throw new IllegalArgumentException("There must be at least k initial centroids.");
+        }
+
+        return withPool(options, pool -> new PointSourceKMeans(pts, k, initialCentroids)
+                .run(pool, options.getMaxIterations(), options.getCancellationToken()));
+    }
+
+    /**
+     * Run a job on a pool sized by the options, or on this thread if the options ask for one thread.
+     * @param options The options.
+     * @param job The job, passed null if there is no pool.
+     * @return The result of the job.
+     */
+    private static <T> T withPool(KMeansOptions options, Function<ForkJoinPool, T> job){
+        if(options.getParallelism() <= 1){
+            return job.apply(null);
+        }
+        ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+        try{
+            return job.apply(pool);
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Check the arguments of a run with Bradley and Fayyad's method and work out the size of its sub-samples.
+     * @param nPts The number of points.
+     * @param k The desired number of clusters.
+     * @param j The number of starting configurations.
+     * @param options The options, the initialiser is checked.
+     * @return The number of points in each sub-sample.
+     */
+    private static int checkedSubsampleSize(int nPts, int k, int j, KMeansOptions options){
+        if(k > nPts || k < 1){
+            throw new IllegalArgumentException("K must be between 1 and " + nPts);
+        }
+
+        if(j < 1 || j > nPts){
+            throw new IllegalArgumentException("J must be between 1 and " + nPts);
+        }
+
+        int subsampleSize = (int) ((nPts / j) * 0.25d);
+        //cap sample size to be smaller than the number of pts / nSolutions
+        //but if that is too small set it to 10 or the number pts in the data-set, whichever is smaller.
+        subsampleSize = Math.min(Math.max(subsampleSize, 10), nPts);
+
+        if(options.getInitialiser() == KMeansInitialiser.BRADLEY_FAYYAD && subsampleSize + k > nPts){
+            throw new IllegalArgumentException("Subsample size is too big, must be smaller than the number of points - k");
+        }
+        return subsampleSize;
+    }
+
+    /**
+     * Pick the starting centroids with the initialiser in the options. The max iterations and cancellation token
+     * of the options bound the seeding too, once stopped the centroids found so far are returned.
+     * @param pts The points as arrays, or null to read them from the source.
+     * @param source The same points as a point source.
+     * @param k The desired number of clusters.
+     * @param j The number of starting configurations for Bradley and Fayyad's method.
+     * @param nSamples The number of points in each of its sub-samples.
+     * @param seed The seed for the random choices.
+     * @param options The options.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The k starting centroids.
+     */
+    private static double[][] initialCentroids(double[][] pts, PointSource2d source, int k, int j, int nSamples,
+                                               long seed, KMeansOptions options, ForkJoinPool pool){
+        final int maxIterations = options.getMaxIterations();
+        final CancellationToken cancellationToken = options.getCancellationToken();
+        switch (options.getInitialiser()){
+            case KMEANS_PLUS_PLUS:
+                return KMeansSeeding.kMeansPlusPlus(source, k, seed, cancellationToken, pool);
+            case KMEANS_PARALLEL:
+                return KMeansSeeding.kMeansParallel(source, k, 5, 2.0 * k, seed, maxIterations, cancellationToken, pool);
+            case BRADLEY_FAYYAD:
+            default:
+                IntFunction<double[]> point = pts != null ? i -> pts[i] :
+                        i -> new double[]{source.getX(i), source.getY(i)};
+                return new KMeans().calculateInitialCentroids(source.size(), point, k, nSamples, j, seed,
+                        maxIterations, cancellationToken, pool);
+        }
+    }
+
+    private static KMeansCluster[] converge(double[][] pts, int k, double[][] initialCentroids,
+                                            KMeansOptions options, ForkJoinPool pool){
+        FlatKMeans impl;
+        switch (options.getAlgorithm()){
+            case HAMERLY:
+                impl = new HamerlyKMeans(pts, k, initialCentroids);
+                break;
+            case LLOYD:
+            default:
+                impl = new LloydKMeans(pts, k, initialCentroids);
+                break;
+        }
+        return impl.run(pool, options.getMaxIterations(), options.getCancellationToken());
+    }
+
     //////////////////////////////
     //Class methods
     /////////////////////////////
 
 
+    /**
+     * Move points between clusters until none has a closer centroid to go to, for at most
+     * {@value #MAX_SUBSAMPLE_ITERATIONS} iterations.
+     * @param clusters The clusters with points already assigned.
+     * @param allowEmptyClusters If false, each time the clusters converge any empty cluster is given a point,
+     *                           see {@link #refillEmptyClusters(KMeansCluster[])}, and they converge again.
+     */
     protected void doKMeans(KMeansCluster[] clusters, boolean allowEmptyClusters) {
-        //now move points around as long as there a better (closer) cluster to belong to
-        boolean keepConverging = true;
-
-        while(keepConverging){
+        doKMeans(clusters, allowEmptyClusters, MAX_SUBSAMPLE_ITERATIONS, null);
+    }
 
-            keepConverging = performIteration(clusters);
+    /**
+     * Move points between clusters until none has a closer centroid to go to, or until stopped early.
+     * @param clusters The clusters with points already assigned.
+     * @param allowEmptyClusters See {@link #doKMeans(KMeansCluster[], boolean)}.
+     * @param maxIterations The most iterations, no more than {@value #MAX_SUBSAMPLE_ITERATIONS} are run.
+     * @param cancellationToken Checked before each iteration, or null.
+     */
+    private void doKMeans(KMeansCluster[] clusters, boolean allowEmptyClusters, int maxIterations,
+                          CancellationToken cancellationToken) {
+        final int nIterations = Math.min(maxIterations, MAX_SUBSAMPLE_ITERATIONS);
+        //now move points around as long as there a better (closer) cluster to belong to
+        for (int iteration = 0; iteration < nIterations; iteration++) {
+            if(CancellationToken.shouldStop(cancellationToken)){
+                return;
+            }
 
-            if(keepConverging){
+            if(performIteration(clusters)){
                 for (KMeansCluster cluster : clusters) {
                     cluster.recomputeCentroid();
                 }
             }
-
-            //finished converging
-            if(!keepConverging){
-                //check if empty clusters are allowed or not
-                if(!allowEmptyClusters){
-                    //if they are not allowed we set the centroid to the furthest point from the centroid.
-                    for (KMeansCluster cluster : clusters) {
-                        if(cluster.getPoints2d().size() == 0){
-                            keepConverging = true;
-                            cluster.setCentroid(getFurthestPoint(clusters, cluster.getCentroid()));
-                        }
-                    }
-                }
+            //finished converging, unless an empty cluster is not allowed and can be given a point
+            else if(allowEmptyClusters || !refillEmptyClusters(clusters)){
+                return;
             }
 
         }
@@ -165,39 +446,94 @@ public class KMeans {
      * @return The centroids of the least distorted solution.
      */
     protected double[][] retrieveLeastDistortedCentroids(KMeansCluster[][] clustersGroups, double[][] ptsDataset) {
+        return retrieveLeastDistortedCentroids(clustersGroups, ptsDataset, null);
+    }
+
+    /**
+     * Evaluates which solution (group of clusters) is least distorted in relation to some input
+     * point data-set.
+     * @param clustersGroups The solutions (various clusters) we wish to evaluate the distortion of.
+     * @param ptsDataset The point data-set we use to evaluate to the distortion of the solutions.
+     * @param pool The pool to evaluate chunks of points on, or null to use this thread.
+     * @return The centroids of the least distorted solution.
+     */
+    protected double[][] retrieveLeastDistortedCentroids(KMeansCluster[][] clustersGroups, double[][] ptsDataset,
+                                                         ForkJoinPool pool) {
         double leastDistortion = Double.POSITIVE_INFINITY;
-        KMeansCluster[] leastDistortedClusters = null;
+        double[][] leastDistortedCentroids = null;
 
         //get best solution
         for (KMeansCluster[] clusters : clustersGroups){
-            double currentDistortion = calculateDistortion(clusters, ptsDataset);
+            double[][] centroids = getCentroids(clusters);
+            double currentDistortion = computeDistortion(ptsDataset, centroids, pool);
             if(currentDistortion < leastDistortion){
                 leastDistortion = currentDistortion;
-                leastDistortedClusters = clusters;
+                leastDistortedCentroids = centroids;
             }
         }
 
-        //get centroid from best solution
-        if(leastDistortedClusters != null){
-            double[][] centroids = new double[leastDistortedClusters.length][];
-            for (int i = 0; i < leastDistortedClusters.length; i++){
-                centroids[i] = leastDistortedClusters[i].getCentroid();
-            }
-            return centroids;
-        }
-        return null;
+        return leastDistortedCentroids;
     }
 
+    /**
+     * The distortion of some clusters: the sum of squared distances from each point to its closest centroid.
+     * @param clusters The clusters, only their centroids are used.
+     * @param points The points.
+     * @return The distortion.
+     */
     protected double calculateDistortion(KMeansCluster[] clusters, double[][] points) {
-        double distortion = 0.0;
+        return computeDistortion(points, getCentroids(clusters), null);
+    }
 
-        for (KMeansCluster cluster : clusters) {
-            for(double[] point : points){
-                distortion += cluster.distSqToCentroid(point);
-            }
+    private static double[][] getCentroids(KMeansCluster[] clusters){
+        double[][] centroids = new double[clusters.length][];
+        for (int i = 0; i < clusters.length; i++){
+            centroids[i] = clusters[i].getCentroid();
         }
+        return centroids;
+    }
 
-        return distortion;
+    /**
+     * Sum of squared distances from each point to its closest centroid, in one pass over the points.
+     * Points are summed in fixed size chunks, combined in chunk order, so the result does not depend on the pool.
+     * @param pts The points.
+     * @param centroids The centroids, NaN (empty cluster) centroids are never closest.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The distortion.
+     */
+    static double computeDistortion(double[][] pts, double[][] centroids, ForkJoinPool pool){
+        final int k = centroids.length;
+        final double[] cx = new double[k];
+        final double[] cy = new double[k];
+        for (int j = 0; j < k; j++) {
+            cx[j] = centroids[j][0];
+            cy[j] = centroids[j][1];
+        }
+
+        List<Double> chunkSums = ParallelRanges.mapRanges(pool, pts.length, DISTORTION_CHUNK_SIZE, (from, to) -> {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                double x = pts[i][0];
+                double y = pts[i][1];
+                double best = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < k; j++) {
+                    double dx = cx[j] - x;
+                    double dy = cy[j] - y;
+                    double d = dx * dx + dy * dy;
+                    if(d < best){
+                        best = d;
+                    }
+                }
+                sum += best;
+            }
+            return sum;
+        });
+
+        double total = 0;
+        for (double sum : chunkSums) {
+            total += sum;
+        }
+        return total;
     }
 
     /**
@@ -243,21 +579,48 @@ public class KMeans {
 
     }
 
-    protected double[] getFurthestPoint(KMeansCluster[] clusters, double[] refPt) {
-        double furthestDistSq = 0.0;
-        double[] furthestPoint = { 0.0, 0.0 };
+    /**
+     * Give each empty cluster the point furthest from the centroid of the cluster it is in, moving it over.
+     * An empty cluster's own centroid is NaN, so it can't be used to find a point.
+     * A point that is its cluster's only point is on its centroid, so is never taken and no cluster is emptied.
+     * @param clusters The clusters, with their centroids up to date.
+     * @return True if any empty cluster was given a point, false if none were empty or every point is on its centroid.
+     */
+    protected boolean refillEmptyClusters(KMeansCluster[] clusters) {
+        boolean refilled = false;
+
+        for (KMeansCluster emptyCluster : clusters) {
+            if(!emptyCluster.getPoints2d().isEmpty()){
+                continue;
+            }
 
-        for (KMeansCluster cluster : clusters){
-            for (double[] point : cluster.getPoints2d()){
-                double distSq = Maths.distSq(refPt, point);
-                if(distSq > furthestDistSq){
-                    furthestDistSq = distSq;
-                    furthestPoint = point;
+            double furthestDistSq = 0.0;
+            double[] furthestPoint = null;
+            KMeansCluster furthestCluster = null;
+            for (KMeansCluster cluster : clusters){
+                for (double[] point : cluster.getPoints2d()){
+                    double distSq = cluster.distSqToCentroid(point);
+                    if(distSq > furthestDistSq){
+                        furthestDistSq = distSq;
+                        furthestPoint = point;
+                        furthestCluster = cluster;
+                    }
                 }
             }
+
+            //every point is on its centroid, so the other empty clusters can't be given one either
+            if(furthestPoint == null){
+                return refilled;
+            }
+
+            furthestCluster.getPoints2d().remove(furthestPoint);
+            furthestCluster.recomputeCentroid();
+            emptyCluster.add(furthestPoint);
+            emptyCluster.setCentroid(furthestPoint);
+            refilled = true;
         }
 
-        return furthestPoint;
+        return refilled;
     }
 
     /**
@@ -271,64 +634,104 @@ public class KMeans {
      * @return The centroids of the best (least distorted) set of clusters.
      */
     protected double[][] calculateInitialCentroids(double[][] pts, int k, int subsampleSize, int nSolutions) {
-        KMeansCluster[][] candidateClusters = new KMeansCluster[nSolutions][];
+        return calculateInitialCentroids(pts, k, subsampleSize, nSolutions, new SplittableRandom().nextLong(), null);
+    }
 
-        double[][] allRandomPoints = new double[subsampleSize * nSolutions][];
+    /**
+     * Using the technique described in Bradley and Fayyad's paper "Refining Initial Points for K-Means Clustering"
+     * this method picks some "reasonable starting centroid" by essentially running k-means using random sub-samples
+     * of the data. Each solution is an independent task with its own random stream split from the seed,
+     * so the same seed gives the same centroids no matter how many threads run the tasks.
+     * @param pts The whole data-set we wish to finding starting centroids for.
+     * @param k The number of clusters we have for k-means.
+     * @param subsampleSize The size of the sub-samples we are taking from the data-set (called j in the paper).
+     * @param nSolutions The number of solutions (different starting configurations to evaluate).
+     * @param seed The seed for the random sub-samples.
+     * @param pool The pool to evaluate the solutions on, or null to evaluate them on this thread.
+     * @return The centroids of the best (least distorted) set of clusters.
+     */
+    protected double[][] calculateInitialCentroids(double[][] pts, int k, int subsampleSize, int nSolutions,
+                                                   long seed, ForkJoinPool pool) {
+        return calculateInitialCentroids(pts.length, i -> pts[i], k, subsampleSize, nSolutions, seed,
+                Integer.MAX_VALUE, null, pool);
+    }
 
-        //make indices 0...pts.length - 1
-        int[] allIndices = new int[pts.length];
-        for (int i = 0; i < pts.length; i++) {
-            allIndices[i] = i;
-        }
+    /**
+     * Bradley and Fayyad's method over points that are not stored as arrays,
+     * see {@link #calculateInitialCentroids(double[][], int, int, int, long, ForkJoinPool)}.
+     * Only the sampled points are made into arrays, and only while the centroids are being found.
+     * @param pts The whole data-set we wish to finding starting centroids for.
+     * @param k The number of clusters we have for k-means.
+     * @param subsampleSize The size of the sub-samples we are taking from the data-set (called j in the paper).
+     * @param nSolutions The number of solutions (different starting configurations to evaluate).
+     * @param seed The seed for the random sub-samples.
+     * @param pool The pool to evaluate the solutions on, or null to evaluate them on this thread.
+     * @return The centroids of the best (least distorted) set of clusters.
+     */
+    protected double[][] calculateInitialCentroids(PointSource2d pts, int k, int subsampleSize, int nSolutions,
+                                                   long seed, ForkJoinPool pool) {
+        return calculateInitialCentroids(pts.size(), i -> new double[]{pts.getX(i), pts.getY(i)},
+                k, subsampleSize, nSolutions, seed, Integer.MAX_VALUE, null, pool);
+    }
+
+    /**
+     * Bradley and Fayyad's method over either kind of points, each k-means over the sub-samples is bounded
+     * by the max iterations and cancellation token, so a stopped run only returns the best centroids so far.
+     * @param nPts The number of points in the data-set.
+     * @param point Gets a point of the data-set by index.
+     * @param maxIterations The most iterations of each k-means over the sub-samples.
+     * @param cancellationToken Checked before each iteration of those k-means, or null.
+     */
+    private double[][] calculateInitialCentroids(int nPts, IntFunction<double[]> point, int k, int subsampleSize,
+                                                 int nSolutions, long seed, int maxIterations,
+                                                 CancellationToken cancellationToken, ForkJoinPool pool) {
 
-        for(int i = 0; i < nSolutions; i++){
+        double[][] allRandomPoints = new double[subsampleSize * nSolutions][];
 
-            //shuffle the indices
-            Maths.shuffle(allIndices);
-            //generate indices for out random subsamples and random centroids
-            int[] randomPointIndices = new int[subsampleSize];
-            int[] randomCentroidIndices = new int[k];
+        //split one random stream per solution up-front, in order, so each solution's stream is fixed by the seed
+        SplittableRandom seedRandom = new SplittableRandom(seed);
+        SplittableRandom[] solutionRandoms = new SplittableRandom[nSolutions];
+        for (int i = 0; i < nSolutions; i++) {
+            solutionRandoms[i] = seedRandom.split();
+        }
 
-            //fill these array with indices
-            System.arraycopy(allIndices, 0, randomPointIndices, 0, subsampleSize);
-            System.arraycopy(allIndices, subsampleSize, randomCentroidIndices, 0, k);
+        List<KMeansCluster[]> candidateClusters = ParallelRanges.mapRanges(pool, nSolutions, 1, (i, end) -> {
 
+            //draw just the indices we need, the first are our random subsample, the next k are our random centroids
+            int[] randomIndices = Sampling.sampleIndices(nPts, subsampleSize + k, solutionRandoms[i]);
             double[][] randomPoints = new double[subsampleSize][];
             double[][] randomCentroids = new double[k][];
 
             for(int j = 0; j < subsampleSize; j++) {
-                int pointIndex = j + i * subsampleSize;
-                int randomPtIdx = randomPointIndices[j];
-                double[] randomPt = pts[randomPtIdx];
+                double[] randomPt = point.apply(randomIndices[j]);
                 randomPoints[j] = randomPt;
-                allRandomPoints[pointIndex] = randomPt;
+                //each solution writes to its own slice
+                allRandomPoints[j + i * subsampleSize] = randomPt;
             }
 
             for(int j = 0; j < k; j++) {
-                int randomCentroidIdx = randomCentroidIndices[j];
-                randomCentroids[j] = pts[randomCentroidIdx];
+                randomCentroids[j] = point.apply(randomIndices[subsampleSize + j]);
             }
 
-            candidateClusters[i] = initClusters(randomPoints, k, randomCentroids);
+            KMeansCluster[] clusters = initClusters(randomPoints, k, randomCentroids);
             //in "Refining Initial Points for K-Means Clustering" this step is called "KMeansMod"
             //because it does not allow empty clusters
-            doKMeans(candidateClusters[i], false);
-        }
+            doKMeans(clusters, false, maxIterations, cancellationToken);
+            return clusters;
+        });
 
-        KMeansCluster[][] secondPassClusters = new KMeansCluster[nSolutions][];
-        for(int i = 0; i < nSolutions; i++) {
+        //second pass needs every subsample, so can only start once the first pass is done
+        List<KMeansCluster[]> secondPassClusters = ParallelRanges.mapRanges(pool, nSolutions, 1, (i, end) -> {
+            KMeansCluster[] candidate = candidateClusters.get(i);
             double[][] preparedCentroids = new double[k][];
             for(int j = 0; j < k; j++){
-                preparedCentroids[j] = candidateClusters[i][j].getCentroid();
+                preparedCentroids[j] = candidate[j].getCentroid();
             }
+            //the solutions are already spread over the pool, so each runs on its own thread
+            return new LloydKMeans(allRandomPoints, k, preparedCentroids).run(null, maxIterations, cancellationToken);
+        });
 
-            secondPassClusters[i] = initClusters(allRandomPoints, k, preparedCentroids);
-            doKMeans(secondPassClusters[i], true);
-        }
-
-        return retrieveLeastDistortedCentroids(secondPassClusters, allRandomPoints);
+        return retrieveLeastDistortedCentroids(secondPassClusters.toArray(new KMeansCluster[nSolutions][]), allRandomPoints, pool);
     }
 
-
-
 }
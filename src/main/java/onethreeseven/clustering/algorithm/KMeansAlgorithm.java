@@ -0,0 +1,20 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * The variants of Lloyd's algorithm available in {@link KMeans}.
+ * All variants work over flat arrays of points and converge to the same clusters given the same initial centroids.
+ * @author Luke Bermingham
+ */
+public enum KMeansAlgorithm {
+
+    /**
+     * Classic Lloyd's algorithm, every point is compared to every centroid each iteration.
+     */
+    LLOYD,
+
+    /**
+     * Lloyd's algorithm using Hamerly's distance bounds to skip points that cannot change cluster.
+     */
+    HAMERLY
+
+}
@@ -0,0 +1,29 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * The ways {@link KMeans} can pick its starting centroids when none are given.
+ * @author Luke Bermingham
+ */
+public enum KMeansInitialiser {
+
+    /**
+     * Run k-means on several random sub-samples and keep the least distorted result.
+     * @see "Refining Initial Points for K-Means Clustering" by Bradley and Fayyad
+     */
+    BRADLEY_FAYYAD,
+
+    /**
+     * Pick each centroid with probability proportional to its squared distance from the centroids picked so far.
+     * Makes k passes over the data.
+     * @see "k-means++: The Advantages of Careful Seeding" by Arthur and Vassilvitskii
+     */
+    KMEANS_PLUS_PLUS,
+
+    /**
+     * Oversample candidates in a few rounds of k-means++ style sampling, then reduce them to k centroids.
+     * Makes a handful of passes over the data, so suits large data-sets and large k.
+     * @see "Scalable K-Means++" by Bahmani et al.
+     */
+    KMEANS_PARALLEL
+
+}
@@ -0,0 +1,118 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * Options for how {@link KMeans} finds its clusters.
+ * @author Luke Bermingham
+ */
+public class KMeansOptions {
+
+    private KMeansAlgorithm algorithm = KMeansAlgorithm.LLOYD;
+    private KMeansInitialiser initialiser = KMeansInitialiser.BRADLEY_FAYYAD;
+    private int parallelism = 1;
+    private Long seed = null;
+    private int maxIterations = Integer.MAX_VALUE;
+    private CancellationToken cancellationToken = null;
+
+    public KMeansInitialiser getInitialiser() {
+        return initialiser;
+    }
+
+    /**
+     * @param initialiser How to pick the starting centroids when none are given.
+     * @return These options.
+     */
+    public KMeansOptions setInitialiser(KMeansInitialiser initialiser) {
+        if(initialiser == null){
+            throw new IllegalArgumentException("Initialiser must not be null.");
+        }
+        this.initialiser = initialiser;
+        return this;
+    }
+
+    public KMeansAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param algorithm The variant of Lloyd's algorithm used to converge the clusters.
+     * @return These options.
+     */
+    public KMeansOptions setAlgorithm(KMeansAlgorithm algorithm) {
+        if(algorithm == null){
+            throw new IllegalArgumentException("Algorithm must not be null.");
+        }
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism The number of threads used to assign points to clusters, 1 runs on the calling thread.
+     *                    The clusters found are the same regardless of the number of threads.
+     * @return These options.
+     */
+    public KMeansOptions setParallelism(int parallelism) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @return The seed for random initialisation, or null if a random seed should be used.
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed The seed for random initialisation, the same seed gives the same clusters.
+     * @return These options.
+     */
+    public KMeansOptions setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * @param maxIterations The most times points are moved between clusters after they are first assigned,
+     *                      if the clusters have not converged by then the last ones are returned.
+     *                      The k-means runs used to pick the starting centroids are bounded by it too.
+     *                      By default there is no limit.
+     * @return These options.
+     */
+    public KMeansOptions setMaxIterations(int maxIterations) {
+        if(maxIterations < 1){
+            throw new IllegalArgumentException("Max iterations must be at least 1.");
+        }
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /**
+     * @return The token that can stop the run early, or null if it always runs until convergence.
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * @param cancellationToken A token to stop the run early, the clusters of the last finished iteration are returned.
+     *                          Picking the starting centroids also stops, keeping the best centroids found so far.
+     *                          Null to always run until convergence.
+     * @return These options.
+     */
+    public KMeansOptions setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+}
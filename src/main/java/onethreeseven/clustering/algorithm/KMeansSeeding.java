@@ -0,0 +1,396 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The D-squared weighted seeding strategies for k-means: k-means++ and its scalable variant k-means||.
+ * Points are processed in fixed size chunks (optionally in parallel) and any per-point randomness
+ * comes from per-chunk random streams, so for a given seed the centroids do not depend on the number of threads.
+ * The points are read from a {@link PointSource2d}, so packed points need not be copied into an array per point.
+ * @see "k-means++: The Advantages of Careful Seeding" by Arthur and Vassilvitskii
+ * @see "Scalable K-Means++" by Bahmani et al.
+ * @author Luke Bermingham
+ */
+final class KMeansSeeding {
+
+    //points per chunk of work
+    private static final int CHUNK_SIZE = 1 << 13;
+
+    private KMeansSeeding(){}
+
+    /**
+     * k-means++ seeding: the first centroid is a uniformly random point, each further centroid is
+     * a point picked with probability proportional to its squared distance from the closest centroid so far.
+     * Makes k passes over the data.
+     * @param pts The points.
+     * @param k The number of centroids.
+     * @param seed The seed for the random choices.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The k centroids.
+     */
+    static double[][] kMeansPlusPlus(double[][] pts, int k, long seed, ForkJoinPool pool){
+        return kMeansPlusPlus(PointSource2d.of(pts), k, seed, null, pool);
+    }
+
+    /**
+     * k-means++ seeding over a point source, see {@link #kMeansPlusPlus(double[][], int, long, ForkJoinPool)}.
+     * Once stopped by the token the remaining centroids are uniformly random points, which need no pass over the data.
+     * @param pts The points.
+     * @param k The number of centroids.
+     * @param seed The seed for the random choices.
+     * @param cancellationToken Checked before each pass over the points, or null.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The k centroids.
+     */
+    static double[][] kMeansPlusPlus(PointSource2d pts, int k, long seed, CancellationToken cancellationToken,
+                                     ForkJoinPool pool){
+        SplittableRandom random = new SplittableRandom(seed);
+        Coverage coverage = new Coverage(pts, pool);
+
+        coverage.addCentre(random.nextInt(pts.size()));
+        topUp(coverage, k, random, cancellationToken);
+        return coverage.centres(0, k);
+    }
+
+    /**
+     * k-means|| seeding: starting from one uniformly random point, each round samples every point independently
+     * with probability proportional to its squared distance from the closest candidate so far (oversampled so that
+     * around <code>oversampling</code> points are picked per round). The candidates are then weighted by how many
+     * points are closest to them and reduced to k centroids using weighted k-means++ and Lloyd's algorithm.
+     * Makes a handful of passes over the data instead of the k that k-means++ makes.
+     * @param pts The points.
+     * @param k The number of centroids.
+     * @param rounds The number of sampling rounds, 5 is typically plenty.
+     * @param oversampling The expected number of candidates picked each round, typically 2k.
+     * @param seed The seed for the random choices.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The k centroids.
+     */
+    static double[][] kMeansParallel(double[][] pts, int k, int rounds, double oversampling, long seed, ForkJoinPool pool){
+        return kMeansParallel(PointSource2d.of(pts), k, rounds, oversampling, seed, Integer.MAX_VALUE, null, pool);
+    }
+
+    /**
+     * k-means|| seeding over a point source,
+     * see {@link #kMeansParallel(double[][], int, int, double, long, ForkJoinPool)}.
+     * Once stopped by the token no more rounds are sampled and the first k candidates are returned.
+     * @param pts The points.
+     * @param k The number of centroids.
+     * @param rounds The number of sampling rounds, 5 is typically plenty.
+     * @param oversampling The expected number of candidates picked each round, typically 2k.
+     * @param seed The seed for the random choices.
+     * @param maxIterations The most iterations of Lloyd's algorithm when reducing the candidates to k.
+     * @param cancellationToken Checked before each pass over the points and each reducing iteration, or null.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The k centroids.
+     */
+    static double[][] kMeansParallel(PointSource2d pts, int k, int rounds, double oversampling, long seed,
+                                     int maxIterations, CancellationToken cancellationToken, ForkJoinPool pool){
+        SplittableRandom random = new SplittableRandom(seed);
+        Coverage coverage = new Coverage(pts, pool);
+
+        coverage.addCentre(random.nextInt(pts.size()));
+        for (int round = 0; round < rounds; round++) {
+            final double cost = coverage.totalCost;
+            if(cost <= 0 || CancellationToken.shouldStop(cancellationToken)){
+                break;
+            }
+            final long roundSeed = random.nextLong();
+            List<IntList> picked = ParallelRanges.mapRanges(pool, pts.size(), CHUNK_SIZE, (from, to) -> {
+                //each chunk has its own stream so the picks don't depend on which thread runs it
+                SplittableRandom chunkRandom = new SplittableRandom(roundSeed + (from / CHUNK_SIZE) * 0x9E3779B97F4A7C15L);
+                IntList chunkPicked = new IntList();
+                for (int i = from; i < to; i++) {
+                    double p = oversampling * coverage.minDistSq[i] / cost;
+                    if(chunkRandom.nextDouble() < p){
+                        chunkPicked.add(i);
+                    }
+                }
+                return chunkPicked;
+            });
+            IntList newCentres = new IntList();
+            for (IntList chunkPicked : picked) {
+                for (int i = 0; i < chunkPicked.size(); i++) {
+                    newCentres.add(chunkPicked.get(i));
+                }
+            }
+            coverage.addCentres(newCentres);
+        }
+
+        //too few candidates, top up using k-means++
+        topUp(coverage, k, random, cancellationToken);
+        //the candidates are not all weighted once stopped, so don't reduce them
+        if(cancellationToken != null && cancellationToken.wasStopped()){
+            return coverage.centres(0, k);
+        }
+
+        //weight each candidate by the number of points closest to it
+        int nCandidates = coverage.nCentres();
+        double[][] candidates = coverage.centres(0, nCandidates);
+        double[] weights = new double[nCandidates];
+        for (int i = 0; i < pts.size(); i++) {
+            weights[coverage.nearest[i]]++;
+        }
+
+        return reduceWeighted(candidates, weights, k, random, maxIterations, cancellationToken);
+    }
+
+    /**
+     * Add k-means++ centres until there are k, or uniformly random points once stopped by the token.
+     * @param coverage The centres so far.
+     * @param k The number of centres wanted.
+     * @param random Source of randomness.
+     * @param cancellationToken Checked before each pass over the points, or null.
+     */
+    private static void topUp(Coverage coverage, int k, SplittableRandom random, CancellationToken cancellationToken){
+        while(coverage.nCentres() < k){
+            if(CancellationToken.shouldStop(cancellationToken)){
+                coverage.addUncoveredCentre(random.nextInt(coverage.pts.size()));
+            }else{
+                coverage.addCentre(coverage.sampleByCost(random));
+            }
+        }
+    }
+
+    /**
+     * Cluster weighted candidates into k centroids, seeding with weighted k-means++ then running Lloyd's algorithm.
+     * @param candidates The candidate points.
+     * @param weights The weight of each candidate.
+     * @param k The number of centroids.
+     * @param random Source of randomness.
+     * @param maxIterations The most iterations of Lloyd's algorithm.
+     * @param cancellationToken Checked before each iteration, or null.
+     * @return The k centroids.
+     */
+    private static double[][] reduceWeighted(double[][] candidates, double[] weights, int k, SplittableRandom random,
+                                             int maxIterations, CancellationToken cancellationToken){
+        final int n = candidates.length;
+        if(n == k){
+            return candidates;
+        }
+
+        //weighted k-means++
+        double[][] centroids = new double[k][];
+        double[] minDistSq = new double[n];
+        Arrays.fill(minDistSq, Double.POSITIVE_INFINITY);
+        int first = sampleWeighted(weights, null, random);
+        centroids[0] = candidates[first].clone();
+        for (int c = 1; c < k; c++) {
+            double[] prev = centroids[c - 1];
+            for (int i = 0; i < n; i++) {
+                minDistSq[i] = Math.min(minDistSq[i], distSq(candidates[i], prev));
+            }
+            centroids[c] = candidates[sampleWeighted(weights, minDistSq, random)].clone();
+        }
+
+        //weighted lloyd's algorithm, with the same strictly closer rule as the main k-means
+        int[] assignment = new int[n];
+        for (int i = 0; i < n; i++) {
+            assignment[i] = closest(candidates[i], centroids, 0);
+        }
+        boolean moved = true;
+        int iteration = 0;
+        while(moved && iteration++ < maxIterations && !CancellationToken.shouldStop(cancellationToken)){
+            double[] sumX = new double[k];
+            double[] sumY = new double[k];
+            double[] sumW = new double[k];
+            for (int i = 0; i < n; i++) {
+                int a = assignment[i];
+                sumX[a] += candidates[i][0] * weights[i];
+                sumY[a] += candidates[i][1] * weights[i];
+                sumW[a] += weights[i];
+            }
+            for (int c = 0; c < k; c++) {
+                //leave centroids without any weight where they are
+                if(sumW[c] > 0){
+                    centroids[c][0] = sumX[c] / sumW[c];
+                    centroids[c][1] = sumY[c] / sumW[c];
+                }
+            }
+            moved = false;
+            for (int i = 0; i < n; i++) {
+                int best = closest(candidates[i], centroids, assignment[i]);
+                if(best != assignment[i]){
+                    assignment[i] = best;
+                    moved = true;
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int closest(double[] pt, double[][] centroids, int from){
+        int best = from;
+        double bestDistSq = distSq(pt, centroids[from]);
+        for (int c = 0; c < centroids.length; c++) {
+            double d = distSq(pt, centroids[c]);
+            if(d < bestDistSq){
+                bestDistSq = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pick an index with probability proportional to weight * distSq.
+     * @param weights The weights.
+     * @param distSq Multiplies the weights, or null to just use the weights.
+     * @param random Source of randomness.
+     * @return The picked index.
+     */
+    private static int sampleWeighted(double[] weights, double[] distSq, SplittableRandom random){
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * (distSq == null ? 1 : distSq[i]);
+        }
+        if(total <= 0){
+            return random.nextInt(weights.length);
+        }
+        double target = random.nextDouble() * total;
+        int lastPositive = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double w = weights[i] * (distSq == null ? 1 : distSq[i]);
+            if(w > 0){
+                lastPositive = i;
+                target -= w;
+                if(target < 0){
+                    return i;
+                }
+            }
+        }
+        return lastPositive;
+    }
+
+    private static double distSq(double[] a, double[] b){
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Tracks, for every point, the squared distance to its closest centre so far and which centre that is,
+     * along with the sum of those distances for each chunk of points.
+     */
+    private static final class Coverage {
+        private final PointSource2d pts;
+        private final ForkJoinPool pool;
+        private final List<double[]> centres = new ArrayList<>();
+        private final double[] minDistSq;
+        private final int[] nearest;
+        private final double[] chunkCost;
+        private double totalCost;
+
+        Coverage(PointSource2d pts, ForkJoinPool pool){
+            this.pts = pts;
+            this.pool = pool;
+            this.minDistSq = new double[pts.size()];
+            Arrays.fill(minDistSq, Double.POSITIVE_INFINITY);
+            this.nearest = new int[pts.size()];
+            this.chunkCost = new double[(pts.size() + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        }
+
+        int nCentres(){
+            return centres.size();
+        }
+
+        double[][] centres(int from, int to){
+            double[][] out = new double[to - from][];
+            for (int i = from; i < to; i++) {
+                out[i - from] = centres.get(i).clone();
+            }
+            return out;
+        }
+
+        /**
+         * Add a centre without updating the distances of the points to it, only for once the seeding is stopped.
+         * @param ptIdx The point to add as a centre.
+         */
+        void addUncoveredCentre(int ptIdx){
+            centres.add(new double[]{pts.getX(ptIdx), pts.getY(ptIdx)});
+        }
+
+        void addCentre(int ptIdx){
+            IntList single = new IntList(1);
+            single.add(ptIdx);
+            addCentres(single);
+        }
+
+        void addCentres(IntList ptIndices){
+            if(ptIndices.size() == 0){
+                return;
+            }
+            final int firstNew = centres.size();
+            for (int i = 0; i < ptIndices.size(); i++) {
+                int ptIdx = ptIndices.get(i);
+                centres.add(new double[]{pts.getX(ptIdx), pts.getY(ptIdx)});
+            }
+            final int end = centres.size();
+
+            ParallelRanges.mapRanges(pool, pts.size(), CHUNK_SIZE, (from, to) -> {
+                double cost = 0;
+                for (int i = from; i < to; i++) {
+                    double x = pts.getX(i);
+                    double y = pts.getY(i);
+                    for (int c = firstNew; c < end; c++) {
+                        double[] centre = centres.get(c);
+                        double dx = x - centre[0];
+                        double dy = y - centre[1];
+                        double d = dx * dx + dy * dy;
+                        if(d < minDistSq[i]){
+                            minDistSq[i] = d;
+                            nearest[i] = c;
+                        }
+                    }
+                    cost += minDistSq[i];
+                }
+                chunkCost[from / CHUNK_SIZE] = cost;
+                return null;
+            });
+
+            totalCost = 0;
+            for (double cost : chunkCost) {
+                totalCost += cost;
+            }
+        }
+
+        /**
+         * Pick a point with probability proportional to the squared distance to its closest centre.
+         * @param random Source of randomness.
+         * @return The index of the picked point.
+         */
+        int sampleByCost(SplittableRandom random){
+            if(totalCost <= 0){
+                return random.nextInt(pts.size());
+            }
+            double target = random.nextDouble() * totalCost;
+            //find the chunk first, then the point within it
+            int chunk = 0;
+            while(chunk < chunkCost.length - 1 && target >= chunkCost[chunk]){
+                target -= chunkCost[chunk];
+                chunk++;
+            }
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(pts.size(), from + CHUNK_SIZE);
+            int lastPositive = -1;
+            for (int i = from; i < to; i++) {
+                if(minDistSq[i] > 0){
+                    lastPositive = i;
+                    target -= minDistSq[i];
+                    if(target < 0){
+                        return i;
+                    }
+                }
+            }
+            //rounding left us just past the end of the chunk
+            return lastPositive >= 0 ? lastPositive : random.nextInt(pts.size());
+        }
+    }
+
+}
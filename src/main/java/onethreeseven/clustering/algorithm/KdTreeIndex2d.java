@@ -0,0 +1,53 @@
+package onethreeseven.clustering.algorithm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.kdtree.KdNode;
+import com.vividsolutions.jts.index.kdtree.KdTree;
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.List;
+
+/**
+ * Neighbour index backed by the JTS {@link KdTree}, points are inserted one at a time.
+ * Note: the JTS kd-tree merges points with identical coordinates into a single node,
+ * so only the first of any duplicate points is ever returned from a query.
+ * @author Luke Bermingham
+ */
+class KdTreeIndex2d implements NeighbourIndex2d {
+
+    private final KdTree ptsDatabase;
+
+    KdTreeIndex2d(double[][] pts){
+        this(PointSource2d.of(pts));
+    }
+
+    KdTreeIndex2d(PointSource2d pts){
+        this.ptsDatabase = new KdTree();
+        for (int i = 0; i < pts.size(); i++) {
+            this.ptsDatabase.insert(new Coordinate(pts.getX(i), pts.getY(i)), i);
+        }
+    }
+
+    @Override
+    public int rangeQuery(double x, double y, double radius, IntList out) {
+        out.clear();
+        double radiusSq = radius * radius;
+
+        List nodesInBounds = ptsDatabase.query(new Envelope(x - radius, x + radius, y - radius, y + radius));
+
+        for (Object nodeObj : nodesInBounds){
+            if(nodeObj instanceof KdNode){
+                KdNode node = (KdNode) nodeObj;
+                double dx = node.getX() - x;
+                double dy = node.getY() - y;
+                if(dx * dx + dy * dy <= radiusSq){
+                    out.add((Integer) node.getData());
+                }
+            }
+        }
+
+        return out.size();
+    }
+
+}
@@ -0,0 +1,37 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+/**
+ * Lloyd's algorithm over flat arrays, every point is compared to every centroid each iteration.
+ * @author Luke Bermingham
+ */
+class LloydKMeans extends FlatKMeans {
+
+    LloydKMeans(double[][] pts, int k, double[][] initialCentroids) {
+        super(pts, k, initialCentroids);
+    }
+
+    LloydKMeans(PointSource2d pts, int k, double[][] initialCentroids) {
+        super(pts, k, initialCentroids);
+    }
+
+    @Override
+    protected void initialAssignment(int from, int to, ChunkSums chunk) {
+        for (int i = from; i < to; i++) {
+            chunk.add(i, findClosest(i, 0, distSq(i, 0, chunk), chunk));
+        }
+    }
+
+    @Override
+    protected void performIteration(int from, int to, ChunkSums chunk) {
+        for (int i = from; i < to; i++) {
+            int a = assignment[i];
+            int best = findClosest(i, a, distSq(i, a, chunk), chunk);
+            if(best != a){
+                chunk.move(i, best);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Streaming k-means using mini-batches, for points that arrive continuously or do not fit in memory.
+ * Points are buffered into fixed size batches; each full batch is assigned to the closest centroids and then
+ * each centroid is nudged towards its points using a per-centroid learning rate of 1 / (points seen by that centroid).
+ * Only the k centroids, their counts and one batch are kept in memory.
+ * The first batch seeds the centroids using k-means++.
+ * The current centroids can be read at any time, including from another thread while points are being added.
+ * @see "Web-Scale K-Means Clustering" by D. Sculley
+ * @author Luke Bermingham
+ */
+public class MiniBatchKMeans {
+
+    private final int k;
+    private final int batchSize;
+    private final long seed;
+
+    //the batch being filled, interleaved x,y
+    private final double[] batch;
+    private int batchCount = 0;
+    private final int[] batchNearest;
+
+    //the centroids, null until the first batch is processed
+    private double[] cx;
+    private double[] cy;
+    private final long[] counts;
+
+    private long nPointsSeen = 0;
+    private int nBatches = 0;
+
+    /**
+     * @param k The number of clusters.
+     * @param batchSize The number of points per batch, must be at least k.
+     */
+    public MiniBatchKMeans(int k, int batchSize) {
+        this(k, batchSize, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param k The number of clusters.
+     * @param batchSize The number of points per batch, must be at least k.
+     * @param seed The seed for picking the first centroids, the same points and seed give the same clusters.
+     */
+    public MiniBatchKMeans(int k, int batchSize, long seed) {
+        if(k < 1){
+            throw new IllegalArgumentException("K must be at least 1.");
+        }
+        if(batchSize < k){
+            throw new IllegalArgumentException("Batch size must be at least k.");
+        }
+        this.k = k;
+        this.batchSize = batchSize;
+        this.seed = seed;
+        this.batch = new double[batchSize * 2];
+        this.batchNearest = new int[batchSize];
+        this.counts = new long[k];
+    }
+
+    /**
+     * Add a point, processing the batch once it is full. The point's array is not kept.
+     * @param pt The 2d point.
+     */
+    public void add(double[] pt){
+        add(pt[0], pt[1]);
+    }
+
+    /**
+     * Add a point, processing the batch once it is full.
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     */
+    public synchronized void add(double x, double y){
+        batch[batchCount * 2] = x;
+        batch[batchCount * 2 + 1] = y;
+        batchCount++;
+        nPointsSeen++;
+        if(batchCount == batchSize){
+            processBatch();
+        }
+    }
+
+    /**
+     * Add every point from an iterator.
+     * @param pts The 2d points.
+     */
+    public void addAll(Iterator<double[]> pts){
+        while(pts.hasNext()){
+            add(pts.next());
+        }
+    }
+
+    /**
+     * Add the points from an iterator until they run out or the token says to stop, which is checked
+     * before the first point and then once every batch size points. A stopped run keeps the clusters of
+     * the batches processed so far, call {@link #flush()} to also use the partly filled batch.
+     * @param pts The 2d points.
+     * @param cancellationToken Stops adding points, or null.
+     * @return False if stopped before every point was added.
+     */
+    public boolean addAll(Iterator<double[]> pts, CancellationToken cancellationToken){
+        int nAdded = 0;
+        while(pts.hasNext()){
+            if(nAdded % batchSize == 0 && CancellationToken.shouldStop(cancellationToken)){
+                return false;
+            }
+            add(pts.next());
+            nAdded++;
+        }
+        return true;
+    }
+
+    /**
+     * Add every point of a point source, in order, without making an array per point.
+     * @param pts The 2d points.
+     */
+    public void addAll(PointSource2d pts){
+        for (int i = 0; i < pts.size(); i++) {
+            add(pts.getX(i), pts.getY(i));
+        }
+    }
+
+    /**
+     * Process the points in the partly filled batch now, rather than waiting for it to fill.
+     * If there are not yet k points the batch is left to keep filling.
+     */
+    public synchronized void flush(){
+        if(batchCount > 0 && (cx != null || batchCount >= k)){
+            processBatch();
+        }
+    }
+
+    /**
+     * The clusters as of the last processed batch (see {@link #flush()}).
+     * The clusters only have centroids, the points are not kept.
+     * @return The k clusters, or no clusters if a batch has not been processed yet.
+     */
+    public synchronized KMeansCluster[] getClusters(){
+        if(cx == null){
+            return new KMeansCluster[0];
+        }
+        KMeansCluster[] clusters = new KMeansCluster[k];
+        for (int j = 0; j < k; j++) {
+            clusters[j] = new KMeansCluster(new double[]{cx[j], cy[j]});
+        }
+        return clusters;
+    }
+
+    /**
+     * @return The number of points assigned to each cluster so far, in the same order as {@link #getClusters()}.
+     */
+    public synchronized long[] getCounts(){
+        return counts.clone();
+    }
+
+    public synchronized long getNPointsSeen(){
+        return nPointsSeen;
+    }
+
+    public synchronized int getNBatches(){
+        return nBatches;
+    }
+
+    private void processBatch(){
+        if(cx == null){
+            initCentroids();
+        }
+
+        //assign the whole batch to the centroids as they were before the batch
+        for (int i = 0; i < batchCount; i++) {
+            batchNearest[i] = closest(batch[i * 2], batch[i * 2 + 1]);
+        }
+
+        //then move each centroid towards its points, moving less the more points it has seen
+        for (int i = 0; i < batchCount; i++) {
+            int c = batchNearest[i];
+            counts[c]++;
+            double learningRate = 1.0 / counts[c];
+            cx[c] += learningRate * (batch[i * 2] - cx[c]);
+            cy[c] += learningRate * (batch[i * 2 + 1] - cy[c]);
+        }
+
+        batchCount = 0;
+        nBatches++;
+    }
+
+    private void initCentroids(){
+        double[][] pts = new double[batchCount][];
+        for (int i = 0; i < batchCount; i++) {
+            pts[i] = new double[]{batch[i * 2], batch[i * 2 + 1]};
+        }
+        double[][] centroids = KMeansSeeding.kMeansPlusPlus(pts, k, seed, null);
+        cx = new double[k];
+        cy = new double[k];
+        for (int j = 0; j < k; j++) {
+            cx[j] = centroids[j][0];
+            cy[j] = centroids[j][1];
+        }
+    }
+
+    private int closest(double x, double y){
+        int best = 0;
+        double bestDistSq = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < k; j++) {
+            double dx = cx[j] - x;
+            double dy = cy[j] - y;
+            double d = dx * dx + dy * dy;
+            if(d < bestDistSq){
+                bestDistSq = d;
+                best = j;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,20 @@
+package onethreeseven.clustering.algorithm;
+
+/**
+ * A spatial index over a fixed set of 2d points that answers fixed-radius neighbour queries.
+ * Points are referred to by their index in the array the spatial index was built from.
+ * @author Luke Bermingham
+ */
+interface NeighbourIndex2d {
+
+    /**
+     * Find all indexed points within some radius (inclusive) of a query location.
+     * @param x The x coordinate of the query location.
+     * @param y The y coordinate of the query location.
+     * @param radius The search radius.
+     * @param out Cleared and then filled with the indices of the points within the radius.
+     * @return The number of points found.
+     */
+    int rangeQuery(double x, double y, double radius, IntList out);
+
+}
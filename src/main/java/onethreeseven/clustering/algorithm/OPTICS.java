@@ -0,0 +1,243 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.OPTICSResult;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * OPTICS for 2d points: orders the points so that a DBSCAN clustering for any epsilon up to the one given
+ * can be read off the ordering, see {@link OPTICSResult#extractDBScan(double)}.
+ * Uses the same spatial indices as {@link DBScan}, and stores the ordering, reachability
+ * and the seed queue in primitive arrays.
+ * @author Luke Bermingham
+ */
+public class OPTICS {
+
+    private static final double UNDEFINED = OPTICSResult.UNDEFINED;
+
+    private final double[][] pts;
+    private final double epsilon;
+    private final int minPts;
+    private final NeighbourIndex2d ptsDatabase;
+    private final Consumer<Double> progressListener;
+
+    private final boolean[] processed;
+    //best reachability found so far for each point
+    private final double[] reachabilityOfPt;
+    private final SeedHeap seeds;
+
+    //re-used buffers so that neighbour queries do not allocate
+    private final IntList neighbourBuffer = new IntList();
+    private double[] distBuffer = new double[16];
+    private double[] sortBuffer = new double[16];
+
+    //////////////////////
+    //static methods
+    /////////////////////
+
+    /**
+     * Compute the OPTICS cluster ordering.
+     * @param points2d The 2d points to order.
+     * @param epsilon The largest epsilon that clusters will be extracted for.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @return The cluster ordering.
+     */
+    public static OPTICSResult run2d(double[][] points2d, double epsilon, int minPts) {
+        return run2d(points2d, epsilon, minPts, SpatialIndexType.BALANCED_KD_TREE, null);
+    }
+
+    /**
+     * Compute the OPTICS cluster ordering.
+     * @param points2d The 2d points to order.
+     * @param epsilon The largest epsilon that clusters will be extracted for.
+     * @param minPts The number of points a point must have surrounding it to grow a cluster.
+     * @param indexType The spatial index used to find the neighbours of each point.
+     * @param progressListener Progress listener for the algorithm, reports between 0 and 1, where 1 is finished processing.
+     * @return The cluster ordering.
+     */
+    public static OPTICSResult run2d(double[][] points2d, double epsilon, int minPts,
+                                     SpatialIndexType indexType, Consumer<Double> progressListener) {
+        OPTICS impl = new OPTICS(points2d, epsilon, minPts, indexType, progressListener);
+        return impl.run();
+    }
+
+    //////////////////////////////////
+    //Actual OPTICS implementation
+    /////////////////////////////////
+
+    protected OPTICS(double[][] pts, double epsilon, int minPts, SpatialIndexType indexType, Consumer<Double> progressListener){
+        DBScan.checkArguments(pts, epsilon, minPts);
+        this.pts = pts;
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.progressListener = progressListener;
+        this.processed = new boolean[pts.length];
+        this.reachabilityOfPt = new double[pts.length];
+        Arrays.fill(reachabilityOfPt, UNDEFINED);
+        this.seeds = new SeedHeap(pts.length);
+        this.ptsDatabase = indexType.build(pts, epsilon);
+    }
+
+    protected OPTICSResult run(){
+        final int nPts = pts.length;
+        int[] ordering = new int[nPts];
+        double[] reachability = new double[nPts];
+        double[] coreDistance = new double[nPts];
+        int pos = 0;
+
+        for (int i = 0; i < nPts; i++) {
+            if(processed[i]){
+                continue;
+            }
+            //start a new walk from an unvisited point, then always visit the most reachable seed next
+            seeds.push(i, UNDEFINED);
+            while(!seeds.isEmpty()){
+                int ptIdx = seeds.pop();
+                processed[ptIdx] = true;
+                ordering[pos] = ptIdx;
+                reachability[pos] = reachabilityOfPt[ptIdx];
+                coreDistance[pos] = expand(ptIdx);
+                pos++;
+            }
+
+            if(progressListener != null){
+                progressListener.accept((double) pos / nPts);
+            }
+        }
+
+        return new OPTICSResult(pts, epsilon, minPts, ordering, reachability, coreDistance);
+    }
+
+    /**
+     * Find the core distance of a point and, if it is a core point, update the reachability of its unprocessed neighbours.
+     * @param ptIdx The point.
+     * @return Its core distance.
+     */
+    private double expand(int ptIdx){
+        double[] pt = pts[ptIdx];
+        int nNeighbours = ptsDatabase.rangeQuery(pt[0], pt[1], epsilon, neighbourBuffer);
+        if(nNeighbours < minPts){
+            return UNDEFINED;
+        }
+
+        if(distBuffer.length < nNeighbours){
+            distBuffer = new double[Math.max(nNeighbours, distBuffer.length * 2)];
+            sortBuffer = new double[distBuffer.length];
+        }
+        for (int i = 0; i < nNeighbours; i++) {
+            double[] other = pts[neighbourBuffer.get(i)];
+            double dx = other[0] - pt[0];
+            double dy = other[1] - pt[1];
+            distBuffer[i] = Math.sqrt(dx * dx + dy * dy);
+        }
+
+        //distance to the minPts-th closest neighbour, counting the point itself like DBSCAN does
+        System.arraycopy(distBuffer, 0, sortBuffer, 0, nNeighbours);
+        Arrays.sort(sortBuffer, 0, nNeighbours);
+        double coreDist = minPts > 0 ? sortBuffer[minPts - 1] : 0;
+
+        for (int i = 0; i < nNeighbours; i++) {
+            int neighbourIdx = neighbourBuffer.get(i);
+            if(processed[neighbourIdx]){
+                continue;
+            }
+            double reach = Math.max(coreDist, distBuffer[i]);
+            if(reach < reachabilityOfPt[neighbourIdx]){
+                reachabilityOfPt[neighbourIdx] = reach;
+                seeds.push(neighbourIdx, reach);
+            }
+        }
+        return coreDist;
+    }
+
+    /**
+     * Indexed binary min-heap of point indices keyed by reachability, supporting decrease-key.
+     * Ties are broken by point index so the ordering is deterministic.
+     */
+    private static class SeedHeap {
+        private final int[] heap;
+        private final double[] keys;
+        //position of each point in the heap, or -1
+        private final int[] positions;
+        private int size = 0;
+
+        SeedHeap(int capacity){
+            this.heap = new int[capacity];
+            this.keys = new double[capacity];
+            this.positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty(){
+            return size == 0;
+        }
+
+        /**
+         * Add a point, or lower its key if it is already in the heap.
+         */
+        void push(int ptIdx, double key){
+            int pos = positions[ptIdx];
+            if(pos == -1){
+                pos = size++;
+                heap[pos] = ptIdx;
+                positions[ptIdx] = pos;
+            }
+            keys[ptIdx] = key;
+            siftUp(pos);
+        }
+
+        int pop(){
+            int top = heap[0];
+            positions[top] = -1;
+            size--;
+            if(size > 0){
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private boolean less(int a, int b){
+            return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+        }
+
+        private void siftUp(int pos){
+            int ptIdx = heap[pos];
+            while(pos > 0){
+                int parent = (pos - 1) >>> 1;
+                if(!less(ptIdx, heap[parent])){
+                    break;
+                }
+                heap[pos] = heap[parent];
+                positions[heap[pos]] = pos;
+                pos = parent;
+            }
+            heap[pos] = ptIdx;
+            positions[ptIdx] = pos;
+        }
+
+        private void siftDown(int pos){
+            int ptIdx = heap[pos];
+            while(true){
+                int child = 2 * pos + 1;
+                if(child >= size){
+                    break;
+                }
+                if(child + 1 < size && less(heap[child + 1], heap[child])){
+                    child++;
+                }
+                if(!less(heap[child], ptIdx)){
+                    break;
+                }
+                heap[pos] = heap[child];
+                positions[heap[pos]] = pos;
+                pos = child;
+            }
+            heap[pos] = ptIdx;
+            positions[ptIdx] = pos;
+        }
+    }
+
+}
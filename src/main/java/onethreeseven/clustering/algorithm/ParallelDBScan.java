@@ -0,0 +1,237 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Multi-threaded DBSCAN for 2d points.
+ * Instead of growing clusters one at a time it works in three parallel passes:
+ * find the core points, union each core point with its core neighbours,
+ * then hand each border point to a neighbouring cluster.
+ * Clusters are identified by their smallest core point index and border points go to the
+ * neighbouring cluster with the smallest identifier, which is exactly the cluster that
+ * the sequential {@link DBScan} reaches them from first, so the output is the same.
+ * If stopped early by a {@link CancellationToken} during the first two passes every point is noise, as a cluster
+ * only partly linked could come out split in two. Stopped during the last pass the clusters are complete
+ * and only the border points not yet handed to a cluster are noise.
+ * The points can be arrays or a {@link PointSource2d}, which the grid index reads in place.
+ * @author Luke Bermingham
+ */
+class ParallelDBScan {
+
+    private static final int NOISE = DBScanResult.NOISE;
+    //number of passes over the data, used for progress reporting
+    private static final int N_PASSES = 3;
+    //how often each chunk checks if it should stop, every 256 points
+    private static final int STOP_CHECK_MASK = 255;
+
+    //the points, the array is null when clustering a point source
+    private final double[][] pts;
+    private final PointSource2d source;
+    private final int nPts;
+    private final double epsilon;
+    private final int minPts;
+    private final NeighbourIndex2d ptsDatabase;
+    private final Consumer<Double> progressListener;
+    //stops the run early, or null
+    private final CancellationToken cancellationToken;
+    private final AtomicLong ptsProcessed = new AtomicLong(0);
+    private final AtomicLong nRangeQueries = new AtomicLong(0);
+
+    ParallelDBScan(double[][] pts, double epsilon, int minPts, SpatialIndexType indexType,
+                   CancellationToken cancellationToken, Consumer<Double> progressListener){
+        DBScan.checkArguments(pts, epsilon, minPts);
+        this.pts = pts;
+        this.source = PointSource2d.of(pts);
+        this.nPts = pts.length;
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.cancellationToken = cancellationToken;
+        this.progressListener = progressListener;
+        this.ptsDatabase = indexType.build(pts, epsilon);
+    }
+
+    ParallelDBScan(PointSource2d pts, double epsilon, int minPts, SpatialIndexType indexType,
+                   CancellationToken cancellationToken, Consumer<Double> progressListener){
+        DBScan.checkArguments(pts, epsilon, minPts);
+        this.pts = null;
+        this.source = pts;
+        this.nPts = pts.size();
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.cancellationToken = cancellationToken;
+        this.progressListener = progressListener;
+        this.ptsDatabase = indexType.build(pts, epsilon);
+    }
+
+    DBScanResult run(int parallelism){
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            return run(pool);
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    private DBScanResult run(ForkJoinPool pool){
+        //pass 1: find the core points
+        final boolean[] isCore = new boolean[nPts];
+        ParallelRanges.forEachRange(pool, nPts, (from, to) -> {
+            IntList neighbours = new IntList();
+            int i = from;
+            for (; i < to && !shouldStop(i, from); i++) {
+                isCore[i] = ptsDatabase.rangeQuery(source.getX(i), source.getY(i), epsilon, neighbours) >= minPts;
+            }
+            nRangeQueries.addAndGet(i - from);
+            reportProgress(to - from);
+        });
+
+        //not every point's core state is known, so no cluster is either
+        if(cancellationToken != null && cancellationToken.wasStopped()){
+            return allNoise();
+        }
+
+        //pass 2: link core points that are neighbours, and flag points that are next to a core point
+        final ConcurrentUnionFind components = new ConcurrentUnionFind(nPts);
+        final boolean[] nearCore = new boolean[nPts];
+        ParallelRanges.forEachRange(pool, nPts, (from, to) -> {
+            IntList neighbours = new IntList();
+            long nQueries = 0;
+            for (int i = from; i < to && !shouldStop(i, from); i++) {
+                if(!isCore[i]){
+                    continue;
+                }
+                nQueries++;
+                int nNeighbours = ptsDatabase.rangeQuery(source.getX(i), source.getY(i), epsilon, neighbours);
+                for (int j = 0; j < nNeighbours; j++) {
+                    int neighbourIdx = neighbours.get(j);
+                    if(!isCore[neighbourIdx]){
+                        nearCore[neighbourIdx] = true;
+                    }
+                    //each pair is seen from both sides, only link it once
+                    else if(neighbourIdx > i){
+                        components.union(i, neighbourIdx);
+                    }
+                }
+            }
+            nRangeQueries.addAndGet(nQueries);
+            reportProgress(to - from);
+        });
+
+        //core points not yet linked could split a cluster, so no cluster is known
+        if(cancellationToken != null && cancellationToken.wasStopped()){
+            return allNoise();
+        }
+
+        //pass 3: label core points by their component, border points by their first neighbouring component
+        final int[] labels = new int[nPts];
+        ParallelRanges.forEachRange(pool, nPts, (from, to) -> {
+            IntList neighbours = new IntList();
+            long nQueries = 0;
+            for (int i = from; i < to; i++) {
+                if(isCore[i]){
+                    labels[i] = components.find(i);
+                    continue;
+                }
+                int label = NOISE;
+                //no core neighbours, so it is noise, no need to query
+                //once stopped the remaining border points are left as noise too
+                if(!nearCore[i] || shouldStop(i, from)){
+                    labels[i] = label;
+                    continue;
+                }
+                nQueries++;
+                int nNeighbours = ptsDatabase.rangeQuery(source.getX(i), source.getY(i), epsilon, neighbours);
+                for (int j = 0; j < nNeighbours; j++) {
+                    int neighbourIdx = neighbours.get(j);
+                    if(isCore[neighbourIdx]){
+                        int root = components.find(neighbourIdx);
+                        if(label == NOISE || root < label){
+                            label = root;
+                        }
+                    }
+                }
+                labels[i] = label;
+            }
+            nRangeQueries.addAndGet(nQueries);
+            reportProgress(to - from);
+        });
+
+        return collectClusters(labels, isCore);
+    }
+
+    private DBScanResult allNoise(){
+        int[] labels = new int[nPts];
+        Arrays.fill(labels, NOISE);
+        return toResult(labels, 0);
+    }
+
+    /**
+     * Renumber the labels from component roots to cluster ids in the order the sequential algorithm
+     * would discover the clusters, which is the order of their roots.
+     * @param labels The root of each point's cluster or NOISE, rewritten to cluster ids.
+     * @param isCore Whether each point is a core point.
+     * @return The result.
+     */
+    private DBScanResult collectClusters(int[] labels, boolean[] isCore){
+        //mark each root with its cluster id, encoded below NOISE so it can't be mistaken for a root index
+        int nClusters = 0;
+        for (int i = 0; i < nPts; i++) {
+            if(isCore[i] && labels[i] == i){
+                labels[i] = encodeRoot(nClusters++);
+            }
+        }
+
+        //only roots are referred to, so every other point can be relabelled in place
+        for (int i = 0; i < nPts; i++) {
+            int label = labels[i];
+            if(label >= 0){
+                labels[i] = encodeRoot(labels[label]);
+            }
+        }
+        for (int i = 0; i < nPts; i++) {
+            if(labels[i] < NOISE){
+                labels[i] = encodeRoot(labels[i]);
+            }
+        }
+
+        //clusters with one point only become noise in the result
+        return toResult(labels, nClusters);
+    }
+
+    private DBScanResult toResult(int[] labels, int nClusters){
+        return pts != null ? new DBScanResult(pts, labels, nClusters, nRangeQueries.get()) :
+                new DBScanResult(source, labels, nClusters, nRangeQueries.get());
+    }
+
+    /**
+     * @param i The point a chunk is up to.
+     * @param from The start of the chunk.
+     * @return True if the run has been stopped, the token itself is only asked every 256 points of a chunk.
+     */
+    private boolean shouldStop(int i, int from){
+        if(cancellationToken == null){
+            return false;
+        }
+        return cancellationToken.wasStopped() ||
+                (((i - from) & STOP_CHECK_MASK) == 0 && cancellationToken.shouldStop());
+    }
+
+    //maps cluster ids to values below NOISE, and back again
+    private static int encodeRoot(int value){
+        return NOISE - 1 - value;
+    }
+
+    private void reportProgress(int nProcessed){
+        if(progressListener != null){
+            long total = ptsProcessed.addAndGet(nProcessed);
+            progressListener.accept((double) total / ((long) nPts * N_PASSES));
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits an index range into chunks and processes the chunks on a {@link ForkJoinPool}.
+ * @author Luke Bermingham
+ */
+final class ParallelRanges {
+
+    //chunks per thread, gives some slack for load-balancing uneven chunks
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    /**
+     * The work done on one chunk of the range.
+     */
+    interface RangeBody {
+        /**
+         * @param from Start of the chunk (inclusive).
+         * @param to End of the chunk (exclusive).
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * The work done on one chunk of the range, producing a result for that chunk.
+     * @param <T> The type of result.
+     */
+    interface RangeFunction<T> {
+        /**
+         * @param from Start of the chunk (inclusive).
+         * @param to End of the chunk (exclusive).
+         * @return The result for this chunk.
+         */
+        T apply(int from, int to);
+    }
+
+    private ParallelRanges(){}
+
+    /**
+     * Process the range 0...n-1 in parallel and wait for all chunks to finish.
+     * @param pool The pool to run the chunks on.
+     * @param n The size of the range.
+     * @param body The work to do on each chunk.
+     */
+    static void forEachRange(ForkJoinPool pool, int n, RangeBody body){
+        int nChunks = Math.max(1, Math.min(n, pool.getParallelism() * CHUNKS_PER_THREAD));
+        int chunkSize = (n + nChunks - 1) / Math.max(nChunks, 1);
+        mapRanges(pool, n, Math.max(chunkSize, 1), (from, to) -> {
+            body.run(from, to);
+            return null;
+        });
+    }
+
+    /**
+     * Process the range 0...n-1 in fixed size chunks and wait for all chunks to finish.
+     * Because the chunks do not depend on the number of threads, neither does the order
+     * the results are combined in afterwards.
+     * @param pool The pool to run the chunks on, or null to run them one after another on this thread.
+     * @param n The size of the range.
+     * @param chunkSize The number of indices per chunk.
+     * @param fn The work to do on each chunk.
+     * @param <T> The type of result for each chunk.
+     * @return The result of each chunk, in range order.
+     */
+    static <T> List<T> mapRanges(ForkJoinPool pool, int n, int chunkSize, RangeFunction<T> fn){
+        List<T> results = new ArrayList<>((n + chunkSize - 1) / chunkSize);
+
+        if(pool == null){
+            for (int from = 0; from < n; from += chunkSize) {
+                results.add(fn.apply(from, Math.min(n, from + chunkSize)));
+            }
+            return results;
+        }
+
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(n, from + chunkSize);
+            tasks.add(() -> fn.apply(start, end));
+        }
+
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel work.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,171 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointSource2d;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lloyd's k-means over a {@link PointSource2d}, reading the points in one sequential pass per iteration,
+ * so a memory-mapped file is paged in order and the heap only holds the cluster id of each point.
+ * Unlike {@link FlatKMeans} the points are not copied and the centroid sums are rebuilt every pass.
+ * Each point goes to its closest centroid, ties to the lowest cluster index, and the iterations stop once
+ * the centroids come out exactly the same, which means no point changed cluster.
+ * Chunks of points are summed independently and combined in chunk order, so the result does not
+ * depend on the number of threads. A pass stopped part way through is undone by assigning the points it
+ * reached to the centroids of the pass before, which needs no more memory than the cluster ids.
+ * @author Luke Bermingham
+ */
+final class PointSourceKMeans {
+
+    //points per chunk of work, big enough to keep pages of a mapped file in sequence
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final PointSource2d pts;
+    private final int k;
+    private final int[] assignment;
+    private final double[] cx;
+    private final double[] cy;
+    //the centroids the last finished pass assigned the points to
+    private final double[] prevCx;
+    private final double[] prevCy;
+    private int nIterations = 0;
+
+    PointSourceKMeans(PointSource2d pts, int k, double[][] initialCentroids){
+        this.pts = pts;
+        this.k = k;
+        this.assignment = new int[pts.size()];
+        this.cx = new double[k];
+        this.cy = new double[k];
+        this.prevCx = new double[k];
+        this.prevCy = new double[k];
+        for (int j = 0; j < k; j++) {
+            cx[j] = initialCentroids[j][0];
+            cy[j] = initialCentroids[j][1];
+        }
+    }
+
+    /**
+     * Run until no point changes cluster.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @return The converged clusters.
+     */
+    KMeansResult run(ForkJoinPool pool){
+        return run(pool, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Run until no point changes cluster, or until stopped early.
+     * There is always at least one pass, so every point has a cluster.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @param maxIterations The most passes over the points.
+     * @param cancellationToken Checked before each chunk of points after the first pass, or null.
+     * @return The converged clusters, or the clusters of the last finished pass if stopped early.
+     */
+    KMeansResult run(ForkJoinPool pool, int maxIterations, CancellationToken cancellationToken){
+        while(true){
+            //the first pass is always finished, so every point has a cluster
+            final boolean canStop = nIterations > 0;
+            List<ChunkSums> chunks = ParallelRanges.mapRanges(pool, pts.size(), CHUNK_SIZE, (from, to) -> {
+                if(canStop && CancellationToken.shouldStop(cancellationToken)){
+                    return null;
+                }
+                return assignChunk(from, to, cx, cy);
+            });
+            if(chunks.contains(null)){
+                undoPartialPass(pool, chunks);
+                break;
+            }
+            nIterations++;
+
+            double[] sumX = new double[k];
+            double[] sumY = new double[k];
+            long[] counts = new long[k];
+            for (ChunkSums chunk : chunks) {
+                for (int j = 0; j < k; j++) {
+                    sumX[j] += chunk.sumX[j];
+                    sumY[j] += chunk.sumY[j];
+                    counts[j] += chunk.counts[j];
+                }
+            }
+
+            boolean moved = false;
+            for (int j = 0; j < k; j++) {
+                //empty clusters get a NaN centroid, which is never closest
+                double newX = sumX[j] / counts[j];
+                double newY = sumY[j] / counts[j];
+                moved |= Double.doubleToLongBits(newX) != Double.doubleToLongBits(cx[j]) ||
+                        Double.doubleToLongBits(newY) != Double.doubleToLongBits(cy[j]);
+                prevCx[j] = cx[j];
+                prevCy[j] = cy[j];
+                cx[j] = newX;
+                cy[j] = newY;
+            }
+            if(!moved || nIterations >= maxIterations || CancellationToken.shouldStop(cancellationToken)){
+                break;
+            }
+        }
+
+        double[][] centroids = new double[k][];
+        for (int j = 0; j < k; j++) {
+            centroids[j] = new double[]{cx[j], cy[j]};
+        }
+        return new KMeansResult(pts, centroids, assignment, nIterations);
+    }
+
+    /**
+     * Put the points the stopped pass reached back in the clusters of the last finished pass.
+     * Each point goes to its closest centroid, so assigning to the same centroids again gives the same clusters.
+     * @param pool The pool to process chunks of points on, or null to use this thread.
+     * @param chunks The chunks of the stopped pass, null for those it did not reach.
+     */
+    private void undoPartialPass(ForkJoinPool pool, List<ChunkSums> chunks){
+        ParallelRanges.mapRanges(pool, pts.size(), CHUNK_SIZE, (from, to) -> {
+            if(chunks.get(from / CHUNK_SIZE) != null){
+                assignChunk(from, to, prevCx, prevCy);
+            }
+            return null;
+        });
+    }
+
+    private ChunkSums assignChunk(int from, int to, double[] centroidXs, double[] centroidYs){
+        ChunkSums chunk = new ChunkSums(k);
+        for (int i = from; i < to; i++) {
+            double x = pts.getX(i);
+            double y = pts.getY(i);
+            int best = 0;
+            double bestDistSq = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < k; j++) {
+                double dx = centroidXs[j] - x;
+                double dy = centroidYs[j] - y;
+                double d = dx * dx + dy * dy;
+                if(d < bestDistSq){
+                    bestDistSq = d;
+                    best = j;
+                }
+            }
+            assignment[i] = best;
+            chunk.sumX[best] += x;
+            chunk.sumY[best] += y;
+            chunk.counts[best]++;
+        }
+        return chunk;
+    }
+
+    /**
+     * The centroid sums of one chunk of points.
+     */
+    private static final class ChunkSums {
+        final double[] sumX;
+        final double[] sumY;
+        final int[] counts;
+
+        ChunkSums(int k){
+            this.sumX = new double[k];
+            this.sumY = new double[k];
+            this.counts = new int[k];
+        }
+    }
+
+}
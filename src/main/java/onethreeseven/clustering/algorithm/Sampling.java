@@ -0,0 +1,74 @@
+package onethreeseven.clustering.algorithm;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Random sampling of indices without replacement.
+ * @author Luke Bermingham
+ */
+final class Sampling {
+
+    private static final int EMPTY = -1;
+
+    private Sampling(){}
+
+    /**
+     * Draw m distinct indices from 0...n-1, uniformly at random and in random order.
+     * Uses Robert Floyd's algorithm, so only does O(m) work and uses O(m) memory no matter how big n is.
+     * @param n The number of indices to draw from.
+     * @param m The number of indices to draw.
+     * @param random The source of randomness.
+     * @return The m indices.
+     */
+    static int[] sampleIndices(int n, int m, SplittableRandom random){
+        if(m < 0 || m > n){
+            throw new IllegalArgumentException("Cannot sample " + m + " indices from " + n);
+        }
+
+        //open-addressing set of the indices picked so far, at most half full
+        int capacity = Integer.highestOneBit(Math.max(m, 1) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        int[] picked = new int[capacity];
+        Arrays.fill(picked, EMPTY);
+
+        int[] sample = new int[m];
+        int nPicked = 0;
+
+        for (int j = n - m; j < n; j++) {
+            int candidate = random.nextInt(j + 1);
+            //if the candidate is already taken then j can't be, since j is new this round
+            if(!insert(picked, mask, candidate)){
+                candidate = j;
+                insert(picked, mask, candidate);
+            }
+            sample[nPicked++] = candidate;
+        }
+
+        //floyd picks a uniform set but not a uniform order, so shuffle
+        for (int i = m - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+        return sample;
+    }
+
+    /**
+     * @return True if the value was added, false if it was already in the set.
+     */
+    private static boolean insert(int[] set, int mask, int value){
+        int h = value * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while(set[slot] != EMPTY){
+            if(set[slot] == value){
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        set[slot] = value;
+        return true;
+    }
+
+}
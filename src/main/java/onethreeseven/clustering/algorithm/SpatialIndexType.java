@@ -0,0 +1,69 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+/**
+ * The spatial indices available for answering the neighbour queries of the density-based algorithms.
+ * @author Luke Bermingham
+ */
+public enum SpatialIndexType {
+
+    /**
+     * The JTS kd-tree, points inserted one at a time.
+     * Points with identical coordinates are merged into one entry.
+     */
+    KD_TREE {
+        @Override
+        NeighbourIndex2d build(PointSource2d pts, double epsilon) {
+            return new KdTreeIndex2d(pts);
+        }
+    },
+
+    /**
+     * A balanced kd-tree built once over all the points by median splits, stored in flat primitive arrays.
+     * Its depth does not depend on the order of the points, unlike {@link #KD_TREE}, and duplicate points are kept.
+     * Queries do not allocate.
+     */
+    BALANCED_KD_TREE {
+        @Override
+        NeighbourIndex2d build(PointSource2d pts, double epsilon) {
+            return new StaticKdTreeIndex2d(pts);
+        }
+    },
+
+    /**
+     * A hashed uniform grid with epsilon-sized cells, stored in flat primitive arrays.
+     * Queries do not allocate, usually the fastest choice.
+     * Built over a {@link PointSource2d} it reads the coordinates from the source instead of copying them.
+     */
+    GRID {
+        @Override
+        NeighbourIndex2d build(double[][] pts, double epsilon) {
+            return new GridIndex2d(pts, epsilon);
+        }
+
+        @Override
+        NeighbourIndex2d build(PointSource2d pts, double epsilon) {
+            return new GridIndex2d(pts, epsilon);
+        }
+    };
+
+    /**
+     * Build this type of spatial index.
+     * @param pts The points to index.
+     * @param epsilon The radius that most queries will use.
+     * @return The spatial index.
+     */
+    NeighbourIndex2d build(double[][] pts, double epsilon){
+        return build(PointSource2d.of(pts), epsilon);
+    }
+
+    /**
+     * Build this type of spatial index over points that are not stored as arrays.
+     * @param pts The points to index.
+     * @param epsilon The radius that most queries will use.
+     * @return The spatial index.
+     */
+    abstract NeighbourIndex2d build(PointSource2d pts, double epsilon);
+
+}
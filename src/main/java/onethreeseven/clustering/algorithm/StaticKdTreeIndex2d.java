@@ -0,0 +1,168 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.PointSource2d;
+
+/**
+ * Neighbour index that is a balanced kd-tree built once over all the points, rather than by inserting points one
+ * at a time, so its depth does not depend on the order of the points (trajectory points arrive sorted by time,
+ * which makes an insertion-built tree degrade towards a list).
+ * Each node splits its points at the median of its wider axis, so the tree is complete and is stored implicitly:
+ * node k has children 2k+1 and 2k+2, and only the split axis and value of each inner node are stored.
+ * The points are reordered so each leaf is a contiguous range, with their coordinates copied in that order,
+ * so queries scan primitive arrays in order and do not allocate.
+ * Unlike {@link KdTreeIndex2d} points with identical coordinates are all kept.
+ * @author Luke Bermingham
+ */
+class StaticKdTreeIndex2d implements NeighbourIndex2d {
+
+    //most points in a leaf
+    private static final int LEAF_SIZE = 16;
+
+    private final int nPts;
+    //number of inner nodes, the leaves are numbered from here
+    private final int nInner;
+
+    //split of each inner node, points left of the median are <= the split value and points right of it are >=
+    private final boolean[] splitOnX;
+    private final double[] splitValue;
+
+    //point index at each position
+    private final int[] ptOrder;
+    //coordinates at each position, in tree order
+    private final double[] xs;
+    private final double[] ys;
+
+    /**
+     * Build the tree.
+     * @param pts The points to index.
+     */
+    StaticKdTreeIndex2d(double[][] pts){
+        this(PointSource2d.of(pts));
+    }
+
+    /**
+     * Build the tree, copying the coordinates out of the source.
+     * @param pts The points to index.
+     */
+    StaticKdTreeIndex2d(PointSource2d pts){
+        this.nPts = pts.size();
+        this.ptOrder = new int[nPts];
+        this.xs = new double[nPts];
+        this.ys = new double[nPts];
+        for (int i = 0; i < nPts; i++) {
+            ptOrder[i] = i;
+            xs[i] = pts.getX(i);
+            ys[i] = pts.getY(i);
+        }
+
+        //halve until the leaves are small enough, every leaf at the same depth
+        int depth = 0;
+        while(((long) LEAF_SIZE << depth) < nPts){
+            depth++;
+        }
+        this.nInner = (1 << depth) - 1;
+        this.splitOnX = new boolean[nInner];
+        this.splitValue = new double[nInner];
+        build(0, 0, nPts);
+    }
+
+    private void build(int node, int start, int end){
+        if(node >= nInner){
+            return;
+        }
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int pos = start; pos < end; pos++) {
+            minX = Math.min(minX, xs[pos]);
+            minY = Math.min(minY, ys[pos]);
+            maxX = Math.max(maxX, xs[pos]);
+            maxY = Math.max(maxY, ys[pos]);
+        }
+
+        //inner nodes hold more than a leaf's worth of points, so the median exists
+        boolean onX = (maxX - minX) >= (maxY - minY);
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, onX);
+        splitOnX[node] = onX;
+        splitValue[node] = onX ? xs[mid] : ys[mid];
+
+        build(2 * node + 1, start, mid);
+        build(2 * node + 2, mid, end);
+    }
+
+    //quickselect positions lo..hi so position k holds the k-th smallest coordinate on the axis
+    private void select(int lo, int hi, int k, boolean onX){
+        final double[] coords = onX ? xs : ys;
+        while(hi > lo){
+            double pivot = coords[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while(i <= j){
+                while(coords[i] < pivot){
+                    i++;
+                }
+                while(coords[j] > pivot){
+                    j--;
+                }
+                if(i <= j){
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                hi = j;
+            }else if(k >= i){
+                lo = i;
+            }else{
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j){
+        int tmpIdx = ptOrder[i];
+        ptOrder[i] = ptOrder[j];
+        ptOrder[j] = tmpIdx;
+        double tmp = xs[i];
+        xs[i] = xs[j];
+        xs[j] = tmp;
+        tmp = ys[i];
+        ys[i] = ys[j];
+        ys[j] = tmp;
+    }
+
+    @Override
+    public int rangeQuery(double x, double y, double radius, IntList out) {
+        out.clear();
+        query(0, 0, nPts, x, y, radius, radius * radius, out);
+        return out.size();
+    }
+
+    private void query(int node, int start, int end, double x, double y, double radius, double radiusSq, IntList out){
+        if(node >= nInner){
+            for (int pos = start; pos < end; pos++) {
+                double dx = xs[pos] - x;
+                double dy = ys[pos] - y;
+                if(dx * dx + dy * dy <= radiusSq){
+                    out.add(ptOrder[pos]);
+                }
+            }
+            return;
+        }
+
+        int mid = (start + end) >>> 1;
+        double q = splitOnX[node] ? x : y;
+        double split = splitValue[node];
+        if(q - radius <= split){
+            query(2 * node + 1, start, mid, x, y, radius, radiusSq, out);
+        }
+        if(q + radius >= split){
+            query(2 * node + 2, mid, end, x, y, radius, radiusSq, out);
+        }
+    }
+
+}
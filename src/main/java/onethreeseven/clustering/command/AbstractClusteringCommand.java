@@ -1,7 +1,11 @@
 package onethreeseven.clustering.command;
 
+import onethreeseven.clustering.algorithm.CancellationToken;
 import onethreeseven.clustering.graphic.ClusterGraphic;
 import onethreeseven.clustering.model.Cluster;
+import onethreeseven.clustering.model.ClusterResultFile;
+import onethreeseven.clustering.model.MappedPoints2d;
+import onethreeseven.clustering.model.PointBuffer2d;
 import onethreeseven.common.util.ColorUtil;
 import onethreeseven.geo.projection.AbstractGeographicProjection;
 import onethreeseven.geo.projection.ProjectionEquirectangular;
@@ -9,10 +13,12 @@ import onethreeseven.jclimod.CLICommand;
 import onethreeseven.trajsuitePlugin.graphics.GraphicsPayload;
 import onethreeseven.trajsuitePlugin.graphics.LabelPrefab;
 import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
-import onethreeseven.trajsuitePlugin.model.EntitySupplier;
 import onethreeseven.trajsuitePlugin.model.TransactionProcessor;
 import onethreeseven.trajsuitePlugin.transaction.AddEntitiesTransaction;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract command from cluster commands like {@link KmeansCommand} and {@link DBScanCommand}.
@@ -26,14 +32,62 @@ public abstract class AbstractClusteringCommand extends CLICommand{
     protected abstract Cluster[] doClustering();
     protected abstract boolean clusterShouldBeVisibleOnLoad(Cluster cluster);
 
+    //set by a view so it can cancel the run, otherwise each run gets its own token
+    private CancellationToken cancellationToken = null;
+    private CancellationToken runToken = null;
+
+    /**
+     * @param cancellationToken A token to cancel the clustering with, from another thread, or null.
+     *                          Any time limit passed to the command is ignored when this is set.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * @return How long clustering may take, in seconds, before the clusters found so far are shown,
+     * or 0 for no limit.
+     */
+    protected double getTimeLimitSeconds(){
+        return 0;
+    }
+
+    /**
+     * @return The token of the current run, pass it to the algorithm's options.
+     */
+    protected CancellationToken getCancellationToken(){
+        return runToken;
+    }
+
     @Override
     protected boolean runImpl() {
-        Cluster[] clusters = doClustering();
+        if(cancellationToken != null){
+            this.runToken = cancellationToken;
+        }
+        else if(getTimeLimitSeconds() > 0){
+            this.runToken = new CancellationToken((long) (getTimeLimitSeconds() * 1000), TimeUnit.MILLISECONDS);
+        }
+        else{
+            this.runToken = new CancellationToken();
+        }
+
+        //on the shared scheduler, so clustering from the command line and the views share one bounded pool
+        Cluster[] clusters = ClusteringScheduler.getInstance().run(this::doClustering);
+        if(runToken.isCancelled()){
+            System.err.println("Clustering was cancelled.");
+            return false;
+        }
+        if(runToken.wasStopped()){
+            System.err.println("Clustering ran out of time, showing the clusters found so far.");
+        }
         outputClusters(clusters);
         return true;
     }
 
     protected <T extends Cluster> void outputClusters(T[] clusters){
+        if(clusters.length == 0){
+            return;
+        }
 
         AbstractGeographicProjection projection = new ProjectionEquirectangular();
         java.awt.Color[] nColors = ColorUtil.generateNColors(clusters.length);
@@ -72,46 +126,74 @@ public abstract class AbstractClusteringCommand extends CLICommand{
         }
     }
 
-    protected double[][] getPointsToCluster(){
-        //initialise points 2d
-        int nPts = 0;
-        ArrayList<double[]> pileOPoints = new ArrayList<>();
-
-        boolean foundEntitySupplier = false;
-
-        //get some points to cluster
-        ServiceLoader<EntitySupplier> serviceLoader = ServiceLoader.load(EntitySupplier.class);
-        for (EntitySupplier entitySupplier : serviceLoader) {
-            foundEntitySupplier = true;
-
-            Map<Class, Collection<Object>> selected = entitySupplier.supplyAllSelected();
-            for (Collection<Object> selectedObjs : selected.values()) {
-                for (Object selectedObj : selectedObjs) {
-                    if(selectedObj instanceof BoundingCoordinates){
-                        BoundingCoordinates coords = (BoundingCoordinates) selectedObj;
-                        Iterator<double[]> coordIter = coords.coordinateIter();
-                        while(coordIter.hasNext()){
-                            pileOPoints.add(coordIter.next());
-                            nPts++;
-                        }
-                    }
-                }
-            }
+    /**
+     * @return The selected entities with coordinates, these are the sources of the points to cluster,
+     * or null if there is no entity supplier.
+     */
+    protected List<BoundingCoordinates> getSelectedCoordinates(){
+        SelectedPointsCache cache = SelectedPointsCache.getInstance();
+        //if could not find entity supplier
+        if(!cache.refresh()){
+            System.err.println("No entity supplier found to supply selected entity for clustering.");
+            return null;
         }
+        return cache.getSelectedEntities();
+    }
 
-        //if could not find entity supplier
-        if(!foundEntitySupplier){
-            System.err.println("No entity supplier found to supply selected entity for k-means clustering.");
-            return new double[][]{};
+    /**
+     * @return The points of the selected entities packed in one buffer, from {@link SelectedPointsCache} so only
+     * entities selected since the last clustering (or view update) have their coordinates walked.
+     * This buffer is shared and must not be modified.
+     */
+    protected PointBuffer2d getPointBufferToCluster(){
+        SelectedPointsCache cache = SelectedPointsCache.getInstance();
+        if(!cache.refresh()){
+            System.err.println("No entity supplier found to supply selected entity for clustering.");
+            return new PointBuffer2d(0);
         }
+        return cache.getPointBuffer();
+    }
 
-        double[][] points2d = new double[nPts][2];
+    /**
+     * @return The points of the selected entities one array per point, for the algorithms that only take arrays.
+     * Made from {@link #getPointBufferToCluster()} on each call and not kept, so prefer the buffer where possible.
+     */
+    protected double[][] getPointsToCluster(){
+        return getPointBufferToCluster().toArray();
+    }
+
+    /**
+     * @param pointsFile A file of points in the layout of {@link MappedPoints2d}.
+     * @return The memory-mapped points, or null if the file could not be opened.
+     */
+    protected MappedPoints2d openPointsFile(String pointsFile){
+        try {
+            return MappedPoints2d.open(Paths.get(pointsFile));
+        } catch (IOException e) {
+            System.err.println("Could not open the points file " + pointsFile + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-        for (int i = 0; i < pileOPoints.size(); i++) {
-            double[] point2d = pileOPoints.get(i);
-            points2d[i] = point2d;
+    /**
+     * @param resultFile A file saved by {@link ClusterResultFile}.
+     * @param algorithm The algorithm the result must be from.
+     * @return The memory-mapped result, or null if the file could not be opened or is from another algorithm.
+     */
+    protected ClusterResultFile openResultFile(String resultFile, ClusterResultFile.Algorithm algorithm){
+        ClusterResultFile result;
+        try {
+            result = ClusterResultFile.open(Paths.get(resultFile));
+        } catch (IOException e) {
+            System.err.println("Could not open the result file " + resultFile + ": " + e.getMessage());
+            return null;
+        }
+        if(result.getAlgorithm() != algorithm){
+            System.err.println("The result file " + resultFile + " holds a " + result.getAlgorithm() +
+                    " result, not " + algorithm);
+            return null;
         }
-        return points2d;
+        return result;
     }
 
 }
@@ -13,7 +13,8 @@ public class ClusteringCommands extends AbstractCommandsListing {
     @Override
     protected CLICommand[] createCommands(JCommander jc, Object... args) {
         return new CLICommand[]{
-                new KmeansCommand()
+                new KmeansCommand(),
+                new HDBSCANCommand()
         };
     }
 }
@@ -0,0 +1,220 @@
+package onethreeseven.clustering.command;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The one pool that clustering work in this module runs on, shared by the clustering commands and views so
+ * clicking and editing do not make threads of their own. It is a work-stealing pool with a fixed number of
+ * named daemon threads, at least two so that one long clustering still leaves a thread for other work,
+ * though a job waits like any other when every thread is busy.
+ * Work that only needs the latest state, such as recomputing the points of the selection,
+ * is submitted through a {@link CoalescingTask} so a burst of requests runs the work once or twice, not once each.
+ * A coalescing task can wait a while before it runs to let a burst finish, the wait holds no thread of the pool.
+ * The number of jobs queued, running and coalesced away can be read while it runs.
+ * @author Luke Bermingham
+ */
+public final class ClusteringScheduler {
+
+    private static final AtomicInteger nThreadsMade = new AtomicInteger(0);
+    private static final ClusteringScheduler INSTANCE =
+            new ClusteringScheduler(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final ForkJoinPool pool;
+    private final AtomicInteger nQueued = new AtomicInteger(0);
+    private final AtomicInteger nRunning = new AtomicInteger(0);
+    private final AtomicLong nCompleted = new AtomicLong(0);
+    private final AtomicLong nCoalesced = new AtomicLong(0);
+
+    private ClusteringScheduler(int parallelism){
+        //never grow past the parallelism, a blocked worker just waits rather than being replaced
+        this.pool = new ForkJoinPool(parallelism, ClusteringScheduler::newThread, null, false,
+                0, parallelism, 1, p -> true, 60, TimeUnit.SECONDS);
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool){
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Clustering scheduler " + nThreadsMade.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public static ClusteringScheduler getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * Run a job on the pool.
+     * @param job The job.
+     * @return The result of the job, completed exceptionally if the job throws.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> job){
+        nQueued.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            nQueued.decrementAndGet();
+            return runCounted(job);
+        }, pool);
+    }
+
+    /**
+     * Run a job on the pool and wait for it. If this thread is already one of the pool's, such as a view's
+     * clustering running a command, the job runs here instead, so nested jobs never wait on a full pool.
+     * @param job The job.
+     * @return The result of the job.
+     * @throws RuntimeException If the job throws, the same exception.
+     */
+    public <T> T run(Supplier<T> job){
+        if(ForkJoinTask.getPool() == pool){
+            return job.get();
+        }
+        try{
+            return submit(job).join();
+        }catch (CompletionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error){
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> T runCounted(Supplier<T> job){
+        nRunning.incrementAndGet();
+        try{
+            return job.get();
+        }finally {
+            nRunning.decrementAndGet();
+            nCompleted.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param work Work that only needs to run once after any number of requests, see {@link CoalescingTask}.
+     * @return A task to request the work through, keep it for as long as the work may be requested.
+     */
+    public CoalescingTask coalescing(Runnable work){
+        return new CoalescingTask(work, pool);
+    }
+
+    /**
+     * @param work Work that only needs to run once after any number of requests, see {@link CoalescingTask}.
+     * @param delay How long to wait after a request before running the work, so requests that soon after are
+     *              folded into the same run. The wait is on a timer, it does not hold a thread of the pool.
+     * @param unit The unit of the delay.
+     * @return A task to request the work through, keep it for as long as the work may be requested.
+     */
+    public CoalescingTask coalescing(Runnable work, long delay, TimeUnit unit){
+        if(delay < 0){
+            throw new IllegalArgumentException("Delay must not be negative.");
+        }
+        return new CoalescingTask(work, delay == 0 ? pool : CompletableFuture.delayedExecutor(delay, unit, pool));
+    }
+
+    /**
+     * @return The number of threads in the pool.
+     */
+    public int getParallelism(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return The number of jobs and coalescing tasks waiting for a thread.
+     */
+    public int getNQueued(){
+        return nQueued.get();
+    }
+
+    /**
+     * @return The number of jobs and coalescing tasks running.
+     */
+    public int getNRunning(){
+        return nRunning.get();
+    }
+
+    /**
+     * @return The number of jobs and coalescing task runs that have finished.
+     */
+    public long getNCompleted(){
+        return nCompleted.get();
+    }
+
+    /**
+     * @return The number of requests to coalescing tasks that were folded into a request already waiting.
+     */
+    public long getNCoalesced(){
+        return nCoalesced.get();
+    }
+
+    /**
+     * Work that is requested often but only needs to see the latest state, like recomputing the points to cluster
+     * when the selection changes. A request while the work is waiting to run is folded into that run,
+     * a request while it runs makes it run once more afterwards, after the task's delay if it has one,
+     * so at most one run waits at a time. The work never runs twice at once.
+     */
+    public final class CoalescingTask {
+
+        private final Runnable work;
+        //the pool, or a timer that hands the run to the pool once the delay has passed
+        private final Executor executor;
+        private final AtomicBoolean requested = new AtomicBoolean(false);
+        //true from when a run is queued until it finishes
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private CoalescingTask(Runnable work, Executor executor){
+            this.work = work;
+            this.executor = executor;
+        }
+
+        /**
+         * Ask for the work to run, it runs on the pool soon after, or once the task's delay has passed,
+         * unless a run is already waiting.
+         */
+        public void request(){
+            if(requested.getAndSet(true)){
+                nCoalesced.incrementAndGet();
+            }
+            schedule();
+        }
+
+        private void schedule(){
+            if(scheduled.compareAndSet(false, true)){
+                nQueued.incrementAndGet();
+                executor.execute(this::runRequested);
+            }
+        }
+
+        private void runRequested(){
+            nQueued.decrementAndGet();
+            try{
+                if(requested.getAndSet(false)){
+                    runCounted(() -> {
+                        work.run();
+                        return null;
+                    });
+                }
+            }catch (RuntimeException e){
+                e.printStackTrace();
+            }finally {
+                scheduled.set(false);
+            }
+
+            //requests that came in during the run are served by one more, waiting out the delay again
+            if(requested.get()){
+                schedule();
+            }
+        }
+
+    }
+
+}
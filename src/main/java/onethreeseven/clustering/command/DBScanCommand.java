@@ -2,8 +2,17 @@ package onethreeseven.clustering.command;
 
 import com.beust.jcommander.Parameter;
 import onethreeseven.clustering.algorithm.DBScan;
+import onethreeseven.clustering.algorithm.DBScanOptions;
+import onethreeseven.clustering.algorithm.SpatialIndexType;
 import onethreeseven.clustering.model.Cluster;
+import onethreeseven.clustering.model.ClusterResultFile;
 import onethreeseven.clustering.model.DBScanCluster;
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.MappedPoints2d;
+import onethreeseven.clustering.model.PointSource2d;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.function.Consumer;
@@ -20,7 +29,30 @@ public class DBScanCommand extends AbstractClusteringCommand {
     @Parameter(names = {"-e", "--eps"}, description = "The proximity of points in space to be considered part of the same cluster.")
     private double epsMetres;
 
-    private double[][] points2d;
+    @Parameter(names = {"-t", "--threads"}, description = "The number of threads to cluster with, more than one uses parallel DBSCAN.")
+    private int nThreads = 1;
+
+    @Parameter(names = {"-tl", "--timeLimit"}, description = "Stop clustering after this many seconds and show " +
+            "the clusters found so far, points not reached yet are noise. 0 for no limit.")
+    private double timeLimitSeconds = 0;
+
+    @Parameter(names = {"-f", "--pointsFile"}, description = "Cluster the points in this file instead of the " +
+            "selected entities, the file is memory-mapped so it can be bigger than the heap. " +
+            "It holds little-endian doubles, x then y for each point. The size and bounds of each cluster are " +
+            "printed instead of adding the clusters as entities, use --resultFile to keep the cluster of every point.")
+    private String pointsFile = null;
+
+    @Parameter(names = {"-o", "--resultFile"}, description = "Also save the clusters to this file, " +
+            "so they can be loaded again with --loadResult instead of being recomputed.")
+    private String resultFile = null;
+
+    @Parameter(names = {"-l", "--loadResult"}, description = "Show the clusters saved in this file by --resultFile " +
+            "instead of clustering, the other parameters are ignored.")
+    private String loadResult = null;
+
+    //the memory-mapped points file or the packed points of the selected entities
+    private PointSource2d points2d;
+    private ClusterResultFile loadedResult;
 
     private Consumer<Double> progressListener;
 
@@ -28,9 +60,40 @@ public class DBScanCommand extends AbstractClusteringCommand {
         this.progressListener = progressListener;
     }
 
+    @Override
+    protected double getTimeLimitSeconds() {
+        return timeLimitSeconds;
+    }
+
     @Override
     protected Cluster[] doClustering() {
-        Collection<DBScanCluster> col = DBScan.run2d(points2d, epsMetres, minPts, progressListener);
+        Collection<DBScanCluster> col;
+        if(loadedResult != null){
+            col = loadedResult.toDBScanResult().getClusters();
+        }
+        else{
+            DBScanOptions options = new DBScanOptions().setCancellationToken(getCancellationToken());
+            if(pointsFile != null){
+                //the grid reads the mapped points in place, a kd-tree would copy them onto the heap
+                options.setIndexType(SpatialIndexType.GRID);
+            }
+            DBScanResult result = DBScan.run2dCompact(points2d, epsMetres, minPts,
+                    options.setParallelism(nThreads), progressListener);
+            //a partial result is not worth loading again
+            if(resultFile != null && !getCancellationToken().wasStopped()){
+                try {
+                    ClusterResultFile.write(Paths.get(resultFile), result, epsMetres, minPts);
+                } catch (IOException e) {
+                    System.err.println("Could not save the clusters to " + resultFile + ": " + e.getMessage());
+                }
+            }
+            //the points of a file may not fit in the heap as clusters, so only summarise them
+            if(pointsFile != null){
+                printSummaries(result);
+                return new DBScanCluster[0];
+            }
+            col = result.getClusters();
+        }
         DBScanCluster[] arr = new DBScanCluster[col.size()];
         Iterator<DBScanCluster> iter = col.iterator();
         int i = 0;
@@ -41,6 +104,45 @@ public class DBScanCommand extends AbstractClusteringCommand {
         return arr;
     }
 
+    /**
+     * Print the number of points and the bounding box of each cluster, and the number of noise points,
+     * found in one pass over the points.
+     */
+    private static void printSummaries(DBScanResult result){
+        PointSource2d pts = result.getPointSource();
+        int[] clusterIds = result.getClusterIdPerPoint();
+        int nClusters = result.getNClusters();
+        int[] sizes = new int[nClusters];
+        double[] minX = new double[nClusters];
+        double[] minY = new double[nClusters];
+        double[] maxX = new double[nClusters];
+        double[] maxY = new double[nClusters];
+        Arrays.fill(minX, Double.POSITIVE_INFINITY);
+        Arrays.fill(minY, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxX, Double.NEGATIVE_INFINITY);
+        Arrays.fill(maxY, Double.NEGATIVE_INFINITY);
+        int nNoise = 0;
+        for (int i = 0; i < clusterIds.length; i++) {
+            int id = clusterIds[i];
+            if(id == DBScanResult.NOISE){
+                nNoise++;
+                continue;
+            }
+            double x = pts.getX(i);
+            double y = pts.getY(i);
+            sizes[id]++;
+            minX[id] = Math.min(minX[id], x);
+            minY[id] = Math.min(minY[id], y);
+            maxX[id] = Math.max(maxX[id], x);
+            maxY[id] = Math.max(maxY[id], y);
+        }
+        System.out.println("Found " + nClusters + " clusters and " + nNoise + " noise points.");
+        for (int id = 0; id < nClusters; id++) {
+            System.out.println("Cluster-" + id + ": " + sizes[id] + " points, x " + minX[id] + " to " + maxX[id] +
+                    ", y " + minY[id] + " to " + maxY[id]);
+        }
+    }
+
     @Override
     protected boolean clusterShouldBeVisibleOnLoad(Cluster cluster) {
         return !(cluster instanceof DBScanCluster) || !((DBScanCluster) cluster).IsNoise();
@@ -53,13 +155,29 @@ public class DBScanCommand extends AbstractClusteringCommand {
 
     @Override
     protected boolean parametersValid() {
-        this.points2d = getPointsToCluster();
-        if(points2d.length < 2){
+        this.loadedResult = null;
+        if(loadResult != null){
+            this.loadedResult = openResultFile(loadResult, ClusterResultFile.Algorithm.DBSCAN);
+            return loadedResult != null;
+        }
+
+        if(pointsFile != null){
+            MappedPoints2d mappedPoints = openPointsFile(pointsFile);
+            if(mappedPoints == null){
+                return false;
+            }
+            this.points2d = mappedPoints;
+        }
+        else{
+            this.points2d = getPointBufferToCluster();
+        }
+        int nPts = points2d.size();
+        if(nPts < 2){
             System.err.println("There must be more than two points to perform clustering");
             return false;
         }
 
-        if(minPts < 1 || minPts > points2d.length){
+        if(minPts < 1 || minPts > nPts){
             System.err.println("In dbscan minPts must be greater than 1 and less than then number of points, " +
                     "was passed: " + minPts);
             return false;
@@ -71,6 +189,18 @@ public class DBScanCommand extends AbstractClusteringCommand {
             return false;
         }
 
+        if(nThreads < 1){
+            System.err.println("In dbscan the number of threads must be at least 1, " +
+                    "was passed: " + nThreads);
+            return false;
+        }
+
+        if(timeLimitSeconds < 0){
+            System.err.println("In dbscan the time limit must not be negative, " +
+                    "was passed: " + timeLimitSeconds);
+            return false;
+        }
+
         return true;
     }
 
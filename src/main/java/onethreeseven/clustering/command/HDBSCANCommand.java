@@ -0,0 +1,131 @@
+package onethreeseven.clustering.command;
+
+import com.beust.jcommander.Parameter;
+import onethreeseven.clustering.algorithm.HDBSCAN;
+import onethreeseven.clustering.model.Cluster;
+import onethreeseven.clustering.model.DBScanCluster;
+import onethreeseven.clustering.model.HDBSCANCluster;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Commands for {@link HDBSCAN}
+ * @author Luke Bermingham
+ */
+public class HDBSCANCommand extends AbstractClusteringCommand {
+
+    @Parameter(names = {"-m", "--minPts"}, description = "The number of points that make a point dense.")
+    private int minPts = 5;
+
+    @Parameter(names = {"-s", "--minClusterSize"}, description = "The fewest points a cluster can have.")
+    private int minClusterSize = 5;
+
+    @Parameter(names = {"-t", "--threads"}, description = "The number of threads to cluster with.")
+    private int nThreads = 1;
+
+    private double[][] points2d;
+
+    private Consumer<Double> progressListener;
+
+    public void setProgressListener(Consumer<Double> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    protected Cluster[] doClustering() {
+        List<HDBSCANCluster> clusters = HDBSCAN.run2d(points2d, minPts, minClusterSize, nThreads, progressListener).getClusters();
+        return clusters.toArray(new HDBSCANCluster[0]);
+    }
+
+    @Override
+    protected boolean clusterShouldBeVisibleOnLoad(Cluster cluster) {
+        return !(cluster instanceof DBScanCluster) || !((DBScanCluster) cluster).IsNoise();
+    }
+
+    @Override
+    protected String getUsage() {
+        return "hdbscan -m 5 -s 20";
+    }
+
+    @Override
+    protected boolean parametersValid() {
+        this.points2d = getPointsToCluster();
+        if(points2d.length < 2){
+            System.err.println("There must be more than two points to perform clustering");
+            return false;
+        }
+
+        if(minPts < 1 || minPts > points2d.length){
+            System.err.println("In hdbscan minPts must be at least 1 and at most the number of points, " +
+                    "was passed: " + minPts);
+            return false;
+        }
+
+        if(minClusterSize < 2){
+            System.err.println("In hdbscan the min cluster size must be at least 2, " +
+                    "was passed: " + minClusterSize);
+            return false;
+        }
+
+        if(nThreads < 1){
+            System.err.println("In hdbscan the number of threads must be at least 1, " +
+                    "was passed: " + nThreads);
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean shouldStoreRerunAlias() {
+        return false;
+    }
+
+    @Override
+    public String generateRerunAliasBasedOnParams() {
+        return null;
+    }
+
+    @Override
+    public String getCategory() {
+        return "Mining";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "hdbscan";
+    }
+
+    @Override
+    public String[] getOtherCommandNames() {
+        return new String[0];
+    }
+
+    @Override
+    public String getDescription() {
+        return "Runs HDBSCAN* clustering on all selected entities with coordinates, " +
+                "finding density-based clusters of varying density.";
+    }
+
+    @Override
+    protected String getClusterLayerName() {
+        return "HDBSCAN Clusters";
+    }
+
+    @Override
+    protected String getClusterPrefix(Cluster cluster) {
+        if(cluster instanceof DBScanCluster && ((DBScanCluster) cluster).IsNoise()){
+            return "NOISE-";
+        }
+        return "Cluster-";
+    }
+
+    @Override
+    protected double[] getClusterAnnotationCartesianCoord(Cluster cluster) {
+        if(!cluster.getPoints2d().isEmpty()){
+            return cluster.getPoints2d().get(cluster.getPoints2d().size() / 2);
+        }
+        return null;
+    }
+}
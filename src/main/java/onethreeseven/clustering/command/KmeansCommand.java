@@ -2,8 +2,18 @@ package onethreeseven.clustering.command;
 
 import com.beust.jcommander.Parameter;
 import onethreeseven.clustering.algorithm.KMeans;
+import onethreeseven.clustering.algorithm.KMeansOptions;
+import onethreeseven.clustering.algorithm.MiniBatchKMeans;
 import onethreeseven.clustering.model.Cluster;
+import onethreeseven.clustering.model.ClusterResultFile;
 import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.MappedPoints2d;
+import onethreeseven.clustering.model.PointSource2d;
+import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * The CLI command to run K-means from {@link KMeans}.
@@ -14,13 +24,50 @@ public class KmeansCommand extends AbstractClusteringCommand {
     @Parameter(names = {"-k", "--kClusters"}, description = "The desired number of clusters to find.")
     private int k;
 
-    private double[][] points2d;
+    @Parameter(names = {"-t", "--threads"}, description = "The number of threads used to assign points to clusters.")
+    private int nThreads = 1;
+
+    @Parameter(names = {"-mb", "--miniBatch"}, description = "Stream the points in batches of this size " +
+            "using mini-batch k-means, the clusters only have centroids. 0 runs k-means on all points at once.")
+    private int batchSize = 0;
+
+    @Parameter(names = {"-tl", "--timeLimit"}, description = "Stop clustering after this many seconds and show " +
+            "the clusters of the last finished iteration, or of the batches so far with mini-batches. 0 for no limit.")
+    private double timeLimitSeconds = 0;
+
+    @Parameter(names = {"-mi", "--maxIterations"}, description = "Stop after moving points between clusters " +
+            "this many times, even if they have not converged. 0 for no limit. Not used with mini-batches.")
+    private int maxIterations = 0;
+
+    @Parameter(names = {"-f", "--pointsFile"}, description = "Cluster the points in this file instead of the " +
+            "selected entities, the file is memory-mapped so it can be bigger than the heap. " +
+            "It holds little-endian doubles, x then y for each point. The starting centroids are found from a " +
+            "sample of the points rather than 20 restarts over all of them, and the clusters only have centroids.")
+    private String pointsFile = null;
+
+    @Parameter(names = {"-o", "--resultFile"}, description = "Also save the clusters to this file, " +
+            "so they can be loaded again with --loadResult instead of being recomputed.")
+    private String resultFile = null;
+
+    @Parameter(names = {"-l", "--loadResult"}, description = "Show the clusters saved in this file by --resultFile " +
+            "instead of clustering, the other parameters are ignored. The clusters only have centroids.")
+    private String loadResult = null;
+
+    //the memory-mapped points file or the packed points of the selected entities
+    private PointSource2d points2d;
+    private ClusterResultFile loadedResult;
+    private List<BoundingCoordinates> sources;
 
     @Override
     protected String getUsage() {
         return "kmeans -k 3";
     }
 
+    @Override
+    protected double getTimeLimitSeconds() {
+        return timeLimitSeconds;
+    }
+
     @Override
     protected double[] getClusterAnnotationCartesianCoord(Cluster cluster) {
         if(cluster instanceof KMeansCluster){
@@ -31,7 +78,53 @@ public class KmeansCommand extends AbstractClusteringCommand {
 
     @Override
     protected Cluster[] doClustering() {
-        return KMeans.run2d(points2d, k);
+        if(loadedResult != null){
+            return loadedResult.toKMeansResult().getCentroidClusters();
+        }
+        if(batchSize > 0){
+            MiniBatchKMeans miniBatch = new MiniBatchKMeans(k, batchSize);
+            for (BoundingCoordinates source : sources) {
+                //once stopped no more points are fed, the clusters are those of the batches so far
+                if(!miniBatch.addAll(source.coordinateIter(), getCancellationToken())){
+                    break;
+                }
+            }
+            miniBatch.flush();
+            //the first batch needs k points to seed the centroids from
+            if(miniBatch.getNPointsSeen() < k && !getCancellationToken().wasStopped()){
+                System.err.println("In k-means there must be at least k points, the selected entities have " +
+                        miniBatch.getNPointsSeen() + " and k was passed: " + k);
+            }
+            return miniBatch.getClusters();
+        }
+        KMeansOptions options = new KMeansOptions()
+                .setParallelism(nThreads)
+                .setCancellationToken(getCancellationToken());
+        if(maxIterations > 0){
+            options.setMaxIterations(maxIterations);
+        }
+        if(pointsFile != null){
+            //the points of a file may not fit on the heap, so seed from a sample and only make centroids
+            KMeansResult result = KMeans.run2d(points2d, k, options);
+            saveResult(result);
+            return result.getCentroidClusters();
+        }
+
+        //the selected entities fit on the heap, so use the best of 20 Bradley-Fayyad starts over all the points
+        KMeansResult result = KMeans.run2d(points2d, k, 20, options);
+        saveResult(result);
+        return result.getClusters();
+    }
+
+    private void saveResult(KMeansResult result){
+        //a partial result is not worth loading again
+        if(resultFile != null && !getCancellationToken().wasStopped()){
+            try {
+                ClusterResultFile.write(Paths.get(resultFile), result);
+            } catch (IOException e) {
+                System.err.println("Could not save the clusters to " + resultFile + ": " + e.getMessage());
+            }
+        }
     }
 
     @Override
@@ -41,18 +134,77 @@ public class KmeansCommand extends AbstractClusteringCommand {
 
     @Override
     protected boolean parametersValid() {
+        this.loadedResult = null;
+        if(loadResult != null){
+            this.loadedResult = openResultFile(loadResult, ClusterResultFile.Algorithm.KMEANS);
+            return loadedResult != null;
+        }
 
-        this.points2d = getPointsToCluster();
-        if(points2d.length < 2){
+        if(k < 1){
+            System.err.println("In k-means k must be greater than 1, was passed: " + k);
+            return false;
+        }
+
+        if(batchSize < 0 || (batchSize > 0 && batchSize < k)){
+            System.err.println("In k-means the mini-batch size must be 0 or at least k, " +
+                    "was passed: " + batchSize);
+            return false;
+        }
+
+        if((pointsFile != null || resultFile != null) && batchSize > 0){
+            System.err.println("In k-means mini-batches cannot be used with a points file or a result file.");
+            return false;
+        }
+
+        if(timeLimitSeconds < 0 || maxIterations < 0){
+            System.err.println("In k-means the time limit and max iterations must not be negative, " +
+                    "was passed: " + timeLimitSeconds + " and " + maxIterations);
+            return false;
+        }
+
+        //each point is only seen once by mini-batches, so there are no iterations to limit
+        if(maxIterations > 0 && batchSize > 0){
+            System.err.println("In k-means max iterations cannot be used with mini-batches, " +
+                    "use the time limit to stop early instead.");
+            return false;
+        }
+
+        if(batchSize > 0){
+            //points are streamed from the entities, so don't collect them up-front
+            this.sources = getSelectedCoordinates();
+            if(sources == null){
+                return false;
+            }
+            return true;
+        }
+
+        if(pointsFile != null){
+            MappedPoints2d mappedPoints = openPointsFile(pointsFile);
+            if(mappedPoints == null){
+                return false;
+            }
+            this.points2d = mappedPoints;
+        }
+        else{
+            this.points2d = getPointBufferToCluster();
+        }
+        int nPts = points2d.size();
+        if(nPts < 2){
             System.err.println("There must be more than two points to perform clustering");
             return false;
         }
 
-        if(k < 1 || k > points2d.length){
+        if(k < 1 || k > nPts){
             System.err.println("In k-means k must be greater than 1 and less than then number of points, " +
                     "was passed: " + k);
             return false;
         }
+
+        if(nThreads < 1){
+            System.err.println("In k-means the number of threads must be at least 1, " +
+                    "was passed: " + nThreads);
+            return false;
+        }
         return true;
     }
 
@@ -0,0 +1,259 @@
+package onethreeseven.clustering.command;
+
+import onethreeseven.clustering.model.PointBuffer2d;
+import onethreeseven.trajsuitePlugin.model.BaseTrajSuiteProgram;
+import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
+import onethreeseven.trajsuitePlugin.model.EntitySupplier;
+import onethreeseven.trajsuitePlugin.model.Layers;
+import onethreeseven.trajsuitePlugin.transaction.AddEntitiesTransaction;
+import onethreeseven.trajsuitePlugin.transaction.AddEntityUnit;
+import onethreeseven.trajsuitePlugin.transaction.RemoveEntitiesTransaction;
+import onethreeseven.trajsuitePlugin.transaction.RemoveEntityUnit;
+import java.util.*;
+
+/**
+ * The points of the selected entities, shared by the clustering commands and views so the coordinates of each
+ * entity are only walked once. The coordinates of each entity are packed into one array (x then y for each point)
+ * and cached by the identity of the entity. Entities are packed as the add transactions of the layers bring them in
+ * and dropped as the remove transactions take them out, so an entity replaced by an edit is packed again and
+ * the rest are not. Refreshing asks the entity suppliers for the current selection, packs only the selected
+ * entities not packed yet and drops the ones no longer selected, so a change to the selection costs
+ * time in the entities that changed rather than all the selected points.
+ * An entity whose coordinates are changed in place, rather than replaced, must be passed to {@link #invalidate(Object)}.
+ * The points are only handed out packed in a {@link PointBuffer2d}, an array per point is never kept here as it
+ * would cost several times the memory of the packed points for as long as the selection lasts.
+ * @author Luke Bermingham
+ */
+public final class SelectedPointsCache {
+
+    private static final SelectedPointsCache INSTANCE = new SelectedPointsCache();
+
+    //packed coordinates of each cached entity, by identity since entities don't define equality for this
+    private final IdentityHashMap<Object, double[]> packedByEntity = new IdentityHashMap<>();
+    //the selected entities in supplier order, as of the last refresh
+    private List<BoundingCoordinates> selected = Collections.emptyList();
+    private int nPoints = 0;
+    //the points of the selected entities, made when first asked for after the selection changes
+    private PointBuffer2d buffer = new PointBuffer2d(0);
+    //entities brought in by add transactions, by layer and id, so remove transactions can find them
+    private final Map<String, Object> entityById = new HashMap<>();
+    private List<EntitySupplier> entitySuppliers = null;
+    private boolean listeningToLayers = false;
+
+    private SelectedPointsCache(){}
+
+    public static SelectedPointsCache getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * Update the cache to the current selection of every entity supplier.
+     * @return False if there is no entity supplier, in which case nothing is selected.
+     */
+    public synchronized boolean refresh(){
+        List<BoundingCoordinates> nowSelected = new ArrayList<>();
+        if(entitySuppliers == null){
+            List<EntitySupplier> suppliers = new ArrayList<>();
+            ServiceLoader.load(EntitySupplier.class).forEach(suppliers::add);
+            this.entitySuppliers = suppliers;
+        }
+
+        for (EntitySupplier entitySupplier : entitySuppliers) {
+            Map<Class, Collection<Object>> allSelected = entitySupplier.supplyAllSelected();
+            if(allSelected == null){
+                continue;
+            }
+            for (Collection<Object> entityCol : allSelected.values()) {
+                for (Object entityObj : entityCol) {
+                    if(entityObj instanceof BoundingCoordinates){
+                        nowSelected.add((BoundingCoordinates) entityObj);
+                    }
+                }
+            }
+        }
+
+        listenToLayers();
+        update(nowSelected);
+        return !entitySuppliers.isEmpty();
+    }
+
+    /**
+     * Follow the add and remove transactions of the layers, once the program is running.
+     * Packing is done on the clustering scheduler so the thread that adds the entities is not held up.
+     */
+    private void listenToLayers(){
+        if(listeningToLayers){
+            return;
+        }
+        BaseTrajSuiteProgram program = BaseTrajSuiteProgram.getInstance();
+        if(program == null){
+            return;
+        }
+        Layers layers = program.getLayers();
+        layers.addEntitiesTransactionProperty.addListener((observable, oldValue, newValue) -> {
+            if(newValue != null){
+                ClusteringScheduler.getInstance().submit(() -> {
+                    entitiesAdded(newValue);
+                    return null;
+                });
+            }
+        });
+        layers.removeEntitiesTransactionProperty.addListener((observable, oldValue, newValue) -> {
+            if(newValue != null){
+                entitiesRemoved(newValue);
+            }
+        });
+        this.listeningToLayers = true;
+    }
+
+    /**
+     * Pack the entities with coordinates that a transaction added, replacing any earlier entity with the same id.
+     * @param transaction The add transaction.
+     */
+    synchronized void entitiesAdded(AddEntitiesTransaction transaction){
+        for (AddEntityUnit unit : transaction.getData()) {
+            Object entity = unit.getEntity().getModel();
+            Object replaced = entityById.put(unit.getLayername() + "/" + unit.getEntity().getId(), entity);
+            if(replaced != null && replaced != entity){
+                invalidate(replaced);
+            }
+            if(entity instanceof BoundingCoordinates && !packedByEntity.containsKey(entity)){
+                packedByEntity.put(entity, pack((BoundingCoordinates) entity));
+            }
+        }
+    }
+
+    /**
+     * Drop the packed points of the entities a transaction removed.
+     * @param transaction The remove transaction.
+     */
+    synchronized void entitiesRemoved(RemoveEntitiesTransaction transaction){
+        for (RemoveEntityUnit unit : transaction.getData()) {
+            Object entity = entityById.remove(unit.getLayername() + "/" + unit.getEntityId());
+            if(entity != null){
+                invalidate(entity);
+            }
+        }
+    }
+
+    /**
+     * Update the cache to the given selection.
+     * @param nowSelected The selected entities in supplier order.
+     */
+    synchronized void update(List<BoundingCoordinates> nowSelected){
+        if(sameEntities(selected, nowSelected)){
+            return;
+        }
+
+        //pack the newly selected entities and forget the ones no longer selected, those just added are kept
+        //until the next change to the selection so they can be selected without being walked again
+        IdentityHashMap<Object, double[]> stillSelected = new IdentityHashMap<>(nowSelected.size());
+        int nPts = 0;
+        for (BoundingCoordinates entity : nowSelected) {
+            double[] packed = packedByEntity.get(entity);
+            if(packed == null){
+                packed = pack(entity);
+            }
+            stillSelected.put(entity, packed);
+            nPts += packed.length / 2;
+        }
+        packedByEntity.clear();
+        packedByEntity.putAll(stillSelected);
+
+        this.selected = Collections.unmodifiableList(nowSelected);
+        this.nPoints = nPts;
+        this.buffer = null;
+    }
+
+    private static boolean sameEntities(List<BoundingCoordinates> a, List<BoundingCoordinates> b){
+        if(a.size() != b.size()){
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if(a.get(i) != b.get(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] pack(BoundingCoordinates entity){
+        double[] packed = new double[64];
+        int size = 0;
+        Iterator<double[]> coordIter = entity.coordinateIter();
+        while(coordIter.hasNext()){
+            double[] coord = coordIter.next();
+            if(size == packed.length){
+                packed = Arrays.copyOf(packed, packed.length * 2);
+            }
+            packed[size++] = coord[0];
+            packed[size++] = coord[1];
+        }
+        return Arrays.copyOf(packed, size);
+    }
+
+    /**
+     * Forget the cached points of an entity, so they are walked again next refresh.
+     * If the entity is selected nothing counts as selected until then.
+     * @param entity An entity whose coordinates changed.
+     */
+    public synchronized void invalidate(Object entity){
+        if(packedByEntity.remove(entity) != null && isSelected(entity)){
+            //the next refresh sees a changed selection, so repacks the entity
+            this.selected = Collections.emptyList();
+            this.nPoints = 0;
+            this.buffer = new PointBuffer2d(0);
+        }
+    }
+
+    private boolean isSelected(Object entity){
+        for (BoundingCoordinates selectedEntity : selected) {
+            if(selectedEntity == entity){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget every cached entity, so the next refresh walks all the selected entities again.
+     */
+    public synchronized void clear(){
+        packedByEntity.clear();
+        entityById.clear();
+        this.selected = Collections.emptyList();
+        this.nPoints = 0;
+        this.buffer = new PointBuffer2d(0);
+    }
+
+    /**
+     * @return The selected entities as of the last refresh.
+     */
+    public synchronized List<BoundingCoordinates> getSelectedEntities(){
+        return selected;
+    }
+
+    /**
+     * @return The number of points of the selected entities as of the last refresh.
+     */
+    public synchronized int getNPoints(){
+        return nPoints;
+    }
+
+    /**
+     * @return The points of the selected entities as of the last refresh, in supplier order.
+     * The same buffer is returned until the selection changes, so it must not be modified.
+     */
+    public synchronized PointBuffer2d getPointBuffer(){
+        if(buffer == null){
+            PointBuffer2d pts = new PointBuffer2d(nPoints);
+            for (BoundingCoordinates entity : selected) {
+                double[] packed = packedByEntity.get(entity);
+                pts.addPacked(packed, packed.length / 2);
+            }
+            this.buffer = pts;
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,383 @@
+package onethreeseven.clustering.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A clustering result saved to a binary file, so it can be reloaded instead of recomputed.
+ * The file is columnar: a fixed header holding the run parameters, then the x column and the y column of the points,
+ * the x and y columns of the centroids, the cluster id column and a noise flag column, all little-endian.
+ * Opening the file memory-maps it, so the points, cluster ids and noise flags are read from the file as they are used,
+ * and {@link #toDBScanResult()} or {@link #toKMeansResult()} build the compact results over the mapped points.
+ * @author Luke Bermingham
+ */
+public class ClusterResultFile {
+
+    /**
+     * The algorithm that made a result, which decides which run parameters are set.
+     */
+    public enum Algorithm {
+        DBSCAN,
+        KMEANS
+    }
+
+    //"137C"
+    private static final int MAGIC = 0x31333743;
+    private static final int VERSION = 1;
+    //magic, version, algorithm, nPts, nClusters, minPts, epsilon, nRangeQueries, nIterations, then reserved
+    private static final int HEADER_BYTES = 64;
+
+    //elements per mapped region, so a region of doubles is 1GB and fits in one buffer
+    private static final int REGION_SHIFT = 27;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+
+    private final Path file;
+    private final Algorithm algorithm;
+    private final int nPts;
+    private final int nClusters;
+    private final int minPts;
+    private final double epsilon;
+    private final long nRangeQueries;
+    private final int nIterations;
+    private final double[][] centroids;
+
+    private final DoubleBuffer[] xs;
+    private final DoubleBuffer[] ys;
+    private final IntBuffer[] clusterIds;
+    private final ByteBuffer[] noise;
+
+    private ClusterResultFile(Path file, FileChannel channel, ByteBuffer header) throws IOException {
+        this.file = file;
+        this.algorithm = Algorithm.values()[header.getInt(8)];
+        this.nPts = header.getInt(12);
+        this.nClusters = header.getInt(16);
+        this.minPts = header.getInt(20);
+        this.epsilon = header.getDouble(24);
+        this.nRangeQueries = header.getLong(32);
+        this.nIterations = header.getInt(40);
+
+        long offset = HEADER_BYTES;
+        this.xs = mapDoubles(channel, offset, nPts);
+        offset += (long) nPts * Double.BYTES;
+        this.ys = mapDoubles(channel, offset, nPts);
+        offset += (long) nPts * Double.BYTES;
+
+        //centroids are few, so they are read onto the heap
+        ByteBuffer centroidBytes = ByteBuffer.allocate(2 * nClusters * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while(centroidBytes.hasRemaining()){
+            if(channel.read(centroidBytes, offset + centroidBytes.position()) < 0){
+                throw new IOException(file + " ended before its centroids.");
+            }
+        }
+        this.centroids = new double[nClusters][];
+        for (int c = 0; c < nClusters; c++) {
+            centroids[c] = new double[]{
+                    centroidBytes.getDouble(c * Double.BYTES),
+                    centroidBytes.getDouble((nClusters + c) * Double.BYTES)};
+        }
+        offset += 2L * nClusters * Double.BYTES;
+
+        ByteBuffer[] idRegions = mapRegions(channel, offset, nPts, Integer.BYTES);
+        this.clusterIds = new IntBuffer[idRegions.length];
+        for (int r = 0; r < idRegions.length; r++) {
+            clusterIds[r] = idRegions[r].asIntBuffer();
+        }
+        offset += (long) nPts * Integer.BYTES;
+        this.noise = mapRegions(channel, offset, nPts, 1);
+    }
+
+    ////////////////////////////
+    //Writing
+    ////////////////////////////
+
+    /**
+     * Save a DBSCAN result, replacing the file if it exists.
+     * The centroid of each cluster is the mean of its points.
+     * @param file The file to write.
+     * @param result The result.
+     * @param epsilon The epsilon the result was found with.
+     * @param minPts The minPts the result was found with.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path file, DBScanResult result, double epsilon, int minPts) throws IOException {
+        PointSource2d pts = result.getPointSource();
+        int nClusters = result.getNClusters();
+        double[][] centroids = new double[nClusters][2];
+        for (int i = 0; i < pts.size(); i++) {
+            int clusterId = result.getClusterId(i);
+            if(clusterId != DBScanResult.NOISE){
+                centroids[clusterId][0] += pts.getX(i);
+                centroids[clusterId][1] += pts.getY(i);
+            }
+        }
+        for (int c = 0; c < nClusters; c++) {
+            centroids[c][0] /= result.getClusterSize(c);
+            centroids[c][1] /= result.getClusterSize(c);
+        }
+        write(file, Algorithm.DBSCAN, pts, centroids, result::getClusterId,
+                minPts, epsilon, result.getNRangeQueries(), 0);
+    }
+
+    /**
+     * Save a k-means result, replacing the file if it exists.
+     * @param file The file to write.
+     * @param result The result.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path file, KMeansResult result) throws IOException {
+        write(file, Algorithm.KMEANS, result.getPoints(), result.getCentroids(), result::getClusterId,
+                0, Double.NaN, 0, result.getNIterations());
+    }
+
+    private static void write(Path file, Algorithm algorithm, PointSource2d pts, double[][] centroids,
+                              IntUnaryOperator clusterIdOf, int minPts, double epsilon,
+                              long nRangeQueries, int nIterations) throws IOException {
+        int nPts = pts.size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            buffer.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(algorithm.ordinal())
+                    .putInt(nPts)
+                    .putInt(centroids.length)
+                    .putInt(minPts)
+                    .putDouble(epsilon)
+                    .putLong(nRangeQueries)
+                    .putInt(nIterations);
+            buffer.position(HEADER_BYTES);
+
+            //every column is written whole before the next, so the file is written front to back
+            for (int i = 0; i < nPts; i++) {
+                ensureRemaining(buffer, channel, Double.BYTES).putDouble(pts.getX(i));
+            }
+            for (int i = 0; i < nPts; i++) {
+                ensureRemaining(buffer, channel, Double.BYTES).putDouble(pts.getY(i));
+            }
+            for (double[] centroid : centroids) {
+                ensureRemaining(buffer, channel, Double.BYTES).putDouble(centroid[0]);
+            }
+            for (double[] centroid : centroids) {
+                ensureRemaining(buffer, channel, Double.BYTES).putDouble(centroid[1]);
+            }
+            for (int i = 0; i < nPts; i++) {
+                ensureRemaining(buffer, channel, Integer.BYTES).putInt(clusterIdOf.applyAsInt(i));
+            }
+            for (int i = 0; i < nPts; i++) {
+                boolean isNoise = clusterIdOf.applyAsInt(i) == DBScanResult.NOISE;
+                ensureRemaining(buffer, channel, 1).put((byte) (isNoise ? 1 : 0));
+            }
+            drain(buffer, channel);
+        }
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, FileChannel channel, int nBytes) throws IOException {
+        if(buffer.remaining() < nBytes){
+            drain(buffer, channel);
+        }
+        return buffer;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    ////////////////////////////
+    //Reading
+    ////////////////////////////
+
+    /**
+     * Map a saved result.
+     * @param file The file, written by one of the write methods.
+     * @return The result, reading its points from the file.
+     * @throws IOException If the file cannot be read, or is not a saved result.
+     */
+    public static ClusterResultFile open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining()){
+                if(channel.read(header) < 0){
+                    throw new IOException(file + " is too short to be a saved clustering result.");
+                }
+            }
+            if(header.getInt(0) != MAGIC){
+                throw new IOException(file + " is not a saved clustering result.");
+            }
+            if(header.getInt(4) != VERSION){
+                throw new IOException(file + " is version " + header.getInt(4) + ", only version " + VERSION + " can be read.");
+            }
+            int algorithmIdx = header.getInt(8);
+            int nPts = header.getInt(12);
+            int nClusters = header.getInt(16);
+            if(algorithmIdx < 0 || algorithmIdx >= Algorithm.values().length || nPts < 0 || nClusters < 0){
+                throw new IOException(file + " has a corrupt header.");
+            }
+            long expectedBytes = HEADER_BYTES + nPts * (2L * Double.BYTES + Integer.BYTES + 1) +
+                    nClusters * 2L * Double.BYTES;
+            if(channel.size() != expectedBytes){
+                throw new IOException(file + " is " + channel.size() + " bytes, expected " + expectedBytes +
+                        " for " + nPts + " points and " + nClusters + " clusters.");
+            }
+            //the mappings stay valid after the channel is closed
+            return new ClusterResultFile(file, channel, header);
+        }
+    }
+
+    private static DoubleBuffer[] mapDoubles(FileChannel channel, long offset, int nElements) throws IOException {
+        ByteBuffer[] regions = mapRegions(channel, offset, nElements, Double.BYTES);
+        DoubleBuffer[] doubles = new DoubleBuffer[regions.length];
+        for (int r = 0; r < regions.length; r++) {
+            doubles[r] = regions[r].asDoubleBuffer();
+        }
+        return doubles;
+    }
+
+    private static ByteBuffer[] mapRegions(FileChannel channel, long offset, int nElements, int elementBytes) throws IOException {
+        int nRegions = (int) (((long) nElements + REGION_MASK) >>> REGION_SHIFT);
+        ByteBuffer[] regions = new ByteBuffer[nRegions];
+        for (int r = 0; r < nRegions; r++) {
+            long first = (long) r << REGION_SHIFT;
+            long length = Math.min(nElements - first, REGION_MASK + 1L) * elementBytes;
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * elementBytes, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return regions;
+    }
+
+    public Path getFile(){
+        return file;
+    }
+
+    public Algorithm getAlgorithm(){
+        return algorithm;
+    }
+
+    public int getNPoints(){
+        return nPts;
+    }
+
+    public int getNClusters(){
+        return nClusters;
+    }
+
+    /**
+     * @return The epsilon a DBSCAN result was found with, NaN for k-means.
+     */
+    public double getEpsilon(){
+        return epsilon;
+    }
+
+    /**
+     * @return The minPts a DBSCAN result was found with, 0 for k-means.
+     */
+    public int getMinPts(){
+        return minPts;
+    }
+
+    /**
+     * @return The number of neighbourhood queries a DBSCAN result took, 0 for k-means.
+     */
+    public long getNRangeQueries(){
+        return nRangeQueries;
+    }
+
+    /**
+     * @return The number of iterations a k-means result took, 0 for DBSCAN.
+     */
+    public int getNIterations(){
+        return nIterations;
+    }
+
+    /**
+     * @return The centroid of each cluster, this is the backing array and must not be modified.
+     */
+    public double[][] getCentroids(){
+        return centroids;
+    }
+
+    /**
+     * @return The points that were clustered, read from the file.
+     */
+    public PointSource2d getPoints(){
+        return new PointSource2d() {
+            @Override
+            public int size() {
+                return nPts;
+            }
+
+            @Override
+            public double getX(int i) {
+                return xs[i >>> REGION_SHIFT].get(i & REGION_MASK);
+            }
+
+            @Override
+            public double getY(int i) {
+                return ys[i >>> REGION_SHIFT].get(i & REGION_MASK);
+            }
+        };
+    }
+
+    /**
+     * @param ptIdx The index of a point.
+     * @return The id of the cluster the point is in, or {@link DBScanResult#NOISE}.
+     */
+    public int getClusterId(int ptIdx){
+        return clusterIds[ptIdx >>> REGION_SHIFT].get(ptIdx & REGION_MASK);
+    }
+
+    /**
+     * @param ptIdx The index of a point.
+     * @return True if DBSCAN found the point to be noise, always false for k-means.
+     */
+    public boolean isNoise(int ptIdx){
+        return noise[ptIdx >>> REGION_SHIFT].get(ptIdx & REGION_MASK) != 0;
+    }
+
+    private int[] readClusterIds(){
+        int[] ids = new int[nPts];
+        int idx = 0;
+        for (IntBuffer region : clusterIds) {
+            IntBuffer view = region.duplicate();
+            int n = view.remaining();
+            view.get(ids, idx, n);
+            idx += n;
+        }
+        return ids;
+    }
+
+    /**
+     * Rebuild the DBSCAN result. The points stay in the file, only the cluster ids are copied onto the heap
+     * (4 bytes a point) to group the points by cluster.
+     * @return The result, with the same cluster ids as when it was saved.
+     */
+    public DBScanResult toDBScanResult(){
+        if(algorithm != Algorithm.DBSCAN){
+            throw new IllegalStateException(file + " holds a " + algorithm + " result, not DBSCAN.");
+        }
+        return new DBScanResult(getPoints(), readClusterIds(), nClusters, nRangeQueries);
+    }
+
+    /**
+     * Rebuild the k-means result. The points stay in the file, only the cluster ids are copied onto the heap
+     * (4 bytes a point).
+     * @return The result, with the same centroids and cluster ids as when it was saved.
+     */
+    public KMeansResult toKMeansResult(){
+        if(algorithm != Algorithm.KMEANS){
+            throw new IllegalStateException(file + " holds a " + algorithm + " result, not k-means.");
+        }
+        return new KMeansResult(getPoints(), centroids, readClusterIds(), nIterations);
+    }
+
+}
@@ -4,16 +4,24 @@ import java.util.*;
 
 public class DBScanCluster extends Cluster {
     private boolean isNoise;
-    private ArrayList<double[]> points2d;
+    private final List<double[]> points2d;
 
     public DBScanCluster(boolean isNoise){
-        this();
-        this.isNoise = isNoise;
+        this(isNoise, new ArrayList<>());
     }
 
     public DBScanCluster(){
-        this.points2d = new ArrayList<>();
-        this.isNoise = false;
+        this(false);
+    }
+
+    /**
+     * A cluster backed by an existing list of points, such as a view over a {@link DBScanResult}.
+     * @param isNoise Whether this is the noise cluster.
+     * @param points2d The points of the cluster, not copied.
+     */
+    protected DBScanCluster(boolean isNoise, List<double[]> points2d){
+        this.points2d = points2d;
+        this.isNoise = isNoise;
     }
 
     public void add(double[] pt){
@@ -42,6 +50,6 @@ public class DBScanCluster extends Cluster {
 
     @Override
     public int hashCode() {
-        return Objects.hash(isNoise, points2d);
+        return Objects.hash(isNoise, getPoints2d());
     }
 }
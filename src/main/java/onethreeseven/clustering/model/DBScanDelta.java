@@ -0,0 +1,54 @@
+package onethreeseven.clustering.model;
+
+/**
+ * The clusters changed by a batch of insertions and deletions into an incremental DBSCAN.
+ * A cluster created and then removed within the same batch is not reported, and a created
+ * cluster is not also reported as changed.
+ * @author Luke Bermingham
+ */
+public class DBScanDelta {
+
+    private final int[] created;
+    private final int[] changed;
+    private final int[] removed;
+
+    /**
+     * @param created The ids of clusters that did not exist before the batch.
+     * @param changed The ids of clusters that existed before and after the batch, but gained or lost points.
+     * @param removed The ids of clusters that no longer exist, because they were merged into another or dissolved.
+     */
+    public DBScanDelta(int[] created, int[] changed, int[] removed){
+        this.created = created;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * @return The ids of clusters that did not exist before the batch, ordered by id.
+     */
+    public int[] getCreated(){
+        return created;
+    }
+
+    /**
+     * @return The ids of clusters that existed before and after the batch, but gained or lost points, ordered by id.
+     */
+    public int[] getChanged(){
+        return changed;
+    }
+
+    /**
+     * @return The ids of clusters that no longer exist, ordered by id.
+     */
+    public int[] getRemoved(){
+        return removed;
+    }
+
+    /**
+     * @return True if no cluster was created, changed or removed.
+     */
+    public boolean isEmpty(){
+        return created.length == 0 && changed.length == 0 && removed.length == 0;
+    }
+
+}
@@ -0,0 +1,240 @@
+package onethreeseven.clustering.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The result of DBSCAN stored compactly: the cluster id of each point, plus a permutation of the point indices
+ * grouped by cluster and the offset of each cluster's group within it. Points are never copied, the clusters
+ * from {@link #getClusters()} are read-only views over the original points.
+ * Clusters are numbered in the order DBSCAN discovered them, single point clusters count as noise,
+ * and noise points have the id {@link #NOISE}.
+ * The points are either an array of points or a {@link PointSource2d}, such as a memory-mapped file,
+ * in which case the cluster views make each point's array as it is read.
+ * @author Luke Bermingham
+ */
+public class DBScanResult {
+
+    public static final int NOISE = -1;
+
+    //exactly one of these is set
+    private final double[][] pts;
+    private final PointSource2d source;
+    private final int[] clusterIdPerPoint;
+    private final int nClusters;
+    private final long nRangeQueries;
+
+    //point indices grouped by cluster, the noise group is last
+    private final int[] permutation;
+    //start of each group in the permutation, plus the end of the last group
+    private final int[] offsets;
+
+    /**
+     * @param pts The points that were clustered.
+     * @param labels The cluster of each point, from 0 to nLabels-1 in discovery order, or {@link #NOISE}.
+     *               Used as this result's cluster ids, so it is rewritten as single point clusters become noise.
+     * @param nLabels The number of distinct labels, not counting noise.
+     */
+    public DBScanResult(double[][] pts, int[] labels, int nLabels){
+        this(pts, labels, nLabels, 0);
+    }
+
+    /**
+     * @param pts The points that were clustered.
+     * @param labels The cluster of each point, from 0 to nLabels-1 in discovery order, or {@link #NOISE}.
+     *               Used as this result's cluster ids, so it is rewritten as single point clusters become noise.
+     * @param nLabels The number of distinct labels, not counting noise.
+     * @param nRangeQueries The number of neighbourhood queries made to find the clusters.
+     */
+    public DBScanResult(double[][] pts, int[] labels, int nLabels, long nRangeQueries){
+        this(pts, null, pts.length, labels, nLabels, nRangeQueries);
+    }
+
+    /**
+     * @param pts The points that were clustered.
+     * @param labels The cluster of each point, from 0 to nLabels-1 in discovery order, or {@link #NOISE}.
+     *               Used as this result's cluster ids, so it is rewritten as single point clusters become noise.
+     * @param nLabels The number of distinct labels, not counting noise.
+     * @param nRangeQueries The number of neighbourhood queries made to find the clusters.
+     */
+    public DBScanResult(PointSource2d pts, int[] labels, int nLabels, long nRangeQueries){
+        this(null, pts, pts.size(), labels, nLabels, nRangeQueries);
+    }
+
+    private DBScanResult(double[][] pts, PointSource2d source, int nPts, int[] labels, int nLabels, long nRangeQueries){
+        if(nPts != labels.length){
+            throw new IllegalArgumentException("There must be one label per point.");
+        }
+        this.pts = pts;
+        this.source = source;
+        this.clusterIdPerPoint = labels;
+        this.nRangeQueries = nRangeQueries;
+
+        int[] labelSizes = new int[nLabels];
+        for (int label : labels) {
+            if(label != NOISE){
+                labelSizes[label]++;
+            }
+        }
+
+        //renumber, dropping clusters with one point only
+        int[] newIds = new int[nLabels];
+        int nextId = 0;
+        for (int label = 0; label < nLabels; label++) {
+            newIds[label] = labelSizes[label] > 1 ? nextId++ : NOISE;
+        }
+        this.nClusters = nextId;
+
+        //counting sort the points into their groups
+        this.offsets = new int[nClusters + 2];
+        for (int i = 0; i < labels.length; i++) {
+            int id = labels[i] == NOISE ? NOISE : newIds[labels[i]];
+            labels[i] = id;
+            offsets[groupOf(id) + 1]++;
+        }
+        for (int g = 0; g < nClusters + 1; g++) {
+            offsets[g + 1] += offsets[g];
+        }
+        this.permutation = new int[labels.length];
+        int[] next = new int[nClusters + 1];
+        System.arraycopy(offsets, 0, next, 0, nClusters + 1);
+        for (int i = 0; i < labels.length; i++) {
+            permutation[next[groupOf(labels[i])]++] = i;
+        }
+    }
+
+    public int getNClusters(){
+        return nClusters;
+    }
+
+    public int getNPoints(){
+        return clusterIdPerPoint.length;
+    }
+
+    /**
+     * @return The points that were clustered, or null if they came from a {@link PointSource2d}.
+     */
+    public double[][] getPoints(){
+        return pts;
+    }
+
+    /**
+     * @return The points that were clustered, as a point source whether or not they came from one.
+     */
+    public PointSource2d getPointSource(){
+        return source != null ? source : PointSource2d.of(pts);
+    }
+
+    /**
+     * @return The number of neighbourhood queries made to find the clusters, compare to {@link #getNPoints()}
+     * to see how often each point's neighbourhood was looked up.
+     */
+    public long getNRangeQueries(){
+        return nRangeQueries;
+    }
+
+    /**
+     * @param ptIdx The index of a point.
+     * @return The id of the cluster the point is in, or {@link #NOISE}.
+     */
+    public int getClusterId(int ptIdx){
+        return clusterIdPerPoint[ptIdx];
+    }
+
+    /**
+     * @return The cluster id of every point, this is the backing array and must not be modified.
+     */
+    public int[] getClusterIdPerPoint(){
+        return clusterIdPerPoint;
+    }
+
+    /**
+     * @return The point indices grouped by cluster id, noise last, this is the backing array and must not be modified.
+     */
+    public int[] getPermutation(){
+        return permutation;
+    }
+
+    /**
+     * @return Where each cluster's group starts in {@link #getPermutation()}, the noise group is at index
+     * {@link #getNClusters()}, followed by the end of the noise group. This is the backing array and must not be modified.
+     */
+    public int[] getOffsets(){
+        return offsets;
+    }
+
+    /**
+     * @param clusterId The id of a cluster, or {@link #NOISE}.
+     * @return The number of points in that cluster.
+     */
+    public int getClusterSize(int clusterId){
+        int g = groupOf(clusterId);
+        return offsets[g + 1] - offsets[g];
+    }
+
+    /**
+     * @param clusterId The id of a cluster, or {@link #NOISE}.
+     * @param i Which point of the cluster, from 0 to the size of the cluster - 1.
+     * @return The index of that point.
+     */
+    public int getPointIndex(int clusterId, int i){
+        return permutation[offsets[groupOf(clusterId)] + i];
+    }
+
+    /**
+     * @param clusterId The id of a cluster, or {@link #NOISE} for the noise cluster.
+     * @return A read-only view of the cluster.
+     */
+    public DBScanCluster getCluster(int clusterId){
+        if(clusterId < NOISE || clusterId >= nClusters){
+            throw new IllegalArgumentException("Cluster id must be between " + NOISE + " and " + (nClusters - 1));
+        }
+        return new DBScanCluster(clusterId == NOISE, new ClusterPoints(groupOf(clusterId)));
+    }
+
+    /**
+     * @return Read-only views of the clusters in the order they were discovered, followed by the noise cluster.
+     */
+    public List<DBScanCluster> getClusters(){
+        List<DBScanCluster> clusters = new ArrayList<>(nClusters + 1);
+        for (int clusterId = 0; clusterId < nClusters; clusterId++) {
+            clusters.add(getCluster(clusterId));
+        }
+        clusters.add(getCluster(NOISE));
+        return clusters;
+    }
+
+    private int groupOf(int clusterId){
+        return clusterId == NOISE ? nClusters : clusterId;
+    }
+
+    /**
+     * The points of one group of the permutation.
+     */
+    private class ClusterPoints extends AbstractList<double[]> implements RandomAccess {
+        private final int start;
+        private final int size;
+
+        ClusterPoints(int group){
+            this.start = offsets[group];
+            this.size = offsets[group + 1] - start;
+        }
+
+        @Override
+        public double[] get(int index) {
+            if(index < 0 || index >= size){
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            int ptIdx = permutation[start + index];
+            return pts != null ? pts[ptIdx] : new double[]{source.getX(ptIdx), source.getY(ptIdx)};
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package onethreeseven.clustering.model;
+
+/**
+ * A summary of running DBSCAN over a grid of epsilon and minPts settings:
+ * the number of clusters and noise points found by each setting.
+ * Settings are addressed by their index into {@link #getEpsilons()} and {@link #getMinPts()}.
+ * @author Luke Bermingham
+ */
+public class DBScanSweepResult {
+
+    private final double[] epsilons;
+    private final int[] minPts;
+    private final int nPoints;
+    //indexed by [epsilon index][minPts index]
+    private final int[][] nClusters;
+    private final int[][] nNoise;
+
+    /**
+     * @param epsilons The epsilon values swept over.
+     * @param minPts The minPts values swept over.
+     * @param nPoints The number of points that were clustered.
+     * @param nClusters The number of clusters found by each setting, indexed by [epsilon index][minPts index].
+     * @param nNoise The number of noise points in each setting, indexed the same way.
+     */
+    public DBScanSweepResult(double[] epsilons, int[] minPts, int nPoints, int[][] nClusters, int[][] nNoise){
+        if(nClusters.length != epsilons.length || nNoise.length != epsilons.length){
+            throw new IllegalArgumentException("There must be one row of results per epsilon.");
+        }
+        this.epsilons = epsilons;
+        this.minPts = minPts;
+        this.nPoints = nPoints;
+        this.nClusters = nClusters;
+        this.nNoise = nNoise;
+    }
+
+    public double[] getEpsilons(){
+        return epsilons;
+    }
+
+    public int[] getMinPts(){
+        return minPts;
+    }
+
+    public int getNPoints(){
+        return nPoints;
+    }
+
+    /**
+     * @param epsIdx The index of the epsilon setting.
+     * @param minPtsIdx The index of the minPts setting.
+     * @return The number of clusters found, not counting noise.
+     */
+    public int getNClusters(int epsIdx, int minPtsIdx){
+        return nClusters[epsIdx][minPtsIdx];
+    }
+
+    /**
+     * @param epsIdx The index of the epsilon setting.
+     * @param minPtsIdx The index of the minPts setting.
+     * @return The number of points that are noise.
+     */
+    public int getNNoise(int epsIdx, int minPtsIdx){
+        return nNoise[epsIdx][minPtsIdx];
+    }
+
+    /**
+     * @param epsIdx The index of the epsilon setting.
+     * @param minPtsIdx The index of the minPts setting.
+     * @return The fraction of the points that are noise, between 0 and 1.
+     */
+    public double getNoiseRatio(int epsIdx, int minPtsIdx){
+        return (double) nNoise[epsIdx][minPtsIdx] / nPoints;
+    }
+
+}
@@ -0,0 +1,32 @@
+package onethreeseven.clustering.model;
+
+import java.util.List;
+
+/**
+ * A cluster found by HDBSCAN*, which is a density-based cluster like those of DBSCAN,
+ * plus how stable the cluster is across densities.
+ * @author Luke Bermingham
+ */
+public class HDBSCANCluster extends DBScanCluster {
+
+    private final double stability;
+
+    /**
+     * @param isNoise Whether this is the noise cluster.
+     * @param stability The stability of the cluster, zero for noise.
+     * @param points2d The points of the cluster, not copied.
+     */
+    public HDBSCANCluster(boolean isNoise, double stability, List<double[]> points2d){
+        super(isNoise, points2d);
+        this.stability = stability;
+    }
+
+    /**
+     * @return The excess of mass of the cluster: summed over its points, how far past the cluster's
+     * birth density each point stays in it. Larger is more stable.
+     */
+    public double getStability(){
+        return stability;
+    }
+
+}
@@ -0,0 +1,93 @@
+package onethreeseven.clustering.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of HDBSCAN*: the cluster id of each point, stored compactly like a {@link DBScanResult},
+ * plus the stability of each cluster.
+ * @author Luke Bermingham
+ */
+public class HDBSCANResult {
+
+    public static final int NOISE = DBScanResult.NOISE;
+
+    private final DBScanResult grouped;
+    private final double[] stabilities;
+
+    /**
+     * @param pts The points that were clustered.
+     * @param labels The cluster of each point, from 0 to nClusters-1, or {@link #NOISE}.
+     * @param nClusters The number of clusters, not counting noise.
+     * @param stabilities The stability of each cluster.
+     */
+    public HDBSCANResult(double[][] pts, int[] labels, int nClusters, double[] stabilities){
+        if(stabilities.length != nClusters){
+            throw new IllegalArgumentException("There must be one stability per cluster.");
+        }
+        this.grouped = new DBScanResult(pts, labels, nClusters);
+        this.stabilities = stabilities;
+    }
+
+    public int getNClusters(){
+        return grouped.getNClusters();
+    }
+
+    public int getNPoints(){
+        return grouped.getNPoints();
+    }
+
+    /**
+     * @param ptIdx The index of a point.
+     * @return The id of the cluster the point is in, or {@link #NOISE}.
+     */
+    public int getClusterId(int ptIdx){
+        return grouped.getClusterId(ptIdx);
+    }
+
+    /**
+     * @return The cluster id of every point, this is the backing array and must not be modified.
+     */
+    public int[] getClusterIdPerPoint(){
+        return grouped.getClusterIdPerPoint();
+    }
+
+    /**
+     * @param clusterId The id of a cluster, or {@link #NOISE}.
+     * @return The number of points in that cluster.
+     */
+    public int getClusterSize(int clusterId){
+        return grouped.getClusterSize(clusterId);
+    }
+
+    /**
+     * @param clusterId The id of a cluster.
+     * @return The stability of the cluster.
+     */
+    public double getStability(int clusterId){
+        return stabilities[clusterId];
+    }
+
+    /**
+     * @param clusterId The id of a cluster, or {@link #NOISE} for the noise cluster.
+     * @return A read-only view of the cluster.
+     */
+    public HDBSCANCluster getCluster(int clusterId){
+        boolean isNoise = clusterId == NOISE;
+        List<double[]> points2d = grouped.getCluster(clusterId).getPoints2d();
+        return new HDBSCANCluster(isNoise, isNoise ? 0 : stabilities[clusterId], points2d);
+    }
+
+    /**
+     * @return Read-only views of the clusters, followed by the noise cluster.
+     */
+    public List<HDBSCANCluster> getClusters(){
+        List<HDBSCANCluster> clusters = new ArrayList<>(getNClusters() + 1);
+        for (int clusterId = 0; clusterId < getNClusters(); clusterId++) {
+            clusters.add(getCluster(clusterId));
+        }
+        clusters.add(getCluster(NOISE));
+        return clusters;
+    }
+
+}
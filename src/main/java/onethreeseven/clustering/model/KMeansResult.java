@@ -0,0 +1,107 @@
+package onethreeseven.clustering.model;
+
+/**
+ * The result of k-means stored compactly: the centroids, the cluster of each point and the size of each cluster.
+ * Points are never copied into clusters, so this suits results over very many points.
+ * @author Luke Bermingham
+ */
+public class KMeansResult {
+
+    private final PointSource2d pts;
+    private final double[][] centroids;
+    private final int[] clusterIdPerPoint;
+    private final int[] clusterSizes;
+    private final int nIterations;
+
+    /**
+     * @param pts The points that were clustered.
+     * @param centroids The centroid of each cluster, NaN for an empty cluster.
+     * @param clusterIdPerPoint The cluster of each point, from 0 to k - 1.
+     * @param nIterations The number of passes over the points made to converge.
+     */
+    public KMeansResult(PointSource2d pts, double[][] centroids, int[] clusterIdPerPoint, int nIterations){
+        if(pts.size() != clusterIdPerPoint.length){
+            throw new IllegalArgumentException("There must be one cluster id per point.");
+        }
+        this.pts = pts;
+        this.centroids = centroids;
+        this.clusterIdPerPoint = clusterIdPerPoint;
+        this.nIterations = nIterations;
+        this.clusterSizes = new int[centroids.length];
+        for (int clusterId : clusterIdPerPoint) {
+            clusterSizes[clusterId]++;
+        }
+    }
+
+    public int getK(){
+        return centroids.length;
+    }
+
+    public int getNPoints(){
+        return clusterIdPerPoint.length;
+    }
+
+    public PointSource2d getPoints(){
+        return pts;
+    }
+
+    public int getNIterations(){
+        return nIterations;
+    }
+
+    /**
+     * @return The centroid of each cluster, this is the backing array and must not be modified.
+     */
+    public double[][] getCentroids(){
+        return centroids;
+    }
+
+    /**
+     * @param ptIdx The index of a point.
+     * @return The id of the cluster the point is in.
+     */
+    public int getClusterId(int ptIdx){
+        return clusterIdPerPoint[ptIdx];
+    }
+
+    /**
+     * @return The cluster id of every point, this is the backing array and must not be modified.
+     */
+    public int[] getClusterIdPerPoint(){
+        return clusterIdPerPoint;
+    }
+
+    /**
+     * @param clusterId The id of a cluster.
+     * @return The number of points in that cluster.
+     */
+    public int getClusterSize(int clusterId){
+        return clusterSizes[clusterId];
+    }
+
+    /**
+     * Clusters to display, like the clusters of mini-batch k-means they only have centroids, the points are not copied.
+     * @return One cluster per centroid.
+     */
+    public KMeansCluster[] getCentroidClusters(){
+        KMeansCluster[] clusters = new KMeansCluster[centroids.length];
+        for (int j = 0; j < centroids.length; j++) {
+            clusters[j] = new KMeansCluster(centroids[j]);
+        }
+        return clusters;
+    }
+
+    /**
+     * Clusters holding their points, like those of {@link onethreeseven.clustering.algorithm.KMeans#run2d(double[][], int)}.
+     * Every point is copied onto the heap, so this is for results small enough to show point by point.
+     * @return One cluster per centroid.
+     */
+    public KMeansCluster[] getClusters(){
+        KMeansCluster[] clusters = getCentroidClusters();
+        for (int i = 0; i < clusterIdPerPoint.length; i++) {
+            clusters[clusterIdPerPoint[i]].add(new double[]{pts.getX(i), pts.getY(i)});
+        }
+        return clusters;
+    }
+
+}
@@ -0,0 +1,125 @@
+package onethreeseven.clustering.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * Points read straight from a memory-mapped file, so the points do not have to fit on the heap:
+ * the operating system pages them in as they are read and can drop them again under memory pressure.
+ * The file is a headerless sequence of little-endian doubles, x then y for each point (16 bytes a point).
+ * Files bigger than 2GB are mapped as several regions. The mapping is read-only and is released
+ * once this object is garbage collected.
+ * @author Luke Bermingham
+ */
+public class MappedPoints2d implements PointSource2d {
+
+    public static final int BYTES_PER_POINT = 2 * Double.BYTES;
+
+    //points per mapped region, 1GB of points so a region can be one buffer
+    private static final int REGION_SHIFT = 26;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+
+    private final Path file;
+    private final DoubleBuffer[] regions;
+    private final int nPts;
+
+    private MappedPoints2d(Path file, DoubleBuffer[] regions, int nPts){
+        this.file = file;
+        this.regions = regions;
+        this.nPts = nPts;
+    }
+
+    /**
+     * Map a file of points.
+     * @param file The file, written by {@link #write(Path, Iterator)} or anything else using the same layout.
+     * @return The points.
+     * @throws IOException If the file cannot be read, or is not a whole number of points.
+     */
+    public static MappedPoints2d open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long nBytes = channel.size();
+            if(nBytes % BYTES_PER_POINT != 0){
+                throw new IOException(file + " is " + nBytes + " bytes, which is not a whole number of points.");
+            }
+            long nPts = nBytes / BYTES_PER_POINT;
+            if(nPts > Integer.MAX_VALUE){
+                throw new IOException(file + " has " + nPts + " points, at most " + Integer.MAX_VALUE + " are supported.");
+            }
+
+            int nRegions = (int) ((nPts + REGION_MASK) >>> REGION_SHIFT);
+            DoubleBuffer[] regions = new DoubleBuffer[nRegions];
+            for (int r = 0; r < nRegions; r++) {
+                long start = ((long) r << REGION_SHIFT) * BYTES_PER_POINT;
+                long length = Math.min(nBytes - start, (long) (REGION_MASK + 1) * BYTES_PER_POINT);
+                //the mapping stays valid after the channel is closed
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, length)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asDoubleBuffer();
+            }
+            return new MappedPoints2d(file, regions, (int) nPts);
+        }
+    }
+
+    /**
+     * Write points in the layout {@link #open(Path)} reads, replacing the file if it exists.
+     * The points are streamed through a small buffer, so they never need to all be in memory.
+     * @param file The file to write.
+     * @param pts The 2d points to write.
+     * @return The number of points written.
+     * @throws IOException If the file cannot be written, or there are too many points.
+     */
+    public static int write(Path file, Iterator<double[]> pts) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BYTES_PER_POINT * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        long nPts = 0;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            while(pts.hasNext()){
+                if(nPts == Integer.MAX_VALUE){
+                    throw new IOException("At most " + Integer.MAX_VALUE + " points can be written to " + file);
+                }
+                double[] pt = pts.next();
+                buffer.putDouble(pt[0]).putDouble(pt[1]);
+                nPts++;
+                if(!buffer.hasRemaining()){
+                    drain(buffer, channel);
+                }
+            }
+            drain(buffer, channel);
+        }
+        return (int) nPts;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public Path getFile(){
+        return file;
+    }
+
+    @Override
+    public int size() {
+        return nPts;
+    }
+
+    @Override
+    public double getX(int i) {
+        return regions[i >>> REGION_SHIFT].get((i & REGION_MASK) << 1);
+    }
+
+    @Override
+    public double getY(int i) {
+        return regions[i >>> REGION_SHIFT].get(((i & REGION_MASK) << 1) + 1);
+    }
+
+}
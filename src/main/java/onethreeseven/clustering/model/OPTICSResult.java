@@ -0,0 +1,123 @@
+package onethreeseven.clustering.model;
+
+import java.util.List;
+
+/**
+ * The cluster ordering produced by OPTICS, stored in primitive arrays: the order the points were visited,
+ * and the reachability distance and core distance of the point at each position of the ordering.
+ * Plotting the reachability distances in order gives the reachability plot, where clusters are valleys.
+ * DBSCAN clusterings for any epsilon up to the one OPTICS was run with can be extracted in linear time,
+ * without clustering again.
+ * @author Luke Bermingham
+ */
+public class OPTICSResult {
+
+    /**
+     * The reachability or core distance of points that have none within epsilon.
+     */
+    public static final double UNDEFINED = Double.POSITIVE_INFINITY;
+
+    private final double[][] pts;
+    private final double epsilon;
+    private final int minPts;
+    //point index at each position in the ordering
+    private final int[] ordering;
+    //distances of the point at each position in the ordering
+    private final double[] reachability;
+    private final double[] coreDistance;
+
+    /**
+     * @param pts The points that were ordered.
+     * @param epsilon The epsilon OPTICS was run with.
+     * @param minPts The minPts OPTICS was run with.
+     * @param ordering The index of the point at each position of the cluster ordering.
+     * @param reachability The reachability distance of the point at each position, or {@link #UNDEFINED}.
+     * @param coreDistance The core distance of the point at each position, or {@link #UNDEFINED}.
+     */
+    public OPTICSResult(double[][] pts, double epsilon, int minPts, int[] ordering, double[] reachability, double[] coreDistance){
+        if(ordering.length != pts.length || reachability.length != pts.length || coreDistance.length != pts.length){
+            throw new IllegalArgumentException("There must be one position in the ordering per point.");
+        }
+        this.pts = pts;
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+        this.ordering = ordering;
+        this.reachability = reachability;
+        this.coreDistance = coreDistance;
+    }
+
+    public double[][] getPoints(){
+        return pts;
+    }
+
+    public double getEpsilon(){
+        return epsilon;
+    }
+
+    public int getMinPts(){
+        return minPts;
+    }
+
+    /**
+     * @return The point index at each position of the cluster ordering, this is the backing array and must not be modified.
+     */
+    public int[] getOrdering(){
+        return ordering;
+    }
+
+    /**
+     * @return The reachability distance at each position of the cluster ordering (the reachability plot),
+     * this is the backing array and must not be modified.
+     */
+    public double[] getReachability(){
+        return reachability;
+    }
+
+    /**
+     * @return The core distance at each position of the cluster ordering, this is the backing array and must not be modified.
+     */
+    public double[] getCoreDistance(){
+        return coreDistance;
+    }
+
+    /**
+     * Extract the DBSCAN clustering for some epsilon from the cluster ordering, in one pass over it.
+     * Core points are grouped the same as running DBSCAN with that epsilon, but border points may join a different
+     * neighbouring cluster or be noise, because a border point is ordered as soon as it is the most reachable seed,
+     * which can be before the core point that would make it reachable at the smaller epsilon.
+     * @param epsilon The epsilon, no larger than the epsilon OPTICS was run with.
+     * @return The clustering.
+     */
+    public DBScanResult extractDBScan(double epsilon){
+        if(epsilon < 0 || epsilon > this.epsilon){
+            throw new IllegalArgumentException("Epsilon must be between 0 and " + this.epsilon);
+        }
+        int[] labels = new int[pts.length];
+        int nLabels = 0;
+        int current = DBScanResult.NOISE;
+        for (int pos = 0; pos < ordering.length; pos++) {
+            int ptIdx = ordering[pos];
+            if(reachability[pos] <= epsilon){
+                labels[ptIdx] = current;
+            }
+            //not reachable from the points before it, so it starts a new cluster if it is a core point
+            else if(coreDistance[pos] <= epsilon){
+                current = nLabels++;
+                labels[ptIdx] = current;
+            }else{
+                labels[ptIdx] = DBScanResult.NOISE;
+            }
+        }
+        return new DBScanResult(pts, labels, nLabels);
+    }
+
+    /**
+     * Extract the DBSCAN clusters for some epsilon from the cluster ordering, see {@link #extractDBScan(double)}.
+     * @param epsilon The epsilon, no larger than the epsilon OPTICS was run with.
+     * @return Read-only views of the clusters, followed by the noise cluster.
+     */
+    public List<DBScanCluster> extractClusters(double epsilon){
+        return extractDBScan(epsilon).getClusters();
+    }
+
+}
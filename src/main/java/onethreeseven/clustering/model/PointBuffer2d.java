@@ -0,0 +1,154 @@
+package onethreeseven.clustering.model;
+
+import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A growable buffer of 2d points packed into one array, x then y for each point, so a point costs
+ * 16 bytes rather than the array object and reference of a double[][] (about 48 bytes), and reading
+ * the points in order walks memory in order.
+ * @author Luke Bermingham
+ */
+public class PointBuffer2d implements PointSource2d {
+
+    private double[] coords;
+    private int nPts = 0;
+
+    public PointBuffer2d(){
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity The number of points to make room for up-front.
+     */
+    public PointBuffer2d(int initialCapacity){
+        if(initialCapacity < 0){
+            throw new IllegalArgumentException("Initial capacity must not be negative, was passed: " + initialCapacity);
+        }
+        this.coords = new double[initialCapacity * 2];
+    }
+
+    /**
+     * @param pts The 2d points.
+     * @return A buffer holding a copy of the points.
+     */
+    public static PointBuffer2d of(double[][] pts){
+        PointBuffer2d buffer = new PointBuffer2d(pts.length);
+        for (double[] pt : pts) {
+            buffer.add(pt[0], pt[1]);
+        }
+        return buffer;
+    }
+
+    private void ensureCapacity(int nPoints){
+        if(nPoints * 2L > coords.length){
+            long newLength = Math.max(nPoints * 2L, Math.max(16, coords.length + (coords.length >> 1)));
+            if(newLength > Integer.MAX_VALUE - 8){
+                //at most this many doubles fit in one array
+                newLength = Integer.MAX_VALUE - 8;
+                if(nPoints * 2L > newLength){
+                    throw new IllegalStateException("A point buffer can hold at most " + newLength / 2 + " points.");
+                }
+            }
+            coords = Arrays.copyOf(coords, (int) newLength);
+        }
+    }
+
+    public void add(double x, double y){
+        ensureCapacity(nPts + 1);
+        coords[nPts * 2] = x;
+        coords[nPts * 2 + 1] = y;
+        nPts++;
+    }
+
+    /**
+     * @param pt A 2d point, only its first two coordinates are used.
+     */
+    public void add(double[] pt){
+        add(pt[0], pt[1]);
+    }
+
+    /**
+     * @param pts Points to append.
+     * @return The number of points appended.
+     */
+    public int addAll(Iterator<double[]> pts){
+        int before = nPts;
+        while(pts.hasNext()){
+            double[] pt = pts.next();
+            add(pt[0], pt[1]);
+        }
+        return nPts - before;
+    }
+
+    /**
+     * @param entity An entity whose coordinates to append.
+     * @return The number of points appended.
+     */
+    public int addAll(BoundingCoordinates entity){
+        return addAll(entity.coordinateIter());
+    }
+
+    /**
+     * Append points already packed the way this buffer packs them.
+     * @param packed Coordinates, x then y for each point.
+     * @param nPoints The number of points to copy from the start of the array.
+     */
+    public void addPacked(double[] packed, int nPoints){
+        if(nPoints < 0 || nPoints * 2L > packed.length){
+            throw new IllegalArgumentException("There are not " + nPoints + " points in the packed array.");
+        }
+        ensureCapacity(nPts + nPoints);
+        System.arraycopy(packed, 0, coords, nPts * 2, nPoints * 2);
+        nPts += nPoints;
+    }
+
+    public void clear(){
+        nPts = 0;
+    }
+
+    /**
+     * Shrink the backing array to the points held.
+     */
+    public void trimToSize(){
+        if(coords.length > nPts * 2){
+            coords = Arrays.copyOf(coords, nPts * 2);
+        }
+    }
+
+    /**
+     * @return The backing array, x then y for each point, only the first 2 * size() values are points.
+     * It is replaced as the buffer grows and must not be modified.
+     */
+    public double[] getCoordinates(){
+        return coords;
+    }
+
+    /**
+     * @return The points as arrays, one new array per point.
+     */
+    public double[][] toArray(){
+        double[][] pts = new double[nPts][];
+        for (int i = 0; i < nPts; i++) {
+            pts[i] = new double[]{coords[i * 2], coords[i * 2 + 1]};
+        }
+        return pts;
+    }
+
+    @Override
+    public int size() {
+        return nPts;
+    }
+
+    @Override
+    public double getX(int i) {
+        return coords[i * 2];
+    }
+
+    @Override
+    public double getY(int i) {
+        return coords[i * 2 + 1];
+    }
+
+}
@@ -0,0 +1,50 @@
+package onethreeseven.clustering.model;
+
+/**
+ * A fixed sequence of 2d points read by index, so the algorithms can run over points that are not
+ * stored as one array per point, such as a memory-mapped file (see {@link MappedPoints2d}).
+ * @author Luke Bermingham
+ */
+public interface PointSource2d {
+
+    /**
+     * @return The number of points.
+     */
+    int size();
+
+    /**
+     * @param i The index of a point, from 0 to size - 1.
+     * @return The x coordinate of the point.
+     */
+    double getX(int i);
+
+    /**
+     * @param i The index of a point, from 0 to size - 1.
+     * @return The y coordinate of the point.
+     */
+    double getY(int i);
+
+    /**
+     * @param pts The 2d points.
+     * @return A point source reading from the array, the points are not copied.
+     */
+    static PointSource2d of(double[][] pts){
+        return new PointSource2d() {
+            @Override
+            public int size() {
+                return pts.length;
+            }
+
+            @Override
+            public double getX(int i) {
+                return pts[i][0];
+            }
+
+            @Override
+            public double getY(int i) {
+                return pts[i][1];
+            }
+        };
+    }
+
+}
@@ -1,20 +1,22 @@
 package onethreeseven.clustering.view.controller;
 
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+import onethreeseven.clustering.algorithm.CancellationToken;
+import onethreeseven.clustering.command.ClusteringScheduler;
+import onethreeseven.clustering.command.SelectedPointsCache;
+import onethreeseven.clustering.model.PointBuffer2d;
 import onethreeseven.trajsuitePlugin.model.BaseTrajSuiteProgram;
-import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
-import onethreeseven.trajsuitePlugin.model.EntitySupplier;
 import onethreeseven.trajsuitePlugin.model.Layers;
-import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Abstract view controller for clustering views.
@@ -22,8 +24,14 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public abstract class AbstractClusterViewController {
 
-    protected final AtomicReference<double[][]> ptsToCluster = new AtomicReference<>(null);
-    protected final AtomicBoolean updatingView = new AtomicBoolean(false);
+    protected final AtomicReference<PointBuffer2d> ptsToCluster = new AtomicReference<>(null);
+    //cancels the clustering that is running, or null if none is
+    private volatile CancellationToken runningToken = null;
+
+    //updates the points to cluster on the shared scheduler 100ms after a request, to wait for the rest of a burst
+    //of selection events, which cost one or two updates
+    private final ClusteringScheduler.CoalescingTask refreshTask =
+            ClusteringScheduler.getInstance().coalescing(this::refreshPointsToCluster, 100, TimeUnit.MILLISECONDS);
 
     public AbstractClusterViewController(){
         Layers layers = BaseTrajSuiteProgram.getInstance().getLayers();
@@ -31,111 +39,81 @@ public abstract class AbstractClusterViewController {
         layers.numEditedEntitiesProperty.addListener((observable, oldValue, newValue) -> AbstractClusterViewController.this.calculatePointsToCluster());
         layers.addEntitiesTransactionProperty.addListener((observable, oldValue, newValue) -> AbstractClusterViewController.this.calculatePointsToCluster());
         layers.removeEntitiesTransactionProperty.addListener((observable, oldValue, newValue) -> AbstractClusterViewController.this.calculatePointsToCluster());
+    }
 
-        //when the view is shown initialise the points to cluster
-        CompletableFuture.runAsync(()->{
-            while(true){
-                if(isShowing()){
-                    calculatePointsToCluster();
-                    return;
-                }
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+    /**
+     * Initialise the points to cluster whenever the view is shown, and stop clustering when it is closed.
+     * Call from the FXML initialize, once the cluster button is injected; the window is found when the
+     * button gets one, so nothing waits on a view that is never shown.
+     */
+    protected void watchWindow(){
+        whenSet(getClusterButton().sceneProperty(), scene -> whenSet(scene.windowProperty(), this::listenToWindow));
+    }
+
+    private void listenToWindow(Window window){
+        window.addEventHandler(WindowEvent.WINDOW_SHOWN, event -> calculatePointsToCluster());
+        window.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> cancelClustering());
+        //already shown, so the shown event has been missed
+        if(window.isShowing()){
+            calculatePointsToCluster();
+        }
+    }
+
+    /**
+     * @param property A property.
+     * @param action Run once with the value of the property, now if it is set, otherwise when it is first set.
+     */
+    private static <T> void whenSet(ObservableValue<T> property, Consumer<T> action){
+        if(property.getValue() != null){
+            action.accept(property.getValue());
+            return;
+        }
+        property.addListener(new ChangeListener<T>() {
+            @Override
+            public void changed(ObservableValue<? extends T> observable, T oldValue, T newValue) {
+                if(newValue != null){
+                    property.removeListener(this);
+                    action.accept(newValue);
                 }
             }
         });
-
     }
 
     protected void calculatePointsToCluster(){
 
-        //already updating view
-        if(updatingView.get()){
-            return;
-        }
-
         //don't do anything if not showing
         if(!isShowing()){
             return;
         }
 
-        ThreadFactory threadFactory = r -> new Thread(r, "Selected entities to points 2d");
-
-        ExecutorService exec = Executors.newSingleThreadExecutor(threadFactory);
-
-        Runnable task = () -> {
-
-            updatingView.set(true);
-
-            //sleep 100ms to wait for selection updates to come in
-
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            ArrayList<double[]> pts = new ArrayList<>();
-            int selectedEntities = 0;
-
-            ServiceLoader<EntitySupplier> serviceLoader = ServiceLoader.load(EntitySupplier.class);
-            for (EntitySupplier entitySupplier : serviceLoader) {
-                Map<Class, Collection<Object>> allSelected = entitySupplier.supplyAllSelected();
-                if(allSelected != null){
-                    for (Collection<Object> entityCol : allSelected.values()) {
-                        for (Object entityObj : entityCol) {
-                            if(entityObj instanceof BoundingCoordinates){
-                                selectedEntities++;
-                                Iterator<double[]> coordIter = ((BoundingCoordinates) entityObj).coordinateIter();
-                                while(coordIter.hasNext()){
-                                    double[] coord = coordIter.next();
-                                    pts.add(coord);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        //if the view is already updating, this request is picked up when it finishes
+        refreshTask.request();
+    }
 
-            //populate ptsToCluster
-            int nPts = pts.size();
-            if(nPts > 0){
-                double[][] allPts = new double[nPts][];
-                for (int i = 0; i < nPts; i++) {
-                    double[] pt = pts.get(i);
-                    allPts[i] = pt;
-                }
-                ptsToCluster.set(allPts);
-            }
+    private void refreshPointsToCluster(){
 
-            //we have some points and some selected entities
-            final int nSelectedEntities = selectedEntities;
-            if(nPts > 0 && selectedEntities > 0){
-                Platform.runLater(()->{
-                    getSelectedEntitiesLabel().setText(nSelectedEntities + " selected entities");
-                    getClusterButton().setDisable(false);
-                });
-            }else{
-                Platform.runLater(()->{
-                    getSelectedEntitiesLabel().setText(nSelectedEntities + " selected entities");
-                    getClusterButton().setDisable(true);
-                });
-            }
+        //only entities selected since the last update have their coordinates walked
+        SelectedPointsCache cache = SelectedPointsCache.getInstance();
+        cache.refresh();
+        final int nSelectedEntities = cache.getSelectedEntities().size();
 
-        };
+        //populate ptsToCluster
+        int nPts = cache.getNPoints();
+        if(nPts > 0){
+            ptsToCluster.set(cache.getPointBuffer());
+        }
 
-        CompletableFuture.runAsync(task, exec).handle((aVoid, throwable) -> {
-            updatingView.set(false);
-            return null;
+        //we have some points and some selected entities
+        final boolean canCluster = nPts > 0 && nSelectedEntities > 0;
+        Platform.runLater(()->{
+            getSelectedEntitiesLabel().setText(nSelectedEntities + " selected entities");
+            getClusterButton().setDisable(!canCluster);
         });
-
     }
 
     protected void doClustering(){
 
-        final double[][] pts = AbstractClusterViewController.this.ptsToCluster.get();
+        final PointBuffer2d pts = AbstractClusterViewController.this.ptsToCluster.get();
 
         if(pts != null){
 
@@ -145,30 +123,43 @@ public abstract class AbstractClusterViewController {
             getProgressBar().setDisable(false);
             getProgressBar().setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
             getClusterButton().setDisable(true);
+            getCancelButton().setDisable(false);
 
-            ThreadFactory threadFactory = r -> new Thread(r, "Clustering");
-
-            ExecutorService exec = Executors.newSingleThreadExecutor(threadFactory);
+            final CancellationToken token = new CancellationToken();
+            this.runningToken = token;
 
-            Runnable task  = () -> {
-                final boolean success = doClusteringImpl(pts);
+            ClusteringScheduler.getInstance().submit(() -> doClusteringImpl(pts, token)).whenComplete((success, error) -> {
+                if(error != null){
+                    error.printStackTrace();
+                }
+                runningToken = null;
                 Platform.runLater(()->{
                     getProgressBar().setProgress(0);
+                    getCancelButton().setDisable(true);
                     getClusterButton().setDisable(false);
                     setSpinnersDisabled(false);
-                    if(success){
+                    if(success != null && success){
                         Stage stage = (Stage) getClusterButton().getScene().getWindow();
                         stage.close();
                     }
                 });
-                exec.shutdown();
-            };
-
-            CompletableFuture.runAsync(task, exec);
+            });
         }
     }
 
 
+    /**
+     * Stop the running clustering, the view stays open so it can be run again.
+     * Also called when the view is closed, so a clustering nobody is waiting for does not hold a thread.
+     */
+    protected void cancelClustering(){
+        CancellationToken token = runningToken;
+        if(token != null){
+            token.cancel();
+        }
+        getCancelButton().setDisable(true);
+    }
+
     protected boolean isShowing() {
         Button button = getClusterButton();
         if (button == null) {
@@ -183,10 +174,11 @@ public abstract class AbstractClusterViewController {
     }
 
     protected abstract void setSpinnersDisabled(boolean disabled);
-    protected abstract boolean doClusteringImpl(double[][] pts);
+    protected abstract boolean doClusteringImpl(PointBuffer2d pts, CancellationToken token);
     protected abstract ProgressBar getProgressBar();
     protected abstract Label getSelectedEntitiesLabel();
     protected abstract Button getClusterButton();
+    protected abstract Button getCancelButton();
 
 
 }
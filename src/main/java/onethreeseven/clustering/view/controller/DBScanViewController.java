@@ -4,7 +4,9 @@ import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
+import onethreeseven.clustering.algorithm.CancellationToken;
 import onethreeseven.clustering.command.DBScanCommand;
+import onethreeseven.clustering.model.PointBuffer2d;
 import onethreeseven.jclimod.CLIProgram;
 
 import java.util.function.Consumer;
@@ -25,6 +27,8 @@ public class DBScanViewController extends AbstractClusterViewController {
     public ProgressBar progressBar;
     @FXML
     public Button clusterBtn;
+    @FXML
+    public Button cancelBtn;
 
     private final Consumer<Double> progressListener = new Consumer<>() {
         @Override
@@ -49,7 +53,7 @@ public class DBScanViewController extends AbstractClusterViewController {
 
         progressBar.setDisable(true);
 
-        calculatePointsToCluster();
+        watchWindow();
 
     }
 
@@ -58,6 +62,10 @@ public class DBScanViewController extends AbstractClusterViewController {
         progressBar.setProgress(0);
     }
 
+    public void onCancelClicked(ActionEvent actionEvent) {
+        cancelClustering();
+    }
+
     @Override
     protected void setSpinnersDisabled(boolean disabled) {
         epsilonMetresSpinner.setDisable(disabled);
@@ -65,12 +73,13 @@ public class DBScanViewController extends AbstractClusterViewController {
     }
 
     @Override
-    protected boolean doClusteringImpl(double[][] pts) {
+    protected boolean doClusteringImpl(PointBuffer2d pts, CancellationToken token) {
         final double eps = epsilonMetresSpinner.getValue();
         final int minPts = minPtsSpinner.getValue();
         CLIProgram prog = new CLIProgram();
         DBScanCommand command = new DBScanCommand();
         command.setProgressListener(progressListener);
+        command.setCancellationToken(token);
         prog.addCommand(command);
         String[] commandStr = new String[]{"dbscan", "-e", String.valueOf(eps), "-m", String.valueOf(minPts)};
         return prog.doCommand(commandStr);
@@ -90,4 +99,9 @@ public class DBScanViewController extends AbstractClusterViewController {
     protected Button getClusterButton() {
         return clusterBtn;
     }
+
+    @Override
+    protected Button getCancelButton() {
+        return cancelBtn;
+    }
 }
@@ -3,7 +3,9 @@ package onethreeseven.clustering.view.controller;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
+import onethreeseven.clustering.algorithm.CancellationToken;
 import onethreeseven.clustering.command.KmeansCommand;
+import onethreeseven.clustering.model.PointBuffer2d;
 import onethreeseven.jclimod.CLIProgram;
 
 /**
@@ -21,6 +23,9 @@ public class KMeansViewController extends AbstractClusterViewController {
     @FXML
     public Button clusterBtn;
 
+    @FXML
+    public Button cancelBtn;
+
     @FXML
     public ProgressBar progressBar;
 
@@ -34,7 +39,7 @@ public class KMeansViewController extends AbstractClusterViewController {
 
         progressBar.setDisable(true);
 
-        calculatePointsToCluster();
+        watchWindow();
 
     }
 
@@ -43,16 +48,22 @@ public class KMeansViewController extends AbstractClusterViewController {
         doClustering();
     }
 
+    @FXML
+    public void onCancelClicked(ActionEvent actionEvent) {
+        cancelClustering();
+    }
+
     @Override
     protected void setSpinnersDisabled(boolean disabled) {
         kSpinner.setDisable(disabled);
     }
 
     @Override
-    protected boolean doClusteringImpl(double[][] pts) {
+    protected boolean doClusteringImpl(PointBuffer2d pts, CancellationToken token) {
         final int k = kSpinner.getValue();
         CLIProgram prog = new CLIProgram();
         KmeansCommand command = new KmeansCommand();
+        command.setCancellationToken(token);
         prog.addCommand(command);
         String[] commandStr = new String[]{"kmeans", "-k", String.valueOf(k)};
         return prog.doCommand(commandStr);
@@ -72,4 +83,9 @@ public class KMeansViewController extends AbstractClusterViewController {
     protected Button getClusterButton() {
         return clusterBtn;
     }
+
+    @Override
+    protected Button getCancelButton() {
+        return cancelBtn;
+    }
 }
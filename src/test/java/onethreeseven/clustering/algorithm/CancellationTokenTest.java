@@ -0,0 +1,258 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointBuffer2d;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class CancellationTokenTest {
+
+    private static double[][] blobs(int nPts, int nBlobs, long seed){
+        Random rand = new Random(seed);
+        double[][] pts = new double[nPts][];
+        for (int i = 0; i < nPts; i++) {
+            double c = (i % nBlobs) * 50;
+            pts[i] = new double[]{c + rand.nextGaussian() * 5, c * 0.5 + rand.nextGaussian() * 5};
+        }
+        return pts;
+    }
+
+    @Test
+    public void testSpentBudgetStopsDBScan() {
+        double[][] pts = blobs(5000, 5, 137);
+        CancellationToken token = new CancellationToken(0, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(token.isTimedOut());
+        Assert.assertFalse(token.wasStopped());
+
+        DBScanResult result = DBScan.run2dCompact(pts, 1.0, 4, new DBScanOptions().setCancellationToken(token), null);
+        Assert.assertTrue(token.wasStopped());
+        Assert.assertEquals(0, result.getNClusters());
+        Assert.assertEquals(pts.length, result.getClusterSize(DBScanResult.NOISE));
+
+        DBScanResult parallel = DBScan.run2dCompact(pts, 1.0, 4,
+                new DBScanOptions().setParallelism(3).setCancellationToken(token), null);
+        Assert.assertEquals(0, parallel.getNClusters());
+        Assert.assertEquals(pts.length, parallel.getClusterSize(DBScanResult.NOISE));
+    }
+
+    @Test
+    public void testCancelledDBScanKeepsClustersFoundSoFar() {
+        double[][] pts = blobs(20000, 10, 7);
+        DBScanOptions options = new DBScanOptions().setIndexType(SpatialIndexType.GRID);
+        int[] expected = DBScan.run2dCompact(pts, 1.0, 4, options, null).getClusterIdPerPoint();
+
+        //cancel half way through, from the clustering thread like a cancel button would from another
+        CancellationToken token = new CancellationToken();
+        DBScanResult partial = DBScan.run2dCompact(pts, 1.0, 4, options.setCancellationToken(token), progress -> {
+            if(progress > 0.5){
+                token.cancel();
+            }
+        });
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertTrue(token.wasStopped());
+        Assert.assertTrue(partial.getNClusters() > 0);
+
+        //clusters are found in the same order, every cluster but the last one found is complete
+        int[] actual = partial.getClusterIdPerPoint();
+        int nUnreached = 0;
+        for (int i = 0; i < pts.length; i++) {
+            if(actual[i] >= 0 && actual[i] < partial.getNClusters() - 1){
+                Assert.assertEquals(expected[i], actual[i]);
+            }
+            if(expected[i] >= 0 && actual[i] == DBScanResult.NOISE){
+                nUnreached++;
+            }
+        }
+        Assert.assertTrue(nUnreached > 0);
+    }
+
+    @Test
+    public void testParallelStoppedWhileLinkingIsAllNoise() {
+        double[][] pts = blobs(20000, 10, 5);
+        //cancel once the first pass is done, while core points are being linked
+        CancellationToken token = new CancellationToken();
+        DBScanOptions options = new DBScanOptions().setParallelism(3).setCancellationToken(token);
+        DBScanResult result = DBScan.run2dCompact(pts, 1.0, 4, options, progress -> {
+            if(progress > 1.0 / 3){
+                token.cancel();
+            }
+        });
+        Assert.assertTrue(token.wasStopped());
+        Assert.assertEquals(0, result.getNClusters());
+        Assert.assertEquals(pts.length, result.getClusterSize(DBScanResult.NOISE));
+    }
+
+    @Test
+    public void testMaxIterations() {
+        double[][] pts = blobs(20000, 8, 11);
+        int k = 8;
+        double[][] initialCentroids = new double[k][];
+        System.arraycopy(pts, 0, initialCentroids, 0, k);
+
+        KMeansCluster[] converged = KMeans.run2d(pts, k, initialCentroids);
+        KMeansOptions options = new KMeansOptions().setMaxIterations(1);
+        KMeansCluster[] lloyd = KMeans.run2d(pts, k, initialCentroids, options);
+        KMeansCluster[] hamerly = KMeans.run2d(pts, k, initialCentroids, options.setAlgorithm(KMeansAlgorithm.HAMERLY));
+        //both take the same steps, so stop in the same place
+        Assert.assertArrayEquals(lloyd, hamerly);
+        Assert.assertTrue(KMeans.distortion(pts, lloyd) >= KMeans.distortion(pts, converged));
+
+        KMeansResult result = KMeans.run2d(PointBuffer2d.of(pts), k, initialCentroids, new KMeansOptions().setMaxIterations(2));
+        Assert.assertEquals(2, result.getNIterations());
+    }
+
+    @Test
+    public void testCancelledKMeansHasEveryPointAssigned() {
+        double[][] pts = blobs(20000, 8, 13);
+        int k = 8;
+        double[][] initialCentroids = new double[k][];
+        System.arraycopy(pts, 0, initialCentroids, 0, k);
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        KMeansOptions options = new KMeansOptions().setCancellationToken(token);
+        KMeansResult result = KMeans.run2d(PointBuffer2d.of(pts), k, initialCentroids, options);
+        Assert.assertTrue(token.wasStopped());
+        Assert.assertEquals(1, result.getNIterations());
+        //one pass, so each point is with its closest initial centroid
+        for (int i = 0; i < pts.length; i++) {
+            int best = 0;
+            for (int j = 1; j < k; j++) {
+                if(distSq(pts[i], initialCentroids[j]) < distSq(pts[i], initialCentroids[best])){
+                    best = j;
+                }
+            }
+            Assert.assertEquals(best, result.getClusterId(i));
+        }
+
+        //the flat engines stop once the points are first assigned
+        KMeansCluster[] clusters = KMeans.run2d(pts, k, initialCentroids, options);
+        int nPts = 0;
+        for (KMeansCluster cluster : clusters) {
+            nPts += cluster.getPoints2d().size();
+        }
+        Assert.assertEquals(pts.length, nPts);
+    }
+
+    @Test
+    public void testStoppedIterationIsThrownAway() {
+        double[][] pts = blobs(150000, 8, 23);
+        int k = 8;
+        //starting in two of the blobs, so it takes many iterations to converge
+        double[][] initialCentroids = new double[k][];
+        for (int j = 0; j < k; j++) {
+            initialCentroids[j] = pts[(j / 2) * 8 + j % 2];
+        }
+
+        //cancelled part way through the second pass over the points: checked after the first pass, then per chunk
+        KMeansOptions options = new KMeansOptions().setCancellationToken(cancelledOnCheck(3));
+        KMeansResult stopped = KMeans.run2d(PointBuffer2d.of(pts), k, initialCentroids, options);
+        KMeansResult onePass = KMeans.run2d(PointBuffer2d.of(pts), k, initialCentroids,
+                new KMeansOptions().setMaxIterations(1));
+        Assert.assertTrue(options.getCancellationToken().wasStopped());
+        Assert.assertEquals(1, stopped.getNIterations());
+        Assert.assertArrayEquals(onePass.getClusterIdPerPoint(), stopped.getClusterIdPerPoint());
+        Assert.assertArrayEquals(onePass.getCentroids(), stopped.getCentroids());
+
+        //cancelled part way through the second iteration of the flat engines:
+        //checked before each iteration and each of its 19 chunks
+        for (KMeansAlgorithm algorithm : KMeansAlgorithm.values()) {
+            options = new KMeansOptions().setAlgorithm(algorithm).setCancellationToken(cancelledOnCheck(25));
+            KMeansCluster[] stoppedClusters = KMeans.run2d(pts, k, initialCentroids, options);
+            KMeansCluster[] oneIteration = KMeans.run2d(pts, k, initialCentroids,
+                    new KMeansOptions().setAlgorithm(algorithm).setMaxIterations(1));
+            Assert.assertTrue(options.getCancellationToken().wasStopped());
+            Assert.assertArrayEquals(oneIteration, stoppedClusters);
+        }
+    }
+
+    @Test
+    public void testStoppedMiniBatchKeepsBatchesSoFar() {
+        double[][] pts = blobs(10000, 4, 29);
+        MiniBatchKMeans miniBatch = new MiniBatchKMeans(4, 256, 42);
+        CancellationToken token = cancelledOnCheck(3);
+        //checked before the first point and once every batch
+        Assert.assertFalse(miniBatch.addAll(Arrays.asList(pts).iterator(), token));
+        Assert.assertTrue(token.wasStopped());
+        Assert.assertEquals(512, miniBatch.getNPointsSeen());
+        Assert.assertEquals(2, miniBatch.getNBatches());
+        Assert.assertEquals(4, miniBatch.getClusters().length);
+
+        Assert.assertTrue(new MiniBatchKMeans(4, 256, 42).addAll(Arrays.asList(pts).iterator(), null));
+    }
+
+    /**
+     * @param nChecks The check the token is cancelled on.
+     * @return A token that cancels itself the nth time an algorithm checks it.
+     */
+    private static CancellationToken cancelledOnCheck(int nChecks){
+        return new CancellationToken(){
+            private int nChecked = 0;
+
+            @Override
+            boolean shouldStop() {
+                if(++nChecked == nChecks){
+                    cancel();
+                }
+                return super.shouldStop();
+            }
+        };
+    }
+
+    @Test(timeout = 10000)
+    public void testCancelledSeedingStillGivesKClusters() {
+        double[][] pts = blobs(20000, 8, 19);
+        int k = 8;
+        for (KMeansInitialiser initialiser : KMeansInitialiser.values()) {
+            CancellationToken token = new CancellationToken();
+            token.cancel();
+            KMeansOptions options = new KMeansOptions().setInitialiser(initialiser).setSeed(42)
+                    .setParallelism(3).setCancellationToken(token);
+            //the seeding stops too, but still hands back k centroids for every point to be assigned to
+            KMeansCluster[] clusters = KMeans.run2d(pts, k, options);
+            Assert.assertTrue(token.wasStopped());
+            Assert.assertEquals(k, clusters.length);
+            int nPts = 0;
+            for (KMeansCluster cluster : clusters) {
+                nPts += cluster.getPoints2d().size();
+            }
+            Assert.assertEquals(pts.length, nPts);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testEmptyClustersAreRefilled() {
+        double[][] pts = blobs(2000, 4, 17);
+        //a starting centroid far from every point gets no points
+        double[][] initialCentroids = new double[][]{pts[0], pts[1], pts[2], {1e9, 1e9}};
+        KMeans classic = new KMeans();
+        KMeansCluster[] clusters = classic.initClusters(pts, 4, initialCentroids);
+        Assert.assertTrue(clusters[3].getPoints2d().isEmpty());
+        classic.doKMeans(clusters, false);
+        for (KMeansCluster cluster : clusters) {
+            Assert.assertFalse(cluster.getPoints2d().isEmpty());
+        }
+
+        //every point the same, so there is nothing to move into the empty clusters
+        double[][] same = new double[100][];
+        for (int i = 0; i < same.length; i++) {
+            same[i] = new double[]{3, 4};
+        }
+        clusters = classic.initClusters(same, 3, new double[][]{{3, 4}, {0, 0}, {9, 9}});
+        classic.doKMeans(clusters, false);
+        Assert.assertEquals(same.length, clusters[0].getPoints2d().size());
+    }
+
+    private static double distSq(double[] a, double[] b){
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        return dx * dx + dy * dy;
+    }
+
+}
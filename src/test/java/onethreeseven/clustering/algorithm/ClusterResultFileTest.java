@@ -0,0 +1,124 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.ClusterResultFile;
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointSource2d;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class ClusterResultFileTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("clusters", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    //three gaussian blobs with some uniform noise
+    private static double[][] blobs(int nPts){
+        Random rand = new Random(137);
+        double[][] centres = new double[][]{{0, 0}, {100, 0}, {50, 100}};
+        double[][] pts = new double[nPts][];
+        for (int i = 0; i < nPts; i++) {
+            if(i % 10 == 0){
+                pts[i] = new double[]{rand.nextDouble() * 200 - 50, rand.nextDouble() * 200 - 50};
+            }else{
+                double[] c = centres[i % centres.length];
+                pts[i] = new double[]{c[0] + rand.nextGaussian() * 3, c[1] + rand.nextGaussian() * 3};
+            }
+        }
+        return pts;
+    }
+
+    @Test
+    public void testDBScanRoundTrip() throws IOException {
+        double[][] pts = blobs(10000);
+        DBScanResult expected = DBScan.run2dCompact(pts, 1.5, 8);
+        ClusterResultFile.write(file, expected, 1.5, 8);
+
+        ClusterResultFile saved = ClusterResultFile.open(file);
+        Assert.assertEquals(ClusterResultFile.Algorithm.DBSCAN, saved.getAlgorithm());
+        Assert.assertEquals(1.5, saved.getEpsilon(), 0);
+        Assert.assertEquals(8, saved.getMinPts());
+        Assert.assertEquals(expected.getNRangeQueries(), saved.getNRangeQueries());
+        Assert.assertEquals(pts.length, saved.getNPoints());
+        Assert.assertEquals(expected.getNClusters(), saved.getNClusters());
+        for (int i = 0; i < pts.length; i++) {
+            Assert.assertEquals(pts[i][0], saved.getPoints().getX(i), 0);
+            Assert.assertEquals(pts[i][1], saved.getPoints().getY(i), 0);
+            Assert.assertEquals(expected.getClusterId(i), saved.getClusterId(i));
+            Assert.assertEquals(expected.getClusterId(i) == DBScanResult.NOISE, saved.isNoise(i));
+        }
+
+        //each centroid is the mean of its cluster
+        for (int c = 0; c < expected.getNClusters(); c++) {
+            double sumX = 0;
+            for (int i = 0; i < expected.getClusterSize(c); i++) {
+                sumX += pts[expected.getPointIndex(c, i)][0];
+            }
+            Assert.assertEquals(sumX / expected.getClusterSize(c), saved.getCentroids()[c][0], 1e-9);
+        }
+
+        DBScanResult reloaded = saved.toDBScanResult();
+        Assert.assertArrayEquals(expected.getClusterIdPerPoint(), reloaded.getClusterIdPerPoint());
+        Assert.assertArrayEquals(expected.getPermutation(), reloaded.getPermutation());
+        Assert.assertArrayEquals(expected.getOffsets(), reloaded.getOffsets());
+    }
+
+    @Test
+    public void testKMeansRoundTrip() throws IOException {
+        double[][] pts = blobs(10000);
+        KMeansResult expected = KMeans.run2d(PointSource2d.of(pts), 3, new KMeansOptions().setSeed(7L));
+        ClusterResultFile.write(file, expected);
+
+        ClusterResultFile saved = ClusterResultFile.open(file);
+        Assert.assertEquals(ClusterResultFile.Algorithm.KMEANS, saved.getAlgorithm());
+        Assert.assertTrue(Double.isNaN(saved.getEpsilon()));
+
+        KMeansResult reloaded = saved.toKMeansResult();
+        Assert.assertEquals(expected.getNIterations(), reloaded.getNIterations());
+        Assert.assertArrayEquals(expected.getClusterIdPerPoint(), reloaded.getClusterIdPerPoint());
+        for (int c = 0; c < expected.getK(); c++) {
+            Assert.assertArrayEquals(expected.getCentroids()[c], reloaded.getCentroids()[c], 0);
+            Assert.assertEquals(expected.getClusterSize(c), reloaded.getClusterSize(c));
+        }
+        Assert.assertFalse(saved.isNoise(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWrongAlgorithm() throws IOException {
+        ClusterResultFile.write(file, DBScan.run2dCompact(blobs(1000), 1.5, 8), 1.5, 8);
+        ClusterResultFile.open(file).toKMeansResult();
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAResultFile() throws IOException {
+        Files.write(file, new byte[128]);
+        ClusterResultFile.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws IOException {
+        ClusterResultFile.write(file, DBScan.run2dCompact(blobs(1000), 1.5, 8), 1.5, 8);
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        Files.write(file, truncated);
+        ClusterResultFile.open(file);
+    }
+
+}
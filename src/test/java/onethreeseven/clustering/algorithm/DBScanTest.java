@@ -1,10 +1,15 @@
 package onethreeseven.clustering.algorithm;
 
 import onethreeseven.clustering.model.DBScanCluster;
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.DBScanSweepResult;
+import onethreeseven.clustering.model.PointBuffer2d;
 import org.junit.Assert;
 import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
 
 
 public class DBScanTest {
@@ -87,6 +92,166 @@ public class DBScanTest {
         compareResult(clusters, testResult);
     }
 
+    @Test
+    public void testDBSCAN2dGrid() {
+        Collection<DBScanCluster> clusters = DBScan.run2d(testData, testEpsilon, testMinPts, SpatialIndexType.GRID, null);
+        compareResult(clusters, testResult);
+    }
+
+    @Test
+    public void testDBSCAN2dParallel() {
+        Collection<DBScanCluster> clusters = DBScan.run2dParallel(testData, testEpsilon, testMinPts, 4);
+        compareResult(clusters, testResult);
+    }
+
+    @Test
+    public void testGridAndParallelMatchKdTree() {
+        //random blobs of points with distinct coordinates (the kd-tree merges duplicates)
+        Random rand = new Random(137);
+        HashSet<Long> seen = new HashSet<>();
+        double[][] pts = new double[2000][];
+        int i = 0;
+        while(i < pts.length){
+            double cx = (i / 200) * 50;
+            double x = Math.round((cx + rand.nextGaussian() * 8) * 100) / 100.0;
+            double y = Math.round((cx + rand.nextGaussian() * 8) * 100) / 100.0;
+            if(seen.add(Double.doubleToLongBits(x) * 31 + Double.doubleToLongBits(y))){
+                pts[i++] = new double[]{x, y};
+            }
+        }
+
+        Collection<DBScanCluster> expected = DBScan.run2d(pts, 2.5, 5, SpatialIndexType.KD_TREE, null);
+        Collection<DBScanCluster> actual = DBScan.run2d(pts, 2.5, 5, SpatialIndexType.GRID, null);
+        compareResult(actual, expected);
+
+        Collection<DBScanCluster> actualParallel = DBScan.run2dParallel(pts, 2.5, 5, 4);
+        compareResult(actualParallel, expected);
+
+        //clusters are numbered in discovery order by both
+        Assert.assertArrayEquals(DBScan.run2dCompact(pts, 2.5, 5).getClusterIdPerPoint(),
+                DBScan.run2dParallelCompact(pts, 2.5, 5, 4, null).getClusterIdPerPoint());
+
+        //and over packed points
+        DBScanOptions parallelOptions = new DBScanOptions().setIndexType(SpatialIndexType.GRID).setParallelism(4);
+        Assert.assertArrayEquals(DBScan.run2dCompact(pts, 2.5, 5).getClusterIdPerPoint(),
+                DBScan.run2dCompact(PointBuffer2d.of(pts), 2.5, 5, parallelOptions, null).getClusterIdPerPoint());
+    }
+
+    @Test
+    public void testBalancedKdTreeQueries() {
+        //a random walk, so consecutive points are close like a trajectory, with every tenth point repeated
+        Random rand = new Random(137);
+        double[][] pts = new double[5000][];
+        double x = 0, y = 0;
+        for (int i = 0; i < pts.length; i++) {
+            if(i % 10 == 9){
+                pts[i] = pts[i - 1].clone();
+                continue;
+            }
+            x += rand.nextGaussian();
+            y += rand.nextGaussian();
+            pts[i] = new double[]{x, y};
+        }
+
+        NeighbourIndex2d index = SpatialIndexType.BALANCED_KD_TREE.build(pts, 2.0);
+        IntList out = new IntList();
+        for (int q = 0; q < pts.length; q += 7) {
+            for (double radius : new double[]{0, 0.5, 2.0, 20.0}) {
+                HashSet<Integer> expected = new HashSet<>();
+                for (int i = 0; i < pts.length; i++) {
+                    if(Math.hypot(pts[i][0] - pts[q][0], pts[i][1] - pts[q][1]) <= radius){
+                        expected.add(i);
+                    }
+                }
+                index.rangeQuery(pts[q][0], pts[q][1], radius, out);
+                HashSet<Integer> actual = new HashSet<>();
+                for (int i = 0; i < out.size(); i++) {
+                    actual.add(out.get(i));
+                }
+                Assert.assertEquals(expected.size(), out.size());
+                Assert.assertEquals(expected, actual);
+            }
+        }
+
+        //duplicates are kept, so the same clusters as the grid
+        DBScanOptions options = new DBScanOptions();
+        Assert.assertEquals(SpatialIndexType.BALANCED_KD_TREE, options.getIndexType());
+        Assert.assertArrayEquals(
+                DBScan.run2dCompact(pts, 1.0, 6, SpatialIndexType.GRID, null).getClusterIdPerPoint(),
+                DBScan.run2dCompact(pts, 1.0, 6, options, null).getClusterIdPerPoint());
+    }
+
+    @Test
+    public void testCompactResult() {
+        DBScanResult result = DBScan.run2dCompact(testData, testEpsilon, testMinPts);
+        Assert.assertEquals(3, result.getNClusters());
+        compareResult(result.getClusters(), testResult);
+
+        //every point is in the group of its cluster id
+        int[] ids = result.getClusterIdPerPoint();
+        int nGrouped = 0;
+        for (int clusterId = DBScanResult.NOISE; clusterId < result.getNClusters(); clusterId++) {
+            DBScanCluster view = result.getCluster(clusterId);
+            Assert.assertEquals(clusterId == DBScanResult.NOISE, view.IsNoise());
+            Assert.assertEquals(result.getClusterSize(clusterId), view.getPoints2d().size());
+            for (int i = 0; i < result.getClusterSize(clusterId); i++) {
+                int ptIdx = result.getPointIndex(clusterId, i);
+                Assert.assertEquals(clusterId, ids[ptIdx]);
+                //views share the original points rather than copying them
+                Assert.assertSame(testData[ptIdx], view.getPoints2d().get(i));
+                nGrouped++;
+            }
+        }
+        Assert.assertEquals(testData.length, nGrouped);
+
+        DBScanResult parallel = DBScan.run2dParallelCompact(testData, testEpsilon, testMinPts, 4, null);
+        Assert.assertArrayEquals(ids, parallel.getClusterIdPerPoint());
+    }
+
+    @Test
+    public void testMemoisedNeighbourhoods() {
+        //noisy blobs, so border points are reached more than once
+        Random rand = new Random(137);
+        double[][] pts = new double[3000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % 3) * 40;
+            pts[i] = new double[]{c + rand.nextGaussian() * 10, c + rand.nextGaussian() * 10};
+        }
+
+        DBScanOptions options = new DBScanOptions().setMemoiseNeighbourhoods(false);
+        DBScanResult plain = DBScan.run2dCompact(pts, 1.5, 8, options, null);
+        DBScanResult memoised = DBScan.run2dCompact(pts, 1.5, 8, options.setMemoiseNeighbourhoods(true), null);
+
+        Assert.assertArrayEquals(plain.getClusterIdPerPoint(), memoised.getClusterIdPerPoint());
+        //each point's neighbourhood is only queried once
+        Assert.assertEquals(pts.length, memoised.getNRangeQueries());
+        Assert.assertTrue(plain.getNRangeQueries() > memoised.getNRangeQueries());
+
+        compareResult(DBScan.run2d(testData, testEpsilon, testMinPts, options.setIndexType(SpatialIndexType.GRID)), testResult);
+    }
+
+    @Test
+    public void testSweepMatchesEachSetting() {
+        Random rand = new Random(137);
+        double[][] pts = new double[2000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % 4) * 30;
+            pts[i] = new double[]{c + rand.nextGaussian() * 6, rand.nextGaussian() * 6};
+        }
+
+        double[] epsilons = new double[]{0.5, 1.0, 2.0, 4.0};
+        int[] minPts = new int[]{1, 4, 10};
+        DBScanSweepResult sweep = DBScan.sweep(pts, epsilons, minPts);
+
+        for (int e = 0; e < epsilons.length; e++) {
+            for (int m = 0; m < minPts.length; m++) {
+                DBScanResult expected = DBScan.run2dCompact(pts, epsilons[e], minPts[m], SpatialIndexType.GRID, null);
+                Assert.assertEquals(expected.getNClusters(), sweep.getNClusters(e, m));
+                Assert.assertEquals(expected.getClusterSize(DBScanResult.NOISE), sweep.getNNoise(e, m));
+            }
+        }
+    }
+
     private static void compareResult(Collection<DBScanCluster> actualClusters, Collection<DBScanCluster> expectedClusters){
         Assert.assertEquals(expectedClusters.size(), actualClusters.size());
 
@@ -0,0 +1,112 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DenStreamTest {
+
+    private static final double[][] BLOB_CENTRES = new double[][]{{0, 0}, {30, 0}, {0, 30}};
+
+    //a hundred points per unit of time from the given blobs, with one in twenty spread over the whole area
+    private static void stream(DenStream denStream, Random rand, int nPoints, double startTime, int... blobs){
+        for (int i = 0; i < nPoints; i++) {
+            double time = startTime + i / 100.0;
+            if(i % 20 == 0){
+                denStream.ingest(rand.nextDouble() * 60 - 15, rand.nextDouble() * 60 - 15, time);
+            }else{
+                double[] c = BLOB_CENTRES[blobs[i % blobs.length]];
+                denStream.ingest(c[0] + rand.nextGaussian(), c[1] + rand.nextGaussian(), time);
+            }
+        }
+    }
+
+    private static boolean anyCentreNear(double[][] centres, double[] pt, double radius){
+        for (double[] c : centres) {
+            if(Math.hypot(c[0] - pt[0], c[1] - pt[1]) <= radius){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testOfflineClustersFindBlobs() {
+        DenStream denStream = new DenStream(0.5);
+        stream(denStream, new Random(137), 30000, 0, 0, 1, 2);
+        Assert.assertEquals(30000, denStream.getNIngested());
+
+        DBScanResult result = denStream.cluster(1.5, 3);
+        Assert.assertEquals(3, result.getNClusters());
+        double[][] centres = result.getPoints();
+        //every cluster is one blob
+        for (int cluster = 0; cluster < 3; cluster++) {
+            int blob = -1;
+            for (int i = 0; i < centres.length; i++) {
+                if(result.getClusterId(i) != cluster){
+                    continue;
+                }
+                for (int b = 0; b < BLOB_CENTRES.length; b++) {
+                    if(Math.hypot(centres[i][0] - BLOB_CENTRES[b][0], centres[i][1] - BLOB_CENTRES[b][1]) < 6){
+                        if(blob == -1){
+                            blob = b;
+                        }
+                        Assert.assertEquals(blob, b);
+                    }
+                }
+            }
+            Assert.assertNotEquals(-1, blob);
+        }
+        Assert.assertEquals(centres.length, denStream.getWeights().length);
+    }
+
+    @Test
+    public void testOldDensityFades() {
+        DenStream denStream = new DenStream(0.5);
+        Random rand = new Random(137);
+        stream(denStream, rand, 10000, 0, 0);
+        Assert.assertTrue(anyCentreNear(denStream.getCentres(), BLOB_CENTRES[0], 3));
+
+        //the stream moves to another blob
+        stream(denStream, rand, 20000, 100, 1);
+        Assert.assertFalse(anyCentreNear(denStream.getCentres(), BLOB_CENTRES[0], 3));
+        Assert.assertTrue(anyCentreNear(denStream.getCentres(), BLOB_CENTRES[1], 3));
+    }
+
+    @Test
+    public void testMemoryCap() {
+        DenStream denStream = new DenStream(0.5, new DenStreamOptions().setMaxMicroClusters(50));
+        Random rand = new Random(137);
+        for (int i = 0; i < 20000; i++) {
+            denStream.ingest(rand.nextDouble() * 100, rand.nextDouble() * 100, i / 100.0);
+            Assert.assertTrue(denStream.getNMicroClusters() <= 50);
+        }
+    }
+
+    @Test
+    public void testEvictionMakesRoomForAnEighth() {
+        DenStream denStream = new DenStream(0.5, new DenStreamOptions().setMaxMicroClusters(64));
+        //points far apart at the same time, so every micro-cluster has the same weight
+        for (int i = 0; i < 64; i++) {
+            denStream.ingest(i * 10, 0, 0);
+        }
+        Assert.assertEquals(64, denStream.getNMicroClusters());
+        denStream.ingest(-10, 0, 0);
+        Assert.assertEquals(64 - 8 + 1, denStream.getNMicroClusters());
+        //the room made is used before the summary is scanned again
+        for (int i = 0; i < 7; i++) {
+            denStream.ingest(0, 10 + i * 10, 0);
+        }
+        Assert.assertEquals(64, denStream.getNMicroClusters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeMustNotGoBackwards() {
+        DenStream denStream = new DenStream(0.5);
+        denStream.ingest(0, 0, 10);
+        denStream.ingest(0, 0, 9);
+    }
+
+}
@@ -0,0 +1,47 @@
+package onethreeseven.clustering.algorithm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class DynamicGridIndex2dTest {
+
+    @Test
+    public void testEmptiedCellsAreDropped() {
+        Random rand = new Random(137);
+        DynamicGridIndex2d index = new DynamicGridIndex2d(1.0);
+        int nPts = 200;
+        for (int i = 0; i < nPts; i++) {
+            index.add(rand.nextDouble() * 10, rand.nextDouble() * 10);
+        }
+
+        //drift every point far across the plane, the cells left behind must not pile up
+        IntList out = new IntList();
+        for (int round = 1; round <= 50; round++) {
+            for (int i = 0; i < nPts; i++) {
+                index.place(i, round * 100 + rand.nextDouble() * 10, rand.nextDouble() * 10);
+            }
+            Assert.assertTrue(index.getNCells() <= 121);
+
+            //queries still find exactly the points within the radius
+            double x = round * 100 + 5;
+            double y = 5;
+            int expected = 0;
+            for (int i = 0; i < nPts; i++) {
+                double dx = index.getX(i) - x;
+                double dy = index.getY(i) - y;
+                if(dx * dx + dy * dy <= 4){
+                    expected++;
+                }
+            }
+            Assert.assertEquals(expected, index.rangeQuery(x, y, 2, out));
+        }
+
+        for (int i = 0; i < nPts; i++) {
+            index.remove(i);
+        }
+        Assert.assertEquals(0, index.getNCells());
+    }
+
+}
@@ -0,0 +1,134 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.HDBSCANCluster;
+import onethreeseven.clustering.model.HDBSCANResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class HDBSCANTest {
+
+    //two tight blobs and one spread out blob, over a sparse background
+    private static double[][] varyingDensity(){
+        Random rand = new Random(137);
+        double[][] pts = new double[1600][];
+        for (int i = 0; i < pts.length; i++) {
+            if(i < 500){
+                pts[i] = new double[]{rand.nextGaussian(), rand.nextGaussian()};
+            }else if(i < 1000){
+                pts[i] = new double[]{20 + rand.nextGaussian(), rand.nextGaussian()};
+            }else if(i < 1500){
+                pts[i] = new double[]{10 + rand.nextGaussian() * 6, 60 + rand.nextGaussian() * 6};
+            }else{
+                pts[i] = new double[]{rand.nextDouble() * 200 - 100, rand.nextDouble() * 200 - 100};
+            }
+        }
+        return pts;
+    }
+
+    @Test
+    public void testFindsClustersOfDifferentDensity() {
+        double[][] pts = varyingDensity();
+        HDBSCANResult result = HDBSCAN.run2d(pts, 10, 50);
+        Assert.assertEquals(3, result.getNClusters());
+
+        //each blob is mostly one cluster
+        for (int blob = 0; blob < 3; blob++) {
+            int id = result.getClusterId(blob * 500);
+            Assert.assertNotEquals(HDBSCANResult.NOISE, id);
+            int nSame = 0;
+            for (int i = blob * 500; i < (blob + 1) * 500; i++) {
+                if(result.getClusterId(i) == id){
+                    nSame++;
+                }
+            }
+            Assert.assertTrue(nSame > 450);
+        }
+
+        List<HDBSCANCluster> clusters = result.getClusters();
+        Assert.assertEquals(4, clusters.size());
+        Assert.assertTrue(clusters.get(3).IsNoise());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(clusters.get(i).getStability() > 0);
+            Assert.assertEquals(result.getClusterSize(i), clusters.get(i).getPoints2d().size());
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        double[][] pts = varyingDensity();
+        HDBSCANResult sequential = HDBSCAN.run2d(pts, 5, 20);
+        HDBSCANResult parallel = HDBSCAN.run2d(pts, 5, 20, 4, null);
+        Assert.assertArrayEquals(sequential.getClusterIdPerPoint(), parallel.getClusterIdPerPoint());
+    }
+
+    @Test
+    public void testCoreDistancesAreKthClosest() {
+        Random rand = new Random(7);
+        double[][] pts = new double[500][];
+        for (int i = 0; i < pts.length; i++) {
+            pts[i] = new double[]{rand.nextGaussian() * 10, rand.nextGaussian() * 10};
+        }
+
+        double[] core = new BoruvkaMST(pts).findCoreDistances(7, null);
+        double[] dists = new double[pts.length];
+        for (int i = 0; i < pts.length; i++) {
+            for (int j = 0; j < pts.length; j++) {
+                dists[j] = Math.hypot(pts[i][0] - pts[j][0], pts[i][1] - pts[j][1]);
+            }
+            Arrays.sort(dists);
+            //the point itself is the closest
+            Assert.assertEquals(dists[6], core[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testSpanningTreeIsMinimal() {
+        Random rand = new Random(7);
+        int n = 300;
+        double[][] pts = new double[n][];
+        double[] core = new double[n];
+        for (int i = 0; i < n; i++) {
+            pts[i] = new double[]{rand.nextDouble() * 50, rand.nextDouble() * 50};
+            core[i] = rand.nextDouble() * 3;
+        }
+
+        BoruvkaMST tree = new BoruvkaMST(pts);
+        tree.setCoreDistances(core);
+        BoruvkaMST.Edges edges = tree.run(null);
+        Assert.assertEquals(n - 1, edges.size);
+        double total = 0;
+        for (int e = 0; e < edges.size; e++) {
+            total += edges.weights[e];
+        }
+
+        //prim's algorithm over the complete mutual reachability graph
+        boolean[] inTree = new boolean[n];
+        double[] dist = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[0] = 0;
+        double expected = 0;
+        for (int step = 0; step < n; step++) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if(!inTree[i] && (next == -1 || dist[i] < dist[next])){
+                    next = i;
+                }
+            }
+            inTree[next] = true;
+            expected += dist[next];
+            for (int i = 0; i < n; i++) {
+                double d = Math.max(Math.max(core[next], core[i]),
+                        Math.hypot(pts[next][0] - pts[i][0], pts[next][1] - pts[i][1]));
+                if(!inTree[i] && d < dist[i]){
+                    dist[i] = d;
+                }
+            }
+        }
+        Assert.assertEquals(expected, total, 1e-9);
+    }
+
+}
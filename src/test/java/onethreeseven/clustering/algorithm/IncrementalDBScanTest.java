@@ -0,0 +1,145 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanDelta;
+import onethreeseven.clustering.model.DBScanResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class IncrementalDBScanTest {
+
+    private static final double EPSILON = 1.5;
+    private static final int MIN_PTS = 6;
+
+    /**
+     * Core points must be grouped exactly as DBSCAN groups them from scratch, and the same points must be noise.
+     */
+    private static void assertMatchesDBScan(IncrementalDBScan incremental, List<Integer> aliveIds){
+        DBScanResult actual = incremental.snapshot();
+        DBScanResult expected = DBScan.run2dCompact(actual.getPoints(), EPSILON, MIN_PTS, SpatialIndexType.GRID, null);
+        Assert.assertEquals(expected.getNClusters(), actual.getNClusters());
+        Assert.assertEquals(expected.getNClusters(), incremental.getNClusters());
+
+        int[] expectedToActual = new int[expected.getNClusters()];
+        Arrays.fill(expectedToActual, DBScanResult.NOISE);
+        for (int i = 0; i < aliveIds.size(); i++) {
+            int e = expected.getClusterId(i);
+            int a = actual.getClusterId(i);
+            Assert.assertEquals(e == DBScanResult.NOISE, a == DBScanResult.NOISE);
+            if(!incremental.isCore(aliveIds.get(i))){
+                continue;
+            }
+            if(expectedToActual[e] == DBScanResult.NOISE){
+                expectedToActual[e] = a;
+            }
+            Assert.assertEquals(expectedToActual[e], a);
+        }
+    }
+
+    @Test
+    public void testInsertAndDeleteMatchDBScan() {
+        Random rand = new Random(137);
+        IncrementalDBScan incremental = new IncrementalDBScan(EPSILON, MIN_PTS);
+        List<Integer> aliveIds = new ArrayList<>();
+
+        //blobs that grow into each other, over a sparse background
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 500; i++) {
+                double[] pt = i % 10 == 0
+                        ? new double[]{rand.nextDouble() * 60, rand.nextDouble() * 60}
+                        : new double[]{(i % 4) * 15 + rand.nextGaussian() * (2 + round), (i % 3) * 20 + rand.nextGaussian() * 3};
+                aliveIds.add(incremental.insert(pt));
+            }
+            assertMatchesDBScan(incremental, aliveIds);
+        }
+
+        //thin them out until clusters split and dissolve
+        Collections.shuffle(aliveIds, rand);
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 400; i++) {
+                incremental.delete(aliveIds.remove(aliveIds.size() - 1));
+            }
+            Collections.sort(aliveIds);
+            assertMatchesDBScan(incremental, aliveIds);
+            Collections.shuffle(aliveIds, rand);
+        }
+    }
+
+    @Test
+    public void testDeletedIdsAreReused() {
+        Random rand = new Random(17);
+        IncrementalDBScan incremental = new IncrementalDBScan(EPSILON, MIN_PTS);
+        List<Integer> aliveIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            aliveIds.add(incremental.insert(new double[]{(i % 4) * 15 + rand.nextGaussian() * 3, rand.nextGaussian() * 3}));
+        }
+
+        //a sliding window: delete some, insert as many, the numbers stay below the most points alive at once
+        for (int round = 0; round < 20; round++) {
+            Collections.shuffle(aliveIds, rand);
+            for (int i = 0; i < 200; i++) {
+                incremental.delete(aliveIds.remove(aliveIds.size() - 1));
+            }
+            for (int i = 0; i < 200; i++) {
+                int ptId = incremental.insert(new double[]{(i % 4) * 15 + rand.nextGaussian() * (3 + round % 3),
+                        rand.nextGaussian() * 3});
+                Assert.assertTrue(ptId < 1000);
+                Assert.assertFalse(aliveIds.contains(ptId));
+                aliveIds.add(ptId);
+            }
+            Collections.sort(aliveIds);
+            assertMatchesDBScan(incremental, aliveIds);
+        }
+        Assert.assertEquals(1000, incremental.getNPoints());
+    }
+
+    @Test
+    public void testDeltaReportsMergeAndSplit() {
+        IncrementalDBScan incremental = new IncrementalDBScan(1.0, 3);
+        //two lines of points, with a gap of two between their ends
+        for (int i = 0; i < 5; i++) {
+            incremental.insert(new double[]{i, 0});
+            incremental.insert(new double[]{i + 7, 0});
+        }
+        Assert.assertEquals(2, incremental.getNClusters());
+        DBScanDelta delta = incremental.pollDelta();
+        Assert.assertEquals(2, delta.getCreated().length);
+        Assert.assertTrue(incremental.pollDelta().isEmpty());
+
+        //bridge the gap, the clusters merge
+        int left = incremental.insert(new double[]{5, 0});
+        int right = incremental.insert(new double[]{6, 0});
+        Assert.assertEquals(1, incremental.getNClusters());
+        delta = incremental.pollDelta();
+        Assert.assertEquals(0, delta.getCreated().length);
+        Assert.assertEquals(1, delta.getChanged().length);
+        Assert.assertEquals(1, delta.getRemoved().length);
+        int merged = delta.getChanged()[0];
+        Assert.assertEquals(merged, incremental.getClusterId(0));
+        Assert.assertEquals(merged, incremental.getClusterId(1));
+
+        //take the bridge away again, the cluster splits
+        incremental.delete(left);
+        incremental.delete(right);
+        Assert.assertEquals(2, incremental.getNClusters());
+        delta = incremental.pollDelta();
+        Assert.assertEquals(1, delta.getCreated().length);
+        Assert.assertArrayEquals(new int[]{merged}, delta.getChanged());
+        Assert.assertNotEquals(incremental.getClusterId(0), incremental.getClusterId(1));
+
+        //empty one side, its cluster dissolves
+        int removedCluster = incremental.getClusterId(1);
+        for (int i = 1; i < 10; i += 2) {
+            incremental.delete(i);
+        }
+        Assert.assertEquals(1, incremental.getNClusters());
+        delta = incremental.pollDelta();
+        Assert.assertArrayEquals(new int[]{removedCluster}, delta.getRemoved());
+    }
+
+}
@@ -1,9 +1,13 @@
 package onethreeseven.clustering.algorithm;
 
 import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointBuffer2d;
 import org.junit.Assert;
 import org.junit.Test;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class KMeansTest {
 
@@ -72,6 +76,197 @@ public class KMeansTest {
         compareResult(clusters, testResult);
     }
 
+    @Test
+    public void testFind3ClustersHamerly() {
+        KMeansOptions options = new KMeansOptions().setAlgorithm(KMeansAlgorithm.HAMERLY);
+        KMeansCluster[] clusters = KMeans.run2d(testData, testK, testCentroids, options);
+        compareResult(clusters, testResult);
+    }
+
+    @Test
+    public void testFlatEnginesMatchClassic() {
+        //integer coordinates keep the centroid sums exact regardless of summation order
+        Random rand = new Random(137);
+        int k = 12;
+        double[][] pts = new double[20000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % k) * 40;
+            pts[i] = new double[]{Math.round(c + rand.nextGaussian() * 30), Math.round(c * 0.5 + rand.nextGaussian() * 30)};
+        }
+        double[][] initialCentroids = new double[k][];
+        System.arraycopy(pts, 0, initialCentroids, 0, k);
+
+        KMeans classic = new KMeans();
+        KMeansCluster[] expected = classic.initClusters(pts, k, initialCentroids);
+        classic.doKMeans(expected, true);
+
+        LloydKMeans lloyd = new LloydKMeans(pts, k, initialCentroids);
+        Assert.assertArrayEquals(expected, lloyd.run());
+
+        HamerlyKMeans hamerly = new HamerlyKMeans(pts, k, initialCentroids);
+        Assert.assertArrayEquals(expected, hamerly.run());
+
+        //bounds should skip most of the distance calculations lloyd's algorithm would have done
+        //threads process the same chunks, so give exactly the same result
+        KMeansOptions parallelOptions = new KMeansOptions().setParallelism(3);
+        Assert.assertArrayEquals(expected, KMeans.run2d(pts, k, initialCentroids, parallelOptions));
+        parallelOptions.setAlgorithm(KMeansAlgorithm.HAMERLY);
+        Assert.assertArrayEquals(expected, KMeans.run2d(pts, k, initialCentroids, parallelOptions));
+
+        Assert.assertEquals(lloyd.getNIterations(), hamerly.getNIterations());
+        Assert.assertTrue(hamerly.getNDistanceCalculations() < lloyd.getNDistanceCalculations() / 2);
+    }
+
+    @Test
+    public void testSeededRunIsReproducible() {
+        Random rand = new Random(137);
+        int k = 5;
+        double[][] pts = new double[4000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % k) * 100;
+            pts[i] = new double[]{c + rand.nextGaussian() * 20, c + rand.nextGaussian() * 20};
+        }
+
+        KMeansCluster[] expected = KMeans.run2d(pts, k, new KMeansOptions().setSeed(42));
+        //same seed gives the same clusters regardless of the number of threads
+        KMeansCluster[] actual = KMeans.run2d(pts, k, new KMeansOptions().setSeed(42).setParallelism(3));
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testPointSourceMatchesArrays() {
+        Random rand = new Random(137);
+        int k = 5;
+        double[][] pts = new double[4000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % k) * 100;
+            pts[i] = new double[]{c + rand.nextGaussian() * 20, c + rand.nextGaussian() * 20};
+        }
+
+        //packed points give the same clusters as the arrays for every initialiser
+        for (KMeansInitialiser initialiser : KMeansInitialiser.values()) {
+            KMeansOptions options = new KMeansOptions().setInitialiser(initialiser).setSeed(42).setParallelism(3);
+            KMeansCluster[] expected = KMeans.run2d(pts, k, options);
+            KMeansResult actual = KMeans.run2d(PointBuffer2d.of(pts), k, 20, options);
+            Assert.assertEquals(k, actual.getK());
+            for (int j = 0; j < k; j++) {
+                Assert.assertArrayEquals(expected[j].getCentroid(), actual.getCentroids()[j], 1e-9);
+                Assert.assertEquals(expected[j].getPoints2d().size(), actual.getClusterSize(j));
+            }
+        }
+    }
+
+    @Test
+    public void testFind3ClustersWithDSquaredSeeding() {
+        for (KMeansInitialiser initialiser : new KMeansInitialiser[]{
+                KMeansInitialiser.KMEANS_PLUS_PLUS, KMeansInitialiser.KMEANS_PARALLEL}) {
+            KMeansOptions options = new KMeansOptions().setInitialiser(initialiser).setSeed(137);
+            compareResult(KMeans.run2d(testData, testK, options), testResult);
+        }
+    }
+
+    @Test
+    public void testSeedGivesSameCentroids() {
+        Random rand = new Random(137);
+        int k = 6;
+        double[][] pts = new double[6000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % k) * 80;
+            pts[i] = new double[]{c + rand.nextGaussian() * 25, (i % 4) * 60 + rand.nextGaussian() * 25};
+        }
+
+        KMeansCluster[] expected = KMeans.run2d(pts, k, 10, 42L);
+        KMeansCluster[] actual = KMeans.run2d(pts, k, 10, 42L);
+        Assert.assertEquals(k, expected.length);
+        for (int i = 0; i < k; i++) {
+            Assert.assertArrayEquals(expected[i].getCentroid(), actual[i].getCentroid(), 0);
+        }
+        //the seed overload is the same as seeding through the options
+        Assert.assertArrayEquals(expected, KMeans.run2d(pts, k, 10, new KMeansOptions().setSeed(42L)));
+    }
+
+    @Test
+    public void testDSquaredSeedingIsReproducible() {
+        //enough points for several chunks, so threads really do split the work
+        Random rand = new Random(137);
+        int k = 20;
+        double[][] pts = new double[30000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % k) * 50;
+            pts[i] = new double[]{c + rand.nextGaussian() * 10, (i % 7) * 50 + rand.nextGaussian() * 10};
+        }
+
+        double[][] plusPlus = KMeansSeeding.kMeansPlusPlus(pts, k, 42, null);
+        double[][] parallel = KMeansSeeding.kMeansParallel(pts, k, 5, 2.0 * k, 42, null);
+        Assert.assertEquals(k, plusPlus.length);
+        Assert.assertEquals(k, parallel.length);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try{
+            Assert.assertArrayEquals(plusPlus, KMeansSeeding.kMeansPlusPlus(pts, k, 42, pool));
+            Assert.assertArrayEquals(parallel, KMeansSeeding.kMeansParallel(pts, k, 5, 2.0 * k, 42, pool));
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDistortionIsNearestCentroidSSE() {
+        //each test point is closest to its own cluster's centroid, so this is the sum over each cluster's points
+        double expected = 0;
+        for (KMeansCluster cluster : testResult) {
+            for (double[] pt : cluster.getPoints2d()) {
+                expected += cluster.distSqToCentroid(pt);
+            }
+        }
+        Assert.assertEquals(expected, KMeans.distortion(testData, testResult), 1e-9);
+
+        //chunks are summed in order, so threads give exactly the same value
+        Random rand = new Random(137);
+        double[][] pts = new double[50000][];
+        for (int i = 0; i < pts.length; i++) {
+            pts[i] = new double[]{rand.nextDouble() * 1000, rand.nextDouble() * 1000};
+        }
+        double[][] centroids = {{100, 100}, {500, 500}, {900, 200}};
+        Assert.assertEquals(KMeans.distortion(pts, centroids),
+                KMeans.distortion(pts, centroids, new KMeansOptions().setParallelism(3)), 0);
+    }
+
+    @Test
+    public void testMiniBatchFindsCentroids() {
+        Random rand = new Random(137);
+        double[][] centres = {{0, 0}, {500, 0}, {0, 500}, {500, 500}};
+        MiniBatchKMeans miniBatch = new MiniBatchKMeans(centres.length, 256, 42);
+        Assert.assertEquals(0, miniBatch.getClusters().length);
+
+        //stream the points in, never holding them all at once
+        PointBuffer2d sameEntity = new PointBuffer2d();
+        for (int i = 0; i < 50000; i++) {
+            double[] c = centres[rand.nextInt(centres.length)];
+            double[] pt = new double[]{c[0] + rand.nextGaussian() * 20, c[1] + rand.nextGaussian() * 20};
+            miniBatch.add(pt);
+            sameEntity.add(pt);
+        }
+        miniBatch.flush();
+        Assert.assertEquals(50000, miniBatch.getNPointsSeen());
+
+        //a point source streams the same points without an array each
+        MiniBatchKMeans fromSource = new MiniBatchKMeans(centres.length, 256, 42);
+        fromSource.addAll(sameEntity);
+        fromSource.flush();
+        Assert.assertArrayEquals(miniBatch.getClusters(), fromSource.getClusters());
+
+        KMeansCluster[] clusters = miniBatch.getClusters();
+        Assert.assertEquals(centres.length, clusters.length);
+        for (double[] centre : centres) {
+            double closest = Double.POSITIVE_INFINITY;
+            for (KMeansCluster cluster : clusters) {
+                closest = Math.min(closest, cluster.distSqToCentroid(centre));
+            }
+            Assert.assertTrue(closest < 5 * 5);
+        }
+    }
+
     private static void compareResult(KMeansCluster[] actualClusters, KMeansCluster[] expectedClusters){
         Assert.assertEquals(expectedClusters.length, actualClusters.length);
 
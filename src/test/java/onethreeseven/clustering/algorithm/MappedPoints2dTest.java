@@ -0,0 +1,117 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.MappedPoints2d;
+import onethreeseven.clustering.model.PointSource2d;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MappedPoints2dTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("points", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    //gaussian blobs around the given centres with some uniform noise
+    private static double[][] blobs(Random rand, int nPts, double[][] centres){
+        double[][] pts = new double[nPts][];
+        for (int i = 0; i < nPts; i++) {
+            if(i % 10 == 0){
+                pts[i] = new double[]{rand.nextDouble() * 200 - 50, rand.nextDouble() * 200 - 50};
+            }else{
+                double[] c = centres[i % centres.length];
+                pts[i] = new double[]{c[0] + rand.nextGaussian() * 3, c[1] + rand.nextGaussian() * 3};
+            }
+        }
+        return pts;
+    }
+
+    @Test
+    public void testWriteThenOpen() throws IOException {
+        double[][] pts = blobs(new Random(137), 10000, new double[][]{{0, 0}});
+        Assert.assertEquals(pts.length, MappedPoints2d.write(file, Arrays.asList(pts).iterator()));
+        Assert.assertEquals(pts.length * (long) MappedPoints2d.BYTES_PER_POINT, Files.size(file));
+
+        MappedPoints2d mapped = MappedPoints2d.open(file);
+        Assert.assertEquals(pts.length, mapped.size());
+        for (int i = 0; i < pts.length; i++) {
+            Assert.assertEquals(pts[i][0], mapped.getX(i), 0);
+            Assert.assertEquals(pts[i][1], mapped.getY(i), 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testPartialPointRejected() throws IOException {
+        Files.write(file, new byte[MappedPoints2d.BYTES_PER_POINT + 8]);
+        MappedPoints2d.open(file);
+    }
+
+    @Test
+    public void testDBScanMatchesArrays() throws IOException {
+        double[][] pts = blobs(new Random(7), 20000, new double[][]{{0, 0}, {100, 0}, {50, 100}});
+        MappedPoints2d.write(file, Arrays.asList(pts).iterator());
+        MappedPoints2d mapped = MappedPoints2d.open(file);
+
+        DBScanOptions gridOptions = new DBScanOptions().setIndexType(SpatialIndexType.GRID);
+        DBScanResult expected = DBScan.run2dCompact(pts, 1.5, 8, gridOptions, null);
+        DBScanResult actual = DBScan.run2dCompact(mapped, 1.5, 8, null);
+
+        Assert.assertNull(actual.getPoints());
+        Assert.assertEquals(expected.getNClusters(), actual.getNClusters());
+        Assert.assertArrayEquals(expected.getClusterIdPerPoint(), actual.getClusterIdPerPoint());
+        //the cluster views read the points back from the file
+        Assert.assertArrayEquals(pts[actual.getPointIndex(0, 0)], actual.getClusters().get(0).getPoints2d().get(0), 0);
+    }
+
+    @Test
+    public void testKMeansMatchesArrays() throws IOException {
+        double[][] centres = new double[][]{{0, 0}, {100, 0}, {50, 100}};
+        double[][] pts = blobs(new Random(11), 30000, centres);
+        MappedPoints2d.write(file, Arrays.asList(pts).iterator());
+        MappedPoints2d mapped = MappedPoints2d.open(file);
+
+        KMeansOptions options = new KMeansOptions().setSeed(137L);
+        KMeansResult result = KMeans.run2d(mapped, centres.length, options);
+        Assert.assertEquals(pts.length, result.getNPoints());
+
+        //each blob has a centroid near it, and every point goes to its closest centroid
+        double[][] centroids = result.getCentroids();
+        for (double[] centre : centres) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for (double[] centroid : centroids) {
+                nearest = Math.min(nearest, Math.hypot(centroid[0] - centre[0], centroid[1] - centre[1]));
+            }
+            Assert.assertTrue(nearest < 10);
+        }
+        int sizeSum = 0;
+        for (int j = 0; j < result.getK(); j++) {
+            sizeSum += result.getClusterSize(j);
+        }
+        Assert.assertEquals(pts.length, sizeSum);
+
+        //same as clustering the points from an array with the same starting centroids
+        KMeansResult fromArray = KMeans.run2d(PointSource2d.of(pts), centres.length, options);
+        for (int j = 0; j < centroids.length; j++) {
+            Assert.assertArrayEquals(fromArray.getCentroids()[j], centroids[j], 0);
+        }
+        Assert.assertArrayEquals(fromArray.getClusterIdPerPoint(), result.getClusterIdPerPoint());
+    }
+
+}
@@ -0,0 +1,74 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.OPTICSResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class OPTICSTest {
+
+    private static double[][] blobs(){
+        Random rand = new Random(137);
+        double[][] pts = new double[3000][];
+        for (int i = 0; i < pts.length; i++) {
+            double c = (i % 5) * 25;
+            double spread = 2 + (i % 3) * 2;
+            pts[i] = new double[]{c + rand.nextGaussian() * spread, (i % 2) * 30 + rand.nextGaussian() * spread};
+        }
+        return pts;
+    }
+
+    @Test
+    public void testOrderingIsAPermutation() {
+        double[][] pts = blobs();
+        OPTICSResult result = OPTICS.run2d(pts, 3.0, 8, SpatialIndexType.GRID, null);
+
+        boolean[] seen = new boolean[pts.length];
+        for (int ptIdx : result.getOrdering()) {
+            Assert.assertFalse(seen[ptIdx]);
+            seen[ptIdx] = true;
+        }
+        //the walk starts at an unreachable point
+        Assert.assertEquals(OPTICSResult.UNDEFINED, result.getReachability()[0], 0);
+    }
+
+    @Test
+    public void testExtractMatchesDBScan() {
+        double[][] pts = blobs();
+        OPTICSResult result = OPTICS.run2d(pts, 3.0, 8, SpatialIndexType.GRID, null);
+        int[] ordering = result.getOrdering();
+        double[] coreDistance = result.getCoreDistance();
+
+        for (double epsilon : new double[]{1.0, 2.0, 3.0}) {
+            DBScanResult expected = DBScan.run2dCompact(pts, epsilon, 8, SpatialIndexType.GRID, null);
+            DBScanResult actual = result.extractDBScan(epsilon);
+            Assert.assertEquals(expected.getNClusters(), actual.getNClusters());
+
+            //core points are grouped exactly the same way (border points may pick a different neighbour, or be noise)
+            int[] expectedToActual = new int[expected.getNClusters()];
+            Arrays.fill(expectedToActual, DBScanResult.NOISE);
+            for (int pos = 0; pos < ordering.length; pos++) {
+                if(coreDistance[pos] > epsilon){
+                    continue;
+                }
+                int e = expected.getClusterId(ordering[pos]);
+                int a = actual.getClusterId(ordering[pos]);
+                Assert.assertNotEquals(DBScanResult.NOISE, a);
+                if(expectedToActual[e] == DBScanResult.NOISE){
+                    expectedToActual[e] = a;
+                }
+                Assert.assertEquals(expectedToActual[e], a);
+            }
+            Assert.assertEquals(expected.getNClusters(), Arrays.stream(expectedToActual).distinct().count());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExtractLargerEpsilonFails() {
+        OPTICS.run2d(blobs(), 1.0, 8).extractDBScan(2.0);
+    }
+
+}
@@ -0,0 +1,93 @@
+package onethreeseven.clustering.algorithm;
+
+import onethreeseven.clustering.model.DBScanResult;
+import onethreeseven.clustering.model.KMeansResult;
+import onethreeseven.clustering.model.PointBuffer2d;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class PointBuffer2dTest {
+
+    private static double[][] randomPoints(int nPts, long seed){
+        Random rand = new Random(seed);
+        double[][] pts = new double[nPts][];
+        for (int i = 0; i < nPts; i++) {
+            pts[i] = new double[]{rand.nextDouble() * 100, rand.nextDouble() * 100};
+        }
+        return pts;
+    }
+
+    @Test
+    public void testAppendAndGrow() {
+        double[][] pts = randomPoints(5000, 137);
+        PointBuffer2d buffer = new PointBuffer2d(0);
+        Assert.assertEquals(1000, buffer.addAll(Arrays.asList(pts).subList(0, 1000).iterator()));
+        for (int i = 1000; i < 3000; i++) {
+            buffer.add(pts[i][0], pts[i][1]);
+        }
+        double[] packed = new double[4000];
+        for (int i = 0; i < 2000; i++) {
+            packed[i * 2] = pts[3000 + i][0];
+            packed[i * 2 + 1] = pts[3000 + i][1];
+        }
+        buffer.addPacked(packed, 2000);
+
+        Assert.assertEquals(pts.length, buffer.size());
+        for (int i = 0; i < pts.length; i++) {
+            Assert.assertEquals(pts[i][0], buffer.getX(i), 0);
+            Assert.assertEquals(pts[i][1], buffer.getY(i), 0);
+        }
+        double[][] copied = buffer.toArray();
+        for (int i = 0; i < pts.length; i++) {
+            Assert.assertArrayEquals(pts[i], copied[i], 0);
+        }
+
+        buffer.trimToSize();
+        Assert.assertEquals(pts.length * 2, buffer.getCoordinates().length);
+        buffer.clear();
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddPackedTooFew() {
+        new PointBuffer2d().addPacked(new double[5], 3);
+    }
+
+    @Test
+    public void testDBScanMatchesArrays() {
+        double[][] pts = randomPoints(20000, 7);
+        DBScanOptions gridOptions = new DBScanOptions().setIndexType(SpatialIndexType.GRID);
+        DBScanResult expected = DBScan.run2dCompact(pts, 1.0, 4, gridOptions, null);
+        DBScanResult actual = DBScan.run2dCompact(PointBuffer2d.of(pts), 1.0, 4, null);
+        Assert.assertEquals(expected.getNClusters(), actual.getNClusters());
+        Assert.assertArrayEquals(expected.getClusterIdPerPoint(), actual.getClusterIdPerPoint());
+
+        //the index in the options is used over a buffer too
+        for (SpatialIndexType indexType : SpatialIndexType.values()) {
+            DBScanOptions options = new DBScanOptions().setIndexType(indexType);
+            Assert.assertArrayEquals(DBScan.run2dCompact(pts, 1.0, 4, options, null).getClusterIdPerPoint(),
+                    DBScan.run2dCompact(PointBuffer2d.of(pts), 1.0, 4, options, null).getClusterIdPerPoint());
+        }
+    }
+
+    @Test
+    public void testKMeansOverBuffer() {
+        double[][] pts = randomPoints(20000, 11);
+        KMeansResult result = KMeans.run2d(PointBuffer2d.of(pts), 5, new KMeansOptions().setSeed(137L));
+        Assert.assertEquals(5, result.getK());
+        //converged, so every point is with its closest centroid
+        double[][] centroids = result.getCentroids();
+        for (int i = 0; i < pts.length; i++) {
+            double[] own = centroids[result.getClusterId(i)];
+            double ownDistSq = Math.pow(own[0] - pts[i][0], 2) + Math.pow(own[1] - pts[i][1], 2);
+            for (double[] centroid : centroids) {
+                double distSq = Math.pow(centroid[0] - pts[i][0], 2) + Math.pow(centroid[1] - pts[i][1], 2);
+                Assert.assertTrue(ownDistSq <= distSq);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package onethreeseven.clustering.algorithm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+public class SamplingTest {
+
+    @Test
+    public void testSampleIsDistinctAndInRange() {
+        SplittableRandom random = new SplittableRandom(137);
+        int[][] sizes = {{1, 1}, {10, 0}, {10, 10}, {1000, 7}, {1000, 999}, {Integer.MAX_VALUE, 5000}};
+        for (int[] size : sizes) {
+            int n = size[0];
+            int m = size[1];
+            int[] sample = Sampling.sampleIndices(n, m, random);
+            Assert.assertEquals(m, sample.length);
+            HashSet<Integer> seen = new HashSet<>();
+            for (int idx : sample) {
+                Assert.assertTrue(idx >= 0 && idx < n);
+                Assert.assertTrue(seen.add(idx));
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameSample() {
+        Assert.assertArrayEquals(
+                Sampling.sampleIndices(100000, 500, new SplittableRandom(42)),
+                Sampling.sampleIndices(100000, 500, new SplittableRandom(42)));
+    }
+
+    @Test
+    public void testEveryIndexCanBeDrawn() {
+        //drawing 3 of 5 many times reaches every index, at about 3/5 of the draws each
+        SplittableRandom random = new SplittableRandom(7);
+        int[] counts = new int[5];
+        int nDraws = 20000;
+        for (int i = 0; i < nDraws; i++) {
+            for (int idx : Sampling.sampleIndices(5, 3, random)) {
+                counts[idx]++;
+            }
+        }
+        for (int count : counts) {
+            Assert.assertEquals(nDraws * 3 / 5.0, count, nDraws * 0.03);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyIndices() {
+        Sampling.sampleIndices(3, 4, new SplittableRandom(1));
+    }
+
+}
@@ -0,0 +1,109 @@
+package onethreeseven.clustering.command;
+
+import onethreeseven.clustering.model.KMeansCluster;
+import onethreeseven.clustering.model.PointBuffer2d;
+import onethreeseven.trajsuitePlugin.model.BoundingCoordinates;
+import onethreeseven.trajsuitePlugin.transaction.AddEntitiesTransaction;
+import onethreeseven.trajsuitePlugin.transaction.RemoveEntitiesTransaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class SelectedPointsCacheTest {
+
+    /**
+     * An entity that counts how many times its coordinates are walked.
+     */
+    private static class CountingEntity extends KMeansCluster {
+
+        private int nWalks = 0;
+
+        CountingEntity(double... coords){
+            super(new double[]{0, 0});
+            for (int i = 0; i < coords.length; i += 2) {
+                add(new double[]{coords[i], coords[i + 1]});
+            }
+        }
+
+        @Override
+        public Iterator<double[]> coordinateIter() {
+            nWalks++;
+            return super.coordinateIter();
+        }
+    }
+
+    @Test
+    public void testAddedEntityDoesNotRewalkOthers() {
+        SelectedPointsCache cache = SelectedPointsCache.getInstance();
+        cache.clear();
+
+        CountingEntity a = new CountingEntity(1, 2, 3, 4);
+        CountingEntity b = new CountingEntity(5, 6);
+        cache.update(Arrays.asList(a, b));
+        Assert.assertEquals(1, a.nWalks);
+        Assert.assertEquals(1, b.nWalks);
+
+        //another entity is added, only it is walked, and selecting it walks nothing more
+        CountingEntity c = new CountingEntity(7, 8);
+        cache.entitiesAdded(new AddEntitiesTransaction().add("layer", "c", c, true, true, null));
+        Assert.assertEquals(1, c.nWalks);
+        cache.update(Arrays.asList(a, b, c));
+        Assert.assertEquals(1, a.nWalks);
+        Assert.assertEquals(1, b.nWalks);
+        Assert.assertEquals(1, c.nWalks);
+        Assert.assertArrayEquals(new double[][]{{1, 2}, {3, 4}, {5, 6}, {7, 8}}, cache.getPointBuffer().toArray());
+
+        //removing it drops its points, so selecting it again walks it again
+        cache.entitiesRemoved(new RemoveEntitiesTransaction().add("layer", "c"));
+        cache.update(Arrays.asList(a, b));
+        cache.update(Arrays.asList(a, b, c));
+        Assert.assertEquals(2, c.nWalks);
+        Assert.assertEquals(1, a.nWalks);
+        cache.clear();
+    }
+
+    @Test
+    public void testEditedEntityIsPackedAgain() {
+        SelectedPointsCache cache = SelectedPointsCache.getInstance();
+        cache.clear();
+
+        KMeansCluster a = new KMeansCluster(new double[]{0, 0});
+        a.add(new double[]{1, 2});
+        CountingEntity b = new CountingEntity(3, 4);
+        List<BoundingCoordinates> selection = Arrays.asList(a, b);
+
+        cache.update(selection);
+        PointBuffer2d before = cache.getPointBuffer();
+        Assert.assertEquals(2, before.size());
+        //the same selection again is served from the cache
+        cache.update(selection);
+        Assert.assertSame(before, cache.getPointBuffer());
+
+        //an edit in place, only the edited entity is walked again
+        a.add(new double[]{5, 6});
+        a.getPoints2d().get(0)[0] = 7;
+        cache.invalidate(a);
+        cache.update(selection);
+
+        PointBuffer2d after = cache.getPointBuffer();
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals(3, after.size());
+        Assert.assertEquals(3, cache.getNPoints());
+        Assert.assertArrayEquals(new double[][]{{7, 2}, {5, 6}, {3, 4}}, after.toArray());
+        Assert.assertEquals(1, b.nWalks);
+
+        //an entity replaced under the same id is packed again
+        KMeansCluster replacement = new KMeansCluster(new double[]{0, 0});
+        replacement.add(new double[]{9, 9});
+        cache.entitiesAdded(new AddEntitiesTransaction().add("layer", "a", a, true, true, null));
+        cache.entitiesAdded(new AddEntitiesTransaction().add("layer", "a", replacement, true, true, null));
+        cache.update(Arrays.asList(replacement, b));
+        Assert.assertArrayEquals(new double[][]{{9, 9}, {3, 4}}, cache.getPointBuffer().toArray());
+        Assert.assertEquals(1, b.nWalks);
+        cache.clear();
+    }
+
+}